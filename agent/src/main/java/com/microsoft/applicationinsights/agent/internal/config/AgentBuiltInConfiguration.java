@@ -37,6 +37,8 @@ public class AgentBuiltInConfiguration {
     private final boolean jmxEnabled;
     private final long maxSqlQueryLimitInMS;
     private final long redisThresholdInMS;
+    private final boolean dependencyAggregationEnabled;
+    private final long dependencyAggregationThresholdInMS;
     private final DataOfConfigurationForException dataOfConfigurationForException;
     private final List<ClassInstrumentationData> simpleBuiltInClasses;
 
@@ -49,6 +51,8 @@ public class AgentBuiltInConfiguration {
                                      boolean jmxEnabled,
                                      Long maxSqlQueryLimitInMS,
                                      long redisThresholdInMS,
+                                     boolean dependencyAggregationEnabled,
+                                     long dependencyAggregationThresholdInMS,
                                      DataOfConfigurationForException dataOfConfigurationForException) {
         this.simpleBuiltInClasses = simpleBuiltInClasses;
         this.enabled = enabled;
@@ -62,6 +66,8 @@ public class AgentBuiltInConfiguration {
         this.redisThresholdInMS = redisThresholdInMS;
         this.jedisEnabled = jedisEnabled;
         this.maxSqlQueryLimitInMS = maxSqlQueryLimitInMS;
+        this.dependencyAggregationEnabled = dependencyAggregationEnabled;
+        this.dependencyAggregationThresholdInMS = dependencyAggregationThresholdInMS;
         this.dataOfConfigurationForException = dataOfConfigurationForException;
     }
 
@@ -93,6 +99,14 @@ public class AgentBuiltInConfiguration {
         return redisThresholdInMS;
     }
 
+    public boolean isDependencyAggregationEnabled() {
+        return dependencyAggregationEnabled;
+    }
+
+    public long getDependencyAggregationThresholdInMS() {
+        return dependencyAggregationThresholdInMS;
+    }
+
     public boolean isJmxEnabled() {
         return jmxEnabled;
     }
@@ -37,6 +37,8 @@ public class AgentBuiltInConfigurationBuilder {
     private boolean jmxEnabled = false;
     private long jedisThresholdInMS = 10000L;
     private Long maxSqlQueryLimitInMS = 10000L;
+    private boolean dependencyAggregationEnabled = false;
+    private long dependencyAggregationThresholdInMS = 1000L;
     private DataOfConfigurationForException dataOfConfigurationForException = new DataOfConfigurationForException();
     private List<ClassInstrumentationData> simpleBuiltInClasses;
 
@@ -54,6 +56,8 @@ public class AgentBuiltInConfigurationBuilder {
                                              enabled && jmxEnabled,
                                              maxSqlQueryLimitInMS,
                                              jedisThresholdInMS,
+                                             dependencyAggregationEnabled && enabled,
+                                             dependencyAggregationThresholdInMS,
                                              dataOfConfigurationForException);
     }
 
@@ -97,6 +101,12 @@ public class AgentBuiltInConfigurationBuilder {
         return this;
     }
 
+    public AgentBuiltInConfigurationBuilder setDependencyAggregationValues(boolean dependencyAggregationEnabled, long dependencyAggregationThresholdInMS) {
+        this.dependencyAggregationEnabled = dependencyAggregationEnabled;
+        this.dependencyAggregationThresholdInMS = dependencyAggregationThresholdInMS < 0 ? 0 : dependencyAggregationThresholdInMS;
+        return this;
+    }
+
     public void setDataOfConfigurationForException(DataOfConfigurationForException dataOfConfigurationForException) {
         if (dataOfConfigurationForException != null) {
             this.dataOfConfigurationForException = dataOfConfigurationForException;
@@ -58,10 +58,12 @@ final class XmlAgentConfigurationBuilder implements AgentConfigurationBuilder {
     private final static String HIBERNATE_TAG = "HIBERNATE";
     private final static String JMX_TAG = "AgentJmx";
     private final static String MAX_STATEMENT_QUERY_LIMIT_TAG = "MaxStatementQueryLimitInMS";
+    private final static String DEPENDENCY_AGGREGATION_TAG = "DependencyAggregation";
 
     private final static String AGENT_LOGGER_TAG = "AgentLogger";
 
     private final static long JEDIS_ARGS_THRESHOLD_IN_MS = 10000L;
+    private final static long DEPENDENCY_AGGREGATION_THRESHOLD_IN_MS = 1000L;
 
     private final static String EXCLUDED_PREFIXES_TAG = "ExcludedPrefixes";
     private final static String FORBIDDEN_PREFIX_TAG = "Prefix";
@@ -222,6 +224,14 @@ final class XmlAgentConfigurationBuilder implements AgentConfigurationBuilder {
         nodes = builtInElement.getElementsByTagName(MAX_STATEMENT_QUERY_LIMIT_TAG);
         builtInConfigurationBuilder.setSqlMaxQueryLimitInMS(XmlParserUtils.getLong(XmlParserUtils.getFirst(nodes), MAX_STATEMENT_QUERY_LIMIT_TAG));
 
+        // Unlike the other built-in sections, aggregation is off unless the section is present
+        nodes = builtInElement.getElementsByTagName(DEPENDENCY_AGGREGATION_TAG);
+        element = XmlParserUtils.getFirst(nodes);
+        if (element != null) {
+            threshold = XmlParserUtils.getLongAttribute(element, DEPENDENCY_AGGREGATION_TAG, THRESHOLD_ATTRIBUTE, DEPENDENCY_AGGREGATION_THRESHOLD_IN_MS);
+            builtInConfigurationBuilder.setDependencyAggregationValues(XmlParserUtils.getEnabled(element, DEPENDENCY_AGGREGATION_TAG), threshold);
+        }
+
         new BuiltInInstrumentedClassesBuilder().setSimpleBuiltInClasses(builtInConfigurationBuilder, builtInElement);
 
         agentConfiguration.setBuiltInData(builtInConfigurationBuilder.create());
@@ -52,6 +52,8 @@ public enum ImplementationsCoordinator implements AgentNotificationsHandler {
 
     private volatile long maxSqlMaxQueryThresholdInMS = 10000L;
     private volatile long redisThresholdInNS = 10000L * 1000000;
+    private volatile boolean dependencyAggregationEnabled = false;
+    private volatile long dependencyAggregationThresholdInMS = 1000L;
 
     private static RuntimeExceptionDecider runtimeExceptionDecider;
 
@@ -60,9 +62,14 @@ public enum ImplementationsCoordinator implements AgentNotificationsHandler {
     private AgentNotificationsHandler mainHandler;
     private ConcurrentHashMap<String, String> classNameToType = new ConcurrentHashMap<String, String>();
 
+    // The names of the instrumented methods with their class type, so they are not built on every call
+    private ConcurrentHashMap<String, String> methodNameToNameWithType = new ConcurrentHashMap<String, String>();
+
     public void initialize(AgentConfiguration configurationData) {
         maxSqlMaxQueryThresholdInMS = configurationData.getBuiltInConfiguration().getSqlMaxQueryLimitInMS();
         setRedisThresholdInMS(configurationData.getBuiltInConfiguration().getRedisThresholdInMS());
+        dependencyAggregationEnabled = configurationData.getBuiltInConfiguration().isDependencyAggregationEnabled();
+        dependencyAggregationThresholdInMS = configurationData.getBuiltInConfiguration().getDependencyAggregationThresholdInMS();
         runtimeExceptionDecider = new RuntimeExceptionDecider();
     }
 
@@ -83,6 +90,7 @@ public enum ImplementationsCoordinator implements AgentNotificationsHandler {
 
     public void addClassNameToType(String className, String classType) {
         classNameToType.put(className, classType);
+        methodNameToNameWithType.clear();
     }
 
     @Override
@@ -193,11 +201,18 @@ public enum ImplementationsCoordinator implements AgentNotificationsHandler {
             String classType;
             if (implementation != null) {
                 if (!StringUtils.isNullOrEmpty(name)) {
-                    int index = name.lastIndexOf(".");
-                    if (index != -1) {
-                        String className = name.substring(0, index);
-                        classType = classNameToType.get(className);
-                        name = name + '#' + classType;
+                    String nameWithType = methodNameToNameWithType.get(name);
+                    if (nameWithType == null) {
+                        int index = name.lastIndexOf(".");
+                        if (index != -1) {
+                            String className = name.substring(0, index);
+                            classType = classNameToType.get(className);
+                            nameWithType = name + '#' + classType;
+                            methodNameToNameWithType.putIfAbsent(name, nameWithType);
+                            name = nameWithType;
+                        }
+                    } else {
+                        name = nameWithType;
                     }
                 }
                 implementation.methodStarted(name);
@@ -315,6 +330,27 @@ public enum ImplementationsCoordinator implements AgentNotificationsHandler {
         }
     }
 
+    public boolean isDependencyAggregationEnabled() {
+        return dependencyAggregationEnabled;
+    }
+
+    public void setDependencyAggregationEnabled(boolean dependencyAggregationEnabled) {
+        this.dependencyAggregationEnabled = dependencyAggregationEnabled;
+    }
+
+    /**
+     * Dependency calls that take at least that long are not aggregated but reported on their own.
+     */
+    public long getDependencyAggregationThresholdInMS() {
+        return dependencyAggregationThresholdInMS;
+    }
+
+    public void setDependencyAggregationThresholdInMS(long dependencyAggregationThresholdInMS) {
+        if (dependencyAggregationThresholdInMS >= 0) {
+            this.dependencyAggregationThresholdInMS = dependencyAggregationThresholdInMS;
+        }
+    }
+
     public void setExceptionData    (DataOfConfigurationForException exceptionData) {
         this.runtimeExceptionDecider.setExceptionData(exceptionData);
     }
@@ -73,6 +73,15 @@ public final class XmlAgentConfigurationBuilderTest {
         assertEquals(builtInConfiguration.isJdbcEnabled(), true);
         assertEquals(builtInConfiguration.isJdbcEnabled(), true);
         assertEquals(builtInConfiguration.isHibernateEnabled(), false);
+        assertEquals(builtInConfiguration.isDependencyAggregationEnabled(), true);
+        assertEquals(builtInConfiguration.getDependencyAggregationThresholdInMS(), 250L);
+    }
+
+    @Test
+    public void testDependencyAggregationIsDisabledByDefault() throws IOException {
+        AgentConfiguration configuration = testConfiguration("ExcludedTest.xml");
+        AgentBuiltInConfiguration builtInConfiguration = configuration.getBuiltInConfiguration();
+        assertEquals(builtInConfiguration.isDependencyAggregationEnabled(), false);
     }
 
     private AgentConfiguration testConfiguration(String testFileName) throws IOException {
@@ -21,22 +21,24 @@
 
 package com.microsoft.applicationinsights;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.microsoft.applicationinsights.common.CommonUtils;
 import com.microsoft.applicationinsights.extensibility.ContextInitializer;
-import com.microsoft.applicationinsights.extensibility.TelemetryInitializer;
-import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.extensibility.context.ContextTagKeys;
 import com.microsoft.applicationinsights.extensibility.context.InternalContext;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.metrics.MetricAggregationManager;
 import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseDataCollector;
 import com.microsoft.applicationinsights.internal.util.ChannelFetcher;
 import com.microsoft.applicationinsights.internal.shutdown.SDKShutdownActivity;
 import com.microsoft.applicationinsights.telemetry.*;
 import com.microsoft.applicationinsights.internal.util.MapUtil;
 import com.microsoft.applicationinsights.channel.TelemetryChannel;
+import com.microsoft.applicationinsights.metrics.Metric;
 
 import com.google.common.base.Strings;
 
@@ -46,9 +48,29 @@ import com.google.common.base.Strings;
  * General overview https://docs.microsoft.com/azure/application-insights/app-insights-api-custom-events-metrics
  */
 public class TelemetryClient {
-    private final class TelemetryClientChannelFetcher implements ChannelFetcher {
+    /**
+     * Fetches the channel of a configuration, the fetchers of the clients that share a configuration
+     * are equal so the channel is registered for shutdown once and not once per client.
+     */
+    private static final class ConfigurationChannelFetcher implements ChannelFetcher {
+        private final TelemetryConfiguration configuration;
+
+        private ConfigurationChannelFetcher(TelemetryConfiguration configuration) {
+            this.configuration = configuration;
+        }
+
         public TelemetryChannel fetch() {
-            return getChannel();
+            return configuration.getChannel();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ConfigurationChannelFetcher && ((ConfigurationChannelFetcher)other).configuration == configuration;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(configuration);
         }
     }
 
@@ -70,7 +92,7 @@ public class TelemetryClient {
         }
 
         synchronized (TELEMETRY_STOP_HOOK_LOCK) {
-            SDKShutdownActivity.INSTANCE.register(new TelemetryClientChannelFetcher());
+            SDKShutdownActivity.INSTANCE.register(new ConfigurationChannelFetcher(configuration));
         }
 
         this.configuration = configuration;
@@ -263,6 +285,28 @@ public class TelemetryClient {
         track(telemetry);
     }
 
+    /**
+     * Gets a metric whose values are aggregated locally and sent once per aggregation interval,
+     * use it instead of trackMetric for values that are tracked at a high frequency.
+     * @param name The name of the metric.
+     * @return The metric series without dimensions.
+     */
+    public Metric getMetric(String name) {
+        return getMetric(name, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Gets the series of a metric for a set of dimension values, the values of the series are aggregated
+     * locally and sent once per aggregation interval with the dimensions as properties.
+     * The number of series of a metric is capped, see {@link com.microsoft.applicationinsights.internal.metrics.MetricAggregationManager}.
+     * @param name The name of the metric.
+     * @param dimensions The dimension names and values, up to 10 dimensions.
+     * @return The metric series.
+     */
+    public Metric getMetric(String name, Map<String, String> dimensions) {
+        return MetricAggregationManager.INSTANCE.getMetric(this, name, dimensions);
+    }
+
     /**
      * Sends an exception record to Application Insights. Appears in "exceptions" in Analytics and Search.
      * @param exception The exception to log information about.
@@ -400,6 +444,14 @@ public class TelemetryClient {
             return;
         }
 
+        // Only the initializers and processors that apply to the telemetry type
+        TelemetryPipeline pipeline = configuration.getPipeline(telemetry.getClass());
+
+        // Sampled out telemetries are dropped before any work is done on them
+        if (isSampledOutBeforeInitialization(pipeline, telemetry)) {
+            return;
+        }
+
         if (telemetry.getTimestamp() == null) {
             telemetry.setTimestamp(new Date());
         }
@@ -416,13 +468,13 @@ public class TelemetryClient {
             InternalLogger.INSTANCE.error("Exception while telemetry context's initialization: '%s'", t.getMessage());
         }
 
-        activateInitializers(telemetry);
+        pipeline.initialize(telemetry);
 
         if (Strings.isNullOrEmpty(telemetry.getContext().getInstrumentationKey())) {
             throw new IllegalArgumentException("Instrumentation key cannot be undefined.");
         }
 
-        if (!activateProcessors(telemetry)) {
+        if (!pipeline.process(telemetry)) {
             return;
         }
 
@@ -438,28 +490,26 @@ public class TelemetryClient {
         }
     }
 
-    private void activateInitializers(Telemetry telemetry) {
-        for (TelemetryInitializer initializer : this.configuration.getTelemetryInitializers()) {
-            try {
-                initializer.initialize(telemetry);
-            } catch (Throwable e) {
-                InternalLogger.INSTANCE.error("Failed during telemetry initialization class '%s', exception: %s", initializer.getClass().getName(), e.getMessage());
-            }
+    /**
+     * Asks the sampling processors that can decide before the telemetry is initialized whether the telemetry is sampled out.
+     * This is possible only when the operation id of the telemetry is already known, either set on the telemetry
+     * or on the context of the client, which is copied to the telemetry only if the telemetry has none.
+     */
+    private boolean isSampledOutBeforeInitialization(TelemetryPipeline pipeline, Telemetry telemetry) {
+        if (!pipeline.hasPreInitializationSamplers()) {
+            return false;
         }
-    }
 
-    private boolean activateProcessors(Telemetry telemetry) {
-        for (TelemetryProcessor processor : configuration.getTelemetryProcessors()) {
-            try {
-                if (!processor.process(telemetry)) {
-                    return false;
-                }
-            } catch (Throwable t) {
-                InternalLogger.INSTANCE.error("Exception while processing telemetry: '%s'",t.getMessage());
+        String operationIdKey = ContextTagKeys.getKeys().getOperationId();
+        String operationId = telemetry.getContext().getTags().get(operationIdKey);
+        if (Strings.isNullOrEmpty(operationId)) {
+            operationId = getContext().getTags().get(operationIdKey);
+            if (Strings.isNullOrEmpty(operationId)) {
+                return false;
             }
         }
 
-        return true;
+        return pipeline.isSampledOut(telemetry, operationId);
     }
 
     /**
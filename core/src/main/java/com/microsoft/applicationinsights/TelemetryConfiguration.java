@@ -28,9 +28,13 @@ import com.microsoft.applicationinsights.extensibility.TelemetryInitializer;
 import com.microsoft.applicationinsights.extensibility.TelemetryModule;
 import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
 import com.microsoft.applicationinsights.internal.config.TelemetryConfigurationFactory;
+import com.microsoft.applicationinsights.internal.util.VersionedList;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Encapsulates the global telemetry configuration typically loaded from the ApplicationInsights.xml file.
@@ -47,9 +51,12 @@ public final class TelemetryConfiguration {
     private String instrumentationKey;
 
     private final ArrayList<ContextInitializer> contextInitializers = new   ArrayList<ContextInitializer>();
-    private final ArrayList<TelemetryInitializer> telemetryInitializers = new ArrayList<TelemetryInitializer>();
+    private final VersionedList<TelemetryInitializer> telemetryInitializers = new VersionedList<TelemetryInitializer>();
     private final ArrayList<TelemetryModule> telemetryModules = new ArrayList<TelemetryModule>();
-    private final ArrayList<TelemetryProcessor> telemetryProcessors = new ArrayList<TelemetryProcessor>();
+    private final VersionedList<TelemetryProcessor> telemetryProcessors = new VersionedList<TelemetryProcessor>();
+
+    // The initializers and processors that apply to each telemetry type, compiled on first use
+    private final ConcurrentMap<Class<?>, TelemetryPipeline> pipelines = new ConcurrentHashMap<Class<?>, TelemetryPipeline>();
 
     private TelemetryChannel channel;
 
@@ -158,6 +165,20 @@ public final class TelemetryConfiguration {
         return telemetryProcessors;
     }
 
+    /**
+     * Gets the pipeline of the telemetry type, the pipeline is compiled again once the
+     * telemetry initializers or the telemetry processors are changed.
+     */
+    TelemetryPipeline getPipeline(Class<? extends Telemetry> telemetryType) {
+        TelemetryPipeline pipeline = pipelines.get(telemetryType);
+        if (pipeline == null || !pipeline.isCompiledFrom(telemetryInitializers, telemetryProcessors)) {
+            pipeline = TelemetryPipeline.compile(telemetryType, telemetryInitializers, telemetryProcessors);
+            pipelines.put(telemetryType, pipeline);
+        }
+
+        return pipeline;
+    }
+
     /**
      * Gets or sets the default instrumentation key for the application.
      *
@@ -0,0 +1,160 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.microsoft.applicationinsights.extensibility.TelemetryInitializer;
+import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.extensibility.TelemetryTypeSpecific;
+import com.microsoft.applicationinsights.internal.channel.samplingV2.PreInitializationSampler;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.util.VersionedList;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+
+/**
+ * The telemetry initializers and processors of a configuration that apply to one telemetry type, in their order.
+ *
+ * The pipeline is compiled from the lists of the configuration and remembers their versions,
+ * so the configuration can tell that it must be compiled again.
+ */
+final class TelemetryPipeline {
+    private final TelemetryInitializer[] initializers;
+    private final TelemetryProcessor[] processors;
+    private final PreInitializationSampler[] preInitializationSamplers;
+    private final VersionedList<TelemetryInitializer> initializersSource;
+    private final int initializersVersion;
+    private final VersionedList<TelemetryProcessor> processorsSource;
+    private final int processorsVersion;
+
+    private TelemetryPipeline(TelemetryInitializer[] initializers,
+                              TelemetryProcessor[] processors,
+                              PreInitializationSampler[] preInitializationSamplers,
+                              VersionedList<TelemetryInitializer> initializersSource,
+                              int initializersVersion,
+                              VersionedList<TelemetryProcessor> processorsSource,
+                              int processorsVersion) {
+        this.initializers = initializers;
+        this.processors = processors;
+        this.preInitializationSamplers = preInitializationSamplers;
+        this.initializersSource = initializersSource;
+        this.initializersVersion = initializersVersion;
+        this.processorsSource = processorsSource;
+        this.processorsVersion = processorsVersion;
+    }
+
+    static TelemetryPipeline compile(Class<? extends Telemetry> telemetryType,
+                                     VersionedList<TelemetryInitializer> initializersSource,
+                                     VersionedList<TelemetryProcessor> processorsSource) {
+        // The versions are read first, a change made while compiling makes the pipeline stale
+        int initializersVersion = initializersSource.getVersion();
+        int processorsVersion = processorsSource.getVersion();
+
+        List<TelemetryInitializer> initializers = new ArrayList<TelemetryInitializer>();
+        for (TelemetryInitializer initializer : initializersSource.toArray(new TelemetryInitializer[0])) {
+            if (isApplicable(initializer, telemetryType)) {
+                initializers.add(initializer);
+            }
+        }
+
+        List<TelemetryProcessor> processors = new ArrayList<TelemetryProcessor>();
+        List<PreInitializationSampler> samplers = new ArrayList<PreInitializationSampler>();
+        for (TelemetryProcessor processor : processorsSource.toArray(new TelemetryProcessor[0])) {
+            if (isApplicable(processor, telemetryType)) {
+                processors.add(processor);
+                if (processor instanceof PreInitializationSampler) {
+                    samplers.add((PreInitializationSampler)processor);
+                }
+            }
+        }
+
+        return new TelemetryPipeline(
+                initializers.toArray(new TelemetryInitializer[initializers.size()]),
+                processors.toArray(new TelemetryProcessor[processors.size()]),
+                samplers.toArray(new PreInitializationSampler[samplers.size()]),
+                initializersSource,
+                initializersVersion,
+                processorsSource,
+                processorsVersion);
+    }
+
+    boolean isCompiledFrom(VersionedList<TelemetryInitializer> initializersSource, VersionedList<TelemetryProcessor> processorsSource) {
+        return this.initializersSource == initializersSource && initializersVersion == initializersSource.getVersion() &&
+                this.processorsSource == processorsSource && processorsVersion == processorsSource.getVersion();
+    }
+
+    boolean hasPreInitializationSamplers() {
+        return preInitializationSamplers.length != 0;
+    }
+
+    boolean isSampledOut(Telemetry telemetry, String operationId) {
+        for (PreInitializationSampler sampler : preInitializationSamplers) {
+            try {
+                if (sampler.isSampledOut(telemetry, operationId)) {
+                    return true;
+                }
+            } catch (Throwable t) {
+                InternalLogger.INSTANCE.error("Exception while sampling telemetry: '%s'", t.getMessage());
+            }
+        }
+
+        return false;
+    }
+
+    void initialize(Telemetry telemetry) {
+        for (TelemetryInitializer initializer : initializers) {
+            try {
+                initializer.initialize(telemetry);
+            } catch (Throwable e) {
+                InternalLogger.INSTANCE.error("Failed during telemetry initialization class '%s', exception: %s", initializer.getClass().getName(), e.getMessage());
+            }
+        }
+    }
+
+    boolean process(Telemetry telemetry) {
+        for (TelemetryProcessor processor : processors) {
+            try {
+                if (!processor.process(telemetry)) {
+                    return false;
+                }
+            } catch (Throwable t) {
+                InternalLogger.INSTANCE.error("Exception while processing telemetry: '%s'",t.getMessage());
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isApplicable(Object component, Class<? extends Telemetry> telemetryType) {
+        if (!(component instanceof TelemetryTypeSpecific)) {
+            return true;
+        }
+
+        try {
+            return ((TelemetryTypeSpecific)component).isApplicableTo(telemetryType);
+        } catch (Throwable t) {
+            InternalLogger.INSTANCE.error("Failed to check whether class '%s' applies to %s, exception: %s", component.getClass().getName(), telemetryType.getName(), t.getMessage());
+            return true;
+        }
+    }
+}
@@ -22,21 +22,24 @@
 package com.microsoft.applicationinsights.channel.concrete.inprocess;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.net.URI;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
 
+import com.microsoft.applicationinsights.internal.channel.TelemetriesBuffer;
 import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter;
 import com.microsoft.applicationinsights.channel.TelemetrySampler;
 import com.microsoft.applicationinsights.internal.channel.TransmitterFactory;
+import com.microsoft.applicationinsights.internal.channel.common.GzipTelemetryBatchEncoder;
+import com.microsoft.applicationinsights.internal.channel.common.StripedTelemetryBuffer;
 import com.microsoft.applicationinsights.internal.channel.common.TelemetryBuffer;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
 import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
 import com.microsoft.applicationinsights.internal.util.Sanitizer;
+import com.microsoft.applicationinsights.internal.util.Utf8ByteArrayWriter;
 import com.microsoft.applicationinsights.telemetry.JsonTelemetryDataSerializer;
 import com.microsoft.applicationinsights.telemetry.SupportSampling;
 import com.microsoft.applicationinsights.telemetry.Telemetry;
@@ -82,6 +85,20 @@ public final class InProcessTelemetryChannel implements TelemetryChannel {
     private final static String DEVELOPER_MODE_NAME = "DeveloperMode";
     private final static String ENDPOINT_ADDRESS_NAME = "EndpointAddress";
     private final static String MAX_TRANSMISSION_STORAGE_CAPACITY_NAME = "MaxTransmissionStorageFilesCapacityInMB";
+    private final static String BUFFER_TYPE_NAME = "BufferType";
+    private final static String TRANSMISSION_STORAGE_TYPE_NAME = "TransmissionStorageType";
+    private final static String SENDER_TYPE_NAME = "SenderType";
+
+    private final static String SYNCHRONIZED_BUFFER_TYPE = "Synchronized";
+    private final static String STRIPED_BUFFER_TYPE = "Striped";
+
+    private final static String INCREMENTAL_COMPRESSION_NAME = "IncrementalCompression";
+    private final static String COMPRESSION_LEVEL_NAME = "CompressionLevel";
+    private final static String COMPRESSION_STRATEGY_NAME = "CompressionStrategy";
+
+    private final static String DEFAULT_COMPRESSION_STRATEGY = "Default";
+    private final static String FILTERED_COMPRESSION_STRATEGY = "Filtered";
+    private final static String HUFFMAN_ONLY_COMPRESSION_STRATEGY = "HuffmanOnly";
 
     private boolean developerMode = false;
     private static TransmitterFactory s_transmitterFactory;
@@ -90,11 +107,19 @@ public final class InProcessTelemetryChannel implements TelemetryChannel {
 
     private TelemetriesTransmitter telemetriesTransmitter;
 
-    private TelemetryBuffer telemetryBuffer;
+    private TelemetriesBuffer telemetryBuffer;
     private TelemetrySampler telemetrySampler;
 
     private static AtomicLong itemsSent = new AtomicLong(0);
 
+    /// Every application thread serializes into its own reusable buffer, only the final bytes are allocated per item
+    private static final ThreadLocal<Utf8ByteArrayWriter> serializationBuffer = new ThreadLocal<Utf8ByteArrayWriter>() {
+        @Override
+        protected Utf8ByteArrayWriter initialValue() {
+            return new Utf8ByteArrayWriter();
+        }
+    };
+
     public InProcessTelemetryChannel() {
         boolean developerMode = false;
         try {
@@ -112,7 +137,11 @@ public final class InProcessTelemetryChannel implements TelemetryChannel {
                 developerMode,
                 createDefaultMaxTelemetryBufferCapacityEnforcer(null),
                 createDefaultSendIntervalInSecondsEnforcer(null),
-                true);
+                true,
+                null,
+                null,
+                null,
+                null);
     }
 
     /**
@@ -131,7 +160,11 @@ public final class InProcessTelemetryChannel implements TelemetryChannel {
                 developerMode,
                 createDefaultMaxTelemetryBufferCapacityEnforcer(maxTelemetryBufferCapacity),
                 createDefaultSendIntervalInSecondsEnforcer(sendIntervalInMillis),
-                true);
+                true,
+                null,
+                null,
+                null,
+                null);
     }
 
     /**
@@ -149,6 +182,10 @@ public final class InProcessTelemetryChannel implements TelemetryChannel {
         LimitsEnforcer sendIntervalInSecondsEnforcer = createDefaultSendIntervalInSecondsEnforcer(null);
 
         boolean throttling = true;
+        String bufferType = null;
+        GzipTelemetryBatchEncoder batchEncoder = null;
+        String transmissionStorageType = null;
+        String senderType = null;
         if (namesAndValues != null) {
             throttling = Boolean.valueOf(namesAndValues.get("Throttling"));
             developerMode = Boolean.valueOf(namesAndValues.get(DEVELOPER_MODE_NAME));
@@ -156,13 +193,19 @@ public final class InProcessTelemetryChannel implements TelemetryChannel {
                 developerMode = Boolean.valueOf(System.getProperty(DEVELOPER_MODE_SYSTEM_PROPRETY_NAME));
             }
             endpointAddress = namesAndValues.get(ENDPOINT_ADDRESS_NAME);
+            bufferType = namesAndValues.get(BUFFER_TYPE_NAME);
+            transmissionStorageType = namesAndValues.get(TRANSMISSION_STORAGE_TYPE_NAME);
+            senderType = namesAndValues.get(SENDER_TYPE_NAME);
+            if (Boolean.valueOf(namesAndValues.get(INCREMENTAL_COMPRESSION_NAME))) {
+                batchEncoder = createBatchEncoder(namesAndValues.get(COMPRESSION_LEVEL_NAME), namesAndValues.get(COMPRESSION_STRATEGY_NAME));
+            }
 
             maxTelemetryBufferCapacityEnforcer.normalizeStringValue(namesAndValues.get(MAX_MAX_TELEMETRY_BUFFER_CAPACITY_NAME));
             sendIntervalInSecondsEnforcer.normalizeStringValue(namesAndValues.get(FLUSH_BUFFER_TIMEOUT_IN_SECONDS_NAME));
         }
 
         String maxTransmissionStorageCapacity = namesAndValues.get(MAX_TRANSMISSION_STORAGE_CAPACITY_NAME);
-        initialize(endpointAddress, maxTransmissionStorageCapacity, developerMode, maxTelemetryBufferCapacityEnforcer, sendIntervalInSecondsEnforcer, throttling);
+        initialize(endpointAddress, maxTransmissionStorageCapacity, developerMode, maxTelemetryBufferCapacityEnforcer, sendIntervalInSecondsEnforcer, throttling, bufferType, batchEncoder, transmissionStorageType, senderType);
     }
 
     /**
@@ -205,14 +248,13 @@ public final class InProcessTelemetryChannel implements TelemetryChannel {
             }
         }
 
-        StringWriter writer = new StringWriter();
-        JsonTelemetryDataSerializer jsonWriter = null;
+        Utf8ByteArrayWriter writer = serializationBuffer.get();
+        writer.reset();
         try {
-            jsonWriter = new JsonTelemetryDataSerializer(writer);
+            JsonTelemetryDataSerializer jsonWriter = new JsonTelemetryDataSerializer(writer);
             telemetry.serialize(jsonWriter);
             jsonWriter.close();
-            String asJson = writer.toString();
-            telemetryBuffer.add(asJson);
+            telemetryBuffer.add(writer.toByteArray());
             telemetry.reset();
             if (itemsSent.incrementAndGet() % 10000 == 0) {
                 InternalLogger.INSTANCE.info("items sent till now %d", itemsSent.get());
@@ -239,6 +281,8 @@ public final class InProcessTelemetryChannel implements TelemetryChannel {
                 return;
             }
 
+            // The buffered telemetries are handed to the transmitter first, so they are sent or persisted by its stop
+            telemetryBuffer.stop();
             telemetriesTransmitter.stop(timeout, timeUnit);
             stopped = true;
         } catch (Throwable t) {
@@ -301,19 +345,73 @@ public final class InProcessTelemetryChannel implements TelemetryChannel {
                                          boolean developerMode,
                                          LimitsEnforcer maxTelemetryBufferCapacityEnforcer,
                                          LimitsEnforcer sendIntervalInSeconds,
-                                         boolean throttling) {
+                                         boolean throttling,
+                                         String bufferType,
+                                         GzipTelemetryBatchEncoder batchEncoder,
+                                         String transmissionStorageType,
+                                         String senderType) {
         makeSureEndpointAddressIsValid(endpointAddress);
 
         if (s_transmitterFactory == null) {
             s_transmitterFactory = new InProcessTelemetryChannelFactory();
         }
 
-        telemetriesTransmitter = s_transmitterFactory.create(endpointAddress, maxTransmissionStorageCapacity, throttling);
-        telemetryBuffer = new TelemetryBuffer(telemetriesTransmitter, maxTelemetryBufferCapacityEnforcer, sendIntervalInSeconds);
+        telemetriesTransmitter = s_transmitterFactory.create(endpointAddress, maxTransmissionStorageCapacity, throttling, transmissionStorageType, senderType);
+        telemetryBuffer = createTelemetryBuffer(bufferType, maxTelemetryBufferCapacityEnforcer, sendIntervalInSeconds, batchEncoder);
 
         setDeveloperMode(developerMode);
     }
 
+    /**
+     * Creates the buffer according to the 'BufferType' value, a null or empty value means the default,
+     * the synchronized buffer. An unknown value is reported and replaced by the default.
+     * The batch encoder, when not null, is only used by the synchronized buffer.
+     */
+    private TelemetriesBuffer createTelemetryBuffer(String bufferType,
+                                                    LimitsEnforcer maxTelemetryBufferCapacityEnforcer,
+                                                    LimitsEnforcer sendIntervalInSeconds,
+                                                    GzipTelemetryBatchEncoder batchEncoder) {
+        if (STRIPED_BUFFER_TYPE.equalsIgnoreCase(bufferType)) {
+            InternalLogger.INSTANCE.trace("Using striped telemetry buffer");
+            if (batchEncoder != null) {
+                InternalLogger.INSTANCE.warn("'%s' is not supported by the '%s' buffer and is ignored", INCREMENTAL_COMPRESSION_NAME, STRIPED_BUFFER_TYPE);
+                batchEncoder.end();
+            }
+            return new StripedTelemetryBuffer(telemetriesTransmitter, maxTelemetryBufferCapacityEnforcer, sendIntervalInSeconds);
+        }
+
+        if (!Strings.isNullOrEmpty(bufferType) && !SYNCHRONIZED_BUFFER_TYPE.equalsIgnoreCase(bufferType)) {
+            InternalLogger.INSTANCE.warn("'%s': unknown value '%s' is replaced by the default: '%s'", BUFFER_TYPE_NAME, bufferType, SYNCHRONIZED_BUFFER_TYPE);
+        }
+
+        return new TelemetryBuffer(telemetriesTransmitter, maxTelemetryBufferCapacityEnforcer, sendIntervalInSeconds, batchEncoder);
+    }
+
+    /**
+     * Creates the encoder that compresses the telemetries while they are buffered.
+     * Bad values are reported and replaced by the defaults of the {@link Deflater}.
+     */
+    private static GzipTelemetryBatchEncoder createBatchEncoder(String compressionLevel, String compressionStrategy) {
+        LimitsEnforcer compressionLevelEnforcer = LimitsEnforcer.createWithDefaultOnError(
+                Deflater.DEFAULT_COMPRESSION,
+                Deflater.BEST_COMPRESSION,
+                Deflater.DEFAULT_COMPRESSION,
+                COMPRESSION_LEVEL_NAME,
+                compressionLevel);
+
+        int strategy = Deflater.DEFAULT_STRATEGY;
+        if (FILTERED_COMPRESSION_STRATEGY.equalsIgnoreCase(compressionStrategy)) {
+            strategy = Deflater.FILTERED;
+        } else if (HUFFMAN_ONLY_COMPRESSION_STRATEGY.equalsIgnoreCase(compressionStrategy)) {
+            strategy = Deflater.HUFFMAN_ONLY;
+        } else if (!Strings.isNullOrEmpty(compressionStrategy) && !DEFAULT_COMPRESSION_STRATEGY.equalsIgnoreCase(compressionStrategy)) {
+            InternalLogger.INSTANCE.warn("'%s': unknown value '%s' is replaced by the default: '%s'", COMPRESSION_STRATEGY_NAME, compressionStrategy, DEFAULT_COMPRESSION_STRATEGY);
+        }
+
+        InternalLogger.INSTANCE.trace("Using incremental compression, level %d", compressionLevelEnforcer.getCurrentValue());
+        return new GzipTelemetryBatchEncoder(compressionLevelEnforcer.getCurrentValue(), strategy);
+    }
+
     /**
      * The method will throw IllegalArgumentException if the endpointAddress is not a valid uri
      * Please note that a null or empty string is valid as far as the class is concerned and thus considered valid
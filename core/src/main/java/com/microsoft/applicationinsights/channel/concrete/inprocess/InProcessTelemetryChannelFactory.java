@@ -25,7 +25,11 @@ import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter
 import com.microsoft.applicationinsights.internal.channel.TransmissionOutput;
 import com.microsoft.applicationinsights.internal.channel.TransmitterFactory;
 import com.microsoft.applicationinsights.internal.channel.TransmissionDispatcher;
-import com.microsoft.applicationinsights.internal.channel.TransmissionsLoader;
+import com.microsoft.applicationinsights.internal.channel.TransmissionsStorage;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.perfcounter.PerformanceCounterContainer;
+
+import com.google.common.base.Strings;
 
 import com.microsoft.applicationinsights.internal.channel.common.*;
 
@@ -33,31 +37,100 @@ import com.microsoft.applicationinsights.internal.channel.common.*;
  * Created by gupele on 1/15/2015.
  */
 final class InProcessTelemetryChannelFactory implements TransmitterFactory {
+    private final static String TRANSMISSION_STORAGE_TYPE_NAME = "TransmissionStorageType";
+
+    private final static String FILES_STORAGE_TYPE = "Files";
+    private final static String SEGMENT_LOG_STORAGE_TYPE = "SegmentLog";
+
+    private final static String SENDER_TYPE_NAME = "SenderType";
+
+    private final static String BLOCKING_SENDER_TYPE = "Blocking";
+    private final static String ASYNC_SENDER_TYPE = "Async";
+
+    private final static int DEFAULT_MAX_REPLAY_CONCURRENCY = 4;
+
     @Override
-    public TelemetriesTransmitter create(String endpoint, String maxTransmissionStorageCapacity, boolean throttlingIsEnabled) {
+    public TelemetriesTransmitter create(String endpoint, String maxTransmissionStorageCapacity, boolean throttlingIsEnabled, String transmissionStorageType, String senderType) {
         final TransmissionPolicyManager transmissionPolicyManager = new TransmissionPolicyManager(throttlingIsEnabled);
 
-        // An active object with the network sender
-        TransmissionNetworkOutput actualNetworkSender = TransmissionNetworkOutput.create(endpoint, transmissionPolicyManager);
-
         TransmissionPolicyStateFetcher stateFetcher = transmissionPolicyManager.getTransmissionPolicyState();
 
-        TransmissionOutput networkSender = new ActiveTransmissionNetworkOutput(actualNetworkSender, stateFetcher);
+        // Paces the replay of persisted transmissions by the outcome of the sends
+        TransmissionReplayController replayController = new TransmissionReplayController(DEFAULT_MAX_REPLAY_CONCURRENCY);
 
         // An active object with the file system sender
-        TransmissionFileSystemOutput fileSystemSender = new TransmissionFileSystemOutput(null, maxTransmissionStorageCapacity);
+        TransmissionsStorage fileSystemSender = createStorage(maxTransmissionStorageCapacity, transmissionStorageType);
         TransmissionOutput activeFileSystemOutput = new ActiveTransmissionFileSystemOutput(fileSystemSender, stateFetcher);
 
+        TransmissionOutput networkSender;
+        TransmissionNetworkOutput actualNetworkSender = null;
+        AsyncTransmissionNetworkOutput asyncNetworkSender = null;
+        if (isAsyncSender(senderType)) {
+            // A non blocking sender, the responses are handled on the http client's threads
+            asyncNetworkSender = AsyncTransmissionNetworkOutput.create(endpoint, transmissionPolicyManager);
+            asyncNetworkSender.setReplayController(replayController);
+            networkSender = asyncNetworkSender;
+        } else {
+            // An active object with the network sender
+            actualNetworkSender = TransmissionNetworkOutput.create(endpoint, transmissionPolicyManager);
+            actualNetworkSender.setReplayController(replayController);
+            ActiveTransmissionNetworkOutput activeNetworkSender = new ActiveTransmissionNetworkOutput(actualNetworkSender, stateFetcher, replayController);
+
+            // What is not sent by the end of the shutdown is persisted, to be sent by the next run
+            activeNetworkSender.setSpillOutput(activeFileSystemOutput);
+            networkSender = activeNetworkSender;
+        }
+
         // The dispatcher works with the two active senders
         TransmissionDispatcher dispatcher = new NonBlockingDispatcher(new TransmissionOutput[] {networkSender, activeFileSystemOutput});
-        actualNetworkSender.setTransmissionDispatcher(dispatcher);
+        if (asyncNetworkSender != null) {
+            asyncNetworkSender.setTransmissionDispatcher(dispatcher);
+        } else {
+            actualNetworkSender.setTransmissionDispatcher(dispatcher);
+        }
 
         // The loader works with the file system loader as the active one does
-        TransmissionsLoader transmissionsLoader = new ActiveTransmissionLoader(fileSystemSender, stateFetcher, dispatcher);
+        ActiveTransmissionLoader transmissionsLoader = new ActiveTransmissionLoader(fileSystemSender, stateFetcher, dispatcher, replayController);
+        // While the configuration is loaded the container registers the counter only after it applied the performance counters section
+        PerformanceCounterContainer.INSTANCE.register(new TransmissionReplayPerformanceCounter(transmissionsLoader));
 
         // The Transmitter manage all
         TelemetriesTransmitter telemetriesTransmitter = new TransmitterImpl(dispatcher, new GzipTelemetrySerializer(), transmissionsLoader);
 
         return telemetriesTransmitter;
     }
+
+    /**
+     * Checks the 'SenderType' value, a null or empty value means the default, the blocking sender
+     * that works with a pool of threads. An unknown value is reported and replaced by the default.
+     */
+    private static boolean isAsyncSender(String senderType) {
+        if (ASYNC_SENDER_TYPE.equalsIgnoreCase(senderType)) {
+            InternalLogger.INSTANCE.trace("Using async network sender");
+            return true;
+        }
+
+        if (!Strings.isNullOrEmpty(senderType) && !BLOCKING_SENDER_TYPE.equalsIgnoreCase(senderType)) {
+            InternalLogger.INSTANCE.warn("'%s': unknown value '%s' is replaced by the default: '%s'", SENDER_TYPE_NAME, senderType, BLOCKING_SENDER_TYPE);
+        }
+
+        return false;
+    }
+
+    /**
+     * Creates the storage according to the 'TransmissionStorageType' value, a null or empty value means the default,
+     * a file per transmission. An unknown value is reported and replaced by the default.
+     */
+    private static TransmissionsStorage createStorage(String maxTransmissionStorageCapacity, String transmissionStorageType) {
+        if (SEGMENT_LOG_STORAGE_TYPE.equalsIgnoreCase(transmissionStorageType)) {
+            InternalLogger.INSTANCE.trace("Using segment log transmission storage");
+            return new TransmissionSegmentLogOutput(null, maxTransmissionStorageCapacity);
+        }
+
+        if (!Strings.isNullOrEmpty(transmissionStorageType) && !FILES_STORAGE_TYPE.equalsIgnoreCase(transmissionStorageType)) {
+            InternalLogger.INSTANCE.warn("'%s': unknown value '%s' is replaced by the default: '%s'", TRANSMISSION_STORAGE_TYPE_NAME, transmissionStorageType, FILES_STORAGE_TYPE);
+        }
+
+        return new TransmissionFileSystemOutput(null, maxTransmissionStorageCapacity);
+    }
 }
@@ -24,6 +24,7 @@ package com.microsoft.applicationinsights.internal.agent;
 import com.microsoft.applicationinsights.agent.internal.coresync.impl.ImplementationsCoordinator;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.util.ThreadLocalCleaner;
+import com.microsoft.applicationinsights.internal.util.ThreadLocalInitializer;
 
 /**
  * The class is responsible for connecting the Agent and register there for future calls
@@ -46,10 +47,16 @@ public enum AgentConnector {
     public static class RegistrationResult {
         private final String key;
         private final ThreadLocalCleaner cleaner;
+        private final ThreadLocalInitializer initializer;
 
         public RegistrationResult(String key, ThreadLocalCleaner cleaner) {
+            this(key, cleaner, null);
+        }
+
+        public RegistrationResult(String key, ThreadLocalCleaner cleaner, ThreadLocalInitializer initializer) {
             this.key = key;
             this.cleaner = cleaner;
+            this.initializer = initializer;
         }
 
         public String getKey() {
@@ -59,6 +66,10 @@ public enum AgentConnector {
         public ThreadLocalCleaner getCleaner() {
             return cleaner;
         }
+
+        public ThreadLocalInitializer getInitializer() {
+            return initializer;
+        }
     }
 
     /**
@@ -83,10 +94,10 @@ public enum AgentConnector {
                 }
 
                 registrationType = RegistrationType.WEB;
-                return new RegistrationResult(agentKey, coreDataAgent.getCleaner());
+                return new RegistrationResult(agentKey, coreDataAgent.getCleaner(), coreDataAgent.getInitializer());
 
             case WEB:
-                return new RegistrationResult(agentKey, coreDataAgent.getCleaner());
+                return new RegistrationResult(agentKey, coreDataAgent.getCleaner(), coreDataAgent.getInitializer());
 
             case SELF:
                 InternalLogger.INSTANCE.logAlways(InternalLogger.LoggingLevel.ERROR, "Core was already registered by the Agent");
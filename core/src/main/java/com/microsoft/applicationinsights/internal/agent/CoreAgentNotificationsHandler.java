@@ -24,10 +24,10 @@ package com.microsoft.applicationinsights.internal.agent;
 import java.sql.Statement;
 import java.sql.PreparedStatement;
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import com.microsoft.applicationinsights.agent.internal.coresync.AgentNotificationsHandler;
 import com.microsoft.applicationinsights.agent.internal.coresync.InstrumentedClassType;
@@ -38,6 +38,7 @@ import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.schemav2.DependencyKind;
 import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
 import com.microsoft.applicationinsights.internal.util.ThreadLocalCleaner;
+import com.microsoft.applicationinsights.internal.util.ThreadLocalInitializer;
 import com.microsoft.applicationinsights.telemetry.Duration;
 import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
 import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
@@ -52,19 +53,20 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
 
     private final static String EXCEPTION_THROWN_ID = "__java_sdk__exceptionThrown__";
 
-    /**
-     * The class holds the data gathered on a method
-     */
-    private static class MethodData {
-        public String name;
-        public Object[] arguments;
-        public long interval;
-        public String type;
-        public Object result;
-    }
+    private final static InstrumentedClassType[] CLASS_TYPES = InstrumentedClassType.values();
+
+    // The database types that run 'EXPLAIN <query>', the query plan is not fetched from the others
+    private final static Set<String> EXPLAIN_DB_TYPES = new HashSet<String>(Arrays.asList("mysql", "mariadb", "postgresql", "h2", "sqlite"));
+
+    // Aggregated dependencies of long requests are sent at least that often
+    private final static long MAX_AGGREGATION_INTERVAL_IN_NANOS = TimeUnit.SECONDS.toNanos(10);
 
     private static class ThreadData {
-        public final LinkedList<MethodData> methods = new LinkedList<MethodData>();
+        public final MethodDataStack methods = new MethodDataStack();
+        public final DependencyAggregator dependencies = new DependencyAggregator();
+
+        // Set while a request runs on the thread, the aggregates are sent when it ends, with its context
+        public boolean inRequest;
     }
 
     static final class ThreadLocalData extends ThreadLocal<ThreadData> {
@@ -80,20 +82,40 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
     private final ThreadLocalCleaner cleaner = new ThreadLocalCleaner() {
         @Override
         public void clean() {
+            sendAggregatedDependencies(threadDataThreadLocal.get());
             threadDataThreadLocal.remove();
         }
     };
 
+    private final ThreadLocalInitializer initializer = new ThreadLocalInitializer() {
+        @Override
+        public void initialize() {
+            ThreadData localData = threadDataThreadLocal.get();
+            sendAggregatedDependencies(localData);
+            localData.inRequest = true;
+        }
+    };
+
     private ThreadLocalData threadDataThreadLocal = new ThreadLocalData();
 
     private TelemetryClient telemetryClient = new TelemetryClient();
 
+    private final JdbcConnectionInfoCache connectionInfos = new JdbcConnectionInfoCache();
+
+    private final QueryPlanCollector queryPlans = new QueryPlanCollector();
+
+    private final SqlNormalizer sqlNormalizer = new SqlNormalizer();
+
     private final String name;
 
     public ThreadLocalCleaner getCleaner() {
         return cleaner;
     }
 
+    public ThreadLocalInitializer getInitializer() {
+        return initializer;
+    }
+
     public CoreAgentNotificationsHandler(String name) {
         this.name = name;
     }
@@ -110,7 +132,7 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
 
     @Override
     public void httpMethodStarted(String classAndMethodNames, String url) {
-        startMethod(InstrumentedClassType.HTTP.toString(), name, url);
+        startMethod(InstrumentedClassType.HTTP.toString(), name, name.length(), url);
     }
 
     @Override
@@ -160,17 +182,19 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
         }
        
         InternalLogger.INSTANCE.trace("'%s' sent an HTTP method: '%s', uri: '%s', duration=%s ms", identifier, method, uri, deltaInMS);
-        telemetryClient.track(telemetry);
+
+        // Error responses keep their own result code
+        if (result < 400) {
+            trackDependency(telemetry, deltaInMS);
+        } else {
+            telemetryClient.track(telemetry);
+        }
     }
 
     @Override
     public void jedisMethodStarted(String name) {
         int index = name.lastIndexOf('#');
-        if (index != -1) {            
-            name = name.substring(0, index);
-        }
-
-        startMethod(InstrumentedClassType.Redis.toString(), name, new String[]{});
+        startMethod(InstrumentedClassType.Redis.toString(), name, index == -1 ? name.length() : index, null);
     }
 
     @Override
@@ -178,12 +202,12 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
         int index = name.lastIndexOf('#');
         String classType;
         if (index != -1) {
-            classType = name.substring(index + 1);
-            name = name.substring(0, index);
+            classType = getClassType(name, index + 1);
         } else {
             classType = InstrumentedClassType.OTHER.toString();
+            index = name.length();
         }
-        startMethod(classType, name, new String[]{});
+        startMethod(classType, name, index, null);
     }
 
     @Override
@@ -238,20 +262,14 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
         ThreadData localData = threadDataThreadLocal.get();
         MethodData methodData = null;
         try {
-            if (localData.methods != null && !localData.methods.isEmpty()) {
-                for (MethodData m : localData.methods) {
-                    if (EXCEPTION_THROWN_ID.equals(m.name)) {
-                        return;
-                    }
-                }
+            if (localData.methods.contains(EXCEPTION_THROWN_ID)) {
+                return;
             }
 
-            methodData = new MethodData();
+            methodData = localData.methods.push();
             methodData.interval = 0;
             methodData.type = InstrumentedClassType.OTHER.toString();
-            methodData.arguments = null;
-            methodData.name = EXCEPTION_THROWN_ID;
-            localData.methods.addFirst(methodData);
+            methodData.setName(EXCEPTION_THROWN_ID);
 
             ExceptionTelemetry et = new ExceptionTelemetry(e, stackSize);
 
@@ -264,86 +282,89 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
     }
 
     private void startSqlMethod(Statement statement, String sqlStatement, Object[] additionalArgs) {
+        long start = System.nanoTime();
 
         try {
             Connection connection = null;
-            DatabaseMetaData metaData;
-            String url = null;
+            JdbcConnectionInfoCache.JdbcConnectionInfo connectionInfo = null;
             if (statement != null) {
                 try {
                     connection = statement.getConnection();
                     if (connection != null) {
-                        metaData = connection.getMetaData();
-
-                        if (metaData != null) {
-                            url = metaData.getURL();
-                        }
+                        connectionInfo = connectionInfos.get(connection);
                     }
                 } catch (Throwable t) {
-                    url = "jdbc:Unknown DB URL (failed to fetch from connection)";
+                    connectionInfo = JdbcConnectionInfoCache.UNKNOWN;
                 }
             }
 
-            Object[] sqlMetaData;
-            if (additionalArgs == null) {
-                sqlMetaData = new Object[] {url, sqlStatement, connection};
-            } else {
-                sqlMetaData = new Object[] {url, sqlStatement, connection, additionalArgs};
+            MethodData methodData = threadDataThreadLocal.get().methods.push();
+            methodData.interval = start;
+            methodData.type = InstrumentedClassType.SQL.toString();
+            methodData.setName(name);
+            if (connectionInfo != null) {
+                methodData.sqlUrl = connectionInfo.getUrl();
+                methodData.sqlDbType = connectionInfo.getDbType();
             }
-            startSqlMethod(InstrumentedClassType.SQL.toString(), name, sqlMetaData);
-            ThreadData localData = threadDataThreadLocal.get();
-
+            methodData.sqlStatement = sqlStatement;
+            methodData.connection = connection;
+            methodData.sqlArguments = additionalArgs;
         } catch (Throwable e) {
         }
     }
 
-    private void startMethod(String type, String name, String... arguments) {
+    /**
+     * @param name The name of the method, possibly followed by a suffix.
+     * @param nameLength The length of the name without the suffix, the suffix is only cut if the method is reported.
+     */
+    private void startMethod(String type, String name, int nameLength, String url) {
         long start = System.nanoTime();
 
-        ThreadData localData = threadDataThreadLocal.get();
-        MethodData methodData = new MethodData();
+        MethodData methodData = threadDataThreadLocal.get().methods.push();
         methodData.interval = start;
         methodData.type = type;
-        methodData.arguments = arguments;
-        methodData.name = name;
-        localData.methods.addFirst(methodData);
+        methodData.setName(name, nameLength);
+        methodData.url = url;
     }
 
-    private void startSqlMethod(String type, String name, Object... arguments) {
-        long start = System.nanoTime();
+    /**
+     * Gets the type that ends the name, the constant of the known types so no string is allocated for them.
+     */
+    private static String getClassType(String name, int start) {
+        int length = name.length() - start;
+        for (InstrumentedClassType type : CLASS_TYPES) {
+            String typeName = type.toString();
+            if (typeName.length() == length && name.regionMatches(start, typeName, 0, length)) {
+                return typeName;
+            }
+        }
 
-        ThreadData localData = threadDataThreadLocal.get();
-        MethodData methodData = new MethodData();
-        methodData.interval = start;
-        methodData.type = type;
-        methodData.arguments = arguments;
-        methodData.name = name;
-        localData.methods.addFirst(methodData);
+        return name.substring(start);
     }
 
     private boolean finalizeMethod(long thresholdInMS, Object result, Throwable throwable) {
         long finish = System.nanoTime();
 
-        ThreadData localData = threadDataThreadLocal.get();
-        if (localData.methods == null || localData.methods.isEmpty()) {
-            return false;
-        }
-
-        MethodData methodData = localData.methods.removeFirst();
+        MethodDataStack methods = threadDataThreadLocal.get().methods;
+        MethodData methodData = methods.pop();
         if (methodData == null) {
-            return true;
+            return false;
         }
 
-        methodData.interval = finish - methodData.interval;
-        if (throwable == null && thresholdInMS > 0) {
-            long asMS = nanoToMilliseconds(methodData.interval);
-            if (asMS < thresholdInMS){
-                return true;
+        try {
+            methodData.interval = finish - methodData.interval;
+            if (throwable == null && thresholdInMS > 0) {
+                long asMS = nanoToMilliseconds(methodData.interval);
+                if (asMS < thresholdInMS){
+                    return true;
+                }
             }
-        }
-        methodData.result = result;
+            methodData.result = result;
 
-        report(methodData, throwable);
+            report(methodData, throwable);
+        } finally {
+            methods.release(methodData);
+        }
 
         return true;
     }
@@ -359,13 +380,19 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
     }
 
     private void sendInstrumentationTelemetry(MethodData methodData, Throwable throwable) {
-        Duration duration = new Duration(nanoToMilliseconds(methodData.interval));
-        RemoteDependencyTelemetry telemetry = new RemoteDependencyTelemetry(methodData.name, null, duration, throwable == null);
+        long durationInMilliSeconds = nanoToMilliseconds(methodData.interval);
+        Duration duration = new Duration(durationInMilliSeconds);
+        String methodName = methodData.getName();
+        RemoteDependencyTelemetry telemetry = new RemoteDependencyTelemetry(methodName, null, duration, throwable == null);
         telemetry.setType(methodData.type);
 
-        InternalLogger.INSTANCE.trace("Sending RDD event for '%s'", methodData.name);
+        InternalLogger.INSTANCE.trace("Sending RDD event for '%s'", methodName);
 
-        telemetryClient.track(telemetry);
+        if (InstrumentedClassType.Redis.toString().equals(methodData.type)) {
+            trackDependency(telemetry, durationInMilliSeconds);
+        } else {
+            telemetryClient.track(telemetry);
+        }
         if (throwable != null) {
             ExceptionTelemetry exceptionTelemetry = new ExceptionTelemetry(throwable);
             telemetryClient.track(exceptionTelemetry);
@@ -373,8 +400,8 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
     }
 
     private void sendHTTPTelemetry(MethodData methodData, Throwable throwable) {
-        if (methodData.arguments != null && methodData.arguments.length == 1) {
-            String url = methodData.arguments[0].toString();
+        if (methodData.url != null) {
+            String url = methodData.url;
             long durationInMilliSeconds = nanoToMilliseconds(methodData.interval);
             Duration duration = new Duration(durationInMilliSeconds);
 
@@ -382,7 +409,7 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
 
             RemoteDependencyTelemetry telemetry = new RemoteDependencyTelemetry(url, null, duration, throwable == null);
             telemetry.setDependencyKind(DependencyKind.Http);
-            telemetryClient.trackDependency(telemetry);
+            trackDependency(telemetry, durationInMilliSeconds);
             if (throwable != null) {
                 ExceptionTelemetry exceptionTelemetry = new ExceptionTelemetry(throwable);
                 telemetryClient.track(exceptionTelemetry);
@@ -392,20 +419,17 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
 
     private void sendSQLTelemetry(MethodData methodData, Throwable throwable) {
 
-        if (methodData.arguments == null || methodData.arguments.length == 0) {
-            InternalLogger.INSTANCE.error("sendSQLTelemetry: no arguments found.");
-            return;
-        }
-  
         try {
             String dependencyName = "";
-            if (methodData.arguments[0] != null) {
-                dependencyName = methodData.arguments[0].toString();
+            if (methodData.sqlUrl != null) {
+                dependencyName = methodData.sqlUrl;
             }
 
             String commandName = "";
-            if (methodData.arguments.length > 1 && methodData.arguments[1] != null) {
-                commandName = methodData.arguments[1].toString();
+            SqlNormalizer.NormalizedSql normalizedSql = null;
+            if (methodData.sqlStatement != null) {
+                normalizedSql = sqlNormalizer.normalize(methodData.sqlStatement);
+                commandName = normalizedSql.getText();
             }
   
             
@@ -418,25 +442,29 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
                     duration,
                     throwable == null);
             telemetry.setDependencyKind(DependencyKind.SQL);
+            if (normalizedSql != null) {
+                telemetry.getContext().getProperties().put("SqlFingerprint", normalizedSql.getFingerprint());
+            }
   
             StringBuilder sb = null;
-            if (methodData.arguments.length > 3) {
+            if (methodData.sqlArguments != null) {
                 sb = formatAdditionalSqlArguments(methodData);
                 if (sb != null) {
                     telemetry.getContext().getProperties().put("Args", sb.toString());
                 }
             } else {
-                if (durationInMilliSeconds > ImplementationsCoordinator.INSTANCE.getQueryPlanThresholdInMS()) {
-                    sb = fetchExplainQuery(commandName, methodData.arguments[2]);
-                    if (sb != null) {
-                        telemetry.getContext().getProperties().put("Query Plan", sb.toString());
+                if (durationInMilliSeconds > ImplementationsCoordinator.INSTANCE.getQueryPlanThresholdInMS() &&
+                        EXPLAIN_DB_TYPES.contains(methodData.sqlDbType)) {
+                    String queryPlan = queryPlans.getPlan(dependencyName, commandName, methodData.sqlStatement, methodData.connection, System.currentTimeMillis());
+                    if (queryPlan != null) {
+                        telemetry.getContext().getProperties().put("Query Plan", queryPlan);
                     }
                 }
             }
   
             InternalLogger.INSTANCE.trace("Sending Sql RDD event for '%s', command: '%s', duration=%s ms", dependencyName, commandName, durationInMilliSeconds);
   
-            telemetryClient.track(telemetry);
+            trackDependency(telemetry, durationInMilliSeconds);
             if (throwable != null) {
                 InternalLogger.INSTANCE.trace("Sending Sql exception");
                 ExceptionTelemetry exceptionTelemetry = new ExceptionTelemetry(throwable);
@@ -448,6 +476,44 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
   
     }
 
+    /**
+     * Tracks the telemetry of a JDBC, Redis or HTTP call, or aggregates it with the identical calls of the thread
+     * if dependency aggregation is enabled. Failed calls and calls that take at least the threshold are never aggregated.
+     * Only the calls of a request are aggregated, the aggregates are sent on the thread of the request, when it ends,
+     * so they get its context. Threads without a request, such as batch jobs or executors, send every call.
+     */
+    private void trackDependency(RemoteDependencyTelemetry telemetry, long durationInMS) {
+        ImplementationsCoordinator coordinator = ImplementationsCoordinator.INSTANCE;
+        if (coordinator.isDependencyAggregationEnabled() && telemetry.getSuccess() &&
+                durationInMS < coordinator.getDependencyAggregationThresholdInMS()) {
+            ThreadData localData = threadDataThreadLocal.get();
+            if (localData.inRequest) {
+                long now = System.nanoTime();
+                if (localData.dependencies.isOlderThan(now, MAX_AGGREGATION_INTERVAL_IN_NANOS)) {
+                    sendAggregatedDependencies(localData);
+                }
+                if (localData.dependencies.add(telemetry, durationInMS, now)) {
+                    return;
+                }
+            }
+        }
+
+        telemetryClient.track(telemetry);
+    }
+
+    private void sendAggregatedDependencies(ThreadData localData) {
+        if (localData.dependencies.isEmpty()) {
+            return;
+        }
+
+        for (RemoteDependencyTelemetry telemetry : localData.dependencies.drain()) {
+            try {
+                telemetryClient.track(telemetry);
+            } catch (Throwable t) {
+            }
+        }
+    }
+
     private static long nanoToMilliseconds(long nanoSeconds) {
         return nanoSeconds / 1000000;
     }
@@ -456,7 +522,7 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
         try {
             StringBuilder sb = new StringBuilder();
             sb.append(" [");
-            Object[] args = (Object[])methodData.arguments[3];
+            Object[] args = methodData.sqlArguments;
             if (args != null && args.length > 0) {
                 for (Object arg : args) {
                     if (arg == null) {
@@ -474,55 +540,4 @@ final class CoreAgentNotificationsHandler implements AgentNotificationsHandler {
             return null;
         }
     }
-
-    private StringBuilder fetchExplainQuery(String commandName, Object object) {
-        StringBuilder explainSB = null;
-        Statement explain = null;
-        ResultSet rs = null;
-        try {
-            if (commandName.startsWith("SELECT ")) {
-                Connection connection = (Connection)object;
-                if (connection == null) {
-                    return explainSB;
-                }
-                explain = connection.createStatement();
-                rs = explain.executeQuery("EXPLAIN " + commandName);
-                explainSB = new StringBuilder();
-                while (rs.next()) {
-                    explainSB.append('[');
-                    int columns = rs.getMetaData().getColumnCount();
-                    if (columns == 1) {
-                        explainSB.append(rs.getString(1));
-                    } else {
-                        for (int i1 = 1; i1 < rs.getMetaData().getColumnCount(); ++i1) {
-                            explainSB.append(rs.getMetaData().getColumnName(i1));
-                            explainSB.append(':');
-                            Object obj = rs.getObject(i1);
-                            explainSB.append(obj == null ? "" : obj.toString());
-                            explainSB.append(',');
-                        }
-                        explainSB.deleteCharAt(explainSB.length() - 1);
-                    }
-                    explainSB.append("],");
-                }
-                explainSB.deleteCharAt(explainSB.length() - 1);
-            }
-        } catch (Throwable t) {
-        } finally {
-            if (rs != null) {
-                try {
-                    rs.close();
-                } catch (SQLException e) {
-                }
-            }
-            if (explain != null) {
-                try {
-                    explain.close();
-                } catch (SQLException e) {
-                }
-            }
-        }
-
-        return explainSB;
-    }
 }
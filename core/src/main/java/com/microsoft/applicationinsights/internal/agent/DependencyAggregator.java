@@ -0,0 +1,189 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.agent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.microsoft.applicationinsights.telemetry.Duration;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+
+/**
+ * Aggregates the identical dependency calls of one thread, calls to the same target with the same command,
+ * into one RemoteDependencyTelemetry whose duration is the total duration of the calls and whose metrics
+ * hold the count of the calls and the minimum, maximum and standard deviation of their durations.
+ *
+ * The class is not thread safe, every thread has its own instance.
+ */
+final class DependencyAggregator {
+    static final String COUNT_METRIC_NAME = "AggregatedCount";
+    static final String MIN_DURATION_METRIC_NAME = "MinDurationInMS";
+    static final String MAX_DURATION_METRIC_NAME = "MaxDurationInMS";
+    static final String STD_DEV_DURATION_METRIC_NAME = "StdDevDurationInMS";
+
+    static final int MAX_AGGREGATES = 128;
+
+    private static final class Key {
+        private final String type;
+        private final String name;
+        private final String commandName;
+        private final String target;
+        private final int hash;
+
+        private Key(RemoteDependencyTelemetry telemetry) {
+            this.type = telemetry.getType();
+            this.name = telemetry.getName();
+            this.commandName = telemetry.getCommandName();
+            this.target = telemetry.getTarget();
+
+            int result = type == null ? 0 : type.hashCode();
+            result = 31 * result + (name == null ? 0 : name.hashCode());
+            result = 31 * result + (commandName == null ? 0 : commandName.hashCode());
+            result = 31 * result + (target == null ? 0 : target.hashCode());
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+
+            Key that = (Key) other;
+            return hash == that.hash &&
+                    equal(type, that.type) &&
+                    equal(name, that.name) &&
+                    equal(commandName, that.commandName) &&
+                    equal(target, that.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private static final class Aggregate {
+        private final RemoteDependencyTelemetry first;
+        private int count;
+        private long totalInMS;
+        private long minInMS = Long.MAX_VALUE;
+        private long maxInMS;
+        private double sumOfSquares;
+
+        private Aggregate(RemoteDependencyTelemetry first) {
+            this.first = first;
+        }
+
+        private void add(long durationInMS) {
+            ++count;
+            totalInMS += durationInMS;
+            sumOfSquares += (double) durationInMS * durationInMS;
+            if (durationInMS < minInMS) {
+                minInMS = durationInMS;
+            }
+            if (durationInMS > maxInMS) {
+                maxInMS = durationInMS;
+            }
+        }
+
+        private RemoteDependencyTelemetry toTelemetry() {
+            if (count == 1) {
+                return first;
+            }
+
+            double mean = (double) totalInMS / count;
+            double variance = Math.max(0.0, sumOfSquares / count - mean * mean);
+
+            first.setDuration(new Duration(totalInMS));
+            first.getMetrics().put(COUNT_METRIC_NAME, (double) count);
+            first.getMetrics().put(MIN_DURATION_METRIC_NAME, (double) minInMS);
+            first.getMetrics().put(MAX_DURATION_METRIC_NAME, (double) maxInMS);
+            first.getMetrics().put(STD_DEV_DURATION_METRIC_NAME, Math.sqrt(variance));
+
+            // The arguments of the first call do not describe the others
+            first.getContext().getProperties().remove("Args");
+            return first;
+        }
+    }
+
+    private final LinkedHashMap<Key, Aggregate> aggregates = new LinkedHashMap<Key, Aggregate>();
+    private long firstCallNanos;
+
+    /**
+     * Adds a successful dependency call to its aggregate.
+     * @param telemetry The telemetry of the call, kept to be sent as the aggregate if it is the first of its kind.
+     * @param durationInMS The duration of the call.
+     * @param now The current time in nanoseconds.
+     * @return False if the call cannot be aggregated since there are too many different calls, it should be sent on its own.
+     */
+    boolean add(RemoteDependencyTelemetry telemetry, long durationInMS, long now) {
+        Key key = new Key(telemetry);
+        Aggregate aggregate = aggregates.get(key);
+        if (aggregate == null) {
+            if (aggregates.size() >= MAX_AGGREGATES) {
+                return false;
+            }
+            if (aggregates.isEmpty()) {
+                firstCallNanos = now;
+            }
+            aggregate = new Aggregate(telemetry);
+            aggregates.put(key, aggregate);
+        }
+
+        aggregate.add(durationInMS);
+        return true;
+    }
+
+    boolean isEmpty() {
+        return aggregates.isEmpty();
+    }
+
+    /**
+     * @return True if the oldest aggregate was started at least that long ago.
+     */
+    boolean isOlderThan(long now, long intervalInNanos) {
+        return !aggregates.isEmpty() && now - firstCallNanos >= intervalInNanos;
+    }
+
+    /**
+     * Removes the aggregates.
+     * @return The telemetries to send, one per aggregate, in the order of their first calls.
+     */
+    List<RemoteDependencyTelemetry> drain() {
+        List<RemoteDependencyTelemetry> telemetries = new ArrayList<RemoteDependencyTelemetry>(aggregates.size());
+        for (Aggregate aggregate : aggregates.values()) {
+            telemetries.add(aggregate.toTelemetry());
+        }
+        aggregates.clear();
+
+        return telemetries;
+    }
+}
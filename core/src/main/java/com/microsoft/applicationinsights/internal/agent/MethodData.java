@@ -0,0 +1,89 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.agent;
+
+import java.sql.Connection;
+
+/**
+ * The class holds the data gathered on an instrumented method, from its start to its end.
+ *
+ * Instances are reused by the {@link MethodDataStack} of the thread, so they must not be kept once released.
+ */
+final class MethodData {
+    private String name;
+    private int nameLength;
+
+    String type;
+
+    // The start time in nanoseconds, and the duration once the method has finished
+    long interval;
+
+    Object result;
+
+    // The URL of an HTTP method
+    String url;
+
+    // The data of a SQL statement, the arguments are null unless the statement has arguments to report
+    String sqlUrl;
+    String sqlDbType;
+    String sqlStatement;
+    Connection connection;
+    Object[] sqlArguments;
+
+    /**
+     * Gets the name of the method, the name is cut here, only for the methods that are reported.
+     */
+    String getName() {
+        if (name == null || nameLength == name.length()) {
+            return name;
+        }
+
+        return name.substring(0, nameLength);
+    }
+
+    void setName(String name) {
+        setName(name, name.length());
+    }
+
+    /**
+     * @param name The name of the method, possibly followed by a suffix that is not part of it.
+     * @param nameLength The length of the name without the suffix.
+     */
+    void setName(String name, int nameLength) {
+        this.name = name;
+        this.nameLength = nameLength;
+    }
+
+    void clear() {
+        name = null;
+        nameLength = 0;
+        type = null;
+        interval = 0L;
+        result = null;
+        url = null;
+        sqlUrl = null;
+        sqlDbType = null;
+        sqlStatement = null;
+        connection = null;
+        sqlArguments = null;
+    }
+}
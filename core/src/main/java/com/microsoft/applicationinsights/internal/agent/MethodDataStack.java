@@ -0,0 +1,120 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.agent;
+
+import java.util.Arrays;
+
+/**
+ * The stack of the instrumented methods that are running on a thread, the innermost on top.
+ *
+ * The stack is backed by an array and keeps the {@link MethodData} instances it allocated for reuse,
+ * so pushing and popping methods does not allocate once the stack has reached its usual depth.
+ * A popped instance belongs to the caller until it is released, methods that are pushed meanwhile,
+ * while the popped method is reported for example, get other instances.
+ *
+ * The class is not thread safe, every thread has its own instance.
+ */
+final class MethodDataStack {
+    private final static int INITIAL_CAPACITY = 8;
+
+    // Slots from 'size' up hold the released instances that are free for reuse
+    private MethodData[] frames = new MethodData[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Pushes a method.
+     * @return The cleared instance of the method to fill.
+     */
+    MethodData push() {
+        if (size == frames.length) {
+            frames = Arrays.copyOf(frames, size * 2);
+        }
+
+        MethodData frame = frames[size];
+        if (frame == null) {
+            frame = new MethodData();
+            frames[size] = frame;
+        }
+        ++size;
+
+        return frame;
+    }
+
+    /**
+     * Pops the innermost method, the caller should release it once done with it.
+     * @return The method, null if the stack is empty.
+     */
+    MethodData pop() {
+        if (size == 0) {
+            return null;
+        }
+
+        MethodData frame = frames[--size];
+        frames[size] = null;
+        return frame;
+    }
+
+    /**
+     * Clears a popped method and keeps it for reuse.
+     */
+    void release(MethodData frame) {
+        frame.clear();
+        if (size < frames.length && frames[size] == null) {
+            frames[size] = frame;
+        }
+    }
+
+    /**
+     * Removes a method wherever it is in the stack and releases it.
+     * @return False if the method is not in the stack.
+     */
+    boolean remove(MethodData frame) {
+        for (int i = size - 1; i >= 0; --i) {
+            if (frames[i] == frame) {
+                System.arraycopy(frames, i + 1, frames, i, size - i - 1);
+                frames[--size] = null;
+                release(frame);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    boolean contains(String name) {
+        for (int i = 0; i < size; ++i) {
+            if (name.equals(frames[i].getName())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
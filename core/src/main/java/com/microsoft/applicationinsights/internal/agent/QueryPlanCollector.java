@@ -0,0 +1,311 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.agent;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.shutdown.SDKShutdownActivity;
+import com.microsoft.applicationinsights.internal.shutdown.Stoppable;
+import com.microsoft.applicationinsights.internal.util.ThreadPoolUtils;
+
+/**
+ * Captures the query plans of slow SELECT statements, by running 'EXPLAIN <statement>', on a background thread.
+ *
+ * The EXPLAIN never runs on the application's connection, which must not be used by two threads at once and
+ * may be used or released as soon as the statement returns. The background thread opens a connection of its own
+ * with the URL of the application's one, runs the EXPLAIN on it and closes it. So a plan is captured only where
+ * the URL is enough to connect, credentials that are not part of the URL are not known to the collector.
+ *
+ * The plans are cached per database and normalized statement text, see {@link SqlNormalizer},
+ * for {@link #DEFAULT_PLAN_TTL_IN_MILLIS}. The statement that asks for a plan that is not cached yet is sent
+ * without it and the plan is attached to the next slow executions of the same statement. To bound the load
+ * on the database at most one EXPLAIN is started every {@link #DEFAULT_MIN_INTERVAL_BETWEEN_CAPTURES_IN_MILLIS},
+ * whatever the statement.
+ *
+ * The class is thread safe.
+ */
+final class QueryPlanCollector implements Stoppable {
+    static final long DEFAULT_PLAN_TTL_IN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    static final long DEFAULT_MIN_INTERVAL_BETWEEN_CAPTURES_IN_MILLIS = 1000;
+    static final int MAX_CACHED_PLANS = 256;
+
+    private static final int MAX_PENDING_CAPTURES = 8;
+    private static final long REMOVE_IDLE_THREAD_TIMEOUT_IN_SECONDS = 60L;
+
+    /**
+     * Opens the connections that run the EXPLAIN.
+     */
+    interface ConnectionFactory {
+        Connection open(String url) throws SQLException;
+    }
+
+    private static final ConnectionFactory DRIVER_MANAGER = new ConnectionFactory() {
+        @Override
+        public Connection open(String url) throws SQLException {
+            return DriverManager.getConnection(url);
+        }
+    };
+
+    private static final class CachedPlan {
+        // Null while the plan is captured or if it could not be captured
+        private final String plan;
+        private final long expirationTime;
+
+        private CachedPlan(String plan, long expirationTime) {
+            this.plan = plan;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    private final ConcurrentMap<String, CachedPlan> plans = new ConcurrentHashMap<String, CachedPlan>();
+    private final AtomicLong nextCaptureTime = new AtomicLong(Long.MIN_VALUE);
+    private final Executor executor;
+    private final ThreadPoolExecutor threads;
+    private final ConnectionFactory connectionFactory;
+    private final long planTtlInMillis;
+    private final long minIntervalBetweenCapturesInMillis;
+
+    QueryPlanCollector() {
+        threads = ThreadPoolUtils.newLimitedThreadPool(1, 1, REMOVE_IDLE_THREAD_TIMEOUT_IN_SECONDS, MAX_PENDING_CAPTURES);
+        threads.allowCoreThreadTimeOut(true);
+        threads.setThreadFactory(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, QueryPlanCollector.class.getSimpleName());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor = threads;
+        connectionFactory = DRIVER_MANAGER;
+        planTtlInMillis = DEFAULT_PLAN_TTL_IN_MILLIS;
+        minIntervalBetweenCapturesInMillis = DEFAULT_MIN_INTERVAL_BETWEEN_CAPTURES_IN_MILLIS;
+
+        SDKShutdownActivity.INSTANCE.register(this);
+    }
+
+    QueryPlanCollector(Executor executor, ConnectionFactory connectionFactory, long planTtlInMillis, long minIntervalBetweenCapturesInMillis) {
+        this.threads = null;
+        this.executor = executor;
+        this.connectionFactory = connectionFactory;
+        this.planTtlInMillis = planTtlInMillis;
+        this.minIntervalBetweenCapturesInMillis = minIntervalBetweenCapturesInMillis;
+    }
+
+    /**
+     * Returns the cached plan of the statement, or null if there is none in which case the capture
+     * of the plan is started, in the background, unless it is already running or the rate limit is reached.
+     * @param databaseUrl The sanitized url of the database the statement runs on.
+     * @param normalizedSql The normalized statement, the plans are cached by it.
+     * @param sqlStatement The statement as it was executed, only SELECT statements are explained.
+     * @param connection The connection the statement ran on, only its URL is used, on the calling thread.
+     * @param now The current time in milliseconds.
+     * @return The plan, or null if it is not captured yet.
+     */
+    String getPlan(String databaseUrl, String normalizedSql, final String sqlStatement, Connection connection, long now) {
+        if (connection == null || sqlStatement == null || !sqlStatement.regionMatches(true, 0, "SELECT ", 0, 7)) {
+            return null;
+        }
+
+        final String key = databaseUrl + '\n' + normalizedSql;
+        CachedPlan cached = plans.get(key);
+        if (cached != null && cached.expirationTime > now) {
+            return cached.plan;
+        }
+
+        if (!tryAcquireCapture(now)) {
+            return null;
+        }
+
+        if (cached == null && plans.size() >= MAX_CACHED_PLANS) {
+            removeExpired(now);
+            if (plans.size() >= MAX_CACHED_PLANS) {
+                return null;
+            }
+        }
+
+        // Only the thread that puts the pending entry starts the capture
+        final CachedPlan pending = new CachedPlan(null, now + planTtlInMillis);
+        boolean owner = cached == null ? plans.putIfAbsent(key, pending) == null : plans.replace(key, cached, pending);
+        if (!owner) {
+            return null;
+        }
+
+        // The url, with its credentials, is only kept until the capture ran. Without it the statement has no plan until the entry expires
+        final String url = getUrl(connection);
+        if (url == null) {
+            return null;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    String plan = explain(connectionFactory, url, sqlStatement);
+                    plans.replace(key, pending, new CachedPlan(plan, pending.expirationTime));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            plans.remove(key, pending);
+        }
+
+        return null;
+    }
+
+    int size() {
+        return plans.size();
+    }
+
+    @Override
+    public void stop(long timeout, TimeUnit timeUnit) {
+        ThreadPoolUtils.stop(threads, timeout, timeUnit);
+    }
+
+    private boolean tryAcquireCapture(long now) {
+        long next = nextCaptureTime.get();
+        return now >= next && nextCaptureTime.compareAndSet(next, now + minIntervalBetweenCapturesInMillis);
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Map.Entry<String, CachedPlan>> iterator = plans.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().expirationTime <= now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static String getUrl(Connection connection) {
+        try {
+            DatabaseMetaData metaData = connection.getMetaData();
+            return metaData == null ? null : metaData.getURL();
+        } catch (Throwable t) {
+            InternalLogger.INSTANCE.trace("Failed to fetch the connection's url: '%s'", t.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens a connection of its own to the database, runs the EXPLAIN on it, and closes it.
+     */
+    static String explain(ConnectionFactory connectionFactory, String url, String sqlStatement) {
+        Connection connection = null;
+        try {
+            connection = connectionFactory.open(url);
+            if (connection == null) {
+                return null;
+            }
+
+            try {
+                connection.setReadOnly(true);
+            } catch (SQLException e) {
+                // A hint the driver may not support, the EXPLAIN does not change data anyway
+            }
+
+            return explain(connection, sqlStatement);
+        } catch (Throwable t) {
+            InternalLogger.INSTANCE.trace("Failed to connect to fetch the query plan: '%s'", t.getMessage());
+            return null;
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs 'EXPLAIN <statement>' and formats the rows, the plan is not captured on a closed connection
+     * or inside a transaction that a failure of the EXPLAIN could abort.
+     */
+    static String explain(Connection connection, String sqlStatement) {
+        Statement explain = null;
+        ResultSet rs = null;
+        try {
+            if (connection.isClosed() || !connection.getAutoCommit()) {
+                return null;
+            }
+
+            explain = connection.createStatement();
+            rs = explain.executeQuery("EXPLAIN " + sqlStatement);
+            ResultSetMetaData metaData = rs.getMetaData();
+            int columns = metaData.getColumnCount();
+            StringBuilder explainSB = new StringBuilder();
+            while (rs.next()) {
+                explainSB.append('[');
+                if (columns == 1) {
+                    explainSB.append(rs.getString(1));
+                } else {
+                    for (int i = 1; i <= columns; ++i) {
+                        explainSB.append(metaData.getColumnName(i));
+                        explainSB.append(':');
+                        Object obj = rs.getObject(i);
+                        explainSB.append(obj == null ? "" : obj.toString());
+                        explainSB.append(',');
+                    }
+                    explainSB.deleteCharAt(explainSB.length() - 1);
+                }
+                explainSB.append("],");
+            }
+            if (explainSB.length() == 0) {
+                return null;
+            }
+            explainSB.deleteCharAt(explainSB.length() - 1);
+            return explainSB.toString();
+        } catch (Throwable t) {
+            InternalLogger.INSTANCE.trace("Failed to fetch the query plan: '%s'", t.getMessage());
+            return null;
+        } finally {
+            if (rs != null) {
+                try {
+                    rs.close();
+                } catch (SQLException e) {
+                }
+            }
+            if (explain != null) {
+                try {
+                    explain.close();
+                } catch (SQLException e) {
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.agent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Normalizes SQL statements for the dependency telemetry: literals are replaced with '?', lists of placeholders
+ * are collapsed into one, comments are removed and runs of white spaces become one space. Statements that differ
+ * only by their literal values therefore share the same command name, and the same fingerprint, a 64 bit
+ * FNV-1a hash of the normalized text.
+ *
+ * The normalized forms of the recently used statements are kept in an LRU cache, split into stripes
+ * that are locked separately. The class is thread safe.
+ */
+final class SqlNormalizer {
+    static final int MAX_CACHED_STATEMENTS = 1024;
+
+    // Longer statements are normalized every time, to bound the memory held by the cache
+    static final int MAX_CACHED_STATEMENT_LENGTH = 4096;
+
+    private static final int NUMBER_OF_STRIPES = 16;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The normalized form of a statement and its fingerprint.
+     */
+    static final class NormalizedSql {
+        private final String text;
+        private final String fingerprint;
+
+        NormalizedSql(String text) {
+            this.text = text;
+            this.fingerprint = toHex(fingerprint(text));
+        }
+
+        String getText() {
+            return text;
+        }
+
+        String getFingerprint() {
+            return fingerprint;
+        }
+    }
+
+    private static final class Stripe extends LinkedHashMap<String, NormalizedSql> {
+        private final int capacity;
+
+        private Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, NormalizedSql> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    private final Stripe[] stripes;
+
+    SqlNormalizer() {
+        this(MAX_CACHED_STATEMENTS);
+    }
+
+    SqlNormalizer(int maxCachedStatements) {
+        stripes = new Stripe[NUMBER_OF_STRIPES];
+        int stripeCapacity = Math.max(1, maxCachedStatements / NUMBER_OF_STRIPES);
+        for (int i = 0; i < NUMBER_OF_STRIPES; ++i) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /**
+     * @param sqlStatement The statement as it was executed.
+     * @return The normalized statement, from the cache when it was recently normalized.
+     */
+    NormalizedSql normalize(String sqlStatement) {
+        if (sqlStatement.length() > MAX_CACHED_STATEMENT_LENGTH) {
+            return new NormalizedSql(normalizeText(sqlStatement));
+        }
+
+        int hash = sqlStatement.hashCode();
+        Stripe stripe = stripes[(hash ^ (hash >>> 16)) & (NUMBER_OF_STRIPES - 1)];
+        NormalizedSql normalized;
+        synchronized (stripe) {
+            normalized = stripe.get(sqlStatement);
+        }
+        if (normalized != null) {
+            return normalized;
+        }
+
+        normalized = new NormalizedSql(normalizeText(sqlStatement));
+        synchronized (stripe) {
+            stripe.put(sqlStatement, normalized);
+        }
+
+        return normalized;
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Tokenizes the statement in one pass and writes its normalized form.
+     * For example "SELECT * FROM t WHERE a = 'x' AND b IN (1, 2, 3) -- comment"
+     * becomes "SELECT * FROM t WHERE a = ? AND b IN (?)".
+     */
+    static String normalizeText(String sql) {
+        int length = sql.length();
+        StringBuilder sb = new StringBuilder(length);
+
+        // The position, in the output, right after the last opened parenthesis, -1 if its content is not only placeholders
+        int listStart = -1;
+        boolean pendingSpace = false;
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+                ++i;
+                continue;
+            }
+            if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                i = skipLineComment(sql, i + 2);
+                pendingSpace = true;
+                continue;
+            }
+            if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                i = skipBlockComment(sql, i + 2);
+                pendingSpace = true;
+                continue;
+            }
+
+            if (pendingSpace && sb.length() > 0) {
+                sb.append(' ');
+            }
+            pendingSpace = false;
+
+            if (c == '\'') {
+                i = skipString(sql, i + 1, '\'');
+                sb.append('?');
+            } else if (isDigit(c) || (c == '.' && i + 1 < length && isDigit(sql.charAt(i + 1)))) {
+                i = skipNumber(sql, i);
+                sb.append('?');
+            } else if (isIdentifierStart(c)) {
+                int end = skipIdentifier(sql, i + 1);
+                // Prefixed strings, N'text', E'text', X'0A' and B'01'
+                if (end == i + 1 && end < length && sql.charAt(end) == '\'' && "NnEeXxBb".indexOf(c) != -1) {
+                    i = skipString(sql, end + 1, '\'');
+                    sb.append('?');
+                } else {
+                    sb.append(sql, i, end);
+                    i = end;
+                    listStart = -1;
+                }
+            } else if (c == '"' || c == '`') {
+                int end = skipString(sql, i + 1, c);
+                sb.append(sql, i, end);
+                i = end;
+                listStart = -1;
+            } else if (c == '(') {
+                sb.append(c);
+                listStart = sb.length();
+                ++i;
+            } else if (c == ')') {
+                if (listStart != -1 && sb.length() > listStart) {
+                    sb.setLength(listStart);
+                    sb.append('?');
+                }
+                sb.append(c);
+                listStart = -1;
+                ++i;
+            } else {
+                sb.append(c);
+                if (c != '?' && c != ',') {
+                    listStart = -1;
+                }
+                ++i;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    static long fingerprint(String normalizedSql) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < normalizedSql.length(); ++i) {
+            char c = normalizedSql.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static String toHex(long value) {
+        String hex = Long.toHexString(value);
+        if (hex.length() == 16) {
+            return hex;
+        }
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; ++i) {
+            sb.append('0');
+        }
+        return sb.append(hex).toString();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '$' || c == '@' || c == '#';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '@' || c == '#';
+    }
+
+    private static int skipIdentifier(String sql, int i) {
+        while (i < sql.length() && isIdentifierPart(sql.charAt(i))) {
+            ++i;
+        }
+        return i;
+    }
+
+    /**
+     * Skips a quoted string whose opening quote is right before 'i', doubled quotes and
+     * backslash escapes are part of the string. Returns the position after the closing quote.
+     */
+    private static int skipString(String sql, int i, char quote) {
+        int length = sql.length();
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote == '\'') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < length && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                ++i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Skips decimal numbers, with an optional fraction and exponent, and hexadecimal numbers such as 0x1F.
+     */
+    private static int skipNumber(String sql, int i) {
+        int length = sql.length();
+        if (sql.charAt(i) == '0' && i + 1 < length && (sql.charAt(i + 1) == 'x' || sql.charAt(i + 1) == 'X')) {
+            i += 2;
+            while (i < length && Character.digit(sql.charAt(i), 16) != -1) {
+                ++i;
+            }
+            return i;
+        }
+
+        while (i < length && (isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+            ++i;
+        }
+        if (i < length && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+            int exponent = i + 1;
+            if (exponent < length && (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-')) {
+                ++exponent;
+            }
+            if (exponent < length && isDigit(sql.charAt(exponent))) {
+                i = exponent;
+                while (i < length && isDigit(sql.charAt(i))) {
+                    ++i;
+                }
+            }
+        }
+        return i;
+    }
+
+    private static int skipLineComment(String sql, int i) {
+        while (i < sql.length() && sql.charAt(i) != '\n' && sql.charAt(i) != '\r') {
+            ++i;
+        }
+        return i;
+    }
+
+    private static int skipBlockComment(String sql, int i) {
+        int end = sql.indexOf("*/", i);
+        return end == -1 ? sql.length() : end + 2;
+    }
+}
@@ -24,6 +24,8 @@ package com.microsoft.applicationinsights.internal.channel;
 import java.util.Collection;
 import java.util.concurrent.TimeUnit;
 
+import com.microsoft.applicationinsights.internal.channel.common.Transmission;
+
 /**
  * The class is responsible for getting containers of {@link com.microsoft.applicationinsights.telemetry.Telemetry},
  * transform them into {@link com.microsoft.applicationinsights.internal.channel.common.Transmission} and
@@ -37,17 +39,21 @@ import java.util.concurrent.TimeUnit;
  * the container of Telemetries.
  * Or, it also lets the caller to initiate a 'send now' call where the caller passes the container
  * and this class will continue, again, using a channel thread while releasing the calling thread.
+ * A container that was already serialized, see {@link com.microsoft.applicationinsights.internal.channel.common.GzipTelemetryBatchEncoder},
+ * can be passed as a ready {@link com.microsoft.applicationinsights.internal.channel.common.Transmission}.
  *
  * Created by gupele on 12/17/2014.
  */
 public interface TelemetriesTransmitter {
     public interface TelemetriesFetcher {
-        Collection<String> fetch();
+        Collection<byte[]> fetch();
     }
 
     boolean scheduleSend(TelemetriesFetcher telemetriesFetcher, long value, TimeUnit timeUnit);
 
-    boolean sendNow(Collection<String> telemetries);
+    boolean sendNow(Collection<byte[]> telemetries);
+
+    boolean sendNow(Transmission transmission);
 
     void stop(long timeout, TimeUnit timeUnit);
 }
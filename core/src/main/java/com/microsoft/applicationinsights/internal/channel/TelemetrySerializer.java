@@ -39,5 +39,5 @@ public interface TelemetrySerializer {
      * @param telemetries A collection of Telemetry instances
      * @return byte array that is a compressed version of the input
      */
-    Optional<Transmission> serialize(Collection<String> telemetries);
+    Optional<Transmission> serialize(Collection<byte[]> telemetries);
 }
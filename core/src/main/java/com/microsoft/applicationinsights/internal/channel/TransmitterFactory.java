@@ -25,5 +25,5 @@ package com.microsoft.applicationinsights.internal.channel;
  * Created by gupele on 12/21/2014.
  */
 public interface TransmitterFactory {
-    TelemetriesTransmitter create(String endpoint, String maxTransmissionStorageCapacity, boolean throttlingIsEnabled);
+    TelemetriesTransmitter create(String endpoint, String maxTransmissionStorageCapacity, boolean throttlingIsEnabled, String transmissionStorageType, String senderType);
 }
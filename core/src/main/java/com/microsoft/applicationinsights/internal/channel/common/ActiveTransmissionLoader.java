@@ -28,28 +28,35 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.microsoft.applicationinsights.internal.channel.TransmissionDispatcher;
 import com.microsoft.applicationinsights.internal.channel.TransmissionsLoader;
+import com.microsoft.applicationinsights.internal.channel.TransmissionsStorage;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 
 import com.google.common.base.Preconditions;
 import com.microsoft.applicationinsights.internal.shutdown.Stoppable;
 
 /**
- * The class is responsible for loading transmission files that were saved to the disk
+ * The class is responsible for loading transmissions that were saved to the disk
  *
- * The class will ask for the oldest transmission file and will hand it to the dispatcher
+ * The class will ask the storage for the oldest transmission and will hand it to the dispatcher
+ *
+ * The pace is set by a {@link TransmissionReplayController}: a transmission is replayed only while the number
+ * of sends in flight is below the controller's concurrency, and the pause after each one is the controller's.
+ * Transmissions that are purged, because the policy does not let them be persisted, are paced by the same pause.
  *
  * Created by gupele on 12/22/2014.
  */
 public final class ActiveTransmissionLoader implements TransmissionsLoader {
     public final static int MAX_THREADS_ALLOWED = 10;
 
-    private final static int DEFAULT_NUMBER_OF_THREADS = 1;
+    private final static int DEFAULT_NUMBER_OF_THREADS = 2;
+    private final static int DEFAULT_MAX_REPLAY_CONCURRENCY = 4;
 
     private final static long DEFAULT_SLEEP_INTERVAL_WHEN_NO_TRANSMISSIONS_FOUND_IN_MILLS = 2000;
-    private final static long DEFAULT_SLEEP_INTERVAL_AFTER_DISPATCHING_IN_MILLS = 100;
+    private final static long DEFAULT_SLEEP_INTERVAL_WHEN_BLOCKED_IN_MILLS = 100;
+    private final static long DEFAULT_SLEEP_INTERVAL_WHEN_SENDS_IN_FLIGHT_IN_MILLS = 20;
 
     // The helper class that encapsulates the file system access
-    private final TransmissionFileSystemOutput fileSystem;
+    private final TransmissionsStorage fileSystem;
 
     // A synchronized flag to let us know when to stop
     private final AtomicBoolean done = new AtomicBoolean(false);
@@ -66,15 +73,33 @@ public final class ActiveTransmissionLoader implements TransmissionsLoader {
 
     private final long sleepIntervalWhenNoTransmissionsFoundInMills;
 
-    public ActiveTransmissionLoader(TransmissionFileSystemOutput fileSystem, TransmissionPolicyStateFetcher transmissionPolicy, TransmissionDispatcher dispatcher) {
+    private final TransmissionReplayController replayController;
+
+    public ActiveTransmissionLoader(TransmissionsStorage fileSystem, TransmissionPolicyStateFetcher transmissionPolicy, TransmissionDispatcher dispatcher) {
         this(fileSystem, dispatcher, transmissionPolicy, DEFAULT_NUMBER_OF_THREADS);
     }
 
-    public ActiveTransmissionLoader(final TransmissionFileSystemOutput fileSystem,
+    public ActiveTransmissionLoader(final TransmissionsStorage fileSystem,
                                     final TransmissionDispatcher dispatcher,
                                     final TransmissionPolicyStateFetcher transmissionPolicy,
                                     int numberOfThreads) {
+        this(fileSystem, dispatcher, transmissionPolicy, numberOfThreads, new TransmissionReplayController(DEFAULT_MAX_REPLAY_CONCURRENCY));
+    }
+
+    public ActiveTransmissionLoader(TransmissionsStorage fileSystem,
+                                    TransmissionPolicyStateFetcher transmissionPolicy,
+                                    TransmissionDispatcher dispatcher,
+                                    TransmissionReplayController replayController) {
+        this(fileSystem, dispatcher, transmissionPolicy, DEFAULT_NUMBER_OF_THREADS, replayController);
+    }
+
+    public ActiveTransmissionLoader(final TransmissionsStorage fileSystem,
+                                    final TransmissionDispatcher dispatcher,
+                                    final TransmissionPolicyStateFetcher transmissionPolicy,
+                                    int numberOfThreads,
+                                    final TransmissionReplayController replayController) {
         Preconditions.checkNotNull(fileSystem, "fileSystem must be a non-null value");
+        Preconditions.checkNotNull(replayController, "replayController must be a non-null value");
         Preconditions.checkNotNull(dispatcher, "dispatcher must be a non-null value");
         Preconditions.checkNotNull(transmissionPolicy, "transmissionPolicy must be a non-null value");
         Preconditions.checkArgument(numberOfThreads > 0, "numberOfThreads must be a positive number");
@@ -84,6 +109,7 @@ public final class ActiveTransmissionLoader implements TransmissionsLoader {
         this.sleepIntervalWhenNoTransmissionsFoundInMills = DEFAULT_SLEEP_INTERVAL_WHEN_NO_TRANSMISSIONS_FOUND_IN_MILLS;
 
         this.transmissionPolicyFetcher = transmissionPolicy;
+        this.replayController = replayController;
 
         this.fileSystem = fileSystem;
         this.dispatcher = dispatcher;
@@ -106,22 +132,28 @@ public final class ActiveTransmissionLoader implements TransmissionsLoader {
                             TransmissionPolicy currentTransmissionState = transmissionPolicyFetcher.getCurrentState();
                             switch (currentTransmissionState) {
                                 case UNBLOCKED:
-                                    fetchNext(true);
+                                    if (replayController.canReplay()) {
+                                        fetchNext(true);
+                                    } else {
+                                        Thread.sleep(DEFAULT_SLEEP_INTERVAL_WHEN_SENDS_IN_FLIGHT_IN_MILLS);
+                                    }
                                     break;
 
                                 case BLOCKED_BUT_CAN_BE_PERSISTED:
-                                    Thread.sleep(DEFAULT_SLEEP_INTERVAL_AFTER_DISPATCHING_IN_MILLS);
+                                    replayController.onBlocked();
+                                    Thread.sleep(DEFAULT_SLEEP_INTERVAL_WHEN_BLOCKED_IN_MILLS);
                                     break;
 
                                 case BLOCKED_AND_CANNOT_BE_PERSISTED:
                                     // We fetch but don't do anything with the Transmission
                                     // which means that we are cleaning the disk as needed by that policy
+                                    replayController.onBlocked();
                                     fetchNext(false);
                                     break;
 
                                 default:
                                     InternalLogger.INSTANCE.error("Could not find transmission policy '%s'", currentTransmissionState);
-                                    Thread.sleep(DEFAULT_SLEEP_INTERVAL_AFTER_DISPATCHING_IN_MILLS);
+                                    Thread.sleep(DEFAULT_SLEEP_INTERVAL_WHEN_BLOCKED_IN_MILLS);
                                     break;
                             }
                         } catch (Exception e) {
@@ -146,6 +178,10 @@ public final class ActiveTransmissionLoader implements TransmissionsLoader {
         for (Thread thread : threads) {
             thread.start();
         }
+        if (!waitForThreadsToStart) {
+            // The barrier has a party for each thread only, waiting on it here would take the place of one of them
+            return true;
+        }
         try {
             barrier.await();
             return true;
@@ -171,17 +207,36 @@ public final class ActiveTransmissionLoader implements TransmissionsLoader {
         }
     }
 
+    public boolean isStopped() {
+        return done.get();
+    }
+
+    public TransmissionReplayController getReplayController() {
+        return replayController;
+    }
+
+    /**
+     * @return The size of the transmissions that are waiting to be replayed
+     */
+    public long getBacklogSizeInBytes() {
+        return fileSystem.getSizeInBytes();
+    }
+
     private void fetchNext(boolean shouldDispatch) throws InterruptedException {
-        Transmission transmission = fileSystem.fetchOldestFile();
+        Transmission transmission = fileSystem.fetchOldest();
         if (transmission == null) {
             Thread.sleep(sleepIntervalWhenNoTransmissionsFoundInMills);
         } else {
             if (shouldDispatch) {
                 dispatcher.dispatch(transmission);
+                replayController.onReplayed(transmission);
             }
 
-            // TODO: check if we need this as configuration value
-            Thread.sleep(DEFAULT_SLEEP_INTERVAL_AFTER_DISPATCHING_IN_MILLS);
+            // Purging the disk takes the same pause, so a blocked policy does not spin on the storage
+            long pauseInMillis = replayController.getPauseInMillis();
+            if (pauseInMillis > 0) {
+                Thread.sleep(pauseInMillis);
+            }
         }
     }
 }
@@ -21,6 +21,7 @@
 
 package com.microsoft.applicationinsights.internal.channel.common;
 
+import java.util.List;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -28,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Preconditions;
 import com.microsoft.applicationinsights.internal.channel.TransmissionOutput;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.util.ThreadPoolUtils;
 
 /**
@@ -47,15 +49,30 @@ public final class ActiveTransmissionNetworkOutput implements TransmissionOutput
 
     private final TransmissionPolicyStateFetcher transmissionPolicy;
 
+    // Counts the transmissions that are queued or being sent, null if not needed
+    private final TransmissionReplayController replayController;
+
+    // Gets the queued transmissions that were not sent by the end of the stop, null if they are dropped
+    private volatile TransmissionOutput spillOutput;
+
     public ActiveTransmissionNetworkOutput(TransmissionOutput actualOutput, TransmissionPolicyStateFetcher transmissionPolicy) {
         this(actualOutput, transmissionPolicy, DEFAULT_MAX_MESSAGES_IN_BUFFER);
     }
 
+    public ActiveTransmissionNetworkOutput(TransmissionOutput actualOutput, TransmissionPolicyStateFetcher transmissionPolicy, TransmissionReplayController replayController) {
+        this(actualOutput, transmissionPolicy, DEFAULT_MAX_MESSAGES_IN_BUFFER, replayController);
+    }
+
     public ActiveTransmissionNetworkOutput(TransmissionOutput actualOutput, TransmissionPolicyStateFetcher transmissionPolicy, int maxMessagesInBuffer) {
+        this(actualOutput, transmissionPolicy, maxMessagesInBuffer, null);
+    }
+
+    public ActiveTransmissionNetworkOutput(TransmissionOutput actualOutput, TransmissionPolicyStateFetcher transmissionPolicy, int maxMessagesInBuffer, TransmissionReplayController replayController) {
         Preconditions.checkNotNull(transmissionPolicy, "transmissionPolicy must be a valid non-null value");
 
         this.actualOutput = actualOutput;
         this.transmissionPolicy = transmissionPolicy;
+        this.replayController = replayController;
 
         maxThreads = DEFAULT_MAX_NUMBER_OF_THREADS;
         outputThreads = ThreadPoolUtils.newLimitedThreadPool(
@@ -80,16 +97,17 @@ public final class ActiveTransmissionNetworkOutput implements TransmissionOutput
                 return false;
             }
 
-            outputThreads.execute(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        actualOutput.send(transmission);
-                    } catch (Throwable throwable) {
-                        // Avoid un-expected exit of thread
-                    }
+            if (replayController != null) {
+                replayController.onSendStarted();
+            }
+            try {
+                outputThreads.execute(new SendTask(transmission));
+            } catch (RuntimeException e) {
+                if (replayController != null) {
+                    replayController.onSendEnded();
                 }
-            });
+                throw e;
+            }
             return true;
 
         } catch (RejectedExecutionException e) {
@@ -100,14 +118,81 @@ public final class ActiveTransmissionNetworkOutput implements TransmissionOutput
         return false;
     }
 
+    /**
+     * Sends the queued transmissions until the timeout expires, the ones that are still queued
+     * by then are handed to the spill output, if there is one, and the actual output is stopped.
+     */
     @Override
     public void stop(long timeout, TimeUnit timeUnit) {
+        outputThreads.shutdown();
+        try {
+            outputThreads.awaitTermination(timeout, timeUnit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<Runnable> notSent = outputThreads.shutdownNow();
         actualOutput.stop(timeout, timeUnit);
-        ThreadPoolUtils.stop(outputThreads, timeout, timeUnit);
+
+        for (Runnable task : notSent) {
+            if (task instanceof SendTask) {
+                SendTask sendTask = (SendTask)task;
+                sendTask.onSendEnded();
+                spill(sendTask.transmission);
+            }
+        }
+        if (!notSent.isEmpty()) {
+            InternalLogger.INSTANCE.trace("%d transmissions were not sent to the network before the timeout", notSent.size());
+        }
+    }
+
+    /**
+     * Sets the output that gets the transmissions that were refused by the actual output or were still queued
+     * when the instance was stopped, typically the output that persists transmissions to the disk.
+     * That output must be stopped after this one.
+     * @param spillOutput The output, null to drop the transmissions.
+     */
+    public void setSpillOutput(TransmissionOutput spillOutput) {
+        this.spillOutput = spillOutput;
+    }
+
+    private void spill(Transmission transmission) {
+        TransmissionOutput spill = spillOutput;
+        if (spill != null) {
+            spill.send(transmission);
+        }
     }
 
     public int getNumberOfMaxThreads() {
         return this.maxThreads;
     }
+
+    private final class SendTask implements Runnable {
+        private final Transmission transmission;
+
+        private SendTask(Transmission transmission) {
+            this.transmission = transmission;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // The actual output refuses the transmission when the transmissions are blocked or it was stopped
+                if (!actualOutput.send(transmission)) {
+                    spill(transmission);
+                }
+            } catch (Throwable throwable) {
+                // Avoid un-expected exit of thread
+            } finally {
+                onSendEnded();
+            }
+        }
+
+        private void onSendEnded() {
+            if (replayController != null) {
+                replayController.onSendEnded();
+            }
+        }
+    }
 }
 
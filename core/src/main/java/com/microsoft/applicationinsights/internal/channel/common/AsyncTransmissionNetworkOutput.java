@@ -0,0 +1,291 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.microsoft.applicationinsights.internal.channel.TransmissionDispatcher;
+import com.microsoft.applicationinsights.internal.channel.TransmissionOutput;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+
+/**
+ * The class sends {@link com.microsoft.applicationinsights.internal.channel.common.Transmission}s
+ * using Apache's non blocking HttpAsyncClient.
+ *
+ * The caller is never blocked: at most 'maxInFlightTransmissions' requests are in flight over a pool
+ * of kept alive connections and the responses are handled on the client's IO threads. A transmission
+ * that does not fit in the window is refused, so the dispatcher hands it to the next output, and a transmission
+ * that was throttled or failed is dispatched again after the {@link TransmissionPolicyManager} was updated.
+ * Transmissions that are still in flight when the sender is stopped are dispatched again too, which hands them
+ * to the file system since the sender refuses them by then.
+ */
+public final class AsyncTransmissionNetworkOutput implements TransmissionOutput {
+    private final static int DEFAULT_MAX_IN_FLIGHT_TRANSMISSIONS = 64;
+    private final static int DEFAULT_IO_THREADS = 2;
+    private final static int DEFAULT_BACKOFF_TIME_SECONDS = 300;
+
+    private final String serverUri;
+
+    private final TransmissionPolicyManager transmissionPolicyManager;
+
+    private final CloseableHttpAsyncClient httpClient;
+
+    private final RequestConfig requestConfig;
+
+    // The window of the transmissions that are sent and not answered yet
+    private final Semaphore inFlightTransmissions;
+
+    private final int maxInFlightTransmissions;
+
+    // Gets the transmissions that could not be sent, so they can be persisted
+    private volatile TransmissionDispatcher transmissionDispatcher;
+
+    // Gets the outcome of the sends, to pace the replay of persisted transmissions
+    private volatile TransmissionReplayController replayController;
+
+    private volatile boolean stopped;
+
+    public static AsyncTransmissionNetworkOutput create(String endpoint, TransmissionPolicyManager transmissionPolicyManager) {
+        String realEndpoint = Strings.isNullOrEmpty(endpoint) ? TransmissionNetworkOutput.DEFAULT_SERVER_URI : endpoint;
+        return new AsyncTransmissionNetworkOutput(realEndpoint, transmissionPolicyManager, DEFAULT_MAX_IN_FLIGHT_TRANSMISSIONS, DEFAULT_IO_THREADS);
+    }
+
+    AsyncTransmissionNetworkOutput(String serverUri, TransmissionPolicyManager transmissionPolicyManager, int maxInFlightTransmissions, int ioThreads) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(serverUri), "serverUri should be a valid non-null value");
+        Preconditions.checkNotNull(transmissionPolicyManager, "transmissionPolicyManager should be a valid non-null value");
+        Preconditions.checkArgument(maxInFlightTransmissions > 0, "maxInFlightTransmissions should be a positive number");
+        Preconditions.checkArgument(ioThreads > 0, "ioThreads should be a positive number");
+
+        this.serverUri = serverUri;
+        this.transmissionPolicyManager = transmissionPolicyManager;
+        this.maxInFlightTransmissions = maxInFlightTransmissions;
+        inFlightTransmissions = new Semaphore(maxInFlightTransmissions);
+
+        requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(ApacheSender.REQUEST_TIMEOUT_IN_MILLIS)
+                .setConnectTimeout(ApacheSender.REQUEST_TIMEOUT_IN_MILLIS)
+                .setSocketTimeout(ApacheSender.REQUEST_TIMEOUT_IN_MILLIS).build();
+
+        httpClient = createClient(ioThreads);
+        httpClient.start();
+        stopped = false;
+    }
+
+    public void setTransmissionDispatcher(TransmissionDispatcher transmissionDispatcher) {
+        this.transmissionDispatcher = transmissionDispatcher;
+    }
+
+    public void setReplayController(TransmissionReplayController replayController) {
+        this.replayController = replayController;
+    }
+
+    /**
+     * Starts the sending of the transmission and returns without waiting for the response.
+     * @param transmission The data to send
+     * @return False if the transmissions are blocked or the in flight window is full, true otherwise.
+     */
+    @Override
+    public boolean send(final Transmission transmission) {
+        if (stopped) {
+            return false;
+        }
+
+        if (transmissionPolicyManager.getTransmissionPolicyState().getCurrentState() != TransmissionPolicy.UNBLOCKED) {
+            return false;
+        }
+
+        if (!inFlightTransmissions.tryAcquire()) {
+            return false;
+        }
+
+        final TransmissionReplayController controller = replayController;
+        if (controller != null) {
+            controller.onSendStarted();
+        }
+
+        try {
+            HttpPost request = TransmissionNetworkOutput.createTransmissionPostRequest(serverUri, transmission);
+            request.setConfig(requestConfig);
+
+            final long start = System.nanoTime();
+            httpClient.execute(request, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    try {
+                        onResponse(transmission, response, controller, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    } finally {
+                        onSendEnded(controller);
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    try {
+                        InternalLogger.INSTANCE.error("Failed to send, exception: %s", e.getMessage());
+                        onFailure(transmission, controller);
+                    } finally {
+                        onSendEnded(controller);
+                    }
+                }
+
+                @Override
+                public void cancelled() {
+                    try {
+                        onFailure(transmission, controller);
+                    } finally {
+                        onSendEnded(controller);
+                    }
+                }
+            });
+            return true;
+        } catch (Throwable t) {
+            InternalLogger.INSTANCE.error("Failed to send, unexpected error: %s", t.getMessage());
+            onSendEnded(controller);
+        }
+
+        return false;
+    }
+
+    /**
+     * Waits for the transmissions in flight to complete until the timeout expires and stops the client,
+     * the transmissions that are still in flight by then are cancelled and dispatched again to be persisted.
+     * @param timeout The maximum time to wait for the transmissions in flight.
+     * @param timeUnit The time unit of the timeout.
+     */
+    @Override
+    public synchronized void stop(long timeout, TimeUnit timeUnit) {
+        if (stopped) {
+            return;
+        }
+
+        stopped = true;
+        try {
+            if (inFlightTransmissions.tryAcquire(maxInFlightTransmissions, timeout, timeUnit)) {
+                inFlightTransmissions.release(maxInFlightTransmissions);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            InternalLogger.INSTANCE.error("Failed to close http client, exception: %s", e.getMessage());
+        }
+    }
+
+    public int getMaxInFlightTransmissions() {
+        return maxInFlightTransmissions;
+    }
+
+    public int getInFlightTransmissions() {
+        return maxInFlightTransmissions - inFlightTransmissions.availablePermits();
+    }
+
+    private void onResponse(Transmission transmission, HttpResponse response, TransmissionReplayController controller, long latencyInMillis) {
+        int code = response.getStatusLine().getStatusCode();
+        TransmissionSendResult sendResult = TransmissionResponses.translateResponse(code, response.getEntity());
+        if (controller != null) {
+            TransmissionResponses.reportSendResult(controller, sendResult, code, latencyInMillis);
+        }
+
+        switch (sendResult) {
+            case PAYMENT_REQUIRED:
+            case THROTTLED:
+                TransmissionResponses.suspendTransmissions(transmissionPolicyManager, TransmissionPolicy.BLOCKED_BUT_CAN_BE_PERSISTED, response);
+                redispatch(transmission);
+                break;
+
+            case THROTTLED_OVER_EXTENDED_TIME:
+                TransmissionResponses.suspendTransmissions(transmissionPolicyManager, TransmissionPolicy.BLOCKED_AND_CANNOT_BE_PERSISTED, response);
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void onFailure(Transmission transmission, TransmissionReplayController controller) {
+        if (controller != null) {
+            controller.onSendFailed();
+        }
+
+        // Once stopped the sender refuses the transmission anyway, there is no need to block the others
+        if (!stopped) {
+            InternalLogger.INSTANCE.trace("Backing off for %s seconds", DEFAULT_BACKOFF_TIME_SECONDS);
+            transmissionPolicyManager.suspendInSeconds(TransmissionPolicy.BLOCKED_BUT_CAN_BE_PERSISTED, DEFAULT_BACKOFF_TIME_SECONDS);
+        }
+        redispatch(transmission);
+    }
+
+    // The transmissions are blocked, or the sender is stopped, by now so the dispatcher hands the transmission to the file system
+    private void redispatch(Transmission transmission) {
+        TransmissionDispatcher dispatcher = transmissionDispatcher;
+        if (dispatcher != null) {
+            dispatcher.dispatch(transmission);
+        }
+    }
+
+    private void onSendEnded(TransmissionReplayController controller) {
+        inFlightTransmissions.release();
+        if (controller != null) {
+            controller.onSendEnded();
+        }
+    }
+
+    private static CloseableHttpAsyncClient createClient(int ioThreads) {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(ioThreads)
+                .setConnectTimeout(ApacheSender.REQUEST_TIMEOUT_IN_MILLIS)
+                .setSoTimeout(ApacheSender.REQUEST_TIMEOUT_IN_MILLIS)
+                .setSoKeepAlive(true)
+                .build();
+
+        PoolingNHttpClientConnectionManager cm;
+        try {
+            cm = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("Failed to create the IO reactor", e);
+        }
+        cm.setMaxTotal(ApacheSender.DEFAULT_MAX_TOTAL_CONNECTIONS);
+        cm.setDefaultMaxPerRoute(ApacheSender.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+
+        return HttpAsyncClients.custom()
+                .setConnectionManager(cm)
+                .useSystemProperties()
+                .build();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+/**
+ * Compresses a batch of serialized telemetries while the batch is being built.
+ *
+ * Every added telemetry is fed into the {@link Deflater} right away, so when the batch is complete
+ * only the end of the stream needs to be compressed, and the batch is kept in memory in its
+ * compressed form only.
+ *
+ * The output is the same as the one of {@link GzipTelemetrySerializer}: the telemetries separated
+ * by a newline and compressed as a single gzip stream. The gzip framing is written here so
+ * the same {@link Deflater} can be reused from one batch to the next.
+ *
+ * The class is not thread safe, callers are expected to synchronize around it.
+ */
+public final class GzipTelemetryBatchEncoder {
+    private final static String GZIP_WEB_CONTENT_TYPE = "application/x-json-stream";
+    private final static String GZIP_WEB_ENCODING_TYPE = "gzip";
+
+    private final static int GZIP_MAGIC = 0x8b1f;
+    private final static int INITIAL_OUTPUT_CAPACITY = 8 * 1024;
+
+    private final byte[] newlineString;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] deflateBuffer = new byte[8 * 1024];
+
+    private ByteArrayOutputStream output;
+    private int numberOfTelemetries;
+    private int uncompressedSize;
+
+    public GzipTelemetryBatchEncoder() {
+        this(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+    }
+
+    /**
+     * @param compressionLevel The {@link Deflater} compression level, -1 for the default or 0 to 9
+     * @param compressionStrategy One of {@link Deflater#DEFAULT_STRATEGY}, {@link Deflater#FILTERED} or {@link Deflater#HUFFMAN_ONLY}
+     */
+    public GzipTelemetryBatchEncoder(int compressionLevel, int compressionStrategy) {
+        this.newlineString = System.getProperty("line.separator").getBytes();
+
+        // 'nowrap' since the gzip header and trailer are written by this class
+        deflater = new Deflater(compressionLevel, true);
+        deflater.setStrategy(compressionStrategy);
+
+        startBatch();
+    }
+
+    /**
+     * Compresses the telemetry into the current batch.
+     * @param telemetry The UTF-8 encoded JSON of the telemetry
+     */
+    public void add(byte[] telemetry) {
+        Preconditions.checkNotNull(telemetry, "telemetry must be non-null value");
+
+        if (numberOfTelemetries != 0) {
+            deflate(newlineString);
+        }
+        deflate(telemetry);
+        ++numberOfTelemetries;
+    }
+
+    /**
+     * @return The number of telemetries in the current batch
+     */
+    public int size() {
+        return numberOfTelemetries;
+    }
+
+    /**
+     * Completes the current batch and starts a new one.
+     * @return The batch as a {@link Transmission}, or absent if no telemetry was added
+     */
+    public Optional<Transmission> finish() {
+        if (numberOfTelemetries == 0) {
+            return Optional.absent();
+        }
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            writeDeflated();
+        }
+        writeInt((int) crc.getValue());
+        writeInt(uncompressedSize);
+
+        Transmission transmission = new Transmission(output.toByteArray(), GZIP_WEB_CONTENT_TYPE, GZIP_WEB_ENCODING_TYPE);
+
+        deflater.reset();
+        crc.reset();
+        startBatch();
+
+        return Optional.of(transmission);
+    }
+
+    /**
+     * Releases the native resources of the {@link Deflater}, the instance cannot be used afterwards.
+     */
+    public void end() {
+        deflater.end();
+    }
+
+    private void startBatch() {
+        output = new ByteArrayOutputStream(INITIAL_OUTPUT_CAPACITY);
+        numberOfTelemetries = 0;
+        uncompressedSize = 0;
+
+        // The same header GZIPOutputStream writes: magic, 'deflate' method and no flags, time, extra flags or OS
+        output.write(GZIP_MAGIC & 0xFF);
+        output.write((GZIP_MAGIC >> 8) & 0xFF);
+        output.write(Deflater.DEFLATED);
+        for (int i = 0; i < 7; ++i) {
+            output.write(0);
+        }
+    }
+
+    private void deflate(byte[] bytes) {
+        crc.update(bytes, 0, bytes.length);
+        uncompressedSize += bytes.length;
+
+        deflater.setInput(bytes, 0, bytes.length);
+        while (!deflater.needsInput()) {
+            writeDeflated();
+        }
+    }
+
+    private void writeDeflated() {
+        int length = deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+        if (length > 0) {
+            output.write(deflateBuffer, 0, length);
+        }
+    }
+
+    // gzip integers are little endian
+    private void writeInt(int value) {
+        output.write(value & 0xFF);
+        output.write((value >> 8) & 0xFF);
+        output.write((value >> 16) & 0xFF);
+        output.write((value >> 24) & 0xFF);
+    }
+}
@@ -26,6 +26,7 @@ import java.util.concurrent.TimeUnit;
 import com.google.common.base.Preconditions;
 import com.microsoft.applicationinsights.internal.channel.TransmissionDispatcher;
 import com.microsoft.applicationinsights.internal.channel.TransmissionOutput;
+import com.microsoft.applicationinsights.internal.util.Deadline;
 
 /**
  * The class implements {@link TransmissionDispatcher}
@@ -58,10 +59,16 @@ public final class NonBlockingDispatcher implements TransmissionDispatcher {
         }
     }
 
+    /**
+     * Stops the outputs in their order, each output but the last gets half of the time that is left
+     * so the outputs that follow it, which might get what it could not send, have time to handle it.
+     */
     @Override
     public void stop(long timeout, TimeUnit timeUnit) {
-        for (TransmissionOutput output : transmissionOutputs) {
-            output.stop(timeout, timeUnit);
+        Deadline deadline = Deadline.after(timeout, timeUnit);
+        for (int i = 0; i < transmissionOutputs.length; ++i) {
+            long remaining = deadline.remainingNanos();
+            transmissionOutputs[i].stop(i == transmissionOutputs.length - 1 ? remaining : remaining / 2, TimeUnit.NANOSECONDS);
         }
     }
 }
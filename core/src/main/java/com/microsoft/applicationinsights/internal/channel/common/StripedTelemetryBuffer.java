@@ -0,0 +1,409 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.applicationinsights.internal.channel.TelemetriesBuffer;
+import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
+
+/**
+ * A {@link TelemetriesBuffer} that lets application threads add telemetries without taking a shared lock.
+ *
+ * The telemetries are written into a set of bounded rings, the ring is picked by the calling thread,
+ * so threads running on different cores rarely touch the same memory. A single drainer at a time
+ * collects the rings into a batch and hands it to the {@link TelemetriesTransmitter}. The drainer is
+ * either the transmitter thread that fires the batch timeout, or the application thread that filled
+ * the batch; in the latter case the thread only tries the drain lock and never waits for it.
+ *
+ * The batching semantics are the same as {@link TelemetryBuffer}: the first item of a batch schedules
+ * a 'pick-up' after 'transmitBufferTimeoutInSeconds', and a batch that reached 'maxTelemetriesInBatch'
+ * is sent right away.
+ */
+public final class StripedTelemetryBuffer implements TelemetriesBuffer {
+    /**
+     * A bounded ring that many threads may write into while one drainer reads it.
+     *
+     * Every slot holds a sequence number that tells whether it is free for the writer of 'position'
+     * (sequence == position) or holds an item the drainer may take (sequence == position + 1),
+     * so writers claim a slot with a single CAS on the tail.
+     */
+    private static final class Stripe {
+        private final int mask;
+        private final AtomicReferenceArray<byte[]> items;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong(0);
+
+        /// Only accessed by the drainer, which holds the drain lock
+        private long head = 0;
+
+        private Stripe(int capacity) {
+            mask = capacity - 1;
+            items = new AtomicReferenceArray<byte[]>(capacity);
+            sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; ++i) {
+                sequences.set(i, i);
+            }
+        }
+
+        private boolean offer(byte[] telemetry) {
+            long position = tail.get();
+            while (true) {
+                int index = (int) (position & mask);
+                long sequence = sequences.get(index);
+                if (sequence == position) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        items.lazySet(index, telemetry);
+                        sequences.lazySet(index, position + 1);
+                        return true;
+                    }
+                } else if (sequence < position) {
+                    // The drainer did not free that slot yet, the ring is full
+                    return false;
+                }
+
+                position = tail.get();
+            }
+        }
+
+        private int drainTo(List<byte[]> target, int maxItems) {
+            int drained = 0;
+            while (drained < maxItems) {
+                int index = (int) (head & mask);
+                if (sequences.get(index) != head + 1) {
+                    break;
+                }
+
+                target.add(items.get(index));
+                items.lazySet(index, null);
+                sequences.lazySet(index, head + mask + 1);
+                ++head;
+                ++drained;
+            }
+
+            return drained;
+        }
+    }
+
+    /**
+     * Lets the transmitter pick up the batch once the timeout expired.
+     * If the batch of 'expectedGeneration' was already sent the fetcher returns an empty collection.
+     */
+    private final class StripedBufferTelemetriesFetcher implements TelemetriesTransmitter.TelemetriesFetcher {
+        private final long expectedGeneration;
+
+        private StripedBufferTelemetriesFetcher(long expectedGeneration) {
+            this.expectedGeneration = expectedGeneration;
+        }
+
+        @Override
+        public Collection<byte[]> fetch() {
+            List<byte[]> readyToBeSent;
+            drainLock.lock();
+            try {
+                if (expectedGeneration != generation) {
+                    return Collections.emptyList();
+                }
+
+                readyToBeSent = drainBatch();
+                if (readyToBeSent.isEmpty() && pendingTelemetries.get() > 0) {
+                    // Items were counted but not written yet, give them another timeout
+                    scheduleSend(generation);
+                }
+            } finally {
+                drainLock.unlock();
+            }
+
+            sendFullBatches();
+
+            return readyToBeSent;
+        }
+    }
+
+    private final static int MAX_NUMBER_OF_STRIPES = 16;
+
+    private final static int STRIPE_CAPACITY = 1024;
+
+    /// The sender we use to send Telemetry containers
+    private final TelemetriesTransmitter sender;
+
+    private volatile int maxTelemetriesInBatch;
+    private final LimitsEnforcer maxTelemetriesInBatchEnforcer;
+
+    private volatile int transmitBufferTimeoutInSeconds;
+    private final LimitsEnforcer transmitBufferTimeoutInSecondsEnforcer;
+
+    private final Stripe[] stripes;
+    private final int stripesMask;
+
+    /// The number of telemetries that were added and not yet taken by the drainer
+    private final AtomicInteger pendingTelemetries = new AtomicInteger(0);
+
+    /// Incremented, under the drain lock, every time a batch is taken out of the stripes
+    private volatile long generation = 0;
+
+    /// Taken only by the drainer, application threads never wait for it
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    /// The stripe the next batch starts with, so no stripe is starved. Accessed under the drain lock
+    private int nextStripeToDrain = 0;
+
+    /**
+     * The constructor needs to get the 'sender' we work with
+     * @param sender The sender object for transmitting the telemetries
+     * @param maxTelemetriesInBatchEnforcer For getting the number of maximum number of telemetries in a batch within limits
+     * @param transmitBufferTimeoutInSecondsEnforcer For getting the number of transmit buffer timeout in seconds within limits
+     */
+    public StripedTelemetryBuffer(TelemetriesTransmitter sender, LimitsEnforcer maxTelemetriesInBatchEnforcer, LimitsEnforcer transmitBufferTimeoutInSecondsEnforcer) {
+        this(sender, maxTelemetriesInBatchEnforcer, transmitBufferTimeoutInSecondsEnforcer, Runtime.getRuntime().availableProcessors(), STRIPE_CAPACITY);
+    }
+
+    StripedTelemetryBuffer(TelemetriesTransmitter sender, LimitsEnforcer maxTelemetriesInBatchEnforcer, LimitsEnforcer transmitBufferTimeoutInSecondsEnforcer,
+                           int numberOfStripes, int stripeCapacity) {
+        Preconditions.checkNotNull(sender, "sender must be non-null value");
+        Preconditions.checkNotNull(maxTelemetriesInBatchEnforcer, "maxTelemetriesInBatchEnforcer must be non-null value");
+        Preconditions.checkNotNull(transmitBufferTimeoutInSecondsEnforcer, "transmitBufferTimeoutInSecondsEnforcer must be non-null value");
+        Preconditions.checkArgument(maxTelemetriesInBatchEnforcer.getCurrentValue() > 0, "maxTelemetriesInBatch must be a positive number");
+        Preconditions.checkArgument(transmitBufferTimeoutInSecondsEnforcer.getCurrentValue() > 0, "transmitBufferTimeoutInSeconds must be a positive number");
+        Preconditions.checkArgument(numberOfStripes > 0, "numberOfStripes must be a positive number");
+        Preconditions.checkArgument(stripeCapacity > 0, "stripeCapacity must be a positive number");
+
+        this.sender = sender;
+        this.maxTelemetriesInBatchEnforcer = maxTelemetriesInBatchEnforcer;
+        this.maxTelemetriesInBatch = maxTelemetriesInBatchEnforcer.getCurrentValue();
+        this.transmitBufferTimeoutInSecondsEnforcer = transmitBufferTimeoutInSecondsEnforcer;
+        this.transmitBufferTimeoutInSeconds = transmitBufferTimeoutInSecondsEnforcer.getCurrentValue();
+
+        int stripesCount = powerOfTwoAtLeast(Math.min(numberOfStripes, MAX_NUMBER_OF_STRIPES));
+        int capacity = powerOfTwoAtLeast(stripeCapacity);
+        stripes = new Stripe[stripesCount];
+        for (int i = 0; i < stripesCount; ++i) {
+            stripes[i] = new Stripe(capacity);
+        }
+        stripesMask = stripesCount - 1;
+    }
+
+    /**
+     * Sets the maximum number of telemetries in a batch
+     * @param value The max amount of Telemetries that are allowed in a batch.
+     */
+    @Override
+    public synchronized void setMaxTelemetriesInBatch(int value) {
+        maxTelemetriesInBatch = maxTelemetriesInBatchEnforcer.normalizeValue(value);
+        if (maxTelemetriesInBatch < pendingTelemetries.get()) {
+            // Request for smaller buffers, we flush if our buffer contains more elements
+            flush();
+        }
+    }
+
+    /**
+     * Gets the maximum number of telemetries in a batch
+     * @return The maximum number of telemetries in a batch
+     */
+    @Override
+    public int getMaxTelemetriesInBatch() {
+        return maxTelemetriesInBatch;
+    }
+
+    /**
+     * Sets the transmit buffer timeout in seconds
+     * @param value The amount of time to wait before sending the buffer.
+     */
+    @Override
+    public synchronized void setTransmitBufferTimeoutInSeconds(int value) {
+        int oldValue = transmitBufferTimeoutInSeconds;
+        transmitBufferTimeoutInSeconds = transmitBufferTimeoutInSecondsEnforcer.normalizeValue(value);
+        // Request for quicker flushes, we flush if the previous timeout is bigger
+        if (transmitBufferTimeoutInSeconds < oldValue) {
+            flush();
+        }
+    }
+
+    /**
+     * Gets the transmit buffer timeout in seconds
+     * @return The transmit buffer timeout in seconds
+     */
+    @Override
+    public int getTransmitBufferTimeoutInSeconds() {
+        return transmitBufferTimeoutInSeconds;
+    }
+
+    /**
+     * The method will add the telemetry to the stripe of the calling thread, falling back to the
+     * other stripes if that one is full.
+     *
+     * If that is the first telemetry of a batch, we schedule a 'pick-up' in a configurable amount of time
+     * If by adding that item the batch is full, we try to send it now.
+     *
+     * @param telemetry The serialized telemetry to add to the buffer.
+     */
+    @Override
+    public void add(byte[] telemetry) {
+        Preconditions.checkNotNull(telemetry, "Telemetry must be non null value");
+
+        // The counter is incremented before the item is written, so the drainer never takes more than was counted
+        int currentSize = pendingTelemetries.incrementAndGet();
+        if (!offer(telemetry)) {
+            pendingTelemetries.decrementAndGet();
+            InternalLogger.INSTANCE.error("Telemetry buffer is full, telemetry is dropped");
+            return;
+        }
+
+        if (currentSize >= maxTelemetriesInBatch) {
+            sendFullBatches();
+        } else if (currentSize == 1) {
+            scheduleSend(generation);
+        }
+    }
+
+    /**
+     * The method will flush the telemetries currently in the buffer to the {@link com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter}
+     */
+    @Override
+    public void flush() {
+        drainLock.lock();
+        try {
+            while (true) {
+                List<byte[]> readyToBeSent = drainBatch();
+                if (readyToBeSent.isEmpty()) {
+                    break;
+                }
+
+                if (!sender.sendNow(readyToBeSent)) {
+                    InternalLogger.INSTANCE.error("Failed to flush buffer data to network");
+                }
+            }
+        } finally {
+            drainLock.unlock();
+        }
+
+        sendFullBatches();
+    }
+
+    /**
+     * The buffer holds no resources, stopping it is a flush.
+     */
+    @Override
+    public void stop() {
+        flush();
+    }
+
+    private boolean offer(byte[] telemetry) {
+        int first = stripeIndexOfCurrentThread();
+        for (int i = 0; i < stripes.length; ++i) {
+            if (stripes[(first + i) & stripesMask].offer(telemetry)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sends full batches as long as there are any and the drain lock is free.
+     * The condition is checked again after the lock is released, so a batch that was filled
+     * while another thread was draining is not left behind.
+     */
+    private void sendFullBatches() {
+        while (pendingTelemetries.get() >= maxTelemetriesInBatch && drainLock.tryLock()) {
+            try {
+                while (pendingTelemetries.get() >= maxTelemetriesInBatch) {
+                    List<byte[]> readyToBeSent = drainBatch();
+                    if (readyToBeSent.isEmpty()) {
+                        // The rest is still being written, those writers will check the size again
+                        return;
+                    }
+
+                    if (!sender.sendNow(readyToBeSent)) {
+                        // The batch was already taken out of the buffer so it is lost
+                        InternalLogger.INSTANCE.error("Failed to send buffer data to network");
+                    }
+                }
+            } finally {
+                drainLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * The method assumes that the drain lock is held before calling it.
+     *
+     * Takes up to 'maxTelemetriesInBatch' telemetries out of the stripes. If telemetries are left behind
+     * a new 'pick-up' is scheduled for them since their batch now starts a new generation.
+     *
+     * @return The telemetries that are ready to be sent
+     */
+    private List<byte[]> drainBatch() {
+        int maxItems = maxTelemetriesInBatch;
+        List<byte[]> readyToBeSent = new ArrayList<byte[]>(maxItems);
+        for (int i = 0; i < stripes.length && readyToBeSent.size() < maxItems; ++i) {
+            stripes[(nextStripeToDrain + i) & stripesMask].drainTo(readyToBeSent, maxItems - readyToBeSent.size());
+        }
+        nextStripeToDrain = (nextStripeToDrain + 1) & stripesMask;
+
+        if (readyToBeSent.isEmpty()) {
+            return readyToBeSent;
+        }
+
+        ++generation;
+        if (pendingTelemetries.addAndGet(-readyToBeSent.size()) > 0) {
+            scheduleSend(generation);
+        }
+
+        return readyToBeSent;
+    }
+
+    private void scheduleSend(long expectedGeneration) {
+        if (!sender.scheduleSend(new StripedBufferTelemetriesFetcher(expectedGeneration), transmitBufferTimeoutInSeconds, TimeUnit.SECONDS)) {
+            // The telemetries stay in the buffer and will be sent with the next full batch or flush
+            InternalLogger.INSTANCE.error("Failed to schedule send of the buffer to network");
+        }
+    }
+
+    private int stripeIndexOfCurrentThread() {
+        long id = Thread.currentThread().getId();
+        id ^= (id >>> 16);
+        id *= 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 32) & stripesMask;
+    }
+
+    private static int powerOfTwoAtLeast(int value) {
+        int result = 1;
+        while (result < value) {
+            result <<= 1;
+        }
+
+        return result;
+    }
+}
@@ -27,7 +27,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.microsoft.applicationinsights.internal.channel.TelemetriesBuffer;
 import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
@@ -43,9 +45,12 @@ import com.microsoft.applicationinsights.telemetry.Telemetry;
  *
  * The class is responsible for handing the corner cases that might rise
  *
+ * When created with a {@link GzipTelemetryBatchEncoder} the telemetries are compressed as they are added,
+ * and the buffer hands ready {@link Transmission} instances to the sender.
+ *
  * Created by gupele on 12/17/2014.
  */
-public final class TelemetryBuffer {
+public final class TelemetryBuffer implements TelemetriesBuffer {
     /**
      * An inner helper class that will let the Sender class to fetch the relevant Telemetries.
      *
@@ -62,15 +67,21 @@ public final class TelemetryBuffer {
         }
 
         @Override
-        public Collection<String> fetch() {
+        public Collection<byte[]> fetch() {
             synchronized (lock) {
                 if (expectedGeneration != generation) {
                     return Collections.emptyList();
                 }
 
                 ++generation;
-                List<String> readyToBeSent = telemetries;
-                telemetries = new ArrayList<String>();
+                if (encoder != null) {
+                    // Already on a channel thread, the compressed batch is dispatched and nothing is left to serialize
+                    sendEncodedBatch();
+                    return Collections.emptyList();
+                }
+
+                List<byte[]> readyToBeSent = telemetries;
+                telemetries = new ArrayList<byte[]>();
 
                 return readyToBeSent;
             }
@@ -89,7 +100,10 @@ public final class TelemetryBuffer {
     private LimitsEnforcer transmitBufferTimeoutInSecondsEnforcer;
 
     /// The Telemetry instances are kept here
-    private List<String> telemetries;
+    private List<byte[]> telemetries;
+
+    /// When not null the Telemetry instances are compressed into it instead of kept in 'telemetries'
+    private GzipTelemetryBatchEncoder encoder;
 
     /// A way to help incoming threads make sure they are picking up the right Telemetry container
     private long generation = 0;
@@ -104,6 +118,17 @@ public final class TelemetryBuffer {
      * @param transmitBufferTimeoutInSecondsEnforcer For getting the number of transmit buffer timeout in seconds within limits
      */
     public TelemetryBuffer(TelemetriesTransmitter sender, LimitsEnforcer maxTelemetriesInBatchEnforcer, LimitsEnforcer transmitBufferTimeoutInSecondsEnforcer) {
+        this(sender, maxTelemetriesInBatchEnforcer, transmitBufferTimeoutInSecondsEnforcer, null);
+    }
+
+    /**
+     * The constructor needs to get the 'sender' we work with
+     * @param sender The sender object for transmitting the telemetries
+     * @param maxTelemetriesInBatchEnforcer For getting the number of maximum number of telemetries in a batch within limits
+     * @param transmitBufferTimeoutInSecondsEnforcer For getting the number of transmit buffer timeout in seconds within limits
+     * @param encoder The encoder to compress the telemetries while they are added, null to keep them as is until sent
+     */
+    public TelemetryBuffer(TelemetriesTransmitter sender, LimitsEnforcer maxTelemetriesInBatchEnforcer, LimitsEnforcer transmitBufferTimeoutInSecondsEnforcer, GzipTelemetryBatchEncoder encoder) {
         Preconditions.checkNotNull(sender, "sender must be non-null value");
         Preconditions.checkNotNull(maxTelemetriesInBatchEnforcer, "maxTelemetriesInBatchEnforcer must be non-null value");
         Preconditions.checkNotNull(transmitBufferTimeoutInSecondsEnforcer, "transmitBufferTimeoutInSecondsEnforcer must be non-null value");
@@ -112,7 +137,8 @@ public final class TelemetryBuffer {
 
         this.maxTelemetriesInBatchEnforcer = maxTelemetriesInBatchEnforcer;
         this.maxTelemetriesInBatch = maxTelemetriesInBatchEnforcer.getCurrentValue();
-        telemetries = new ArrayList<String>(this.maxTelemetriesInBatch);
+        this.encoder = encoder;
+        telemetries = encoder == null ? new ArrayList<byte[]>(this.maxTelemetriesInBatch) : new ArrayList<byte[]>(0);
 
         this.sender = sender;
         this.transmitBufferTimeoutInSecondsEnforcer = transmitBufferTimeoutInSecondsEnforcer;
@@ -123,10 +149,11 @@ public final class TelemetryBuffer {
      * Sets the maximum number of telemetries in a batch
      * @param value The max amount of Telemetries that are allowed in a batch.
      */
+    @Override
     public void setMaxTelemetriesInBatch(int value) {
         synchronized (lock) {
             maxTelemetriesInBatch = maxTelemetriesInBatchEnforcer.normalizeValue(value);
-            if (telemetries != null && maxTelemetriesInBatch < telemetries.size()) {
+            if (maxTelemetriesInBatch < size()) {
                 // Request for smaller buffers, we flush if our buffer contains more elements
                 flush();
             }
@@ -137,6 +164,7 @@ public final class TelemetryBuffer {
      * Gets the maximum number of telemetries in a batch
      * @return The maximum number of telemetries in a batch
      */
+    @Override
     public int getMaxTelemetriesInBatch() {
         return this.maxTelemetriesInBatch;
     }
@@ -145,6 +173,7 @@ public final class TelemetryBuffer {
      * Sets the transmit buffer timeout in seconds
      * @param value The amount of time to wait before sending the buffer.
      */
+    @Override
     public void setTransmitBufferTimeoutInSeconds(int value) {
         synchronized (lock) {
             int oldValue = transmitBufferTimeoutInSeconds;
@@ -160,6 +189,7 @@ public final class TelemetryBuffer {
      * Gets the transmit buffer timeout in seconds
      * @return The transmit buffer timeout in seconds
      */
+    @Override
     public int getTransmitBufferTimeoutInSeconds() {
         return this.transmitBufferTimeoutInSeconds;
     }
@@ -174,16 +204,24 @@ public final class TelemetryBuffer {
      * move from a ready to send buffer to a new one
      * @param telemetry The {@link com.microsoft.applicationinsights.telemetry.Telemetry} to add to the buffer.
      */
-    public void add(String telemetry) {
+    @Override
+    public void add(byte[] telemetry) {
         Preconditions.checkNotNull(telemetry, "Telemetry must be non null value");
 
         synchronized (lock) {
-            telemetries.add(telemetry);
+            if (encoder != null) {
+                encoder.add(telemetry);
+            } else {
+                telemetries.add(telemetry);
+            }
 
-            int currentSize = telemetries.size();
+            int currentSize = size();
 
             if (currentSize >= maxTelemetriesInBatch) {
-                if (!sender.sendNow(prepareTelemetriesForSend())) {
+                if (encoder != null) {
+                    ++generation;
+                    sendEncodedBatch();
+                } else if (!sender.sendNow(prepareTelemetriesForSend())) {
                     // 'prepareTelemetriesForSend' already created a new container
                     // so basically we have nothing to do, the old container is lost
                     InternalLogger.INSTANCE.error("Failed to send buffer data to network");
@@ -194,7 +232,11 @@ public final class TelemetryBuffer {
                     // The reason for this is that in case the maximum buffer size is greater than 2
                     // than in case a new Telemetry arrives it won't trigger the schedule and might be lost too
                     InternalLogger.INSTANCE.error("Failed to schedule send of the buffer to network");
-                    telemetries.clear();
+                    if (encoder != null) {
+                        encoder.finish();
+                    } else {
+                        telemetries.clear();
+                    }
                 }
             }
         }
@@ -203,16 +245,53 @@ public final class TelemetryBuffer {
     /**
      * The method will flush the telemetries currently in the buffer to the {@link com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter}
      */
+    @Override
     public void flush() {
         synchronized (lock) {
-            if (telemetries.size() != 0) {
-                if (!sender.sendNow(prepareTelemetriesForSend())) {
+            if (size() != 0) {
+                if (encoder != null) {
+                    ++generation;
+                    sendEncodedBatch();
+                } else if (!sender.sendNow(prepareTelemetriesForSend())) {
                     InternalLogger.INSTANCE.error("Failed to flush buffer data to network");
                 }
             }
         }
     }
 
+    /**
+     * Flushes the buffer and releases the native resources of the encoder, if any.
+     * The telemetries added afterwards are kept as is, and serialized when sent.
+     */
+    @Override
+    public void stop() {
+        synchronized (lock) {
+            flush();
+            if (encoder != null) {
+                encoder.end();
+                encoder = null;
+                telemetries = new ArrayList<byte[]>(maxTelemetriesInBatch);
+            }
+        }
+    }
+
+    /**
+     * The method assumes that the lock is held before calling it.
+     */
+    private int size() {
+        return encoder != null ? encoder.size() : telemetries.size();
+    }
+
+    /**
+     * The method assumes that the lock is held before calling it, and that the generation was already incremented.
+     */
+    private void sendEncodedBatch() {
+        Optional<Transmission> transmission = encoder.finish();
+        if (transmission.isPresent() && !sender.sendNow(transmission.get())) {
+            InternalLogger.INSTANCE.error("Failed to send buffer data to network");
+        }
+    }
+
     /**
      * The method assumes that the lock is held before calling it.
      *
@@ -220,12 +299,12 @@ public final class TelemetryBuffer {
      *
      * @return The list of {@link Telemetry} instances that are ready to be sent
      */
-    private List<String> prepareTelemetriesForSend() {
+    private List<byte[]> prepareTelemetriesForSend() {
         ++generation;
 
-        final List<String> readyToBeSent = telemetries;
+        final List<byte[]> readyToBeSent = telemetries;
 
-        telemetries = new ArrayList<String>(maxTelemetriesInBatch);
+        telemetries = new ArrayList<byte[]>(maxTelemetriesInBatch);
 
         return readyToBeSent;
     }
@@ -44,7 +44,7 @@ import java.util.Comparator;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
-import com.microsoft.applicationinsights.internal.channel.TransmissionOutput;
+import com.microsoft.applicationinsights.internal.channel.TransmissionsStorage;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 
 import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
@@ -66,7 +66,7 @@ import com.google.common.collect.Lists;
  *
  * Created by gupele on 12/18/2014.
  */
-public final class TransmissionFileSystemOutput implements TransmissionOutput {
+public final class TransmissionFileSystemOutput implements TransmissionsStorage {
     private final static String TRANSMISSION_FILE_PREFIX = "Transmission";
     private final static String TRANSMISSION_DEFAULT_FOLDER = "transmissions";
     private final static String TEMP_FILE_EXTENSION = ".tmp";
@@ -158,7 +158,8 @@ public final class TransmissionFileSystemOutput implements TransmissionOutput {
     public void stop(long timeout, TimeUnit timeUnit) {
     }
 
-    public Transmission fetchOldestFile() {
+    @Override
+    public Transmission fetchOldest() {
         try {
             Optional<File> oldestFile = fetchOldestFromCache();
             if (!oldestFile.isPresent()) {
@@ -201,6 +202,11 @@ public final class TransmissionFileSystemOutput implements TransmissionOutput {
         return null;
     }
 
+    @Override
+    public long getSizeInBytes() {
+        return size.get();
+    }
+
     public void setCapacity(int suggestedCapacity) {
         this.capacityInKB = capacityEnforcer.normalizeValue(suggestedCapacity) * 1024;
     }
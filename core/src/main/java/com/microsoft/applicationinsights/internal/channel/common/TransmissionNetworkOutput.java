@@ -26,25 +26,15 @@ import com.google.common.base.Strings;
 import com.microsoft.applicationinsights.internal.channel.TransmissionDispatcher;
 import com.microsoft.applicationinsights.internal.channel.TransmissionOutput;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
-import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.entity.ByteArrayEntity;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.SocketException;
 import java.net.UnknownHostException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -57,10 +47,8 @@ import java.util.concurrent.TimeUnit;
 public final class TransmissionNetworkOutput implements TransmissionOutput {
     private final static String CONTENT_TYPE_HEADER = "Content-Type";
     private final static String CONTENT_ENCODING_HEADER = "Content-Encoding";
-    private final static String RESPONSE_THROTTLING_HEADER = "Retry-After";
-    private final static String RESPONSE_RETRY_AFTER_DATE_FORMAT = "E, dd MMM yyyy HH:mm:ss";
 
-    private final static String DEFAULT_SERVER_URI = "https://dc.services.visualstudio.com/v2/track";
+    final static String DEFAULT_SERVER_URI = "https://dc.services.visualstudio.com/v2/track";
     private final static int DEFAULT_BACKOFF_TIME_SECONDS = 300;
 
     // For future use: re-send a failed transmission back to the dispatcher
@@ -75,6 +63,9 @@ public final class TransmissionNetworkOutput implements TransmissionOutput {
 
     private TransmissionPolicyManager transmissionPolicyManager;
 
+    // Gets the outcome of the sends, to pace the replay of persisted transmissions
+    private volatile TransmissionReplayController replayController;
+
     public static TransmissionNetworkOutput create(TransmissionPolicyManager transmissionPolicyManager) {
         return create(DEFAULT_SERVER_URI, transmissionPolicyManager);
     }
@@ -100,6 +91,10 @@ public final class TransmissionNetworkOutput implements TransmissionOutput {
         this.transmissionDispatcher = transmissionDispatcher;
     }
 
+    public void setReplayController(TransmissionReplayController replayController) {
+        this.replayController = replayController;
+    }
+
     /**
      * Stops all threads from sending data.
      * @param timeout The timeout to wait, which is not relevant here.
@@ -124,6 +119,7 @@ public final class TransmissionNetworkOutput implements TransmissionOutput {
      */
     @Override
     public boolean send(Transmission transmission) {
+        TransmissionReplayController controller = replayController;
         while (!stopped) {
             if (transmissionPolicyManager.getTransmissionPolicyState().getCurrentState() != TransmissionPolicy.UNBLOCKED) {
                 return false;
@@ -133,23 +129,27 @@ public final class TransmissionNetworkOutput implements TransmissionOutput {
             HttpPost request = null;
             boolean shouldBackoff = false;
             try {
-                request = createTransmissionPostRequest(transmission);
+                request = createTransmissionPostRequest(serverUri, transmission);
                 httpClient.enhanceRequest(request);
 
+                long start = System.nanoTime();
                 response = httpClient.sendPostRequest(request);
 
                 HttpEntity respEntity = response.getEntity();
                 int code = response.getStatusLine().getStatusCode();
 
-                TransmissionSendResult sendResult = translateResponse(code, respEntity);
+                TransmissionSendResult sendResult = TransmissionResponses.translateResponse(code, respEntity);
+                if (controller != null) {
+                    TransmissionResponses.reportSendResult(controller, sendResult, code, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
                 switch (sendResult) {
                     case PAYMENT_REQUIRED:
                     case THROTTLED:
-                        suspendTransmissions(TransmissionPolicy.BLOCKED_BUT_CAN_BE_PERSISTED, response);
+                        TransmissionResponses.suspendTransmissions(transmissionPolicyManager, TransmissionPolicy.BLOCKED_BUT_CAN_BE_PERSISTED, response);
                         break;
 
                     case THROTTLED_OVER_EXTENDED_TIME:
-                        suspendTransmissions(TransmissionPolicy.BLOCKED_AND_CANNOT_BE_PERSISTED, response);
+                        TransmissionResponses.suspendTransmissions(transmissionPolicyManager, TransmissionPolicy.BLOCKED_AND_CANNOT_BE_PERSISTED, response);
                         break;
 
                     default:
@@ -181,6 +181,10 @@ public final class TransmissionNetworkOutput implements TransmissionOutput {
                 httpClient.dispose(response);
                 // backoff before trying again
                 if (shouldBackoff) {
+                    if (controller != null) {
+                        controller.onSendFailed();
+                    }
+
                     InternalLogger.INSTANCE.trace("Backing off for %s seconds", DEFAULT_BACKOFF_TIME_SECONDS);
                     transmissionPolicyManager.suspendInSeconds(TransmissionPolicy.BLOCKED_BUT_CAN_BE_PERSISTED, DEFAULT_BACKOFF_TIME_SECONDS);
                 }
@@ -190,130 +194,7 @@ public final class TransmissionNetworkOutput implements TransmissionOutput {
         return true;
     }
 
-    private void suspendTransmissions(TransmissionPolicy suspensionPolicy, HttpResponse response) {
-        Header retryAfterHeader = response.getFirstHeader(RESPONSE_THROTTLING_HEADER);
-        if (retryAfterHeader == null) {
-            return;
-        }
-
-        String retryAfterAsString = retryAfterHeader.getValue();
-        if (Strings.isNullOrEmpty(retryAfterAsString)) {
-            return;
-        }
-
-        try {
-            DateFormat formatter = new SimpleDateFormat(RESPONSE_RETRY_AFTER_DATE_FORMAT);
-            Date date = formatter.parse(retryAfterAsString);
-
-            Date now = Calendar.getInstance().getTime();
-            long retryAfterAsSeconds = (date.getTime() - convertToDateToGmt(now).getTime())/1000;
-            transmissionPolicyManager.suspendInSeconds(suspensionPolicy, retryAfterAsSeconds);
-        } catch (Throwable e) {
-            InternalLogger.INSTANCE.logAlways(InternalLogger.LoggingLevel.ERROR, "Throttled but failed to block transmission, exception: %s", e.getMessage());
-        }
-    }
-
-    private  static Date convertToDateToGmt(Date date){
-        TimeZone tz = TimeZone.getDefault();
-        Date ret = new Date(date.getTime() - tz.getRawOffset());
-
-        // If we are now in DST, back off by the delta.  Note that we are checking the GMT date, this is the KEY.
-        if (tz.inDaylightTime(ret)) {
-            Date dstDate = new Date(ret.getTime() - tz.getDSTSavings());
-
-            // Check to make sure we have not crossed back into standard time
-            if (tz.inDaylightTime(dstDate)) {
-                ret = dstDate;
-            }
-        }
-        return ret;
-    }
-
-    private TransmissionSendResult translateResponse(int code, HttpEntity respEntity) {
-        if (code == HttpStatus.SC_OK) {
-            return TransmissionSendResult.SENT_SUCCESSFULLY;
-        }
-
-        TransmissionSendResult result;
-
-        String errorMessage;
-        if (code < HttpStatus.SC_OK ||
-                (code >= HttpStatus.SC_MULTIPLE_CHOICES && code < HttpStatus.SC_BAD_REQUEST) ||
-                code > HttpStatus.SC_INTERNAL_SERVER_ERROR) {
-
-            errorMessage = String.format("Unexpected response code: %d", code);
-            result = TransmissionSendResult.REJECTED_BY_SERVER;
-        } else {
-            switch (code) {
-                case HttpStatus.SC_BAD_REQUEST:
-                    errorMessage = "Bad request ";
-                    result = TransmissionSendResult.BAD_REQUEST;
-                    break;
-
-                case 429:
-                    result = TransmissionSendResult.THROTTLED;
-                    errorMessage = "Throttling (All messages of the transmission were rejected) ";
-                    break;
-
-                case 439:
-                    result = TransmissionSendResult.THROTTLED_OVER_EXTENDED_TIME;
-                    errorMessage = "Throttling extended";
-                    break;
-
-                case 402:
-                    result = TransmissionSendResult.PAYMENT_REQUIRED;
-                    errorMessage = "Throttling: payment required";
-                    break;
-
-                case HttpStatus.SC_PARTIAL_CONTENT:
-                    result = TransmissionSendResult.PARTIALLY_THROTTLED;
-                    errorMessage = "Throttling (Partial messages of the transmission were rejected) ";
-                    break;
-
-                case HttpStatus.SC_INTERNAL_SERVER_ERROR:
-                    errorMessage = "Internal server error ";
-                    result = TransmissionSendResult.INTERNAL_SERVER_ERROR;
-                    break;
-
-                default:
-                    result = TransmissionSendResult.REJECTED_BY_SERVER;
-                    errorMessage = String.format("Error, response code: %d", code);
-                    break;
-            }
-        }
-
-        logError(errorMessage, respEntity);
-        return result;
-    }
-
-    private void logError(String baseErrorMessage, HttpEntity respEntity) {
-        if (respEntity == null || !InternalLogger.INSTANCE.isErrorEnabled()) {
-            InternalLogger.INSTANCE.error(baseErrorMessage);
-            return;
-        }
-
-        InputStream inputStream = null;
-        try {
-            inputStream = respEntity.getContent();
-            InputStreamReader streamReader = new InputStreamReader(inputStream, "UTF-8");
-            BufferedReader reader = new BufferedReader(streamReader);
-            String responseLine = reader.readLine();
-            respEntity.getContent().close();
-
-            InternalLogger.INSTANCE.error("Failed to send, %s : %s", baseErrorMessage, responseLine);
-        } catch (IOException e) {
-            InternalLogger.INSTANCE.error("Failed to send, %s, failed to log the error", baseErrorMessage);
-        } finally {
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                } catch (IOException e) {
-                }
-            }
-        }
-    }
-
-    private HttpPost createTransmissionPostRequest(Transmission transmission) {
+    static HttpPost createTransmissionPostRequest(String serverUri, Transmission transmission) {
         HttpPost request = new HttpPost(serverUri);
         request.addHeader(CONTENT_TYPE_HEADER, transmission.getWebContentType());
         request.addHeader(CONTENT_ENCODING_HEADER, transmission.getWebContentEncodingType());
@@ -30,6 +30,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.shutdown.SDKShutdownActivity;
+import com.microsoft.applicationinsights.internal.shutdown.ShutdownPhase;
 import com.microsoft.applicationinsights.internal.shutdown.Stoppable;
 import com.microsoft.applicationinsights.internal.util.ThreadPoolUtils;
 
@@ -158,6 +159,6 @@ public final class TransmissionPolicyManager implements Stoppable {
             }
         });
 
-        SDKShutdownActivity.INSTANCE.register(this);
+        SDKShutdownActivity.INSTANCE.register(this, ShutdownPhase.TRANSMISSION);
     }
 }
@@ -0,0 +1,158 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The class decides how fast the {@link ActiveTransmissionLoader} replays persisted transmissions.
+ *
+ * The network output reports the outcome of every send, with its latency. From that the class keeps:
+ *
+ *      The concurrency, the number of sends that can be in flight before replaying another transmission.
+ *      The pause the loader takes after every replayed transmission.
+ *
+ * The concurrency grows by one, and the pause is halved, after a 'concurrency' number of fast successful sends.
+ * Throttling (429, 439, 402 or 503) and failures cut the concurrency by half and make the pause longer,
+ * a latency that grows well above the best one seen lately lowers the concurrency by one.
+ * When the transmission policy blocks the sends the replay starts over from a concurrency of one.
+ *
+ * The class also counts the replayed transmissions so the drain rate can be reported.
+ */
+public final class TransmissionReplayController {
+    private final static long MAX_PAUSE_IN_MILLIS = 2000;
+    private final static long INITIAL_PAUSE_IN_MILLIS = 100;
+    private final static long THROTTLED_MIN_PAUSE_IN_MILLIS = 500;
+
+    // A latency above this factor of the baseline is considered as the server being loaded
+    private final static double LATENCY_FACTOR_TO_SLOW_DOWN = 2.0;
+    private final static double LATENCY_SMOOTHING = 0.2;
+    // Lets the baseline follow a server that became slower for good
+    private final static double BASELINE_DRIFT = 1.01;
+
+    private final int maxConcurrency;
+
+    private final AtomicInteger inFlightSends = new AtomicInteger(0);
+
+    private final AtomicLong replayedTransmissions = new AtomicLong(0);
+    private final AtomicLong replayedBytes = new AtomicLong(0);
+
+    private volatile int concurrency = 1;
+    private volatile long pauseInMillis = INITIAL_PAUSE_IN_MILLIS;
+
+    private int successesSinceLastChange;
+    private double smoothedLatencyInMillis = -1;
+    private double baselineLatencyInMillis = -1;
+
+    public TransmissionReplayController(int maxConcurrency) {
+        Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be a positive number");
+
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @return True if the number of sends in flight allows replaying another transmission
+     */
+    public boolean canReplay() {
+        return inFlightSends.get() < concurrency;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public long getPauseInMillis() {
+        return pauseInMillis;
+    }
+
+    public int getInFlightSends() {
+        return inFlightSends.get();
+    }
+
+    public long getReplayedTransmissions() {
+        return replayedTransmissions.get();
+    }
+
+    public long getReplayedBytes() {
+        return replayedBytes.get();
+    }
+
+    public void onReplayed(Transmission transmission) {
+        replayedTransmissions.incrementAndGet();
+        replayedBytes.addAndGet(transmission.getContent().length);
+    }
+
+    public void onSendStarted() {
+        inFlightSends.incrementAndGet();
+    }
+
+    public void onSendEnded() {
+        inFlightSends.decrementAndGet();
+    }
+
+    public synchronized void onSendSucceeded(long latencyInMillis) {
+        if (smoothedLatencyInMillis < 0) {
+            smoothedLatencyInMillis = baselineLatencyInMillis = latencyInMillis;
+        } else {
+            smoothedLatencyInMillis += LATENCY_SMOOTHING * (latencyInMillis - smoothedLatencyInMillis);
+            baselineLatencyInMillis = Math.min(latencyInMillis, baselineLatencyInMillis * BASELINE_DRIFT);
+        }
+
+        if (smoothedLatencyInMillis > LATENCY_FACTOR_TO_SLOW_DOWN * Math.max(baselineLatencyInMillis, 1)) {
+            concurrency = Math.max(1, concurrency - 1);
+            pauseInMillis = Math.min(MAX_PAUSE_IN_MILLIS, Math.max(pauseInMillis * 2, 10));
+            successesSinceLastChange = 0;
+            return;
+        }
+
+        ++successesSinceLastChange;
+        if (successesSinceLastChange >= concurrency) {
+            concurrency = Math.min(maxConcurrency, concurrency + 1);
+            pauseInMillis = pauseInMillis / 2;
+            successesSinceLastChange = 0;
+        }
+    }
+
+    public synchronized void onSendThrottled() {
+        concurrency = Math.max(1, concurrency / 2);
+        pauseInMillis = Math.min(MAX_PAUSE_IN_MILLIS, Math.max(pauseInMillis * 4, THROTTLED_MIN_PAUSE_IN_MILLIS));
+        successesSinceLastChange = 0;
+    }
+
+    public synchronized void onSendFailed() {
+        concurrency = Math.max(1, concurrency / 2);
+        pauseInMillis = Math.min(MAX_PAUSE_IN_MILLIS, Math.max(pauseInMillis * 2, INITIAL_PAUSE_IN_MILLIS));
+        successesSinceLastChange = 0;
+    }
+
+    /**
+     * Called while the transmission policy does not let the transmissions be sent.
+     */
+    public synchronized void onBlocked() {
+        concurrency = 1;
+        pauseInMillis = Math.max(pauseInMillis, INITIAL_PAUSE_IN_MILLIS);
+        successesSinceLastChange = 0;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.perfcounter.PerformanceCounter;
+import com.microsoft.applicationinsights.internal.perfcounter.PerformanceCounterContainer;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Reports the state of the replay of persisted transmissions done by an {@link ActiveTransmissionLoader}:
+ * the backlog size, the drain rate since the previous report and the current replay concurrency.
+ *
+ * The counter removes itself from the {@link PerformanceCounterContainer} once the loader is stopped.
+ */
+public final class TransmissionReplayPerformanceCounter implements PerformanceCounter {
+    public final static String BACKLOG_SIZE_NAME = "Transmission Backlog Size (bytes)";
+    public final static String DRAIN_RATE_NAME = "Transmission Drain Rate (transmissions/sec)";
+    public final static String DRAIN_RATE_IN_BYTES_NAME = "Transmission Drain Rate (bytes/sec)";
+    public final static String REPLAY_CONCURRENCY_NAME = "Transmission Replay Concurrency";
+
+    private final static String ID_PREFIX = "TransmissionReplay";
+    private final static AtomicInteger instances = new AtomicInteger(0);
+
+    private final String id;
+    private final ActiveTransmissionLoader loader;
+
+    private long prevTimeInNanos;
+    private long prevReplayedTransmissions;
+    private long prevReplayedBytes;
+
+    public TransmissionReplayPerformanceCounter(ActiveTransmissionLoader loader) {
+        Preconditions.checkNotNull(loader, "loader must be a non-null value");
+
+        this.id = ID_PREFIX + instances.incrementAndGet();
+        this.loader = loader;
+
+        TransmissionReplayController controller = loader.getReplayController();
+        prevTimeInNanos = System.nanoTime();
+        prevReplayedTransmissions = controller.getReplayedTransmissions();
+        prevReplayedBytes = controller.getReplayedBytes();
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public synchronized void report(TelemetryClient telemetryClient) {
+        if (loader.isStopped()) {
+            PerformanceCounterContainer.INSTANCE.unregister(this);
+            return;
+        }
+
+        TransmissionReplayController controller = loader.getReplayController();
+
+        long now = System.nanoTime();
+        long replayedTransmissions = controller.getReplayedTransmissions();
+        long replayedBytes = controller.getReplayedBytes();
+        double elapsedInSeconds = Math.max((now - prevTimeInNanos) / 1000000000.0, 0.001);
+
+        double drainRate = (replayedTransmissions - prevReplayedTransmissions) / elapsedInSeconds;
+        double drainRateInBytes = (replayedBytes - prevReplayedBytes) / elapsedInSeconds;
+
+        prevTimeInNanos = now;
+        prevReplayedTransmissions = replayedTransmissions;
+        prevReplayedBytes = replayedBytes;
+
+        long backlogSize = loader.getBacklogSizeInBytes();
+        InternalLogger.INSTANCE.trace("Transmission replay: backlog %d bytes, drain rate %.2f transmissions/sec, concurrency %d", backlogSize, drainRate, controller.getConcurrency());
+
+        send(telemetryClient, BACKLOG_SIZE_NAME, backlogSize);
+        send(telemetryClient, DRAIN_RATE_NAME, drainRate);
+        send(telemetryClient, DRAIN_RATE_IN_BYTES_NAME, drainRateInBytes);
+        send(telemetryClient, REPLAY_CONCURRENCY_NAME, controller.getConcurrency());
+    }
+
+    private static void send(TelemetryClient telemetryClient, String name, double value) {
+        MetricTelemetry telemetry = new MetricTelemetry(name, value);
+        telemetry.markAsCustomPerfCounter();
+        telemetryClient.track(telemetry);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+import com.google.common.base.Strings;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+
+/**
+ * The handling of the server responses that is shared by the network outputs:
+ * translating the response code, suspending the transmissions when throttled
+ * and reporting the outcome to the {@link TransmissionReplayController}.
+ */
+final class TransmissionResponses {
+    private final static String RESPONSE_THROTTLING_HEADER = "Retry-After";
+    private final static String RESPONSE_RETRY_AFTER_DATE_FORMAT = "E, dd MMM yyyy HH:mm:ss";
+
+    private TransmissionResponses() {
+    }
+
+    static void reportSendResult(TransmissionReplayController controller, TransmissionSendResult sendResult, int code, long latencyInMillis) {
+        switch (sendResult) {
+            case PAYMENT_REQUIRED:
+            case THROTTLED:
+            case THROTTLED_OVER_EXTENDED_TIME:
+                controller.onSendThrottled();
+                break;
+
+            case INTERNAL_SERVER_ERROR:
+                controller.onSendFailed();
+                break;
+
+            default:
+                if (code == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+                    controller.onSendThrottled();
+                } else {
+                    controller.onSendSucceeded(latencyInMillis);
+                }
+                break;
+        }
+    }
+
+    static void suspendTransmissions(TransmissionPolicyManager transmissionPolicyManager, TransmissionPolicy suspensionPolicy, HttpResponse response) {
+        Header retryAfterHeader = response.getFirstHeader(RESPONSE_THROTTLING_HEADER);
+        if (retryAfterHeader == null) {
+            return;
+        }
+
+        String retryAfterAsString = retryAfterHeader.getValue();
+        if (Strings.isNullOrEmpty(retryAfterAsString)) {
+            return;
+        }
+
+        try {
+            DateFormat formatter = new SimpleDateFormat(RESPONSE_RETRY_AFTER_DATE_FORMAT);
+            Date date = formatter.parse(retryAfterAsString);
+
+            Date now = Calendar.getInstance().getTime();
+            long retryAfterAsSeconds = (date.getTime() - convertToDateToGmt(now).getTime())/1000;
+            transmissionPolicyManager.suspendInSeconds(suspensionPolicy, retryAfterAsSeconds);
+        } catch (Throwable e) {
+            InternalLogger.INSTANCE.logAlways(InternalLogger.LoggingLevel.ERROR, "Throttled but failed to block transmission, exception: %s", e.getMessage());
+        }
+    }
+
+    private static Date convertToDateToGmt(Date date){
+        TimeZone tz = TimeZone.getDefault();
+        Date ret = new Date(date.getTime() - tz.getRawOffset());
+
+        // If we are now in DST, back off by the delta.  Note that we are checking the GMT date, this is the KEY.
+        if (tz.inDaylightTime(ret)) {
+            Date dstDate = new Date(ret.getTime() - tz.getDSTSavings());
+
+            // Check to make sure we have not crossed back into standard time
+            if (tz.inDaylightTime(dstDate)) {
+                ret = dstDate;
+            }
+        }
+        return ret;
+    }
+
+    static TransmissionSendResult translateResponse(int code, HttpEntity respEntity) {
+        if (code == HttpStatus.SC_OK) {
+            return TransmissionSendResult.SENT_SUCCESSFULLY;
+        }
+
+        TransmissionSendResult result;
+
+        String errorMessage;
+        if (code < HttpStatus.SC_OK ||
+                (code >= HttpStatus.SC_MULTIPLE_CHOICES && code < HttpStatus.SC_BAD_REQUEST) ||
+                code > HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+
+            errorMessage = String.format("Unexpected response code: %d", code);
+            result = TransmissionSendResult.REJECTED_BY_SERVER;
+        } else {
+            switch (code) {
+                case HttpStatus.SC_BAD_REQUEST:
+                    errorMessage = "Bad request ";
+                    result = TransmissionSendResult.BAD_REQUEST;
+                    break;
+
+                case 429:
+                    result = TransmissionSendResult.THROTTLED;
+                    errorMessage = "Throttling (All messages of the transmission were rejected) ";
+                    break;
+
+                case 439:
+                    result = TransmissionSendResult.THROTTLED_OVER_EXTENDED_TIME;
+                    errorMessage = "Throttling extended";
+                    break;
+
+                case 402:
+                    result = TransmissionSendResult.PAYMENT_REQUIRED;
+                    errorMessage = "Throttling: payment required";
+                    break;
+
+                case HttpStatus.SC_PARTIAL_CONTENT:
+                    result = TransmissionSendResult.PARTIALLY_THROTTLED;
+                    errorMessage = "Throttling (Partial messages of the transmission were rejected) ";
+                    break;
+
+                case HttpStatus.SC_INTERNAL_SERVER_ERROR:
+                    errorMessage = "Internal server error ";
+                    result = TransmissionSendResult.INTERNAL_SERVER_ERROR;
+                    break;
+
+                default:
+                    result = TransmissionSendResult.REJECTED_BY_SERVER;
+                    errorMessage = String.format("Error, response code: %d", code);
+                    break;
+            }
+        }
+
+        logError(errorMessage, respEntity);
+        return result;
+    }
+
+    private static void logError(String baseErrorMessage, HttpEntity respEntity) {
+        if (respEntity == null || !InternalLogger.INSTANCE.isErrorEnabled()) {
+            InternalLogger.INSTANCE.error(baseErrorMessage);
+            return;
+        }
+
+        InputStream inputStream = null;
+        try {
+            inputStream = respEntity.getContent();
+            InputStreamReader streamReader = new InputStreamReader(inputStream, "UTF-8");
+            BufferedReader reader = new BufferedReader(streamReader);
+            String responseLine = reader.readLine();
+            respEntity.getContent().close();
+
+            InternalLogger.INSTANCE.error("Failed to send, %s : %s", baseErrorMessage, responseLine);
+        } catch (IOException e) {
+            InternalLogger.INSTANCE.error("Failed to send, %s, failed to log the error", baseErrorMessage);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,651 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.microsoft.applicationinsights.internal.channel.TransmissionsStorage;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.system.SystemInformation;
+import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
+import com.microsoft.applicationinsights.internal.util.LocalFileSystemUtils;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The class persists {@link Transmission} instances into an append-only log of memory-mapped segment files.
+ *
+ * Each segment is a file of a fixed size, 'Segment' followed by its sequence number, holding records one after the other.
+ * Every record has a compact binary header:
+ *
+ *      int     The length of the record, header included
+ *      int     The CRC32 of the rest of the record
+ *      int     The Transmission version
+ *      short   The number of sends
+ *      short   The number of persistence
+ *      short   The length of the web content type
+ *      short   The length of the web content encoding type
+ *      bytes   The web content type, the web content encoding type and the content
+ *
+ * The length is written last, so a record that was not completely written is seen as the end of the segment.
+ *
+ * The read cursor, the sequence number of the segment and the offset in it, is kept in a checkpoint file
+ * so loading continues where it stopped after a restart. Segments are deleted as a whole once read.
+ *
+ * Finding the segments is done by their sequence numbers, the folder is only listed if the checkpoint is corrupted.
+ *
+ * New segments are at most a quarter of the capacity, so the log keeps rolling even at the minimal capacity.
+ *
+ * The folder is owned by one instance at a time through a lock on its lock file. When another instance, of this
+ * process or of another one, holds it, the log is kept in a sub folder named after the process instead.
+ *
+ * A read segment that could not be deleted, for example since it is still mapped, is no longer counted in the size
+ * and its deletion is tried again whenever the log moves to another segment.
+ */
+public final class TransmissionSegmentLogOutput implements TransmissionsStorage {
+    private final static String TRANSMISSION_DEFAULT_FOLDER = "transmissions-log";
+    private final static String SEGMENT_FILE_PREFIX = "Segment";
+    private final static String SEGMENT_FILE_EXTENSION = ".seg";
+    private final static String CHECKPOINT_FILE_NAME = "Checkpoint.chk";
+    private final static String LOCK_FILE_NAME = "Lock.lck";
+
+    // The number of sub folders a process may use when the folder it asked for is in use
+    private final static int MAX_FOLDERS_PER_PROCESS = 8;
+
+    private final static int DEFAULT_SEGMENT_SIZE_IN_BYTES = 1024 * 1024;
+    private final static int MIN_SEGMENTS_IN_CAPACITY = 4;
+
+    private final static int RECORD_HEADER_SIZE = 20;
+    private final static int CHECKPOINT_SIZE = 16;
+
+    private final static int DEFAULT_CAPACITY_MEGABYTES = 10;
+    private final static int MAX_CAPACITY_MEGABYTES = 100;
+    private final static int MIN_CAPACITY_MEGABYTES = 1;
+    private static final String MAX_TRANSMISSION_STORAGE_CAPACITY_NAME = "Channel.MaxTransmissionStorageCapacityInMB";
+
+    private final static Charset HEADER_CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * A segment file mapped into memory.
+     */
+    private static final class Segment {
+        public final long sequence;
+        public final File file;
+        public final MappedByteBuffer buffer;
+
+        private Segment(long sequence, File file, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        public int size() {
+            return buffer.capacity();
+        }
+    }
+
+    /// The folder in which we keep the segments and the checkpoint
+    private final File folder;
+
+    /// Held as long as the instance uses the folder
+    private RandomAccessFile lockFile;
+    private FileLock lock;
+
+    /// Read segments that failed to be deleted
+    private final List<File> undeletedSegments = new ArrayList<File>();
+
+    private final int segmentSizeInBytes;
+
+    /// Capacity is the size of disk that we are can use
+    private long capacityInBytes;
+
+    private final LimitsEnforcer capacityEnforcer;
+
+    /// The size of the segments we have on the disk
+    private long size;
+
+    private final MappedByteBuffer checkpoint;
+
+    private Segment readSegment;
+    private int readOffset;
+
+    private Segment writeSegment;
+    private int writeOffset;
+
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+    public TransmissionSegmentLogOutput(String folderPath, String maxTransmissionStorageCapacity) {
+        this(folderPath, maxTransmissionStorageCapacity, DEFAULT_SEGMENT_SIZE_IN_BYTES);
+    }
+
+    public TransmissionSegmentLogOutput(String folderPath) {
+        this(folderPath, null);
+    }
+
+    TransmissionSegmentLogOutput(String folderPath, String maxTransmissionStorageCapacity, int segmentSizeInBytes) {
+        Preconditions.checkArgument(segmentSizeInBytes > RECORD_HEADER_SIZE, "segmentSizeInBytes must be bigger than the record header");
+
+        if (folderPath == null) {
+            folderPath = new File(LocalFileSystemUtils.getTempDir(), TRANSMISSION_DEFAULT_FOLDER).getPath();
+        }
+
+        capacityEnforcer = LimitsEnforcer.createWithClosestLimitOnError(MIN_CAPACITY_MEGABYTES,
+                                                                        MAX_CAPACITY_MEGABYTES,
+                                                                        DEFAULT_CAPACITY_MEGABYTES,
+                                                                        MAX_TRANSMISSION_STORAGE_CAPACITY_NAME,
+                                                                        maxTransmissionStorageCapacity);
+        capacityInBytes = capacityEnforcer.getCurrentValue() * 1024L * 1024L;
+        this.segmentSizeInBytes = segmentSizeInBytes;
+
+        folder = lockFolder(new File(folderPath));
+
+        try {
+            checkpoint = map(new File(folder, CHECKPOINT_FILE_NAME), CHECKPOINT_SIZE);
+            open();
+        } catch (IOException e) {
+            InternalLogger.INSTANCE.error("Failed to open transmissions log in '%s', exception: %s", folder.getPath(), e.getMessage());
+            releaseLock();
+            throw new IllegalArgumentException("Failed to open transmissions log", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean send(Transmission transmission) {
+        byte[] webContentType = transmission.getWebContentType().getBytes(HEADER_CHARSET);
+        byte[] webContentEncodingType = transmission.getWebContentEncodingType().getBytes(HEADER_CHARSET);
+        byte[] content = transmission.getContent();
+
+        int recordLength = RECORD_HEADER_SIZE + webContentType.length + webContentEncodingType.length + content.length;
+        try {
+            if (writeOffset + recordLength > writeSegment.size()) {
+                int newSegmentSize = Math.max(getNewSegmentSize(), recordLength);
+                if (size + newSegmentSize > capacityInBytes) {
+                    return false;
+                }
+
+                rollWriteSegment(newSegmentSize);
+            }
+
+            header.clear();
+            header.putInt(0);
+            header.putInt(0);
+            header.putInt(transmission.getVersion());
+            header.putShort((short) Math.min(transmission.getNumberOfSends(), Short.MAX_VALUE));
+            header.putShort((short) Math.min(transmission.getNumberOfPersistence(), Short.MAX_VALUE));
+            header.putShort((short) webContentType.length);
+            header.putShort((short) webContentEncodingType.length);
+
+            crc.reset();
+            crc.update(header.array(), 8, RECORD_HEADER_SIZE - 8);
+            crc.update(webContentType, 0, webContentType.length);
+            crc.update(webContentEncodingType, 0, webContentEncodingType.length);
+            crc.update(content, 0, content.length);
+            header.putInt(4, (int) crc.getValue());
+
+            ByteBuffer record = writeSegment.buffer.duplicate();
+            record.position(writeOffset + 4);
+            record.put(header.array(), 4, RECORD_HEADER_SIZE - 4);
+            record.put(webContentType);
+            record.put(webContentEncodingType);
+            record.put(content);
+
+            // The length is the last to be written, this is what makes the record visible
+            writeSegment.buffer.putInt(writeOffset, recordLength);
+            writeOffset += recordLength;
+
+            return true;
+        } catch (Exception e) {
+            InternalLogger.INSTANCE.error("Failed to save transmission, exception: %s", e.getMessage());
+        }
+
+        return false;
+    }
+
+    @Override
+    public synchronized Transmission fetchOldest() {
+        try {
+            while (true) {
+                if (readSegment == writeSegment && readOffset >= writeOffset) {
+                    return null;
+                }
+
+                int recordLength = 0;
+                if (readOffset + RECORD_HEADER_SIZE <= readSegment.size()) {
+                    recordLength = readSegment.buffer.getInt(readOffset);
+                }
+
+                boolean endOfSegment = recordLength == 0;
+                if (!endOfSegment && (recordLength < RECORD_HEADER_SIZE || readOffset + recordLength > readSegment.size())) {
+                    InternalLogger.INSTANCE.error("Corrupted transmissions log segment '%s', the rest of it is dropped", readSegment.file.getName());
+                    endOfSegment = true;
+                }
+
+                if (endOfSegment) {
+                    if (readSegment == writeSegment) {
+                        // Should not happen since the writer is ahead, the writer moves on so the segment can be deleted
+                        rollWriteSegment(getNewSegmentSize());
+                    }
+                    moveToNextReadSegment();
+                    continue;
+                }
+
+                int recordOffset = readOffset;
+                readOffset += recordLength;
+                saveCheckpoint();
+
+                Transmission transmission = readRecord(readSegment, recordOffset, recordLength);
+                if (transmission != null) {
+                    return transmission;
+                }
+            }
+        } catch (Exception e) {
+            InternalLogger.INSTANCE.error("Failed to load transmission, exception: %s", e.getMessage());
+        }
+
+        return null;
+    }
+
+    @Override
+    public synchronized void stop(long timeout, TimeUnit timeUnit) {
+        try {
+            writeSegment.buffer.force();
+            checkpoint.force();
+        } catch (Exception e) {
+            InternalLogger.INSTANCE.error("Failed to flush transmissions log, exception: %s", e.getMessage());
+        }
+
+        releaseLock();
+    }
+
+    File getFolder() {
+        return folder;
+    }
+
+    @Override
+    public synchronized long getSizeInBytes() {
+        if (readSegment == writeSegment) {
+            return writeOffset - readOffset;
+        }
+
+        // The segments between the read and the write ones are full
+        long betweenSegments = size - readSegment.size() - writeSegment.size();
+        return (readSegment.size() - readOffset) + betweenSegments + writeOffset;
+    }
+
+    public synchronized void setCapacity(int suggestedCapacity) {
+        this.capacityInBytes = capacityEnforcer.normalizeValue(suggestedCapacity) * 1024L * 1024L;
+    }
+
+    private Transmission readRecord(Segment segment, int recordOffset, int recordLength) {
+        ByteBuffer record = segment.buffer.duplicate();
+        record.position(recordOffset + 4);
+        int expectedCrc = record.getInt();
+        int version = record.getInt();
+        int numberOfSends = record.getShort();
+        int numberOfPersistence = record.getShort();
+        int webContentTypeLength = record.getShort();
+        int webContentEncodingTypeLength = record.getShort();
+
+        int contentLength = recordLength - RECORD_HEADER_SIZE - webContentTypeLength - webContentEncodingTypeLength;
+        if (webContentTypeLength < 0 || webContentEncodingTypeLength < 0 || contentLength < 0) {
+            InternalLogger.INSTANCE.error("Failed to load transmission, bad record header in '%s'", segment.file.getName());
+            return null;
+        }
+
+        byte[] webContentType = new byte[webContentTypeLength];
+        byte[] webContentEncodingType = new byte[webContentEncodingTypeLength];
+        byte[] content = new byte[contentLength];
+        record.get(webContentType);
+        record.get(webContentEncodingType);
+        record.get(content);
+
+        crc.reset();
+        ByteBuffer recordHeader = segment.buffer.duplicate();
+        recordHeader.position(recordOffset + 8);
+        recordHeader.limit(recordOffset + RECORD_HEADER_SIZE);
+        byte[] headerBytes = new byte[RECORD_HEADER_SIZE - 8];
+        recordHeader.get(headerBytes);
+        crc.update(headerBytes, 0, headerBytes.length);
+        crc.update(webContentType, 0, webContentType.length);
+        crc.update(webContentEncodingType, 0, webContentEncodingType.length);
+        crc.update(content, 0, content.length);
+        if ((int) crc.getValue() != expectedCrc) {
+            InternalLogger.INSTANCE.error("Failed to load transmission, CRC mismatch in '%s'", segment.file.getName());
+            return null;
+        }
+
+        try {
+            Transmission transmission = new Transmission(content, new String(webContentType, HEADER_CHARSET), new String(webContentEncodingType, HEADER_CHARSET), version);
+            transmission.setNumberOfSends(numberOfSends);
+            transmission.setNumberOfPersistence(numberOfPersistence);
+            return transmission;
+        } catch (IllegalArgumentException e) {
+            InternalLogger.INSTANCE.error("Failed to load transmission, exception: %s", e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Restores the cursors from the checkpoint and the segments on the disk.
+     */
+    private void open() throws IOException {
+        long readSequence = 0;
+        int offset = 0;
+
+        long savedSequence = checkpoint.getLong(0);
+        int savedOffset = checkpoint.getInt(8);
+        int savedCrc = checkpoint.getInt(12);
+        if (savedSequence != 0 || savedOffset != 0 || savedCrc != 0) {
+            if (checkpointCrc(savedSequence, savedOffset) == savedCrc && savedSequence >= 0 && savedOffset >= 0) {
+                readSequence = savedSequence;
+                offset = savedOffset;
+            } else {
+                InternalLogger.INSTANCE.error("Corrupted transmissions log checkpoint, loading from the oldest segment");
+                readSequence = findOldestSegmentSequence();
+            }
+        }
+
+        // Segments before the checkpoint were already read
+        for (long sequence = readSequence - 1; sequence >= 0 && getSegmentFile(sequence).exists(); --sequence) {
+            deleteSegment(getSegmentFile(sequence));
+        }
+
+        long writeSequence = readSequence;
+        while (getSegmentFile(writeSequence + 1).exists()) {
+            ++writeSequence;
+        }
+
+        size = 0;
+        readSegment = openSegment(readSequence, getNewSegmentSize());
+        readOffset = Math.min(offset, readSegment.size());
+        size += readSegment.size();
+        for (long sequence = readSequence + 1; sequence < writeSequence; ++sequence) {
+            size += getSegmentFile(sequence).length();
+        }
+
+        if (writeSequence == readSequence) {
+            writeSegment = readSegment;
+            writeOffset = findEndOfRecords(writeSegment, readOffset);
+        } else {
+            writeSegment = openSegment(writeSequence, getNewSegmentSize());
+            writeOffset = findEndOfRecords(writeSegment, 0);
+            size += writeSegment.size();
+        }
+
+        saveCheckpoint();
+    }
+
+    private void rollWriteSegment(int newSegmentSize) throws IOException {
+        // Mark the end explicitly, the bytes after the last record might not be zeros after a restart
+        if (writeOffset + 4 <= writeSegment.size()) {
+            writeSegment.buffer.putInt(writeOffset, 0);
+        }
+
+        writeSegment = openSegment(writeSegment.sequence + 1, newSegmentSize);
+        writeOffset = 0;
+        size += writeSegment.size();
+
+        deleteUndeletedSegments();
+    }
+
+    private void moveToNextReadSegment() throws IOException {
+        Segment done = readSegment;
+        if (done.sequence + 1 == writeSegment.sequence) {
+            readSegment = writeSegment;
+        } else {
+            readSegment = openSegment(done.sequence + 1, getNewSegmentSize());
+        }
+        readOffset = 0;
+        saveCheckpoint();
+
+        // The segment is not used anymore, the mapping is released so the file can be deleted.
+        // Its records were read so it is not counted anymore, even if the file is left for a later retry
+        unmap(done.buffer);
+        size -= done.size();
+        deleteUndeletedSegments();
+        deleteSegment(done.file);
+    }
+
+    /**
+     * The size of the segments to create, bounded by the capacity so several segments always fit in it.
+     */
+    private int getNewSegmentSize() {
+        long maxSegmentSize = capacityInBytes / MIN_SEGMENTS_IN_CAPACITY;
+        return (int) Math.min(segmentSizeInBytes, maxSegmentSize);
+    }
+
+    private void saveCheckpoint() {
+        checkpoint.putLong(0, readSegment.sequence);
+        checkpoint.putInt(8, readOffset);
+        checkpoint.putInt(12, checkpointCrc(readSegment.sequence, readOffset));
+    }
+
+    private int checkpointCrc(long sequence, int offset) {
+        crc.reset();
+        crc.update(ByteBuffer.allocate(12).putLong(sequence).putInt(offset).array(), 0, 12);
+        return (int) crc.getValue();
+    }
+
+    private Segment openSegment(long sequence, int sizeIfNew) throws IOException {
+        File file = getSegmentFile(sequence);
+        int segmentSize = file.exists() && file.length() > 0 ? (int) file.length() : sizeIfNew;
+
+        return new Segment(sequence, file, map(file, segmentSize));
+    }
+
+    private File getSegmentFile(long sequence) {
+        return new File(folder, String.format("%s%016d%s", SEGMENT_FILE_PREFIX, sequence, SEGMENT_FILE_EXTENSION));
+    }
+
+    private long findOldestSegmentSequence() {
+        long oldest = Long.MAX_VALUE;
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_EXTENSION)) {
+                    try {
+                        long sequence = Long.parseLong(name.substring(SEGMENT_FILE_PREFIX.length(), name.length() - SEGMENT_FILE_EXTENSION.length()));
+                        oldest = Math.min(oldest, sequence);
+                    } catch (NumberFormatException e) {
+                        // Not one of ours
+                    }
+                }
+            }
+        }
+
+        return oldest == Long.MAX_VALUE ? 0 : oldest;
+    }
+
+    private static int findEndOfRecords(Segment segment, int fromOffset) {
+        int offset = fromOffset;
+        while (offset + RECORD_HEADER_SIZE <= segment.size()) {
+            int recordLength = segment.buffer.getInt(offset);
+            if (recordLength < RECORD_HEADER_SIZE || offset + recordLength > segment.size()) {
+                break;
+            }
+            offset += recordLength;
+        }
+
+        return offset;
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            if (randomAccessFile.length() != size) {
+                randomAccessFile.setLength(size);
+            }
+
+            // The mapping stays valid after the file is closed
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private void deleteSegment(File file) {
+        // The file might still be mapped, where that prevents the deletion we try again later and when the process exits
+        if (!file.delete() && file.exists()) {
+            InternalLogger.INSTANCE.trace("Failed to delete transmissions log segment '%s', will try again later", file.getName());
+            file.deleteOnExit();
+            undeletedSegments.add(file);
+        }
+    }
+
+    private void deleteUndeletedSegments() {
+        Iterator<File> iterator = undeletedSegments.iterator();
+        while (iterator.hasNext()) {
+            File file = iterator.next();
+            if (file.delete() || !file.exists()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Takes the lock of the folder, or of a sub folder named after the process if another instance holds it.
+     * @return The folder that was locked.
+     */
+    private File lockFolder(File requestedFolder) {
+        String processId = SystemInformation.INSTANCE.getProcessId();
+        for (int i = 0; i <= MAX_FOLDERS_PER_PROCESS; ++i) {
+            File candidate;
+            if (i == 0) {
+                candidate = requestedFolder;
+            } else {
+                candidate = new File(requestedFolder, i == 1 ? processId : processId + "-" + i);
+            }
+
+            if (!candidate.exists()) {
+                candidate.mkdirs();
+            }
+
+            if (!candidate.exists() || !candidate.canRead() || !candidate.canWrite()) {
+                throw new IllegalArgumentException("Folder must exist with read and write permissions");
+            }
+
+            if (tryLock(candidate)) {
+                if (i > 0) {
+                    InternalLogger.INSTANCE.warn("Transmissions log folder '%s' is in use, using '%s' instead", requestedFolder.getPath(), candidate.getPath());
+                }
+                return candidate;
+            }
+        }
+
+        throw new IllegalArgumentException("Failed to lock a transmissions log folder in '" + requestedFolder.getPath() + "'");
+    }
+
+    private boolean tryLock(File candidate) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(new File(candidate, LOCK_FILE_NAME), "rw");
+            FileLock fileLock = null;
+            try {
+                fileLock = file.getChannel().tryLock();
+            } catch (OverlappingFileLockException e) {
+                // Held by another instance in this process
+            }
+
+            if (fileLock != null) {
+                lockFile = file;
+                lock = fileLock;
+                return true;
+            }
+        } catch (IOException e) {
+            InternalLogger.INSTANCE.error("Failed to lock transmissions log folder '%s', exception: %s", candidate.getPath(), e.getMessage());
+        }
+
+        closeQuietly(file);
+        return false;
+    }
+
+    private void releaseLock() {
+        if (lock != null) {
+            try {
+                lock.release();
+            } catch (IOException e) {
+                InternalLogger.INSTANCE.error("Failed to release transmissions log lock, exception: %s", e.getMessage());
+            }
+            lock = null;
+        }
+
+        closeQuietly(lockFile);
+        lockFile = null;
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // Nothing to do, the lock is released with the file anyway
+            }
+        }
+    }
+
+    /**
+     * Releases the mapping of the buffer now instead of when it is garbage collected.
+     * The buffer must not be used after that.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                // Java 9 and later
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+                return;
+            } catch (NoSuchMethodException e) {
+                // Java 8 and earlier, the buffer has a cleaner of its own
+            }
+
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Throwable t) {
+            InternalLogger.INSTANCE.trace("Failed to unmap transmissions log segment, exception: %s", t.getMessage());
+        }
+    }
+}
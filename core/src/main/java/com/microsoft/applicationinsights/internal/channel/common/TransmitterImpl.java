@@ -32,6 +32,7 @@ import com.microsoft.applicationinsights.internal.channel.TelemetrySerializer;
 import com.microsoft.applicationinsights.internal.channel.TransmissionDispatcher;
 import com.microsoft.applicationinsights.internal.channel.TransmissionsLoader;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.util.Deadline;
 import com.microsoft.applicationinsights.internal.util.ThreadPoolUtils;
 
 import com.google.common.base.Optional;
@@ -63,7 +64,7 @@ public final class TransmitterImpl implements TelemetriesTransmitter {
             this.serializer = serializer;
         }
 
-        protected void dispatch(Collection<String> telemetries) {
+        protected void dispatch(Collection<byte[]> telemetries) {
             if (telemetries.isEmpty()) {
                 return;
             }
@@ -90,15 +91,15 @@ public final class TransmitterImpl implements TelemetriesTransmitter {
 
         @Override
         public void run() {
-            Collection<String> telemetriesToSend = telemetriesFetcher.fetch();
+            Collection<byte[]> telemetriesToSend = telemetriesFetcher.fetch();
             dispatch(telemetriesToSend);
         }
     }
 
     private static final class SendNowHandler extends SendHandler implements Runnable {
-        private final Collection<String> telemetries;
+        private final Collection<byte[]> telemetries;
 
-        public SendNowHandler(TransmissionDispatcher transmissionDispatcher, TelemetrySerializer serializer, Collection<String> telemetries) {
+        public SendNowHandler(TransmissionDispatcher transmissionDispatcher, TelemetrySerializer serializer, Collection<byte[]> telemetries) {
             super(transmissionDispatcher,  serializer);
 
             Preconditions.checkNotNull(telemetries, "telemetries should be non-null value");
@@ -112,6 +113,25 @@ public final class TransmitterImpl implements TelemetriesTransmitter {
         }
     }
 
+    private static final class SendTransmissionNowHandler implements Runnable {
+        private final TransmissionDispatcher transmissionDispatcher;
+
+        private final Transmission transmission;
+
+        public SendTransmissionNowHandler(TransmissionDispatcher transmissionDispatcher, Transmission transmission) {
+            Preconditions.checkNotNull(transmissionDispatcher, "transmissionDispatcher should be a non-null value");
+            Preconditions.checkNotNull(transmission, "transmission should be non-null value");
+
+            this.transmissionDispatcher = transmissionDispatcher;
+            this.transmission = transmission;
+        }
+
+        @Override
+        public void run() {
+            transmissionDispatcher.dispatch(transmission);
+        }
+    }
+
     private final static int MAX_PENDING_SCHEDULE_REQUESTS = 16384;
 
     private final TransmissionDispatcher transmissionDispatcher;
@@ -187,7 +207,7 @@ public final class TransmitterImpl implements TelemetriesTransmitter {
     }
 
     @Override
-    public boolean sendNow(Collection<String> telemetries) {
+    public boolean sendNow(Collection<byte[]> telemetries) {
         Preconditions.checkNotNull(telemetries, "telemetries should be non-null value");
 
         if (!semaphore.tryAcquire()) {
@@ -195,6 +215,36 @@ public final class TransmitterImpl implements TelemetriesTransmitter {
         }
 
         final Runnable command = new SendNowHandler(transmissionDispatcher, serializer, telemetries);
+        if (executeNow(command)) {
+            return true;
+        }
+
+        InternalLogger.INSTANCE.error("Error in scheduledSend of telemetry items failed. %d items were not sent ", telemetries.size());
+        return false;
+    }
+
+    @Override
+    public boolean sendNow(Transmission transmission) {
+        Preconditions.checkNotNull(transmission, "transmission should be non-null value");
+
+        if (!semaphore.tryAcquire()) {
+            return false;
+        }
+
+        final Runnable command = new SendTransmissionNowHandler(transmissionDispatcher, transmission);
+        if (executeNow(command)) {
+            return true;
+        }
+
+        InternalLogger.INSTANCE.error("Error in sendNow of a transmission, %d bytes were not sent ", transmission.getContent().length);
+        return false;
+    }
+
+    /**
+     * The method assumes that the semaphore was acquired by the caller, it is released once the command starts
+     * or if the command could not be handed to the thread pool.
+     */
+    private boolean executeNow(final Runnable command) {
         try {
             threadPool.execute(new Runnable() {
                 public void run() {
@@ -215,11 +265,9 @@ public final class TransmitterImpl implements TelemetriesTransmitter {
             return true;
         } catch (Exception e) {
             semaphore.release();
-            InternalLogger.INSTANCE.error("Error in scheduledSend of telemetry items failed. %d items were not sent ", telemetries.size());
             InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(e));
         } catch (Throwable t) {
             semaphore.release();
-            InternalLogger.INSTANCE.error("Error in scheduledSend of telemetry items failed. %d items were not sent ", telemetries.size());
             InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(t));
         }
 
@@ -228,8 +276,12 @@ public final class TransmitterImpl implements TelemetriesTransmitter {
 
     @Override
     public void stop(long timeout, TimeUnit timeUnit) {
-        transmissionsLoader.stop(timeout, timeUnit);
-        ThreadPoolUtils.stop(threadPool, timeout, timeUnit);
-        transmissionDispatcher.stop(timeout, timeUnit);
+        Deadline deadline = Deadline.after(timeout, timeUnit);
+        transmissionsLoader.stop(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+
+        // The sends that are due are done, the delayed ones were flushed by the buffer, if any, and are not waited for
+        threadPool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        ThreadPoolUtils.stop(threadPool, deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        transmissionDispatcher.stop(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
     }
 }
@@ -0,0 +1,287 @@
+package com.microsoft.applicationinsights.internal.channel.samplingV2;
+
+import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.extensibility.TelemetryTypeSpecific;
+import com.microsoft.applicationinsights.internal.annotation.BuiltInProcessor;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.util.StripedCounter;
+import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import com.microsoft.applicationinsights.telemetry.SupportSampling;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.microsoft.applicationinsights.telemetry.TraceTelemetry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This processor samples telemetries at a rate that keeps every telemetry type under its own target
+ * of telemetries per second, unlike {@link FixedRateSamplingTelemetryProcessor} that samples at one fixed rate.
+ * <p>
+ * The incoming telemetries of every type are counted, sampled in or not, and once per evaluation interval
+ * the thread that closes the interval computes the sampling percentage of the type from the average rate.
+ * A rate that is higher than the average replaces it at once, so the processor reacts to spikes within one
+ * interval, while lower rates are averaged in slowly. The percentages are always 100/N for a whole N.
+ * <p>
+ * The decisions are made by the score of the operation id, so all the telemetries of an operation that
+ * have the same sampling percentage are kept or dropped together, and when the percentages of the types differ
+ * the telemetries of the operation that are kept with the lower percentage are kept with the higher one too.
+ * <p>
+ * How to use in ApplicationInsights Configuration :
+ * <p>
+* <TelemetryProcessors>
+    <BuiltInProcessors>
+        <Processor type = "AdaptiveSamplingTelemetryProcessor">
+            <Add name = "MaxRequestsPerSecond" value = "5" />
+            <Add name = "MaxDependenciesPerSecond" value = "5" />
+            <Add name = "MaxTracesPerSecond" value = "5" />
+            <Add name = "MaxExceptionsPerSecond" value = "5" />
+            <Add name = "MaxOtherItemsPerSecond" value = "5" />
+            <Add name = "MinSamplingPercentage" value = "0.1" />
+            <Add name = "EvaluationIntervalInSeconds" value = "1" />
+            <Add name = "MovingAverageRatio" value = "0.25" />
+        </Processor>
+    </BuiltInProcessors>
+</TelemetryProcessors>
+ */
+@BuiltInProcessor("AdaptiveSamplingTelemetryProcessor")
+public final class AdaptiveSamplingTelemetryProcessor implements TelemetryProcessor, TelemetryTypeSpecific, PreInitializationSampler {
+    private final static double DEFAULT_MAX_ITEMS_PER_SECOND = 5.0;
+    private final static double DEFAULT_MIN_SAMPLING_PERCENTAGE = 0.1;
+    private final static int DEFAULT_EVALUATION_INTERVAL_IN_SECONDS = 1;
+    private final static double DEFAULT_MOVING_AVERAGE_RATIO = 0.25;
+
+    /**
+     * The sampling state of one telemetry type.
+     */
+    static final class TypeSampler {
+        private final String name;
+        private final StripedCounter incoming = new StripedCounter();
+        private final AtomicLong intervalStart;
+
+        private volatile double maxItemsPerSecond = DEFAULT_MAX_ITEMS_PER_SECOND;
+        private volatile double samplingPercentage = 100.0;
+
+        // Written only by the thread that closes an interval
+        private double averageItemsPerSecond = -1.0;
+
+        private TypeSampler(String name, long now) {
+            this.name = name;
+            this.intervalStart = new AtomicLong(now);
+        }
+
+        double getSamplingPercentage() {
+            return samplingPercentage;
+        }
+
+        private void count(long now, AdaptiveSamplingTelemetryProcessor settings) {
+            long start = intervalStart.get();
+            long elapsed = now - start;
+            if (elapsed >= settings.evaluationIntervalInNanos && intervalStart.compareAndSet(start, now)) {
+                evaluate(elapsed, settings);
+            }
+
+            incoming.increment();
+        }
+
+        private void evaluate(long elapsedInNanos, AdaptiveSamplingTelemetryProcessor settings) {
+            double itemsPerSecond = (double) incoming.getAndReset() * TimeUnit.SECONDS.toNanos(1) / elapsedInNanos;
+            if (itemsPerSecond > averageItemsPerSecond) {
+                averageItemsPerSecond = itemsPerSecond;
+            } else {
+                double ratio = settings.movingAverageRatio;
+                averageItemsPerSecond = averageItemsPerSecond * (1 - ratio) + itemsPerSecond * ratio;
+            }
+
+            double suggested = computeSamplingPercentage(averageItemsPerSecond, maxItemsPerSecond, settings.minSamplingPercentage);
+            if (suggested != samplingPercentage) {
+                if (InternalLogger.INSTANCE.isTraceEnabled()) {
+                    InternalLogger.INSTANCE.trace("Adaptive sampling of %s: %s items per second, sampling percentage changed from %s to %s",
+                            name, averageItemsPerSecond, samplingPercentage, suggested);
+                }
+                samplingPercentage = suggested;
+            }
+        }
+    }
+
+    private volatile long evaluationIntervalInNanos = TimeUnit.SECONDS.toNanos(DEFAULT_EVALUATION_INTERVAL_IN_SECONDS);
+    private volatile double minSamplingPercentage = DEFAULT_MIN_SAMPLING_PERCENTAGE;
+    private volatile double movingAverageRatio = DEFAULT_MOVING_AVERAGE_RATIO;
+
+    private final TypeSampler requests;
+    private final TypeSampler dependencies;
+    private final TypeSampler traces;
+    private final TypeSampler exceptions;
+    private final TypeSampler others;
+
+    public AdaptiveSamplingTelemetryProcessor() {
+        this(System.nanoTime());
+    }
+
+    AdaptiveSamplingTelemetryProcessor(long now) {
+        requests = new TypeSampler("Request", now);
+        dependencies = new TypeSampler("Dependency", now);
+        traces = new TypeSampler("Trace", now);
+        exceptions = new TypeSampler("Exception", now);
+        others = new TypeSampler("Other", now);
+    }
+
+    /**
+     * Gets the sampling percentage that keeps the passed rate under the target, the percentage is 100/N for a whole N.
+     */
+    static double computeSamplingPercentage(double itemsPerSecond, double maxItemsPerSecond, double minSamplingPercentage) {
+        if (itemsPerSecond <= maxItemsPerSecond) {
+            return 100.0;
+        }
+
+        double percentage = 100.0 / Math.ceil(itemsPerSecond / maxItemsPerSecond);
+        if (percentage < minSamplingPercentage) {
+            percentage = 100.0 / Math.floor(100.0 / minSamplingPercentage);
+        }
+
+        return percentage;
+    }
+
+    @Override
+    public boolean isApplicableTo(Class<? extends Telemetry> telemetryType) {
+        return SupportSampling.class.isAssignableFrom(telemetryType);
+    }
+
+    @Override
+    public boolean process(Telemetry telemetry) {
+        return process(telemetry, System.nanoTime());
+    }
+
+    boolean process(Telemetry telemetry, long now) {
+        if (!(telemetry instanceof SupportSampling)) {
+            return true;
+        }
+
+        SupportSampling samplingSupportingTelemetry = (SupportSampling) telemetry;
+        if (samplingSupportingTelemetry.getSamplingPercentage() != null) {
+            return true;
+        }
+
+        TypeSampler sampler = getTypeSampler(telemetry);
+        sampler.count(now, this);
+
+        double samplingPercentage = sampler.samplingPercentage;
+        samplingSupportingTelemetry.setSamplingPercentage(samplingPercentage);
+        if (samplingPercentage < 100.0 && SamplingScoreGeneratorV2.getSamplingScore(telemetry) >= samplingPercentage) {
+            if (InternalLogger.INSTANCE.isTraceEnabled()) {
+                InternalLogger.INSTANCE.trace("Item %s sampled out", telemetry.getClass());
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Makes the sampling decision of a telemetry that was not yet initialized, using the operation id it will have.
+     * The telemetries that are kept get their sampling percentage here, so {@link #process(Telemetry)} neither
+     * counts nor samples them again.
+     *
+     * @param telemetry The telemetry, before its context and initializers were applied.
+     * @param operationId The operation id the telemetry will have.
+     * @return True if the telemetry is sampled out.
+     */
+    @Override
+    public boolean isSampledOut(Telemetry telemetry, String operationId) {
+        return isSampledOut(telemetry, operationId, System.nanoTime());
+    }
+
+    boolean isSampledOut(Telemetry telemetry, String operationId, long now) {
+        if (!(telemetry instanceof SupportSampling)) {
+            return false;
+        }
+
+        SupportSampling samplingSupportingTelemetry = (SupportSampling) telemetry;
+        if (samplingSupportingTelemetry.getSamplingPercentage() != null) {
+            return false;
+        }
+
+        TypeSampler sampler = getTypeSampler(telemetry);
+        sampler.count(now, this);
+
+        double samplingPercentage = sampler.samplingPercentage;
+        if (samplingPercentage < 100.0 && SamplingScoreGeneratorV2.getSamplingScore(operationId) >= samplingPercentage) {
+            if (InternalLogger.INSTANCE.isTraceEnabled()) {
+                InternalLogger.INSTANCE.trace("Item %s sampled out", telemetry.getClass());
+            }
+            return true;
+        }
+
+        samplingSupportingTelemetry.setSamplingPercentage(samplingPercentage);
+        return false;
+    }
+
+    TypeSampler getTypeSampler(Telemetry telemetry) {
+        if (telemetry instanceof RequestTelemetry) {
+            return requests;
+        }
+        if (telemetry instanceof RemoteDependencyTelemetry) {
+            return dependencies;
+        }
+        if (telemetry instanceof TraceTelemetry) {
+            return traces;
+        }
+        if (telemetry instanceof ExceptionTelemetry) {
+            return exceptions;
+        }
+
+        return others;
+    }
+
+    public void setMaxRequestsPerSecond(String value) {
+        requests.maxItemsPerSecond = parsePositive("MaxRequestsPerSecond", value, DEFAULT_MAX_ITEMS_PER_SECOND);
+    }
+
+    public void setMaxDependenciesPerSecond(String value) {
+        dependencies.maxItemsPerSecond = parsePositive("MaxDependenciesPerSecond", value, DEFAULT_MAX_ITEMS_PER_SECOND);
+    }
+
+    public void setMaxTracesPerSecond(String value) {
+        traces.maxItemsPerSecond = parsePositive("MaxTracesPerSecond", value, DEFAULT_MAX_ITEMS_PER_SECOND);
+    }
+
+    public void setMaxExceptionsPerSecond(String value) {
+        exceptions.maxItemsPerSecond = parsePositive("MaxExceptionsPerSecond", value, DEFAULT_MAX_ITEMS_PER_SECOND);
+    }
+
+    /**
+     * Sets the target of the telemetry types that have no target of their own, events and page views.
+     */
+    public void setMaxOtherItemsPerSecond(String value) {
+        others.maxItemsPerSecond = parsePositive("MaxOtherItemsPerSecond", value, DEFAULT_MAX_ITEMS_PER_SECOND);
+    }
+
+    public void setMinSamplingPercentage(String value) {
+        double percentage = parsePositive("MinSamplingPercentage", value, DEFAULT_MIN_SAMPLING_PERCENTAGE);
+        minSamplingPercentage = percentage > 100.0 ? 100.0 : percentage;
+    }
+
+    public void setEvaluationIntervalInSeconds(String value) {
+        evaluationIntervalInNanos = (long) (parsePositive("EvaluationIntervalInSeconds", value, DEFAULT_EVALUATION_INTERVAL_IN_SECONDS) * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public void setMovingAverageRatio(String value) {
+        double ratio = parsePositive("MovingAverageRatio", value, DEFAULT_MOVING_AVERAGE_RATIO);
+        movingAverageRatio = ratio > 1.0 ? 1.0 : ratio;
+    }
+
+    private static double parsePositive(String name, String value, double defaultValue) {
+        try {
+            double parsed = Double.valueOf(value.trim());
+            if (parsed > 0.0) {
+                InternalLogger.INSTANCE.trace("AdaptiveSamplingTelemetryProcessor: %s is set to %s", name, parsed);
+                return parsed;
+            }
+        } catch (Throwable t) {
+        }
+
+        InternalLogger.INSTANCE.error("AdaptiveSamplingTelemetryProcessor: illegal value '%s' for %s, the default %s is used instead", value, name, defaultValue);
+        return defaultValue;
+    }
+}
@@ -1,6 +1,7 @@
 package com.microsoft.applicationinsights.internal.channel.samplingV2;
 
 import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.extensibility.TelemetryTypeSpecific;
 import com.microsoft.applicationinsights.internal.annotation.BuiltInProcessor;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.telemetry.SupportSampling;
@@ -37,7 +38,7 @@ import org.apache.commons.lang3.StringUtils;
 </TelemetryProcessors>
  */
 @BuiltInProcessor("FixedRateSamplingTelemetryProcessor")
-public final class FixedRateSamplingTelemetryProcessor implements TelemetryProcessor {
+public final class FixedRateSamplingTelemetryProcessor implements TelemetryProcessor, TelemetryTypeSpecific, PreInitializationSampler {
 
     private final String dependencyTelemetryName = "Dependency";
     private static final String eventTelemetryName = "Event";
@@ -137,6 +138,15 @@ public final class FixedRateSamplingTelemetryProcessor implements TelemetryProce
         }
     }
 
+    /**
+     * Only the telemetry types that support sampling are passed to the processor, the included and
+     * excluded types are checked per telemetry since they might be configured after the first telemetry.
+     */
+    @Override
+    public boolean isApplicableTo(Class<? extends Telemetry> telemetryType) {
+        return SupportSampling.class.isAssignableFrom(telemetryType);
+    }
+
     /**
      * This method determines if the telemetry needs to be sampled or not.
      *
@@ -175,6 +185,35 @@ public final class FixedRateSamplingTelemetryProcessor implements TelemetryProce
         return true;
     }
 
+    /**
+     * Makes the sampling decision of a telemetry that was not yet initialized, using the operation id it will have.
+     * Only sampled out telemetries are reported, the telemetries that are kept are sampled again by {@link #process(Telemetry)}
+     * which also sets their sampling percentage.
+     *
+     * @param telemetry The telemetry, before its context and initializers were applied.
+     * @param operationId The operation id the telemetry will have.
+     * @return True if the telemetry is sampled out.
+     */
+    @Override
+    public boolean isSampledOut(Telemetry telemetry, String operationId) {
+        if (!(telemetry instanceof SupportSampling) || ((SupportSampling) telemetry).getSamplingPercentage() != null) {
+            return false;
+        }
+
+        if (!isSamplingApplicable(telemetry.getClass())) {
+            return false;
+        }
+
+        if (SamplingScoreGeneratorV2.getSamplingScore(operationId) >= samplingPercentage) {
+            if (InternalLogger.INSTANCE.isInfoEnabled()) {
+                InternalLogger.INSTANCE.info("Item %s sampled out", telemetry.getClass());
+            }
+            return true;
+        }
+
+        return false;
+    }
+
     /**
      * Determines if the argument is applicable for sampling
      *
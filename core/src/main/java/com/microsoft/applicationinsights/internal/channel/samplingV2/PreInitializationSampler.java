@@ -0,0 +1,42 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.samplingV2;
+
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+
+/**
+ * Implemented by the sampling telemetry processors whose decision depends only on the type of the telemetry
+ * and on its operation id.
+ *
+ * The {@link com.microsoft.applicationinsights.TelemetryClient} asks such a processor before the telemetry
+ * context and the telemetry initializers are applied, so a telemetry that is sampled out is dropped
+ * before any work is done on it. Telemetries that are kept still go through the processor as usual.
+ */
+public interface PreInitializationSampler {
+    /**
+     * Checks whether the telemetry is sampled out.
+     * @param telemetry The telemetry, before its context and initializers were applied.
+     * @param operationId The operation id the telemetry will have, never null or empty.
+     * @return True only if the telemetry is certainly sampled out, false if it is kept or the decision must be deferred.
+     */
+    boolean isSampledOut(Telemetry telemetry, String operationId);
+}
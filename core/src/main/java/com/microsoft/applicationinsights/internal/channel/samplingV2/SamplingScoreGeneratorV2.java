@@ -22,34 +22,42 @@ public class SamplingScoreGeneratorV2 {
      */
     public static double getSamplingScore(Telemetry telemetry) {
 
-        double samplingScore = 0.0;
-
-        if (!StringUtils.isEmpty(telemetry.getContext().getOperation().getId())) {
-            samplingScore =  ((double) getSamplingHashCode(telemetry.getContext().getOperation().getId()) / Integer.MAX_VALUE);
+        String operationId = telemetry.getContext().getOperation().getId();
+        if (!StringUtils.isEmpty(operationId)) {
+            return getSamplingScore(operationId);
         }
 
-        else {
-            long val = Math.abs(random.nextLong());
-            samplingScore =  ((double)Math.abs(val)/ Long.MAX_VALUE);
-        }
+        long val = Math.abs(random.nextLong());
+        double samplingScore =  ((double)Math.abs(val)/ Long.MAX_VALUE);
 
         return samplingScore * 100;
     }
 
+    /**
+     * Returns the sampling score of the telemetries of an operation.
+     * @param operationId The non empty id of the operation.
+     * @return The score, between 0 and 100.
+     */
+    public static double getSamplingScore(String operationId) {
+        return ((double) getSamplingHashCode(operationId) / Integer.MAX_VALUE) * 100;
+    }
+
      static int getSamplingHashCode(String input) {
         if (StringUtils.isEmpty(input)) {
             return 0;
         }
 
-        StringBuilder inputBuilder = new StringBuilder(input);
-        while (inputBuilder.length() < 8) {
-            inputBuilder.append(input);
+        // The hash is of the input repeated until it is at least 8 characters long
+        int length = input.length();
+        int hashedLength = length;
+        while (hashedLength < 8) {
+            hashedLength += length;
         }
 
         int hash = 5381;
 
-        for (int i = 0; i < inputBuilder.length(); ++i) {
-            hash = ((hash << 5) + hash) + (int) inputBuilder.charAt(i);
+        for (int i = 0; i < hashedLength; ++i) {
+            hash = ((hash << 5) + hash) + (int) input.charAt(i % length);
         }
 
         return hash == Integer.MIN_VALUE ? Integer.MAX_VALUE : Math.abs(hash);
@@ -0,0 +1,532 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.samplingV2;
+
+import com.microsoft.applicationinsights.TelemetryConfiguration;
+import com.microsoft.applicationinsights.channel.TelemetryChannel;
+import com.microsoft.applicationinsights.extensibility.TelemetryModule;
+import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.extensibility.TelemetryTypeSpecific;
+import com.microsoft.applicationinsights.internal.annotation.BuiltInProcessor;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseDataCollector;
+import com.microsoft.applicationinsights.internal.shutdown.SDKShutdownActivity;
+import com.microsoft.applicationinsights.internal.shutdown.Stoppable;
+import com.microsoft.applicationinsights.telemetry.Duration;
+import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import com.microsoft.applicationinsights.telemetry.SupportSampling;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.google.common.base.Strings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This processor samples whole operations after they complete, unlike the sampling processors that decide
+ * on every telemetry as it comes, so the traces and dependencies of the rare failing or slow requests are kept.
+ * <p>
+ * The telemetries that support sampling are buffered by their operation id until the RequestTelemetry of the
+ * operation is tracked, which is when the request completes. The whole operation is then kept if the request
+ * failed, if the operation has an exception or a failed dependency, or if the request is slow, that is its
+ * duration is above the 'SlowRequestPercentile' of the recent requests or at least 'SlowRequestThresholdInMillis'.
+ * Other operations are kept at 'HealthyOperationsSamplingPercentage' by their operation id score, and their
+ * telemetries carry that sampling percentage. Telemetries of an operation that arrive after its decision follow it.
+ * <p>
+ * Operations that see no request within 'OperationTimeoutInSeconds' are decided without it. Not more than
+ * 'MaxBufferedItems' telemetries are buffered, when the budget is exhausted the oldest operations are decided
+ * early. Telemetries without an operation id are not buffered. A failed or slow request, or a failure, that comes
+ * after its operation was dropped, for example because it was decided early, is kept with what follows it.
+ * <p>
+ * The kept telemetries are sent to the channel of the configuration the processor is loaded into, so the processor
+ * should be the last one, the processors that follow it do not see the telemetries that were buffered.
+ * <p>
+ * How to use in ApplicationInsights Configuration :
+ * <p>
+* <TelemetryProcessors>
+    <BuiltInProcessors>
+        <Processor type = "TailSamplingTelemetryProcessor">
+            <Add name = "MaxBufferedItems" value = "10000" />
+            <Add name = "OperationTimeoutInSeconds" value = "30" />
+            <Add name = "SlowRequestPercentile" value = "99" />
+            <Add name = "SlowRequestThresholdInMillis" value = "2000" />
+            <Add name = "HealthyOperationsSamplingPercentage" value = "10" />
+        </Processor>
+    </BuiltInProcessors>
+</TelemetryProcessors>
+ */
+@BuiltInProcessor("TailSamplingTelemetryProcessor")
+public final class TailSamplingTelemetryProcessor implements TelemetryProcessor, TelemetryTypeSpecific, TelemetryModule, Stoppable {
+    static final int DEFAULT_MAX_BUFFERED_ITEMS = 10000;
+    static final int DEFAULT_OPERATION_TIMEOUT_IN_SECONDS = 30;
+    static final double DEFAULT_SLOW_REQUEST_PERCENTILE = 99.0;
+    static final double DEFAULT_HEALTHY_OPERATIONS_SAMPLING_PERCENTAGE = 10.0;
+
+    // Must be a power of two
+    private static final int STRIPES = 16;
+
+    // The number of recent request durations the percentile is computed of
+    static final int DURATION_SAMPLES = 1024;
+    static final int MIN_DURATION_SAMPLES = 100;
+    private static final int DURATIONS_PER_COMPUTATION = 64;
+
+    // How often all the stripes are checked for expired operations, not only the stripe of the telemetry
+    private static final long SWEEP_INTERVAL_IN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private enum Decision {
+        KEEP,
+        KEEP_SAMPLED,
+        DROP
+    }
+
+    private static final class BufferedOperation {
+        private final long startNanos;
+        private final List<Telemetry> telemetries = new ArrayList<Telemetry>(4);
+        private boolean hasFailure;
+
+        private BufferedOperation(long startNanos) {
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * The operations of the operation ids that hash to the stripe, guarded by the stripe itself.
+     */
+    private static final class Stripe {
+        // In the order the operations started
+        private final LinkedHashMap<String, BufferedOperation> operations = new LinkedHashMap<String, BufferedOperation>();
+        private final LinkedHashMap<String, Decision> decisions = new LinkedHashMap<String, Decision>();
+        private int bufferedTelemetries;
+
+        private void recordDecision(String operationId, Decision decision, int maxDecisions) {
+            if (decisions.size() >= maxDecisions) {
+                Iterator<String> eldest = decisions.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+            decisions.put(operationId, decision);
+        }
+    }
+
+    /**
+     * The percentile of the durations of the recent requests, computed once per a number of requests.
+     */
+    static final class DurationPercentile {
+        private final long[] durations = new long[DURATION_SAMPLES];
+        private int count;
+        private int next;
+        private int sinceComputation;
+        private long threshold = Long.MAX_VALUE;
+        private volatile double percentile = DEFAULT_SLOW_REQUEST_PERCENTILE;
+
+        /**
+         * Records the duration of a request.
+         * @return True if the duration is above the percentile of the durations before it.
+         */
+        synchronized boolean recordAndCheck(long durationInMillis) {
+            boolean slow = durationInMillis > threshold;
+
+            durations[next] = durationInMillis;
+            next = (next + 1) % durations.length;
+            if (count < durations.length) {
+                ++count;
+            }
+
+            if (++sinceComputation >= DURATIONS_PER_COMPUTATION && count >= MIN_DURATION_SAMPLES) {
+                sinceComputation = 0;
+                long[] sorted = Arrays.copyOf(durations, count);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+                threshold = sorted[Math.max(0, Math.min(index, count - 1))];
+            }
+
+            return slow;
+        }
+
+        void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+    }
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final DurationPercentile durationPercentile = new DurationPercentile();
+    private final TelemetryChannel channel;
+    private final AtomicLong lastSweep;
+
+    // The configuration the processor is loaded into, its channel gets the kept telemetries
+    private volatile TelemetryConfiguration configuration;
+
+    private volatile int maxBufferedItems = DEFAULT_MAX_BUFFERED_ITEMS;
+    private volatile long operationTimeoutInNanos = TimeUnit.SECONDS.toNanos(DEFAULT_OPERATION_TIMEOUT_IN_SECONDS);
+    private volatile long slowRequestThresholdInMillis = 0L;
+    private volatile double healthyOperationsSamplingPercentage = DEFAULT_HEALTHY_OPERATIONS_SAMPLING_PERCENTAGE;
+
+    public TailSamplingTelemetryProcessor() {
+        this(null);
+
+        // The buffered operations are sent before the channels are stopped
+        SDKShutdownActivity.INSTANCE.register(this);
+    }
+
+    /**
+     * @param channel The channel to send the kept telemetries to, null for the channel of the configuration.
+     */
+    TailSamplingTelemetryProcessor(TelemetryChannel channel) {
+        this(channel, System.nanoTime());
+    }
+
+    TailSamplingTelemetryProcessor(TelemetryChannel channel, long now) {
+        this.channel = channel;
+        this.lastSweep = new AtomicLong(now);
+        for (int i = 0; i < STRIPES; ++i) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Called with the configuration the processor is loaded into.
+     * @param configuration The configuration whose channel gets the kept telemetries.
+     */
+    @Override
+    public void initialize(TelemetryConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    @Override
+    public boolean isApplicableTo(Class<? extends Telemetry> telemetryType) {
+        return SupportSampling.class.isAssignableFrom(telemetryType);
+    }
+
+    @Override
+    public boolean process(Telemetry telemetry) {
+        return process(telemetry, System.nanoTime());
+    }
+
+    boolean process(Telemetry telemetry, long now) {
+        if (!(telemetry instanceof SupportSampling)) {
+            return true;
+        }
+
+        String operationId = telemetry.getContext().getOperation().getId();
+        if (Strings.isNullOrEmpty(operationId)) {
+            return true;
+        }
+
+        // The duration is recorded even if the operation was already decided
+        boolean slowRequest = telemetry instanceof RequestTelemetry && isSlow((RequestTelemetry) telemetry);
+
+        List<Telemetry> toSend = new ArrayList<Telemetry>();
+        sweep(now, toSend);
+
+        Decision decision;
+        Stripe stripe = getStripe(operationId);
+        synchronized (stripe) {
+            expire(stripe, now, toSend);
+
+            decision = stripe.decisions.get(operationId);
+            if (decision == Decision.DROP && (slowRequest || isFailure(telemetry))) {
+                // The operation was decided before its failure showed up, what is left of it is kept
+                decision = Decision.KEEP;
+                stripe.decisions.put(operationId, decision);
+            } else if (decision == null) {
+                if (telemetry instanceof RequestTelemetry) {
+                    BufferedOperation operation = stripe.operations.remove(operationId);
+                    boolean hasFailure = !((RequestTelemetry) telemetry).isSuccess() || (operation != null && operation.hasFailure);
+                    decision = decide(operationId, hasFailure || slowRequest);
+                    stripe.recordDecision(operationId, decision, getMaxDecisionsPerStripe());
+                    if (operation != null) {
+                        release(stripe, operation, decision, toSend);
+                    }
+                } else {
+                    buffer(stripe, operationId, telemetry, now, toSend);
+                }
+            }
+        }
+
+        send(toSend);
+
+        if (decision == null || decision == Decision.DROP) {
+            return false;
+        }
+
+        setSamplingPercentage(telemetry, decision);
+        return true;
+    }
+
+    /**
+     * Sends the telemetries of all the buffered operations, each decided without its request.
+     */
+    @Override
+    public void stop(long timeout, TimeUnit timeUnit) {
+        List<Telemetry> toSend = new ArrayList<Telemetry>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                while (!stripe.operations.isEmpty()) {
+                    decideEldest(stripe, toSend);
+                }
+            }
+        }
+
+        send(toSend);
+    }
+
+    int getBufferedItemsCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.bufferedTelemetries;
+            }
+        }
+
+        return count;
+    }
+
+    private void buffer(Stripe stripe, String operationId, Telemetry telemetry, long now, List<Telemetry> toSend) {
+        BufferedOperation operation = stripe.operations.get(operationId);
+        if (operation == null) {
+            operation = new BufferedOperation(now);
+            stripe.operations.put(operationId, operation);
+        }
+
+        operation.telemetries.add(telemetry);
+        ++stripe.bufferedTelemetries;
+        if (isFailure(telemetry)) {
+            operation.hasFailure = true;
+        }
+
+        int maxBufferedPerStripe = Math.max(1, maxBufferedItems / STRIPES);
+        while (stripe.bufferedTelemetries > maxBufferedPerStripe) {
+            decideEldest(stripe, toSend);
+        }
+    }
+
+    private void sweep(long now, List<Telemetry> toSend) {
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_IN_NANOS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                expire(stripe, now, toSend);
+            }
+        }
+    }
+
+    private void expire(Stripe stripe, long now, List<Telemetry> toSend) {
+        long timeout = operationTimeoutInNanos;
+        while (!stripe.operations.isEmpty()) {
+            BufferedOperation eldest = stripe.operations.values().iterator().next();
+            if (now - eldest.startNanos < timeout) {
+                break;
+            }
+            decideEldest(stripe, toSend);
+        }
+    }
+
+    private void decideEldest(Stripe stripe, List<Telemetry> toSend) {
+        Iterator<Map.Entry<String, BufferedOperation>> eldest = stripe.operations.entrySet().iterator();
+        Map.Entry<String, BufferedOperation> entry = eldest.next();
+        eldest.remove();
+
+        String operationId = entry.getKey();
+        BufferedOperation operation = entry.getValue();
+
+        Decision decision = decide(operationId, operation.hasFailure);
+        stripe.recordDecision(operationId, decision, getMaxDecisionsPerStripe());
+        release(stripe, operation, decision, toSend);
+    }
+
+    private void release(Stripe stripe, BufferedOperation operation, Decision decision, List<Telemetry> toSend) {
+        stripe.bufferedTelemetries -= operation.telemetries.size();
+        if (decision == Decision.DROP) {
+            return;
+        }
+
+        for (Telemetry telemetry : operation.telemetries) {
+            setSamplingPercentage(telemetry, decision);
+            toSend.add(telemetry);
+        }
+    }
+
+    private Decision decide(String operationId, boolean interesting) {
+        if (interesting) {
+            return Decision.KEEP;
+        }
+
+        double samplingPercentage = healthyOperationsSamplingPercentage;
+        if (samplingPercentage >= 100.0) {
+            return Decision.KEEP;
+        }
+
+        return SamplingScoreGeneratorV2.getSamplingScore(operationId) < samplingPercentage ? Decision.KEEP_SAMPLED : Decision.DROP;
+    }
+
+    private boolean isSlow(RequestTelemetry request) {
+        Duration duration = request.getDuration();
+        long durationInMillis = duration == null ? 0L : duration.getTotalMilliseconds();
+
+        boolean slow = durationPercentile.recordAndCheck(durationInMillis);
+        long threshold = slowRequestThresholdInMillis;
+        return slow || (threshold > 0 && durationInMillis >= threshold);
+    }
+
+    private static boolean isFailure(Telemetry telemetry) {
+        if (telemetry instanceof ExceptionTelemetry) {
+            return true;
+        }
+        if (telemetry instanceof RemoteDependencyTelemetry) {
+            return !((RemoteDependencyTelemetry) telemetry).getSuccess();
+        }
+
+        return telemetry instanceof RequestTelemetry && !((RequestTelemetry) telemetry).isSuccess();
+    }
+
+    private void setSamplingPercentage(Telemetry telemetry, Decision decision) {
+        if (decision != Decision.KEEP_SAMPLED) {
+            return;
+        }
+
+        SupportSampling samplingSupportingTelemetry = (SupportSampling) telemetry;
+        if (samplingSupportingTelemetry.getSamplingPercentage() == null) {
+            samplingSupportingTelemetry.setSamplingPercentage(healthyOperationsSamplingPercentage);
+        }
+    }
+
+    private void send(List<Telemetry> telemetries) {
+        if (telemetries.isEmpty()) {
+            return;
+        }
+
+        TelemetryChannel target = channel;
+        if (target == null) {
+            TelemetryConfiguration loadedInto = configuration;
+            target = loadedInto != null ? loadedInto.getChannel() : TelemetryConfiguration.getActive().getChannel();
+        }
+        for (Telemetry telemetry : telemetries) {
+            try {
+                QuickPulseDataCollector.INSTANCE.add(telemetry);
+            } catch (Throwable t) {
+            }
+
+            try {
+                target.send(telemetry);
+            } catch (Throwable t) {
+                InternalLogger.INSTANCE.error("TailSamplingTelemetryProcessor: exception while sending telemetry: '%s'", t.getMessage());
+            }
+        }
+    }
+
+    private int getMaxDecisionsPerStripe() {
+        return Math.max(16, maxBufferedItems / STRIPES);
+    }
+
+    private Stripe getStripe(String operationId) {
+        int hash = operationId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    public void setMaxBufferedItems(String maxBufferedItems) throws Throwable {
+        try {
+            int value = Integer.parseInt(maxBufferedItems.trim());
+            if (value <= 0) {
+                throw new IllegalArgumentException(String.format("Max buffered items must be positive: %s", maxBufferedItems));
+            }
+            this.maxBufferedItems = value;
+            InternalLogger.INSTANCE.trace(String.format("TailSamplingTelemetryProcessor: set max buffered items to %d", value));
+        } catch (Throwable e) {
+            InternalLogger.INSTANCE.logAlways(InternalLogger.LoggingLevel.ERROR,
+                    String.format("TailSamplingTelemetryProcessor: failed to parse max buffered items: %s", maxBufferedItems));
+            throw e;
+        }
+    }
+
+    public void setOperationTimeoutInSeconds(String operationTimeoutInSeconds) throws Throwable {
+        try {
+            int value = Integer.parseInt(operationTimeoutInSeconds.trim());
+            if (value <= 0) {
+                throw new IllegalArgumentException(String.format("Operation timeout must be positive: %s", operationTimeoutInSeconds));
+            }
+            operationTimeoutInNanos = TimeUnit.SECONDS.toNanos(value);
+            InternalLogger.INSTANCE.trace(String.format("TailSamplingTelemetryProcessor: set operation timeout to %d seconds", value));
+        } catch (Throwable e) {
+            InternalLogger.INSTANCE.logAlways(InternalLogger.LoggingLevel.ERROR,
+                    String.format("TailSamplingTelemetryProcessor: failed to parse operation timeout: %s", operationTimeoutInSeconds));
+            throw e;
+        }
+    }
+
+    public void setSlowRequestPercentile(String slowRequestPercentile) throws Throwable {
+        try {
+            double value = Double.parseDouble(slowRequestPercentile.trim());
+            if (value <= 0.0 || value > 100.0) {
+                throw new IllegalArgumentException(String.format("Slow request percentile must be in (0, 100]: %s", slowRequestPercentile));
+            }
+            durationPercentile.setPercentile(value);
+            InternalLogger.INSTANCE.trace(String.format("TailSamplingTelemetryProcessor: set slow request percentile to %s", value));
+        } catch (Throwable e) {
+            InternalLogger.INSTANCE.logAlways(InternalLogger.LoggingLevel.ERROR,
+                    String.format("TailSamplingTelemetryProcessor: failed to parse slow request percentile: %s", slowRequestPercentile));
+            throw e;
+        }
+    }
+
+    /**
+     * Sets the duration from which a request is slow regardless of the percentile, 0 turns the threshold off.
+     */
+    public void setSlowRequestThresholdInMillis(String slowRequestThresholdInMillis) throws Throwable {
+        try {
+            long value = Long.parseLong(slowRequestThresholdInMillis.trim());
+            if (value < 0) {
+                throw new IllegalArgumentException(String.format("Slow request threshold must not be negative: %s", slowRequestThresholdInMillis));
+            }
+            this.slowRequestThresholdInMillis = value;
+            InternalLogger.INSTANCE.trace(String.format("TailSamplingTelemetryProcessor: set slow request threshold to %d milliseconds", value));
+        } catch (Throwable e) {
+            InternalLogger.INSTANCE.logAlways(InternalLogger.LoggingLevel.ERROR,
+                    String.format("TailSamplingTelemetryProcessor: failed to parse slow request threshold: %s", slowRequestThresholdInMillis));
+            throw e;
+        }
+    }
+
+    public void setHealthyOperationsSamplingPercentage(String healthyOperationsSamplingPercentage) throws Throwable {
+        try {
+            double value = Double.parseDouble(healthyOperationsSamplingPercentage.trim());
+            if (value < 0.0 || value > 100.0) {
+                throw new IllegalArgumentException(String.format("Sampling percentage must be in [0, 100]: %s", healthyOperationsSamplingPercentage));
+            }
+            this.healthyOperationsSamplingPercentage = value;
+            InternalLogger.INSTANCE.trace(String.format("TailSamplingTelemetryProcessor: set healthy operations sampling percentage to %s", value));
+        } catch (Throwable e) {
+            InternalLogger.INSTANCE.logAlways(InternalLogger.LoggingLevel.ERROR,
+                    String.format("TailSamplingTelemetryProcessor: failed to parse healthy operations sampling percentage: %s", healthyOperationsSamplingPercentage));
+            throw e;
+        }
+    }
+}
@@ -43,6 +43,7 @@ public class ApplicationInsightsXmlConfiguration {
     private SDKLoggerXmlElement sdkLogger;
     private SamplerXmlElement sampler;
     private QuickPulseXmlElement quickPulse;
+    private MetricAggregationXmlElement metricAggregation;
 
     private String schemaVersion;
 
@@ -118,6 +119,15 @@ public class ApplicationInsightsXmlConfiguration {
         this.quickPulse = quickPulse;
     }
 
+    public MetricAggregationXmlElement getMetricAggregation() {
+        return metricAggregation;
+    }
+
+    @XmlElement(name="MetricAggregation")
+    public void setMetricAggregation(MetricAggregationXmlElement metricAggregation) {
+        this.metricAggregation = metricAggregation;
+    }
+
     public SDKLoggerXmlElement getSdkLogger() {
         return sdkLogger;
     }
@@ -41,6 +41,12 @@ public class ChannelXmlElement {
     private boolean developerMode;
     private boolean throttling = true;
     private String maxTransmissionStorageFilesCapacityInMB;
+    private String bufferType;
+    private String transmissionStorageType;
+    private String senderType;
+    private boolean incrementalCompression;
+    private String compressionLevel;
+    private String compressionStrategy;
     private String type = "com.microsoft.applicationinsights.channel.concrete.inprocess.InProcessTelemetryChannel";
 
     public String getType() {
@@ -106,6 +112,60 @@ public class ChannelXmlElement {
         this.maxTransmissionStorageFilesCapacityInMB = maxTransmissionStorageFilesCapacityInMB;
     }
 
+    public String getBufferType() {
+        return bufferType;
+    }
+
+    @XmlElement(name="BufferType")
+    public void setBufferType(String bufferType) {
+        this.bufferType = bufferType;
+    }
+
+    public String getTransmissionStorageType() {
+        return transmissionStorageType;
+    }
+
+    @XmlElement(name="TransmissionStorageType")
+    public void setTransmissionStorageType(String transmissionStorageType) {
+        this.transmissionStorageType = transmissionStorageType;
+    }
+
+    public String getSenderType() {
+        return senderType;
+    }
+
+    @XmlElement(name="SenderType")
+    public void setSenderType(String senderType) {
+        this.senderType = senderType;
+    }
+
+    public boolean getIncrementalCompression() {
+        return incrementalCompression;
+    }
+
+    @XmlElement(name="IncrementalCompression")
+    public void setIncrementalCompression(boolean incrementalCompression) {
+        this.incrementalCompression = incrementalCompression;
+    }
+
+    public String getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    @XmlElement(name="CompressionLevel")
+    public void setCompressionLevel(String compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public String getCompressionStrategy() {
+        return compressionStrategy;
+    }
+
+    @XmlElement(name="CompressionStrategy")
+    public void setCompressionStrategy(String compressionStrategy) {
+        this.compressionStrategy = compressionStrategy;
+    }
+
     public Map<String, String> getData() {
         HashMap<String, String> data = new HashMap<String, String>();
         if (developerMode) {
@@ -128,6 +188,30 @@ public class ChannelXmlElement {
             data.put("MaxTransmissionStorageFilesCapacityInMB", maxTransmissionStorageFilesCapacityInMB);
         }
 
+        if (!Strings.isNullOrEmpty(bufferType)) {
+            data.put("BufferType", bufferType);
+        }
+
+        if (!Strings.isNullOrEmpty(transmissionStorageType)) {
+            data.put("TransmissionStorageType", transmissionStorageType);
+        }
+
+        if (!Strings.isNullOrEmpty(senderType)) {
+            data.put("SenderType", senderType);
+        }
+
+        if (incrementalCompression) {
+            data.put("IncrementalCompression", "true");
+        }
+
+        if (!Strings.isNullOrEmpty(compressionLevel)) {
+            data.put("CompressionLevel", compressionLevel);
+        }
+
+        if (!Strings.isNullOrEmpty(compressionStrategy)) {
+            data.put("CompressionStrategy", compressionStrategy);
+        }
+
         data.put("Throttling", throttling ? "true" : "false");
 
         return data;
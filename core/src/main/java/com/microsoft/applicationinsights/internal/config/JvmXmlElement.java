@@ -31,6 +31,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 public class JvmXmlElement {
     private String name;
     private boolean enabled = true;
+    private long collectionFrequencyInSec;
 
     public String getName() {
         return name;
@@ -49,4 +50,13 @@ public class JvmXmlElement {
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
     }
+
+    public long getCollectionFrequencyInSec() {
+        return collectionFrequencyInSec;
+    }
+
+    @XmlAttribute
+    public void setCollectionFrequencyInSec(long collectionFrequencyInSec) {
+        this.collectionFrequencyInSec = collectionFrequencyInSec;
+    }
 }
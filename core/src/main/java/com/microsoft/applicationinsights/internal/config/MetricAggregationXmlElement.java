@@ -0,0 +1,62 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.config;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The configuration of the pre-aggregated metrics.
+ */
+@XmlRootElement(name="MetricAggregation")
+public class MetricAggregationXmlElement {
+    private String intervalInSeconds;
+    private String maxSeriesPerMetric;
+    private String maxSeries;
+
+    public String getIntervalInSeconds() {
+        return intervalInSeconds;
+    }
+
+    @XmlElement(name="IntervalInSeconds")
+    public void setIntervalInSeconds(String intervalInSeconds) {
+        this.intervalInSeconds = intervalInSeconds;
+    }
+
+    public String getMaxSeriesPerMetric() {
+        return maxSeriesPerMetric;
+    }
+
+    @XmlElement(name="MaxSeriesPerMetric")
+    public void setMaxSeriesPerMetric(String maxSeriesPerMetric) {
+        this.maxSeriesPerMetric = maxSeriesPerMetric;
+    }
+
+    public String getMaxSeries() {
+        return maxSeries;
+    }
+
+    @XmlElement(name="MaxSeries")
+    public void setMaxSeries(String maxSeries) {
+        this.maxSeries = maxSeries;
+    }
+}
@@ -31,6 +31,9 @@ import java.util.ArrayList;
 public class PerformanceCountersXmlElement {
     private boolean useBuiltIn = true;
     private long collectionFrequencyInSec = 60;
+    private long collectionTimeoutInMillis = 10000;
+    private int collectionParallelism = 1;
+    private boolean reportCollectionCost = false;
     private PerformanceCounterJvmSectionXmlElement jvmSection;
     private String plugin;
 
@@ -75,6 +78,33 @@ public class PerformanceCountersXmlElement {
         this.collectionFrequencyInSec = collectionFrequencyInSec;
     }
 
+    public long getCollectionTimeoutInMillis() {
+        return collectionTimeoutInMillis;
+    }
+
+    @XmlAttribute
+    public void setCollectionTimeoutInMillis(long collectionTimeoutInMillis) {
+        this.collectionTimeoutInMillis = collectionTimeoutInMillis;
+    }
+
+    public int getCollectionParallelism() {
+        return collectionParallelism;
+    }
+
+    @XmlAttribute
+    public void setCollectionParallelism(int collectionParallelism) {
+        this.collectionParallelism = collectionParallelism;
+    }
+
+    public boolean isReportCollectionCost() {
+        return reportCollectionCost;
+    }
+
+    @XmlAttribute
+    public void setReportCollectionCost(boolean reportCollectionCost) {
+        this.reportCollectionCost = reportCollectionCost;
+    }
+
     public PerformanceCounterJvmSectionXmlElement getJvmSection() {
         return jvmSection;
     }
@@ -30,6 +30,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 @XmlRootElement(name="QuickPulse")
 public class QuickPulseXmlElement {
     private boolean enabled = true;
+    private boolean compressPayload = false;
 
     @XmlAttribute(name="enabled")
     public void setEnabled(boolean enabled) {
@@ -39,4 +40,13 @@ public class QuickPulseXmlElement {
     public boolean isEnabled() {
         return enabled;
     }
+
+    @XmlAttribute(name="compressPayload")
+    public void setCompressPayload(boolean compressPayload) {
+        this.compressPayload = compressPayload;
+    }
+
+    public boolean isCompressPayload() {
+        return compressPayload;
+    }
 }
@@ -38,12 +38,14 @@ import com.microsoft.applicationinsights.internal.annotation.PerformanceModule;
 import com.microsoft.applicationinsights.channel.TelemetrySampler;
 import com.microsoft.applicationinsights.internal.jmx.JmxAttributeData;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.metrics.MetricAggregationManager;
 import com.microsoft.applicationinsights.internal.perfcounter.JmxMetricPerformanceCounter;
 import com.microsoft.applicationinsights.internal.perfcounter.PerformanceCounterContainer;
 import com.microsoft.applicationinsights.internal.perfcounter.PerformanceCounterConfigurationAware;
 
 import com.google.common.base.Strings;
 import com.microsoft.applicationinsights.internal.quickpulse.QuickPulse;
+import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
 import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
 
 /**
@@ -57,6 +59,10 @@ public enum TelemetryConfigurationFactory {
     private final static String DEFAULT_PERFORMANCE_MODULES_PACKAGE = "com.microsoft.applicationinsights";
     private final static String BUILT_IN_NAME = "BuiltIn";
 
+    private final static int MIN_METRIC_AGGREGATION_INTERVAL_IN_SECONDS = 1;
+    private final static int MAX_METRIC_AGGREGATION_INTERVAL_IN_SECONDS = 3600;
+    private final static int MAX_METRIC_SERIES = 100000;
+
     private String performanceCountersSection = DEFAULT_PERFORMANCE_MODULES_PACKAGE;
 
     final static String EXTERNAL_PROPERTY_IKEY_NAME = "APPLICATION_INSIGHTS_IKEY";
@@ -79,6 +85,8 @@ public enum TelemetryConfigurationFactory {
      * @param configuration The configuration that will be populated
      */
     public final void initialize(TelemetryConfiguration configuration) {
+        // Counters registered meanwhile, for example by the channel, wait for the performance counters configuration
+        PerformanceCounterContainer.INSTANCE.beginConfiguration();
         try {
             InputStream configurationFile = new ConfigurationFileLocator(CONFIG_FILE_NAME).getConfigurationFile();
             if (configurationFile == null) {
@@ -108,10 +116,13 @@ public enum TelemetryConfigurationFactory {
             setTelemetryProcessors(applicationInsightsConfig, configuration);
 
             setQuickPulse(applicationInsightsConfig);
+            setMetricAggregation(applicationInsightsConfig.getMetricAggregation());
 
             initializeComponents(configuration);
         } catch (Exception e) {
             InternalLogger.INSTANCE.logAlways(InternalLogger.LoggingLevel.ERROR, "Failed to initialize configuration, exception: %s", e.getMessage());
+        } finally {
+            PerformanceCounterContainer.INSTANCE.endConfiguration();
         }
     }
 
@@ -154,11 +165,30 @@ public enum TelemetryConfigurationFactory {
 
     private void setQuickPulse(ApplicationInsightsXmlConfiguration appConfiguration) {
         QuickPulseXmlElement quickPulseXmlElement = appConfiguration.getQuickPulse();
-        if (quickPulseXmlElement == null || quickPulseXmlElement.isEnabled()) {
+        if (quickPulseXmlElement == null) {
             QuickPulse.INSTANCE.initialize();
+        } else if (quickPulseXmlElement.isEnabled()) {
+            QuickPulse.INSTANCE.initialize(quickPulseXmlElement.isCompressPayload());
         }
     }
 
+    private void setMetricAggregation(MetricAggregationXmlElement metricAggregationXmlElement) {
+        if (metricAggregationXmlElement == null) {
+            return;
+        }
+
+        LimitsEnforcer intervalInSeconds = LimitsEnforcer.createWithClosestLimitOnError(MIN_METRIC_AGGREGATION_INTERVAL_IN_SECONDS, MAX_METRIC_AGGREGATION_INTERVAL_IN_SECONDS,
+                MetricAggregationManager.DEFAULT_AGGREGATION_INTERVAL_IN_SECONDS, "MetricAggregation.IntervalInSeconds", metricAggregationXmlElement.getIntervalInSeconds());
+        LimitsEnforcer maxSeriesPerMetric = LimitsEnforcer.createWithClosestLimitOnError(1, MAX_METRIC_SERIES,
+                MetricAggregationManager.DEFAULT_MAX_SERIES_PER_METRIC, "MetricAggregation.MaxSeriesPerMetric", metricAggregationXmlElement.getMaxSeriesPerMetric());
+        LimitsEnforcer maxSeries = LimitsEnforcer.createWithClosestLimitOnError(1, MAX_METRIC_SERIES,
+                MetricAggregationManager.DEFAULT_MAX_SERIES, "MetricAggregation.MaxSeries", metricAggregationXmlElement.getMaxSeries());
+
+        MetricAggregationManager.INSTANCE.setAggregationIntervalInSeconds(intervalInSeconds.getCurrentValue());
+        MetricAggregationManager.INSTANCE.setMaxSeriesPerMetric(maxSeriesPerMetric.getCurrentValue());
+        MetricAggregationManager.INSTANCE.setMaxSeries(maxSeries.getCurrentValue());
+    }
+
     /**
      * Sets the configuration data of Modules Initializers in configuration class.
      * @param appConfiguration The configuration data.
@@ -271,6 +301,9 @@ public enum TelemetryConfigurationFactory {
     @SuppressWarnings("unchecked")
     private List<TelemetryModule> getPerformanceModules(PerformanceCountersXmlElement performanceConfigurationData) {
         PerformanceCounterContainer.INSTANCE.setCollectionFrequencyInSec(performanceConfigurationData.getCollectionFrequencyInSec());
+        PerformanceCounterContainer.INSTANCE.setCollectionTimeoutInMillis(performanceConfigurationData.getCollectionTimeoutInMillis());
+        PerformanceCounterContainer.INSTANCE.setCollectionParallelism(performanceConfigurationData.getCollectionParallelism());
+        PerformanceCounterContainer.INSTANCE.setReportCollectionCost(performanceConfigurationData.isReportCollectionCost());
         String pluginName = performanceConfigurationData.getPlugin();
 
         if (!LocalStringsUtils.isNullOrEmpty(pluginName)) {
@@ -499,6 +532,18 @@ public enum TelemetryConfigurationFactory {
                         "Failed to initialized telemetry module " + module.getClass().getSimpleName() + ". Exception");
             }
         }
+
+        // Processors that need their configuration, for example to send to its channel
+        for (TelemetryProcessor processor : configuration.getTelemetryProcessors()) {
+            if (processor instanceof TelemetryModule) {
+                try {
+                    ((TelemetryModule) processor).initialize(configuration);
+                } catch (Exception e) {
+                    InternalLogger.INSTANCE.error(
+                            "Failed to initialized telemetry processor " + processor.getClass().getSimpleName() + ". Exception");
+                }
+            }
+        }
     }
 
     void setPerformanceCountersSection(String performanceCountersSection) {
@@ -0,0 +1,128 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.jmx;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.MalformedObjectNameException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+
+/**
+ * Resolves object names, that might be patterns, to the MBeans of the platform MBean server.
+ *
+ * The results are cached and the cache listens to the registration notifications of the server: an MBean that
+ * is registered or unregistered drops the results of the patterns it matches, which are resolved again when
+ * next used. If the listener cannot be added every call queries the server.
+ */
+enum JmxObjectNameCache {
+    INSTANCE;
+
+    private static final class CachedNames {
+        private final ObjectName pattern;
+        private final Set<ObjectName> names;
+
+        private CachedNames(ObjectName pattern, Set<ObjectName> names) {
+            this.pattern = pattern;
+            this.names = names;
+        }
+    }
+
+    private final ConcurrentMap<String, CachedNames> cache = new ConcurrentHashMap<String, CachedNames>();
+
+    // Changes on every notification, results queried while it changed are not cached since they might be stale
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile boolean listening;
+    private boolean listenerAdded;
+
+    private final NotificationListener listener = new NotificationListener() {
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (!(notification instanceof MBeanServerNotification)) {
+                return;
+            }
+
+            ObjectName name = ((MBeanServerNotification) notification).getMBeanName();
+            version.incrementAndGet();
+            for (CachedNames cached : cache.values()) {
+                if (cached.pattern.apply(name)) {
+                    cache.values().remove(cached);
+                }
+            }
+        }
+    };
+
+    /**
+     * @param server The platform MBean server.
+     * @param objectName The object name, or pattern, to resolve.
+     * @return The names of the registered MBeans that match, the set must not be modified.
+     */
+    Set<ObjectName> queryNames(MBeanServer server, String objectName) throws MalformedObjectNameException {
+        CachedNames cached = cache.get(objectName);
+        if (cached != null) {
+            return cached.names;
+        }
+
+        ObjectName pattern = new ObjectName(objectName);
+        if (!listening) {
+            startListening(server);
+        }
+
+        long versionBefore = version.get();
+        Set<ObjectName> names = Collections.unmodifiableSet(server.queryNames(pattern, null));
+        if (listening && version.get() == versionBefore) {
+            cache.put(objectName, new CachedNames(pattern, names));
+        }
+
+        return names;
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    private synchronized void startListening(MBeanServer server) {
+        // Tried once, a server that refused the listener is not asked again
+        if (listenerAdded) {
+            return;
+        }
+
+        listenerAdded = true;
+        try {
+            server.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, null, null);
+            listening = true;
+        } catch (Throwable t) {
+            InternalLogger.INSTANCE.error("Failed to listen to JMX registrations, JMX object names will not be cached: '%s'", t.getMessage());
+        }
+    }
+}
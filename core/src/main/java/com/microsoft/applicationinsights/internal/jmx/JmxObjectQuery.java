@@ -0,0 +1,193 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+
+/**
+ * The compiled form of the attributes to fetch from an object name: the paths into composite and tabular
+ * attributes are parsed once, and all the attributes of an MBean are fetched with a single
+ * {@link MBeanServer#getAttributes(ObjectName, String[])} call. The object name is resolved through
+ * {@link JmxObjectNameCache} so it is not queried on every fetch.
+ *
+ * The class is immutable and thread safe.
+ */
+public final class JmxObjectQuery {
+    private static final String COMPOSITE_ATTRIBUTE_TYPE = "COMPOSITE";
+    private static final String TABULAR_ATTRIBUTE_TYPE = "TABULAR";
+
+    enum AttributeType {
+        TABULAR,
+        COMPOSITE,
+        REGULAR
+    }
+
+    private static final class CompiledAttribute {
+        private final String displayName;
+        private final String name;
+        private final AttributeType type;
+
+        // The name of the MBean attribute, the first part of the name for composite and tabular attributes
+        private final String attributeName;
+
+        // The index of the row, for tabular attributes
+        private final Object[] rowKey;
+
+        // The item of the composite data, null for regular attributes
+        private final String itemName;
+
+        private CompiledAttribute(JmxAttributeData attribute) {
+            displayName = attribute.displayName;
+            name = attribute.name;
+            if (COMPOSITE_ATTRIBUTE_TYPE.equals(attribute.type)) {
+                type = AttributeType.COMPOSITE;
+            } else if (TABULAR_ATTRIBUTE_TYPE.equals(attribute.type)) {
+                type = AttributeType.TABULAR;
+            } else {
+                type = AttributeType.REGULAR;
+            }
+
+            if (type == AttributeType.REGULAR) {
+                attributeName = attribute.name;
+                rowKey = null;
+                itemName = null;
+            } else {
+                String[] inners = attribute.name.split("\\.");
+                attributeName = inners[0];
+                if (type == AttributeType.TABULAR) {
+                    rowKey = new Object[] {inners[1]};
+                    itemName = inners[2];
+                } else {
+                    rowKey = null;
+                    itemName = inners[1];
+                }
+            }
+        }
+
+        private Object getValue(Object attributeValue) {
+            if (type == AttributeType.REGULAR || attributeValue == null) {
+                return attributeValue;
+            }
+
+            CompositeData compositeData;
+            if (type == AttributeType.TABULAR) {
+                compositeData = ((TabularData) attributeValue).get(rowKey);
+            } else {
+                compositeData = (CompositeData) attributeValue;
+            }
+            return compositeData.get(itemName);
+        }
+    }
+
+    private final String objectName;
+    private final CompiledAttribute[] attributes;
+    private final String[] attributeNames;
+
+    /**
+     * @param objectName The object name, or pattern, of the MBeans.
+     * @param attributes The attributes to fetch from every MBean.
+     */
+    public JmxObjectQuery(String objectName, Collection<JmxAttributeData> attributes) {
+        this.objectName = objectName;
+        this.attributes = new CompiledAttribute[attributes.size()];
+        Set<String> names = new LinkedHashSet<String>();
+        int i = 0;
+        for (JmxAttributeData attribute : attributes) {
+            this.attributes[i] = new CompiledAttribute(attribute);
+            names.add(this.attributes[i].attributeName);
+            ++i;
+        }
+        attributeNames = names.toArray(new String[names.size()]);
+    }
+
+    public String getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Fetches the attributes of all the MBeans the object name matches.
+     * @return A map that represent each attribute: the key is the displayed name for that attribute
+     * and the value is a list of values found
+     * @throws Exception In case the object name is not found or an attribute could not be fetched.
+     */
+    public Map<String, Collection<Object>> fetch() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Set<ObjectName> objects = JmxObjectNameCache.INSTANCE.queryNames(server, objectName);
+        if (objects.isEmpty()) {
+            String errorMsg = String.format("Cannot find object name '%s'", objectName);
+            throw new IllegalArgumentException(errorMsg);
+        }
+
+        Map<String, Collection<Object>> result = new HashMap<String, Collection<Object>>();
+        for (CompiledAttribute attribute : attributes) {
+            result.put(attribute.displayName, new ArrayList<Object>(objects.size()));
+        }
+
+        for (ObjectName object : objects) {
+            List<Attribute> values = server.getAttributes(object, attributeNames).asList();
+            for (CompiledAttribute attribute : attributes) {
+                try {
+                    Object value = attribute.getValue(getAttribute(server, object, values, attribute.attributeName));
+                    if (value != null) {
+                        result.get(attribute.displayName).add(value);
+                    }
+                } catch (Exception e) {
+                    InternalLogger.INSTANCE.error("Failed to fetch JMX object '%s' with attribute '%s': '%s'", objectName, attribute.name, e.getMessage());
+                    throw e;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the attribute among the ones that were fetched together. An attribute that could not be fetched is
+     * missing from them, it is then fetched alone so the reason it failed is known.
+     */
+    private static Object getAttribute(MBeanServer server, ObjectName object, List<Attribute> values, String name) throws Exception {
+        for (int i = 0; i < values.size(); ++i) {
+            Attribute value = values.get(i);
+            if (name.equals(value.getName())) {
+                return value.getValue();
+            }
+        }
+
+        return server.getAttribute(object, name);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.shutdown.SDKShutdownActivity;
+import com.microsoft.applicationinsights.internal.shutdown.Stoppable;
+import com.microsoft.applicationinsights.internal.util.ThreadPoolUtils;
+import com.microsoft.applicationinsights.metrics.Metric;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+/**
+ * The container of the pre-aggregated metrics.
+ *
+ * The values of a metric series are aggregated in memory and every aggregation interval one
+ * {@link com.microsoft.applicationinsights.telemetry.MetricTelemetry} per series that had values is sent
+ * through the {@link com.microsoft.applicationinsights.TelemetryClient} that created the series.
+ * The series that had no value in the interval are evicted.
+ * The thread that sends the aggregations is started with the first metric and the remaining
+ * aggregations are sent when the SDK shuts down.
+ */
+public enum MetricAggregationManager implements Stoppable {
+    INSTANCE;
+
+    public final static int DEFAULT_AGGREGATION_INTERVAL_IN_SECONDS = 60;
+    public final static int DEFAULT_MAX_SERIES_PER_METRIC = 1000;
+    public final static int DEFAULT_MAX_SERIES = 10000;
+
+    private final MetricSeriesRegistry registry = new MetricSeriesRegistry(DEFAULT_MAX_SERIES, DEFAULT_MAX_SERIES_PER_METRIC);
+
+    private volatile boolean initialized = false;
+
+    private long aggregationIntervalInSeconds = DEFAULT_AGGREGATION_INTERVAL_IN_SECONDS;
+
+    private ScheduledThreadPoolExecutor threads;
+
+    private ScheduledFuture<?> aggregationTask;
+
+    /**
+     * Gets the metric series of the name and dimension values, the series is created if needed.
+     * @param telemetryClient The client that sends the aggregations of a new series.
+     * @param name The name of the metric.
+     * @param dimensions The dimension names and values, an empty map for a metric without dimensions.
+     * @return The metric series.
+     */
+    public Metric getMetric(TelemetryClient telemetryClient, String name, Map<String, String> dimensions) {
+        initialize();
+
+        return registry.getMetric(telemetryClient, name, dimensions);
+    }
+
+    /**
+     * Sets the interval at the end of which the aggregations are sent.
+     * @param aggregationIntervalInSeconds The interval in seconds.
+     */
+    public synchronized void setAggregationIntervalInSeconds(long aggregationIntervalInSeconds) {
+        Preconditions.checkArgument(aggregationIntervalInSeconds > 0, "aggregationIntervalInSeconds must be a positive number");
+
+        this.aggregationIntervalInSeconds = aggregationIntervalInSeconds;
+        if (aggregationTask != null) {
+            aggregationTask.cancel(false);
+            scheduleWork();
+        }
+    }
+
+    public synchronized long getAggregationIntervalInSeconds() {
+        return aggregationIntervalInSeconds;
+    }
+
+    /**
+     * Sets the maximum number of series of one metric, the values of new dimension values beyond it are aggregated as overflow.
+     * @param maxSeriesPerMetric The maximum number of series.
+     */
+    public void setMaxSeriesPerMetric(int maxSeriesPerMetric) {
+        registry.setMaxSeriesPerMetric(maxSeriesPerMetric);
+    }
+
+    /**
+     * Sets the maximum number of series of all metrics, the values of new metrics beyond it are dropped.
+     * @param maxSeries The maximum number of series.
+     */
+    public void setMaxSeries(int maxSeries) {
+        registry.setMaxSeries(maxSeries);
+    }
+
+    /**
+     * Sends the aggregations of the current interval and starts a new interval, the idle series are evicted.
+     */
+    public void flush() {
+        for (MetricSeries series : registry.getSeries()) {
+            try {
+                MetricTelemetry telemetry = series.snapshot();
+                if (telemetry == null) {
+                    // The values tracked while the series is evicted are sent with this interval
+                    telemetry = registry.evict(series);
+                }
+                if (telemetry != null) {
+                    series.getTelemetryClient().trackMetric(telemetry);
+                }
+            } catch (Throwable t) {
+                InternalLogger.INSTANCE.error("Exception while sending the aggregation of metric '%s': '%s'", series.getName(), t.getMessage());
+                InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(t));
+            }
+        }
+    }
+
+    /**
+     * Sends the remaining aggregations and stops the thread that sends them.
+     */
+    @Override
+    public synchronized void stop(long timeout, TimeUnit timeUnit) {
+        if (!initialized) {
+            return;
+        }
+
+        flush();
+        ThreadPoolUtils.stop(threads, timeout, timeUnit);
+        aggregationTask = null;
+        initialized = false;
+    }
+
+    private void initialize() {
+        if (!initialized) {
+            synchronized (INSTANCE) {
+                if (!initialized) {
+                    createThreadToAggregate();
+
+                    scheduleWork();
+
+                    // Register the instance so the remaining aggregations are sent when the application exits.
+                    SDKShutdownActivity.INSTANCE.register(INSTANCE);
+
+                    initialized = true;
+                }
+            }
+        }
+    }
+
+    private void scheduleWork() {
+        aggregationTask = threads.scheduleAtFixedRate(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                },
+                aggregationIntervalInSeconds,
+                aggregationIntervalInSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    private void createThreadToAggregate() {
+        threads = new ScheduledThreadPoolExecutor(1);
+        threads.setThreadFactory(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.metrics.Metric;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+
+/**
+ * The aggregation of one metric series.
+ *
+ * The values are added to striped cells, a thread updates the cell picked by its id, so concurrent
+ * threads rarely contend on the same memory. Every cell takes two cache lines in an {@link AtomicLongArray},
+ * the doubles are kept as their raw long bits and updated by CAS, so tracking a value never locks or allocates.
+ *
+ * Every cell has two generations of fields, values are added to the active one. Taking a snapshot switches
+ * the active generation and waits for the values being added to the previous one, so a value is always
+ * counted as a whole in a single interval.
+ *
+ * A series that had no value in an interval is evicted from its {@link MetricSeriesRegistry} and retired,
+ * the values tracked through a reference the application kept go to the series that replaces it.
+ */
+public final class MetricSeries implements Metric {
+    // The number of threads adding a value to each generation of the cell
+    private final static int WRITERS = 0;
+
+    // The fields of a generation, from the start of the generation
+    private final static int GENERATIONS = 2;
+    private final static int COUNT = 0;
+    private final static int SUM = 1;
+    private final static int SUM_OF_SQUARES = 2;
+    private final static int MIN = 3;
+    private final static int MAX = 4;
+    private final static int GENERATION_SIZE = 5;
+    private final static int FIRST_GENERATION = WRITERS + GENERATIONS;
+
+    // 16 longs, 128 bytes, per cell so two cells never share a cache line
+    private final static int CELL_SIZE = 16;
+
+    private final static long ZERO_BITS = Double.doubleToRawLongBits(0.0);
+    private final static long MIN_INITIAL_BITS = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+    private final static long MAX_INITIAL_BITS = Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+
+    private final String name;
+    private final Map<String, String> dimensions;
+    private final TelemetryClient telemetryClient;
+    private final MetricSeriesRegistry registry;
+    private final boolean overflow;
+
+    private final int stripeMask;
+    private final AtomicLongArray cells;
+
+    private volatile int activeGeneration;
+    private volatile boolean retired;
+
+    MetricSeries(String name, Map<String, String> dimensions, TelemetryClient telemetryClient, int stripes) {
+        this(name, dimensions, telemetryClient, stripes, null, false);
+    }
+
+    /**
+     * @param registry The registry that replaces the series once it is retired.
+     * @param overflow True for the series that aggregates the dimension values beyond the cap of the metric.
+     */
+    MetricSeries(String name, Map<String, String> dimensions, TelemetryClient telemetryClient, int stripes, MetricSeriesRegistry registry, boolean overflow) {
+        this.name = name;
+        this.dimensions = Collections.unmodifiableMap(dimensions);
+        this.telemetryClient = telemetryClient;
+        this.registry = registry;
+        this.overflow = overflow;
+
+        stripeMask = stripes - 1;
+        cells = new AtomicLongArray(stripes * CELL_SIZE);
+        for (int stripe = 0; stripe < stripes; ++stripe) {
+            for (int generation = 0; generation < GENERATIONS; ++generation) {
+                resetGeneration(generationStart(stripe * CELL_SIZE, generation));
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Map<String, String> getDimensions() {
+        return dimensions;
+    }
+
+    TelemetryClient getTelemetryClient() {
+        return telemetryClient;
+    }
+
+    boolean isOverflow() {
+        return overflow;
+    }
+
+    @Override
+    public void trackValue(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+
+        int cell = ((int) Thread.currentThread().getId() & stripeMask) * CELL_SIZE;
+
+        // Registers as a writer of the active generation, a snapshot that switched it meanwhile does not wait for us
+        int generation;
+        while (true) {
+            generation = activeGeneration;
+            cells.incrementAndGet(cell + WRITERS + generation);
+            if (generation == activeGeneration) {
+                break;
+            }
+            cells.decrementAndGet(cell + WRITERS + generation);
+        }
+
+        // Checked once registered, so the snapshot taken by 'retire' waits for the values it let through
+        if (retired) {
+            cells.decrementAndGet(cell + WRITERS + generation);
+            registry.getReplacement(this).trackValue(value);
+            return;
+        }
+
+        int fields = generationStart(cell, generation);
+        addDouble(fields + SUM, value);
+        addDouble(fields + SUM_OF_SQUARES, value * value);
+        updateMin(fields + MIN, value);
+        updateMax(fields + MAX, value);
+        cells.incrementAndGet(fields + COUNT);
+
+        cells.decrementAndGet(cell + WRITERS + generation);
+    }
+
+    /**
+     * Builds the telemetry of the values tracked since the previous snapshot and starts a new interval.
+     * @return The telemetry or null if no value was tracked.
+     */
+    synchronized MetricTelemetry snapshot() {
+        int generation = activeGeneration;
+        activeGeneration = 1 - generation;
+
+        long count = 0;
+        double sum = 0.0;
+        double sumOfSquares = 0.0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        for (int cell = 0; cell < cells.length(); cell += CELL_SIZE) {
+            // The values being added to the previous generation are only a few CAS away
+            while (cells.get(cell + WRITERS + generation) != 0) {
+                Thread.yield();
+            }
+
+            int fields = generationStart(cell, generation);
+            long cellCount = cells.get(fields + COUNT);
+            if (cellCount == 0) {
+                continue;
+            }
+
+            count += cellCount;
+            sum += Double.longBitsToDouble(cells.get(fields + SUM));
+            sumOfSquares += Double.longBitsToDouble(cells.get(fields + SUM_OF_SQUARES));
+            min = Math.min(min, Double.longBitsToDouble(cells.get(fields + MIN)));
+            max = Math.max(max, Double.longBitsToDouble(cells.get(fields + MAX)));
+
+            // No value is added to the generation until the next snapshot makes it active again
+            resetGeneration(fields);
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        double mean = sum / count;
+        double variance = Math.max(0.0, sumOfSquares / count - mean * mean);
+
+        MetricTelemetry telemetry = new MetricTelemetry(name, sum);
+        telemetry.setCount((int) Math.min(count, Integer.MAX_VALUE));
+        telemetry.setMin(min);
+        telemetry.setMax(max);
+        telemetry.setStandardDeviation(Math.sqrt(variance));
+        telemetry.getProperties().putAll(dimensions);
+
+        return telemetry;
+    }
+
+    /**
+     * Retires the series once it was evicted from the registry, the values tracked afterwards go to its replacement.
+     * @return The telemetry of the values tracked since the previous snapshot, or null if no value was tracked.
+     */
+    MetricTelemetry retire() {
+        retired = true;
+        return snapshot();
+    }
+
+    private static int generationStart(int cell, int generation) {
+        return cell + FIRST_GENERATION + generation * GENERATION_SIZE;
+    }
+
+    private void resetGeneration(int fields) {
+        cells.set(fields + COUNT, 0);
+        cells.set(fields + SUM, ZERO_BITS);
+        cells.set(fields + SUM_OF_SQUARES, ZERO_BITS);
+        cells.set(fields + MIN, MIN_INITIAL_BITS);
+        cells.set(fields + MAX, MAX_INITIAL_BITS);
+    }
+
+    private void addDouble(int index, double value) {
+        while (true) {
+            long current = cells.get(index);
+            long updated = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + value);
+            if (cells.compareAndSet(index, current, updated)) {
+                return;
+            }
+        }
+    }
+
+    private void updateMin(int index, double value) {
+        while (true) {
+            long current = cells.get(index);
+            if (Double.longBitsToDouble(current) <= value) {
+                return;
+            }
+            if (cells.compareAndSet(index, current, Double.doubleToRawLongBits(value))) {
+                return;
+            }
+        }
+    }
+
+    private void updateMax(int index, double value) {
+        while (true) {
+            long current = cells.get(index);
+            if (Double.longBitsToDouble(current) >= value) {
+                return;
+            }
+            if (cells.compareAndSet(index, current, Double.doubleToRawLongBits(value))) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.metrics.Metric;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+
+/**
+ * Keeps the metric series by metric name and dimension values and enforces the cardinality caps.
+ *
+ * A metric that reached 'maxSeriesPerMetric' series aggregates the values of any new dimension values into
+ * one overflow series, marked by the {@link #OVERFLOW_DIMENSION_NAME} dimension. Once the registry holds 'maxSeries'
+ * series no new series is created, the values of a new metric are dropped.
+ *
+ * A series that had no value in an aggregation interval is evicted, so the series of dimension values that are
+ * no longer used do not stay in memory, and do not count against the caps. A metric without series is removed.
+ * The series are created and evicted under the lock of their metric, looking a series up takes no lock.
+ */
+final class MetricSeriesRegistry {
+    final static String OVERFLOW_DIMENSION_NAME = "AggregationOverflow";
+
+    final static int MAX_DIMENSIONS_PER_SERIES = 10;
+
+    private final static int MAX_STRIPES = 8;
+
+    private static final class MetricSeriesGroup {
+        private final ConcurrentMap<Map<String, String>, MetricSeries> series = new ConcurrentHashMap<Map<String, String>, MetricSeries>();
+        private final AtomicInteger numberOfSeries = new AtomicInteger();
+        private final AtomicBoolean overflowReported = new AtomicBoolean();
+        private volatile MetricSeries overflow;
+
+        // Set under the lock of the group once it is removed from the registry, no series is added to it afterwards
+        private boolean removed;
+    }
+
+    private static final class DroppedMetric implements Metric {
+        private final String name;
+        private final Map<String, String> dimensions;
+
+        private DroppedMetric(String name, Map<String, String> dimensions) {
+            this.name = name;
+            this.dimensions = Collections.unmodifiableMap(new HashMap<String, String>(dimensions));
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Map<String, String> getDimensions() {
+            return dimensions;
+        }
+
+        @Override
+        public void trackValue(double value) {
+        }
+    }
+
+    private final ConcurrentMap<String, MetricSeriesGroup> groups = new ConcurrentHashMap<String, MetricSeriesGroup>();
+    private final AtomicInteger numberOfSeries = new AtomicInteger();
+    private final AtomicBoolean maxSeriesReported = new AtomicBoolean();
+    private final int stripes;
+
+    private volatile int maxSeries;
+    private volatile int maxSeriesPerMetric;
+
+    MetricSeriesRegistry(int maxSeries, int maxSeriesPerMetric) {
+        this(maxSeries, maxSeriesPerMetric, Runtime.getRuntime().availableProcessors());
+    }
+
+    MetricSeriesRegistry(int maxSeries, int maxSeriesPerMetric, int concurrency) {
+        setMaxSeries(maxSeries);
+        setMaxSeriesPerMetric(maxSeriesPerMetric);
+
+        int stripesToUse = 1;
+        while (stripesToUse < concurrency && stripesToUse < MAX_STRIPES) {
+            stripesToUse <<= 1;
+        }
+        stripes = stripesToUse;
+    }
+
+    void setMaxSeries(int maxSeries) {
+        Preconditions.checkArgument(maxSeries > 0, "maxSeries must be a positive number");
+        this.maxSeries = maxSeries;
+    }
+
+    void setMaxSeriesPerMetric(int maxSeriesPerMetric) {
+        Preconditions.checkArgument(maxSeriesPerMetric > 0, "maxSeriesPerMetric must be a positive number");
+        this.maxSeriesPerMetric = maxSeriesPerMetric;
+    }
+
+    int getNumberOfSeries() {
+        return numberOfSeries.get();
+    }
+
+    Metric getMetric(TelemetryClient telemetryClient, String name, Map<String, String> dimensions) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(name), "name should be a non-null, non-empty value");
+        Preconditions.checkNotNull(dimensions, "dimensions should be a non-null value");
+
+        MetricSeriesGroup group = groups.get(name);
+        if (group != null) {
+            MetricSeries series = group.series.get(dimensions);
+            if (series != null) {
+                return series;
+            }
+        }
+
+        validateDimensions(dimensions);
+        if (group != null) {
+            // The new dimension values of a metric at its cap go to the overflow series without locking
+            MetricSeries overflow = group.overflow;
+            if (overflow != null && group.numberOfSeries.get() >= maxSeriesPerMetric) {
+                return overflow;
+            }
+        }
+
+        while (true) {
+            if (group == null) {
+                group = getOrCreateGroup(name);
+                if (group == null) {
+                    return new DroppedMetric(name, dimensions);
+                }
+            }
+
+            synchronized (group) {
+                if (!group.removed) {
+                    return getOrCreateSeries(group, telemetryClient, name, dimensions);
+                }
+            }
+
+            // The metric was evicted meanwhile
+            group = null;
+        }
+    }
+
+    List<MetricSeries> getSeries() {
+        ArrayList<MetricSeries> result = new ArrayList<MetricSeries>(numberOfSeries.get());
+        for (MetricSeriesGroup group : groups.values()) {
+            result.addAll(group.series.values());
+            MetricSeries overflow = group.overflow;
+            if (overflow != null) {
+                result.add(overflow);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Evicts a series that had no value in the interval, and its metric if it has no series left, then retires it.
+     * @param series A series returned by {@link #getSeries()} whose snapshot was empty.
+     * @return The telemetry of the values tracked between the snapshot and the retirement, or null if there are none.
+     */
+    MetricTelemetry evict(MetricSeries series) {
+        MetricSeriesGroup group = groups.get(series.getName());
+        if (group == null) {
+            return null;
+        }
+
+        synchronized (group) {
+            if (series.isOverflow()) {
+                if (group.overflow != series) {
+                    return null;
+                }
+                group.overflow = null;
+            } else {
+                if (!group.series.remove(series.getDimensions(), series)) {
+                    return null;
+                }
+                group.numberOfSeries.decrementAndGet();
+                numberOfSeries.decrementAndGet();
+            }
+
+            if (group.series.isEmpty() && group.overflow == null) {
+                group.removed = true;
+                groups.remove(series.getName(), group);
+            }
+        }
+
+        return series.retire();
+    }
+
+    /**
+     * @return The series that gets the values tracked by a retired series, which may be a new series.
+     */
+    Metric getReplacement(MetricSeries retired) {
+        if (!retired.isOverflow()) {
+            return getMetric(retired.getTelemetryClient(), retired.getName(), retired.getDimensions());
+        }
+
+        while (true) {
+            MetricSeriesGroup group = getOrCreateGroup(retired.getName());
+            if (group == null) {
+                return new DroppedMetric(retired.getName(), retired.getDimensions());
+            }
+
+            synchronized (group) {
+                if (!group.removed) {
+                    return getOverflowSeries(group, retired.getTelemetryClient(), retired.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The group of the metric, null if it is a new metric and the registry is full.
+     */
+    private MetricSeriesGroup getOrCreateGroup(String name) {
+        MetricSeriesGroup group = groups.get(name);
+        if (group != null) {
+            return group;
+        }
+
+        if (numberOfSeries.get() >= maxSeries) {
+            reportMaxSeries(name);
+            return null;
+        }
+
+        group = new MetricSeriesGroup();
+        MetricSeriesGroup previous = groups.putIfAbsent(name, group);
+        return previous != null ? previous : group;
+    }
+
+    /**
+     * The method assumes that the lock of the group is held before calling it.
+     */
+    private Metric getOrCreateSeries(MetricSeriesGroup group, TelemetryClient telemetryClient, String name, Map<String, String> dimensions) {
+        MetricSeries existing = group.series.get(dimensions);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (!tryReserve(group.numberOfSeries, maxSeriesPerMetric)) {
+            if (group.overflowReported.compareAndSet(false, true)) {
+                InternalLogger.INSTANCE.warn("Metric '%s' reached the maximum of %d series, the values of new dimension values are aggregated as overflow", name, maxSeriesPerMetric);
+            }
+            return getOverflowSeries(group, telemetryClient, name);
+        }
+
+        if (!tryReserve(numberOfSeries, maxSeries)) {
+            group.numberOfSeries.decrementAndGet();
+            reportMaxSeries(name);
+            return getOverflowSeries(group, telemetryClient, name);
+        }
+
+        Map<String, String> dimensionsCopy = new HashMap<String, String>(dimensions);
+        MetricSeries created = new MetricSeries(name, dimensionsCopy, telemetryClient, stripes, this, false);
+        group.series.put(dimensionsCopy, created);
+
+        return created;
+    }
+
+    /**
+     * The method assumes that the lock of the group is held before calling it.
+     */
+    private MetricSeries getOverflowSeries(MetricSeriesGroup group, TelemetryClient telemetryClient, String name) {
+        MetricSeries overflow = group.overflow;
+        if (overflow == null) {
+            Map<String, String> dimensions = new HashMap<String, String>();
+            dimensions.put(OVERFLOW_DIMENSION_NAME, "true");
+            overflow = new MetricSeries(name, dimensions, telemetryClient, stripes, this, true);
+            group.overflow = overflow;
+        }
+
+        return overflow;
+    }
+
+    private void reportMaxSeries(String name) {
+        if (maxSeriesReported.compareAndSet(false, true)) {
+            InternalLogger.INSTANCE.warn("Reached the maximum of %d metric series, values of new metrics like '%s' are dropped", maxSeries, name);
+        }
+    }
+
+    private static boolean tryReserve(AtomicInteger counter, int maximum) {
+        while (true) {
+            int current = counter.get();
+            if (current >= maximum) {
+                return false;
+            }
+            if (counter.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static void validateDimensions(Map<String, String> dimensions) {
+        Preconditions.checkArgument(dimensions.size() <= MAX_DIMENSIONS_PER_SERIES, "A metric series can have up to %s dimensions", MAX_DIMENSIONS_PER_SERIES);
+        for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(dimension.getKey()), "dimension names should be non-null, non-empty values");
+            Preconditions.checkArgument(dimension.getValue() != null, "dimension values should be non-null values");
+        }
+    }
+}
@@ -26,7 +26,7 @@ import java.util.Map;
 
 import com.microsoft.applicationinsights.TelemetryClient;
 import com.microsoft.applicationinsights.internal.jmx.JmxAttributeData;
-import com.microsoft.applicationinsights.internal.jmx.JmxDataFetcher;
+import com.microsoft.applicationinsights.internal.jmx.JmxObjectQuery;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
@@ -38,8 +38,7 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
  */
 public abstract class AbstractJmxPerformanceCounter implements PerformanceCounter {
     private final String id;
-    private final String objectName;
-    private final Collection<JmxAttributeData> attributes;
+    private final JmxObjectQuery query;
     private boolean relevant = true;
     private boolean firstTime = true;
 
@@ -60,15 +59,14 @@ public abstract class AbstractJmxPerformanceCounter implements PerformanceCounte
         }
 
         try {
-            Map<String, Collection<Object>> result =
-                    JmxDataFetcher.fetch(objectName, attributes);
+            Map<String, Collection<Object>> result = query.fetch();
 
             for (Map.Entry<String, Collection<Object>> displayAndValues : result.entrySet()) {
                 boolean ok = true;
                 double value = 0.0;
                 for (Object obj : displayAndValues.getValue()) {
                     try {
-                        value += Double.parseDouble(String.valueOf(obj));
+                        value += JmxPerformanceCounter.toDouble(obj);
                     } catch (Exception e) {
                         ok = false;
                         break;
@@ -100,8 +98,7 @@ public abstract class AbstractJmxPerformanceCounter implements PerformanceCounte
 
     protected AbstractJmxPerformanceCounter(String id, String objectName, Collection<JmxAttributeData> attributes) {
         this.id = id;
-        this.objectName = objectName;
-        this.attributes = attributes;
+        this.query = new JmxObjectQuery(objectName, attributes);
     }
 
     protected abstract void send(TelemetryClient telemetryClient, String displayName, double value);
@@ -37,6 +37,7 @@ import com.google.common.base.Strings;
 abstract class AbstractUnixPerformanceCounter extends AbstractPerformanceCounter {
     private final File processFile;
     private final String path;
+    private final UnixProcFileReader procFileReader;
 
     protected AbstractUnixPerformanceCounter(String path) {
         Preconditions.checkArgument(SystemInformation.INSTANCE.isUnix(), "This performance counter must be activated in Unix environment.");
@@ -44,6 +45,7 @@ abstract class AbstractUnixPerformanceCounter extends AbstractPerformanceCounter
 
         this.path = path;
         processFile = new File(path);
+        procFileReader = new UnixProcFileReader(path);
         if (!processFile.canRead()) {
             logError("Can not read");
         }
@@ -57,4 +59,8 @@ abstract class AbstractUnixPerformanceCounter extends AbstractPerformanceCounter
     protected File getProcessFile() {
         return processFile;
     }
+
+    protected UnixProcFileReader getProcFileReader() {
+        return procFileReader;
+    }
 }
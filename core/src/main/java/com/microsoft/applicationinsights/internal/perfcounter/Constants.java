@@ -34,6 +34,9 @@ public final class Constants {
     public final static String TOTAL_CPU_PC_CATEGORY_NAME = "Processor";
     public final static String CPU_PC_COUNTER_NAME = "% Processor Time";
 
+    public final static String SYSTEM_PC_CATEGORY_NAME = "System";
+    public final static String CONTEXT_SWITCHES_PC_COUNTER_NAME = "Context Switches/sec";
+
 
     public final static String TOTAL_MEMORY_PC_ID = PERFORMANCE_COUNTER_PREFIX + "TotalMemoryPerformanceCounter";
     public final static String PROCESS_MEM_PC_ID = PERFORMANCE_COUNTER_PREFIX + "ProcessMemoryPerformanceCounter";
@@ -47,6 +50,8 @@ public final class Constants {
     public final static String PROCESS_IO_PC_ID = PERFORMANCE_COUNTER_PREFIX + "ProcessIOPerformanceCounter";
     public final static String PROCESS_IO_PC_COUNTER_NAME = "IO Data Bytes/sec";
 
+    public final static String CGROUP_PC_ID = PERFORMANCE_COUNTER_PREFIX + "CGroupPerformanceCounter";
+
     public final static String INSTANCE_NAME_TOTAL = "_Total";
 
     public final static String PROCESS_CATEGORY = "Process";
@@ -25,13 +25,15 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.microsoft.applicationinsights.TelemetryClient;
 import com.microsoft.applicationinsights.internal.jmx.JmxAttributeData;
-import com.microsoft.applicationinsights.internal.jmx.JmxDataFetcher;
+import com.microsoft.applicationinsights.internal.jmx.JmxObjectQuery;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.system.SystemInformation;
 import com.microsoft.applicationinsights.telemetry.PerformanceCounterTelemetry;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -41,8 +43,8 @@ import java.util.Map;
  */
 public final class JmxPerformanceCounter implements PerformanceCounter {
     private final PerformanceCounterTelemetry telemetry;
-    private final Map<String, Collection<JmxAttributeData>> objectToAttributes;
-    private Map.Entry<String, Collection<JmxAttributeData>> entry;
+    private final List<JmxObjectQuery> queries;
+    private JmxObjectQuery query;
     private final String id;
     private boolean relevant = true;
 
@@ -60,7 +62,10 @@ public final class JmxPerformanceCounter implements PerformanceCounter {
 
         id = categoryName + "." + counterName;
         telemetry = new PerformanceCounterTelemetry(categoryName, counterName, SystemInformation.INSTANCE.getProcessId(), Constants.DEFAULT_DOUBLE_VALUE);
-        this.objectToAttributes = objectToAttributes;
+        queries = new ArrayList<JmxObjectQuery>(objectToAttributes.size());
+        for (Map.Entry<String, Collection<JmxAttributeData>> entry : objectToAttributes.entrySet()) {
+            queries.add(new JmxObjectQuery(entry.getKey(), entry.getValue()));
+        }
     }
 
 
@@ -76,24 +81,24 @@ public final class JmxPerformanceCounter implements PerformanceCounter {
         }
 
         Map<String, Collection<Object>> data = null;
-        if (entry == null) {
-            for (Map.Entry<String, Collection<JmxAttributeData>> entry : objectToAttributes.entrySet()) {
+        if (query == null) {
+            for (JmxObjectQuery query : queries) {
                 try {
-                    data = JmxDataFetcher.fetch(entry.getKey(), entry.getValue());
-                    this.entry = entry;
+                    data = query.fetch();
+                    this.query = query;
                     break;
                 } catch (Exception e) {
                 }
             }
 
-            if (entry == null) {
+            if (query == null) {
                 relevant = false;
                 InternalLogger.INSTANCE.error("Could not find JMX data for '%s'. Performance Counter will be ignored.", getId());
                 return;
             }
         } else {
             try {
-                data = JmxDataFetcher.fetch(entry.getKey(), entry.getValue());
+                data = query.fetch();
             } catch (Exception e) {
                 InternalLogger.INSTANCE.error("Failed to fetch JMX data for '%s'..", getId());
                 return;
@@ -109,7 +114,7 @@ public final class JmxPerformanceCounter implements PerformanceCounter {
             double value = 0.0;
             for (Object obj : displayAndValues.getValue()) {
                 try {
-                    value += Double.parseDouble(String.valueOf(obj));
+                    value += toDouble(obj);
                 } catch (Exception e) {
                     ok = false;
                     InternalLogger.INSTANCE.error("Error while parsing JMX value for '%s:%s': '%s'", getId(), displayAndValues.getKey(), e.getMessage());
@@ -128,4 +133,14 @@ public final class JmxPerformanceCounter implements PerformanceCounter {
             }
         }
     }
+
+    /**
+     * Numbers are used as they are, other values are parsed from their string form.
+     */
+    static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.parseDouble(String.valueOf(value));
+    }
 }
@@ -71,6 +71,18 @@ import com.microsoft.applicationinsights.internal.perfcounter.jvm.JvmHeapMemoryU
  * }
  * </pre>
  *
+ * A specific Jvm counter can be collected less often than the other counters like this:
+ *
+ * <pre>
+ * {@code
+ *     <PerformanceCounters>
+ *         <Jvm>
+ *             <JvmPC name="ThreadDeadLockDetector" collectionFrequencyInSec="300"/>
+ *         </Jvm>
+ *     </PerformanceCounters>
+ * }
+ * </pre>
+ *
  * Created by gupele on 8/7/2016.
  */
 @PerformanceModule("BuiltIn")
@@ -82,6 +94,12 @@ public final class JvmPerformanceCountersModule extends AbstractPerformanceCount
             GCPerformanceCounter.NAME
     };
 
+    private String[] JvmPCIds = {
+            DeadLockDetectorPerformanceCounter.ID,
+            JvmHeapMemoryUsedPerformanceCounter.ID,
+            GCPerformanceCounter.ID
+    };
+
     public JvmPerformanceCountersModule() throws Exception {
         this(new JvmPerformanceCountersFactory());
     }
@@ -110,10 +128,16 @@ public final class JvmPerformanceCountersModule extends AbstractPerformanceCount
         HashMap<String, JvmXmlElement> jvmPcsMap = jvmSection.getJvmXmlElementsMap();
         HashSet<String> disabledJvmPCs = new HashSet<String>();
 
-        for (String jvmPcName : JvmPCNames) {
-            JvmXmlElement pc = jvmPcsMap.get(jvmPcName);
-            if (pc != null && !pc.isEnabled()) {
-                disabledJvmPCs.add(jvmPcName);
+        for (int i = 0; i < JvmPCNames.length; ++i) {
+            JvmXmlElement pc = jvmPcsMap.get(JvmPCNames[i]);
+            if (pc == null) {
+                continue;
+            }
+
+            if (!pc.isEnabled()) {
+                disabledJvmPCs.add(JvmPCNames[i]);
+            } else if (pc.getCollectionFrequencyInSec() > 0) {
+                PerformanceCounterContainer.INSTANCE.setCollectionFrequencyInSec(JvmPCIds[i], pc.getCollectionFrequencyInSec());
             }
         }
         f.setDisabledJvmPCs(disabledJvmPCs);
@@ -0,0 +1,168 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.util.Deadline;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+/**
+ * Collects the {@link ScheduledPerformanceCounter}s that are due in a tick of the {@link PerformanceCounterContainer}.
+ *
+ * Every tick has a deadline, 'collectionTimeoutInMillis' after it starts:
+ *
+ * Without an executor the counters are collected one after the other on the calling thread,
+ * counters that were not started before the deadline are skipped and collected in the next tick.
+ * The tick starts from a different counter every time so a slow counter does not always delay the same ones.
+ *
+ * With an executor the counters are collected in parallel and the tick waits for them until the deadline,
+ * a counter that is still running after it keeps running but is skipped by the ticks until it finishes.
+ */
+final class PerformanceCounterCollector {
+    private final Executor executor;
+    private final long collectionTimeoutInMillis;
+
+    /**
+     * @param executor The executor to collect the counters on, null to collect them on the calling thread.
+     * @param collectionTimeoutInMillis The time a tick may take.
+     */
+    PerformanceCounterCollector(Executor executor, long collectionTimeoutInMillis) {
+        this.executor = executor;
+        this.collectionTimeoutInMillis = collectionTimeoutInMillis;
+    }
+
+    /**
+     * Collects the counters that are due in 'tick'.
+     * @return The number of due counters that were not collected, or did not finish, before the deadline.
+     */
+    int collect(Collection<ScheduledPerformanceCounter> performanceCounters, long tick, TelemetryClient telemetryClient) {
+        Deadline deadline = Deadline.after(collectionTimeoutInMillis, TimeUnit.MILLISECONDS);
+
+        List<ScheduledPerformanceCounter> due = new ArrayList<ScheduledPerformanceCounter>();
+        for (ScheduledPerformanceCounter performanceCounter : performanceCounters) {
+            if (performanceCounter.isDue(tick)) {
+                due.add(performanceCounter);
+            }
+        }
+
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        return executor == null ? collectSerially(due, tick, telemetryClient, deadline) : collectInParallel(due, tick, telemetryClient, deadline);
+    }
+
+    /**
+     * Reports the time the collections took since the previous call, one metric per counter.
+     */
+    static void reportCollectionCost(Collection<ScheduledPerformanceCounter> performanceCounters, TelemetryClient telemetryClient) {
+        for (ScheduledPerformanceCounter performanceCounter : performanceCounters) {
+            MetricTelemetry mt = performanceCounter.getAndResetCollectionCost();
+            if (mt != null) {
+                telemetryClient.track(mt);
+            }
+        }
+    }
+
+    private int collectSerially(List<ScheduledPerformanceCounter> due, long tick, TelemetryClient telemetryClient, Deadline deadline) {
+        int size = due.size();
+        int first = (int) (tick % size);
+        int skipped = 0;
+        for (int i = 0; i < size; ++i) {
+            ScheduledPerformanceCounter performanceCounter = due.get((first + i) % size);
+            if (deadline.hasPassed()) {
+                performanceCounter.skip(tick);
+                ++skipped;
+                continue;
+            }
+
+            performanceCounter.scheduleNext(tick);
+            collectOne(performanceCounter, telemetryClient);
+        }
+
+        if (skipped > 0) {
+            InternalLogger.INSTANCE.trace("Performance counters collection exceeded %d ms, %d counters are deferred to the next collection", collectionTimeoutInMillis, skipped);
+        }
+        return skipped;
+    }
+
+    private int collectInParallel(List<ScheduledPerformanceCounter> due, long tick, final TelemetryClient telemetryClient, Deadline deadline) {
+        final CountDownLatch done = new CountDownLatch(due.size());
+        for (final ScheduledPerformanceCounter performanceCounter : due) {
+            if (!performanceCounter.tryStart()) {
+                performanceCounter.skip(tick);
+                done.countDown();
+                continue;
+            }
+
+            performanceCounter.scheduleNext(tick);
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            collectOne(performanceCounter, telemetryClient);
+                        } finally {
+                            performanceCounter.finish();
+                            done.countDown();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                performanceCounter.finish();
+                performanceCounter.skip(tick);
+                done.countDown();
+            }
+        }
+
+        try {
+            if (done.await(deadline.remainingNanos(), TimeUnit.NANOSECONDS)) {
+                return 0;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int unfinished = (int) done.getCount();
+        InternalLogger.INSTANCE.trace("Performance counters collection exceeded %d ms, %d counters are still running", collectionTimeoutInMillis, unfinished);
+        return unfinished;
+    }
+
+    private static void collectOne(ScheduledPerformanceCounter performanceCounter, TelemetryClient telemetryClient) {
+        try {
+            performanceCounter.collect(telemetryClient);
+        } catch (Throwable e) {
+            InternalLogger.INSTANCE.error("Exception while reporting performance counter '%s': '%s'", performanceCounter.getId(), e.getMessage());
+            InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(e));
+        }
+    }
+}
@@ -21,9 +21,12 @@
 
 package com.microsoft.applicationinsights.internal.perfcounter;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.ThreadFactory;
 
@@ -46,10 +49,22 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
  *
  * Note that the container will only start working after the first registration of a Performance Counter.
  * That means that setting the timeouts is only relevant if done before the first registration of a Performance Counter.
+ * Counters that are registered while a configuration is being applied, for example by a channel, are registered once
+ * the configuration is applied, so the container starts with the configured values.
  *
  * The container will go through all the registered Performance Counters and will trigger their 'report' method.
  * By default the container will start reporting after 5 minutes and will continue doing so every 1 minute.
  *
+ * A counter can be registered with its own collection frequency, which is rounded up to whole collection intervals
+ * of the container, so costly counters can be collected less often than the others.
+ *
+ * Every collection has a timeout, counters that did not start, or finish, before it are deferred to the next collection.
+ * By default the counters are collected one after the other, 'collectionParallelism' above 1 collects them in parallel
+ * on a small pool so a slow counter does not delay the others.
+ *
+ * The time every counter's collection takes is measured, and when 'reportCollectionCost' is set it is sent as a metric
+ * per counter after every collection so the overhead of the collection can be watched.
+ *
  * The user of this class can add (register), remove (unregister) a performance counter while the container is working.
  *
  * The container will be stopped automatically when the application exists.
@@ -67,33 +82,85 @@ public enum PerformanceCounterContainer implements Stoppable {
     private final static long DEFAULT_COLLECTION_FREQUENCY_IN_SEC = 60;
     private final static long MIN_COLLECTION_FREQUENCY_IN_SEC = 1;
 
-    private final ConcurrentMap<String, PerformanceCounter> performanceCounters = new ConcurrentHashMap<String, PerformanceCounter>();
+    // By default a collection may take up to 10 seconds, but never more than the collection frequency.
+    private final static long DEFAULT_COLLECTION_TIMEOUT_IN_MILLIS = 10000;
+    private final static long MIN_COLLECTION_TIMEOUT_IN_MILLIS = 100;
+
+    private final static int MAX_COLLECTION_PARALLELISM = 8;
+    private final static int MAX_PENDING_COLLECTIONS = 256;
+    private final static long COLLECTION_THREAD_IDLE_TIMEOUT_IN_SEC = 60;
+
+    private final ConcurrentMap<String, ScheduledPerformanceCounter> performanceCounters = new ConcurrentHashMap<String, ScheduledPerformanceCounter>();
+    private final ConcurrentMap<String, Long> collectionFrequenciesInSec = new ConcurrentHashMap<String, Long>();
 
     private volatile boolean initialized = false;
 
+    // Counters registered while a configuration is applied, with their frequency or null for the configured one
+    private final Map<PerformanceCounter, Long> deferredCounters = new LinkedHashMap<PerformanceCounter, Long>();
+    private int configurationsInProgress = 0;
+
     private PerformanceCountersCollectionPlugin plugin;
 
     private long startCollectingDelayInMillis = START_COLLECTING_DELAY_IN_MILLIS;
     private long collectionFrequencyInMS = DEFAULT_COLLECTION_FREQUENCY_IN_SEC * 1000;
+    private long collectionTimeoutInMillis = DEFAULT_COLLECTION_TIMEOUT_IN_MILLIS;
+    private int collectionParallelism = 1;
+    private volatile boolean reportCollectionCost = false;
 
     private TelemetryClient telemetryClient;
 
     private ScheduledThreadPoolExecutor threads;
+    private ThreadPoolExecutor collectionThreads;
+    private PerformanceCounterCollector collector;
+
+    // Only accessed by the scheduled thread
+    private long tick;
 
     /**
-     /**
      * Registers a {@link com.microsoft.applicationinsights.internal.perfcounter.PerformanceCounter} that can collect data.
+     *
+     * The counter is collected in the frequency that was set for its id by {@link #setCollectionFrequencyInSec(String, long)},
+     * or in the frequency of the container if none was set.
      * @param performanceCounter The Performance Counter.
-     * @return True on success.
+     * @return True on success, or if the registration is deferred until the configuration is applied.
      */
     public boolean register(PerformanceCounter performanceCounter) {
         Preconditions.checkNotNull(performanceCounter, "performanceCounter should be non null, non empty value");
         Preconditions.checkArgument(!Strings.isNullOrEmpty(performanceCounter.getId()), "performanceCounter's id should be non null, non empty value");
 
+        if (deferRegistration(performanceCounter, null)) {
+            return true;
+        }
+
+        Long collectionFrequencyInSec = collectionFrequenciesInSec.get(performanceCounter.getId());
+        return register(performanceCounter, collectionFrequencyInSec == null ? 0 : collectionFrequencyInSec);
+    }
+
+    /**
+     * Registers a {@link com.microsoft.applicationinsights.internal.perfcounter.PerformanceCounter} that is collected in its own frequency.
+     * @param performanceCounter The Performance Counter.
+     * @param collectionFrequencyInSec The time between collections of the counter, rounded up to whole collection
+     *                                 intervals of the container. Zero, or less, to use the container's frequency.
+     * @return True on success, or if the registration is deferred until the configuration is applied.
+     */
+    public boolean register(PerformanceCounter performanceCounter, long collectionFrequencyInSec) {
+        Preconditions.checkNotNull(performanceCounter, "performanceCounter should be non null, non empty value");
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(performanceCounter.getId()), "performanceCounter's id should be non null, non empty value");
+
+        if (deferRegistration(performanceCounter, collectionFrequencyInSec)) {
+            return true;
+        }
+
         initialize();
 
-        InternalLogger.INSTANCE.trace("Registering PC '%s'", performanceCounter.getId());
-        PerformanceCounter prev = performanceCounters.putIfAbsent(performanceCounter.getId(), performanceCounter);
+        int ticksBetweenCollections = 1;
+        if (collectionFrequencyInSec > 0) {
+            long collectionFrequencyInMillis = collectionFrequencyInSec * 1000;
+            ticksBetweenCollections = (int) Math.min(Integer.MAX_VALUE, (collectionFrequencyInMillis + collectionFrequencyInMS - 1) / collectionFrequencyInMS);
+        }
+
+        InternalLogger.INSTANCE.trace("Registering PC '%s', collected every %d intervals", performanceCounter.getId(), ticksBetweenCollections);
+        ScheduledPerformanceCounter prev = performanceCounters.putIfAbsent(performanceCounter.getId(), new ScheduledPerformanceCounter(performanceCounter, ticksBetweenCollections));
         if (prev != null) {
             InternalLogger.INSTANCE.trace("Failed to store performance counter '%s', since there is already one", performanceCounter.getId());
             return false;
@@ -102,6 +169,43 @@ public enum PerformanceCounterContainer implements Stoppable {
         return true;
     }
 
+    /**
+     * Marks the start of applying a configuration, counters registered until {@link #endConfiguration()}
+     * are registered only then, after the collection frequency, timeout and parallelism were set.
+     */
+    public void beginConfiguration() {
+        synchronized (deferredCounters) {
+            ++configurationsInProgress;
+        }
+    }
+
+    /**
+     * Marks the end of applying a configuration, see {@link #beginConfiguration()}.
+     */
+    public void endConfiguration() {
+        Map<PerformanceCounter, Long> counters;
+        synchronized (deferredCounters) {
+            if (configurationsInProgress == 0 || --configurationsInProgress > 0) {
+                return;
+            }
+
+            counters = new LinkedHashMap<PerformanceCounter, Long>(deferredCounters);
+            deferredCounters.clear();
+        }
+
+        for (Map.Entry<PerformanceCounter, Long> entry : counters.entrySet()) {
+            try {
+                if (entry.getValue() == null) {
+                    register(entry.getKey());
+                } else {
+                    register(entry.getKey(), entry.getValue());
+                }
+            } catch (Exception e) {
+                InternalLogger.INSTANCE.error("Failed to register performance counter '%s': '%s'", entry.getKey().getId(), e.getMessage());
+            }
+        }
+    }
+
     /**
      * Un-registers a performance counter.
      * @param performanceCounter The Performance Counter.
@@ -148,6 +252,7 @@ public enum PerformanceCounterContainer implements Stoppable {
         }
 
         ThreadPoolUtils.stop(threads, timeout, timeUnit);
+        ThreadPoolUtils.stop(collectionThreads, timeout, timeUnit);
         initialized = false;
     }
 
@@ -188,6 +293,77 @@ public enum PerformanceCounterContainer implements Stoppable {
         this.startCollectingDelayInMillis = startCollectingDelayInMillis;
     }
 
+    /**
+     * Sets the time between collections of the counter with the given id, see {@link #register(PerformanceCounter, long)}.
+     *
+     * Note that the method will be effective if called before the counter is registered.
+     * @param performanceCounterId The id of the Performance Counter.
+     * @param collectionFrequencyInSec The time between collections of the counter.
+     */
+    public void setCollectionFrequencyInSec(String performanceCounterId, long collectionFrequencyInSec) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(performanceCounterId), "performanceCounterId should be non null, non empty value");
+
+        collectionFrequenciesInSec.put(performanceCounterId, collectionFrequencyInSec);
+    }
+
+    /**
+     * Gets the time a collection of Performance Counters may take.
+     * @return The timeout in milliseconds.
+     */
+    public long getCollectionTimeoutInMillis() {
+        return Math.min(collectionTimeoutInMillis, collectionFrequencyInMS);
+    }
+
+    /**
+     * Sets the time a collection of Performance Counters may take, counters that were not collected
+     * in that time are deferred to the next collection. The timeout is never longer than the collection frequency.
+     *
+     * Note that the method will be effective if called before the first call to the 'register' method.
+     * @param collectionTimeoutInMillis The time a collection of Performance Counters may take.
+     */
+    public void setCollectionTimeoutInMillis(long collectionTimeoutInMillis) {
+        if (collectionTimeoutInMillis < MIN_COLLECTION_TIMEOUT_IN_MILLIS) {
+            InternalLogger.INSTANCE.error("Collection Timeout: illegal value '%d'. The minimum value, '%d', is used instead.", collectionTimeoutInMillis, MIN_COLLECTION_TIMEOUT_IN_MILLIS);
+
+            collectionTimeoutInMillis = MIN_COLLECTION_TIMEOUT_IN_MILLIS;
+        }
+
+        this.collectionTimeoutInMillis = collectionTimeoutInMillis;
+    }
+
+    public int getCollectionParallelism() {
+        return collectionParallelism;
+    }
+
+    /**
+     * Sets the number of Performance Counters that are collected at once, 1 collects them one after the other.
+     *
+     * Note that the method will be effective if called before the first call to the 'register' method.
+     * @param collectionParallelism The number of Performance Counters that are collected at once, up to 8.
+     */
+    public void setCollectionParallelism(int collectionParallelism) {
+        if (collectionParallelism < 1 || collectionParallelism > MAX_COLLECTION_PARALLELISM) {
+            int closest = collectionParallelism < 1 ? 1 : MAX_COLLECTION_PARALLELISM;
+            InternalLogger.INSTANCE.error("Collection Parallelism: illegal value '%d'. The value '%d' is used instead.", collectionParallelism, closest);
+
+            collectionParallelism = closest;
+        }
+
+        this.collectionParallelism = collectionParallelism;
+    }
+
+    public boolean isReportCollectionCost() {
+        return reportCollectionCost;
+    }
+
+    /**
+     * Sets whether the time the collection of every Performance Counter takes is sent as a metric.
+     * @param reportCollectionCost True to send the collection time of the counters.
+     */
+    public void setReportCollectionCost(boolean reportCollectionCost) {
+        this.reportCollectionCost = reportCollectionCost;
+    }
+
     void clear() {
         performanceCounters.clear();
     }
@@ -212,6 +388,18 @@ public enum PerformanceCounterContainer implements Stoppable {
         }
     }
 
+    private boolean deferRegistration(PerformanceCounter performanceCounter, Long collectionFrequencyInSec) {
+        synchronized (deferredCounters) {
+            if (configurationsInProgress == 0) {
+                return false;
+            }
+
+            InternalLogger.INSTANCE.trace("Deferring registration of PC '%s' until the configuration is applied", performanceCounter.getId());
+            deferredCounters.put(performanceCounter, collectionFrequencyInSec);
+            return true;
+        }
+    }
+
     private void scheduleWork() {
         threads.scheduleAtFixedRate(
                 new Runnable() {
@@ -230,14 +418,7 @@ public enum PerformanceCounterContainer implements Stoppable {
                             }
                         }
 
-                        for (PerformanceCounter performanceCounter : performanceCounters.values()) {
-                            try {
-                                performanceCounter.report(telemetryClient);
-                            } catch (Throwable e) {
-                                InternalLogger.INSTANCE.error("Exception while reporting performance counter '%s': '%s'", performanceCounter.getId(), e.getMessage());
-                                InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(e));
-                            }
-                        }
+                        collector.collect(performanceCounters.values(), tick++, telemetryClient);
 
                         if (plugin != null) {
                             try {
@@ -247,6 +428,10 @@ public enum PerformanceCounterContainer implements Stoppable {
                                 InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(t));
                             }
                         }
+
+                        if (reportCollectionCost) {
+                            PerformanceCounterCollector.reportCollectionCost(performanceCounters.values(), telemetryClient);
+                        }
                     }
                 },
                 startCollectingDelayInMillis,
@@ -267,6 +452,22 @@ public enum PerformanceCounterContainer implements Stoppable {
                 return thread;
             }
         });
+
+        if (collectionParallelism > 1) {
+            collectionThreads = ThreadPoolUtils.newLimitedThreadPool(collectionParallelism, collectionParallelism, COLLECTION_THREAD_IDLE_TIMEOUT_IN_SEC, MAX_PENDING_COLLECTIONS);
+            collectionThreads.allowCoreThreadTimeOut(true);
+            collectionThreads.setThreadFactory(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "AI-PerformanceCounterCollector");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            collectionThreads = null;
+        }
+        collector = new PerformanceCounterCollector(collectionThreads, getCollectionTimeoutInMillis());
     }
 
     public void setPlugin(PerformanceCountersCollectionPlugin plugin) {
@@ -83,6 +83,11 @@ final class ProcessBuiltInPerformanceCountersFactory implements PerformanceCount
         performanceCounters.add(new UnixTotalCpuPerformanceCounter());
         performanceCounters.add(new UnixTotalMemoryPerformanceCounter());
 
+        UnixCGroupPerformanceCounter cgroupPerformanceCounter = UnixCGroupPerformanceCounter.create();
+        if (cgroupPerformanceCounter != null) {
+            performanceCounters.add(cgroupPerformanceCounter);
+        }
+
         return performanceCounters;
     }
 
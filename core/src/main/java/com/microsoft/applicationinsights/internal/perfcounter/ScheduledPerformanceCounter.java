@@ -0,0 +1,167 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+
+/**
+ * A {@link PerformanceCounter} registered in the {@link PerformanceCounterContainer} together with its
+ * collection schedule and the time its collections took.
+ *
+ * The schedule is kept in ticks of the container, a counter with 'ticksBetweenCollections' of 5 is
+ * collected on every fifth tick. The collection cost is accumulated until it is reported, then restarts.
+ */
+final class ScheduledPerformanceCounter {
+    final static String COLLECTION_COST_METRIC_NAME = "Performance Counter Collection Time (ms)";
+    final static String COLLECTION_COST_ID_PROPERTY = "PerformanceCounterId";
+    final static String COLLECTION_COST_SKIPPED_PROPERTY = "SkippedCollections";
+    final static String COLLECTION_COST_FAILED_PROPERTY = "FailedCollections";
+
+    private final PerformanceCounter performanceCounter;
+    private final int ticksBetweenCollections;
+
+    // Only accessed by the thread that runs the ticks
+    private long nextTick;
+
+    // Set while a collection runs on the collector's pool, so a slow counter is not collected twice at once
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private int collections;
+    private int failures;
+    private int skipped;
+    private long totalNanos;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos;
+
+    ScheduledPerformanceCounter(PerformanceCounter performanceCounter, int ticksBetweenCollections) {
+        this.performanceCounter = performanceCounter;
+        this.ticksBetweenCollections = Math.max(1, ticksBetweenCollections);
+    }
+
+    PerformanceCounter getPerformanceCounter() {
+        return performanceCounter;
+    }
+
+    String getId() {
+        return performanceCounter.getId();
+    }
+
+    int getTicksBetweenCollections() {
+        return ticksBetweenCollections;
+    }
+
+    boolean isDue(long tick) {
+        return tick >= nextTick;
+    }
+
+    /**
+     * Marks the counter as collected in 'tick', the next collection is due 'ticksBetweenCollections' later.
+     */
+    void scheduleNext(long tick) {
+        nextTick = tick + ticksBetweenCollections;
+    }
+
+    /**
+     * Marks the counter as skipped in 'tick' so it is collected in the next one.
+     */
+    synchronized void skip(long tick) {
+        nextTick = tick + 1;
+        ++skipped;
+    }
+
+    boolean tryStart() {
+        return running.compareAndSet(false, true);
+    }
+
+    void finish() {
+        running.set(false);
+    }
+
+    /**
+     * Calls the counter's 'report' and records the time it took.
+     * @param telemetryClient The client the counter reports with.
+     * @throws Throwable Whatever the counter threw, after the time and the failure are recorded.
+     */
+    void collect(TelemetryClient telemetryClient) throws Throwable {
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            performanceCounter.report(telemetryClient);
+            succeeded = true;
+        } finally {
+            recordCollection(System.nanoTime() - start, succeeded);
+        }
+    }
+
+    synchronized void recordCollection(long durationInNanos, boolean succeeded) {
+        ++collections;
+        if (!succeeded) {
+            ++failures;
+        }
+        totalNanos += durationInNanos;
+        minNanos = Math.min(minNanos, durationInNanos);
+        maxNanos = Math.max(maxNanos, durationInNanos);
+    }
+
+    /**
+     * Creates a metric of the time the collections took since the previous call and restarts the accumulation.
+     * The metric's value is the total time, its count, min and max describe the single collections.
+     * @return The metric, or null if the counter was neither collected nor skipped since the previous call.
+     */
+    synchronized MetricTelemetry getAndResetCollectionCost() {
+        if (collections == 0 && skipped == 0) {
+            return null;
+        }
+
+        MetricTelemetry mt = new MetricTelemetry(COLLECTION_COST_METRIC_NAME, toMillis(totalNanos));
+        mt.setCount(collections);
+        if (collections > 0) {
+            mt.setMin(toMillis(minNanos));
+            mt.setMax(toMillis(maxNanos));
+        }
+        mt.getProperties().put(COLLECTION_COST_ID_PROPERTY, performanceCounter.getId());
+        if (skipped > 0) {
+            mt.getProperties().put(COLLECTION_COST_SKIPPED_PROPERTY, String.valueOf(skipped));
+        }
+        if (failures > 0) {
+            mt.getProperties().put(COLLECTION_COST_FAILED_PROPERTY, String.valueOf(failures));
+        }
+        mt.markAsCustomPerfCounter();
+
+        collections = 0;
+        failures = 0;
+        skipped = 0;
+        totalNanos = 0L;
+        minNanos = Long.MAX_VALUE;
+        maxNanos = 0L;
+
+        return mt;
+    }
+
+    private static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+/**
+ * The class supplies the cpu throttling and the memory limit and usage of the control group (cgroup) of the process,
+ * which are the limits a containerized process actually runs into, unlike the ones of the machine.
+ *
+ * Both cgroup v1, with a hierarchy per controller under '/sys/fs/cgroup/cpu' and '/sys/fs/cgroup/memory',
+ * and cgroup v2, with the unified hierarchy under '/sys/fs/cgroup', are supported. The files are found by the
+ * paths in '/proc/self/cgroup', or at the root of the hierarchy when the container sees only its own group.
+ *
+ * The throttling values are the difference between two collections, so the first collection does not report them.
+ */
+final class UnixCGroupPerformanceCounter extends AbstractPerformanceCounter {
+    private final static String CGROUP_ROOT = "/sys/fs/cgroup";
+    private final static String PROCESS_CGROUP_FILE = "/proc/self/cgroup";
+
+    final static String CPU_LIMIT_METRIC_NAME = "CGroup CPU Limit (cores)";
+    final static String CPU_THROTTLED_PERIODS_METRIC_NAME = "CGroup CPU Throttled Periods (%)";
+    final static String CPU_THROTTLED_TIME_METRIC_NAME = "CGroup CPU Throttled Time (ms)";
+    final static String MEMORY_LIMIT_METRIC_NAME = "CGroup Memory Limit (MB)";
+    final static String MEMORY_USAGE_METRIC_NAME = "CGroup Memory Usage (MB)";
+
+    private final static byte[] MAX = "max".getBytes();
+    private final static byte[] NR_PERIODS = "nr_periods".getBytes();
+    private final static byte[] NR_THROTTLED = "nr_throttled".getBytes();
+    private final static byte[] THROTTLED_USEC = "throttled_usec".getBytes();
+    private final static byte[] THROTTLED_TIME = "throttled_time".getBytes();
+
+    // cgroup v1 reports no memory limit as the largest page aligned long
+    private final static long UNLIMITED_MEMORY = 1L << 62;
+
+    private final static double MB = 1024.0 * 1024.0;
+    private final static double NANOS_IN_MILLI = 1000000.0;
+
+    private final boolean v2;
+    private final UnixProcFileReader cpuStat;
+    private final UnixProcFileReader cpuQuota;
+    private final UnixProcFileReader cpuPeriod;
+    private final UnixProcFileReader memoryLimit;
+    private final UnixProcFileReader memoryUsage;
+
+    private long prevPeriods = -1;
+    private long prevThrottledPeriods;
+    private long prevThrottledNanos;
+
+    /**
+     * Creates the counter for the cgroup of the current process.
+     * @return The counter, or null if the process has no cgroup files to read.
+     */
+    static UnixCGroupPerformanceCounter create() {
+        File root = new File(CGROUP_ROOT);
+        try {
+            Map<String, String> paths = readProcessCGroupPaths(new File(PROCESS_CGROUP_FILE));
+            UnixCGroupPerformanceCounter counter;
+            if (new File(root, "cgroup.controllers").exists()) {
+                File group = resolve(root, paths.get(""));
+                counter = new UnixCGroupPerformanceCounter(true, group, group);
+            } else {
+                counter = new UnixCGroupPerformanceCounter(
+                        false,
+                        resolve(new File(root, "cpu"), paths.get("cpu")),
+                        resolve(new File(root, "memory"), paths.get("memory")));
+            }
+
+            if (counter.hasFiles()) {
+                return counter;
+            }
+        } catch (Throwable t) {
+            InternalLogger.INSTANCE.error("Failed to create cgroup performance counter: '%s'", t.getMessage());
+            InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(t));
+        }
+
+        InternalLogger.INSTANCE.trace("cgroup files were not found, cgroup performance counter is not created.");
+        return null;
+    }
+
+    UnixCGroupPerformanceCounter(boolean v2, File cpuGroup, File memoryGroup) {
+        this.v2 = v2;
+        cpuStat = readerOf(cpuGroup, "cpu.stat");
+        if (v2) {
+            cpuQuota = readerOf(cpuGroup, "cpu.max");
+            cpuPeriod = null;
+            memoryLimit = readerOf(memoryGroup, "memory.max");
+            memoryUsage = readerOf(memoryGroup, "memory.current");
+        } else {
+            cpuQuota = readerOf(cpuGroup, "cpu.cfs_quota_us");
+            cpuPeriod = readerOf(cpuGroup, "cpu.cfs_period_us");
+            memoryLimit = readerOf(memoryGroup, "memory.limit_in_bytes");
+            memoryUsage = readerOf(memoryGroup, "memory.usage_in_bytes");
+        }
+    }
+
+    @Override
+    public String getId() {
+        return Constants.CGROUP_PC_ID;
+    }
+
+    @Override
+    public void report(TelemetryClient telemetryClient) {
+        reportCpuLimit(telemetryClient);
+        reportCpuThrottling(telemetryClient);
+        reportMemory(telemetryClient);
+    }
+
+    private void reportCpuLimit(TelemetryClient telemetryClient) {
+        if (cpuQuota == null || !readFirstLine(cpuQuota)) {
+            return;
+        }
+
+        // v2 'cpu.max' holds '$MAX $PERIOD' where $MAX may be 'max', v1 holds the quota, -1 for none, and the period in two files
+        long quota;
+        long period;
+        if (v2) {
+            quota = cpuQuota.skipPrefix(MAX) ? -1 : cpuQuota.nextLong(-1);
+            period = cpuQuota.nextLong(-1);
+        } else {
+            quota = cpuQuota.nextLong(-1);
+            period = cpuPeriod != null && readFirstLine(cpuPeriod) ? cpuPeriod.nextLong(-1) : -1;
+        }
+
+        if (quota > 0 && period > 0) {
+            track(telemetryClient, CPU_LIMIT_METRIC_NAME, (double) quota / period);
+        }
+    }
+
+    private void reportCpuThrottling(TelemetryClient telemetryClient) {
+        if (cpuStat == null || !read(cpuStat)) {
+            return;
+        }
+
+        long periods = -1;
+        long throttledPeriods = 0;
+        long throttledNanos = 0;
+        while (cpuStat.nextLine()) {
+            if (cpuStat.skipPrefix(NR_PERIODS)) {
+                periods = cpuStat.nextLong(-1);
+            } else if (cpuStat.skipPrefix(NR_THROTTLED)) {
+                throttledPeriods = cpuStat.nextLong(0);
+            } else if (cpuStat.skipPrefix(THROTTLED_USEC)) {
+                throttledNanos = cpuStat.nextLong(0) * 1000;
+            } else if (cpuStat.skipPrefix(THROTTLED_TIME)) {
+                throttledNanos = cpuStat.nextLong(0);
+            }
+        }
+
+        if (periods < 0) {
+            return;
+        }
+
+        if (prevPeriods != -1 && periods >= prevPeriods) {
+            long diffPeriods = periods - prevPeriods;
+            double throttledPercentage = diffPeriods == 0 ? 0.0 : 100.0 * (throttledPeriods - prevThrottledPeriods) / diffPeriods;
+            track(telemetryClient, CPU_THROTTLED_PERIODS_METRIC_NAME, throttledPercentage);
+            track(telemetryClient, CPU_THROTTLED_TIME_METRIC_NAME, (throttledNanos - prevThrottledNanos) / NANOS_IN_MILLI);
+        }
+
+        prevPeriods = periods;
+        prevThrottledPeriods = throttledPeriods;
+        prevThrottledNanos = throttledNanos;
+    }
+
+    private void reportMemory(TelemetryClient telemetryClient) {
+        if (memoryLimit != null && readFirstLine(memoryLimit) && !memoryLimit.skipPrefix(MAX)) {
+            long limit = memoryLimit.nextLong(-1);
+            if (limit > 0 && limit < UNLIMITED_MEMORY) {
+                track(telemetryClient, MEMORY_LIMIT_METRIC_NAME, limit / MB);
+            }
+        }
+
+        if (memoryUsage != null && readFirstLine(memoryUsage)) {
+            long usage = memoryUsage.nextLong(-1);
+            if (usage >= 0) {
+                track(telemetryClient, MEMORY_USAGE_METRIC_NAME, usage / MB);
+            }
+        }
+    }
+
+    private boolean hasFiles() {
+        return cpuStat != null || cpuQuota != null || memoryLimit != null || memoryUsage != null;
+    }
+
+    private boolean readFirstLine(UnixProcFileReader reader) {
+        return read(reader) && reader.nextLine();
+    }
+
+    private boolean read(UnixProcFileReader reader) {
+        try {
+            reader.read();
+            return true;
+        } catch (IOException e) {
+            InternalLogger.INSTANCE.error("Performance Counter %s: Error in file '%s': '%s'", getId(), reader.getFile(), e.getMessage());
+            return false;
+        }
+    }
+
+    private static void track(TelemetryClient telemetryClient, String name, double value) {
+        InternalLogger.INSTANCE.trace("Sending Performance Counter: %s: %s", name, value);
+        MetricTelemetry mt = new MetricTelemetry(name, value);
+        mt.markAsCustomPerfCounter();
+        telemetryClient.track(mt);
+    }
+
+    private static UnixProcFileReader readerOf(File group, String name) {
+        File file = new File(group, name);
+        return file.canRead() ? new UnixProcFileReader(file, 512) : null;
+    }
+
+    /**
+     * @return The group's directory under the hierarchy's root, or the root itself if there is no such directory.
+     */
+    private static File resolve(File root, String path) {
+        if (path != null && !"/".equals(path)) {
+            File group = new File(root, path);
+            if (group.isDirectory()) {
+                return group;
+            }
+        }
+
+        return root;
+    }
+
+    /**
+     * Reads the lines 'hierarchy-ID:controller-list:cgroup-path' of '/proc/self/cgroup'.
+     * @return The path of every controller, the path of cgroup v2, whose controller list is empty, is keyed by "".
+     */
+    static Map<String, String> readProcessCGroupPaths(File file) throws IOException {
+        Map<String, String> paths = new HashMap<String, String>();
+        if (!file.canRead()) {
+            return paths;
+        }
+
+        BufferedReader bufferedReader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                String[] parts = line.split(":", 3);
+                if (parts.length != 3) {
+                    continue;
+                }
+
+                for (String controller : parts[1].split(",")) {
+                    paths.put(controller, parts[2]);
+                }
+            }
+        } finally {
+            bufferedReader.close();
+        }
+
+        return paths;
+    }
+}
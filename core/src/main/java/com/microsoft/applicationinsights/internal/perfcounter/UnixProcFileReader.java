@@ -0,0 +1,200 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file of the '/proc/' or '/sys/fs/cgroup/' filesystems and parses its numbers in place.
+ *
+ * The file is opened once and kept open, every {@link #read()} reads it again from its start into a direct buffer
+ * that is reused, and only grows when the file does not fit. The content is then walked line by line and the
+ * numbers are parsed from the buffer's bytes, so a collection does not create Strings or readers.
+ *
+ * The class is not thread safe, every performance counter holds its own readers.
+ */
+final class UnixProcFileReader {
+    private final static int DEFAULT_CAPACITY = 4096;
+    private final static int MAX_CAPACITY = 1024 * 1024;
+
+    private final File file;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+
+    private int limit;
+    private int lineStart;
+    private int lineEnd;
+    private int position;
+
+    UnixProcFileReader(String path) {
+        this(new File(path), DEFAULT_CAPACITY);
+    }
+
+    UnixProcFileReader(File file, int initialCapacity) {
+        this.file = file;
+        this.buffer = ByteBuffer.allocateDirect(initialCapacity);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the whole file, the first call to {@link #nextLine()} then moves to its first line.
+     * On failure the file is closed, and opened again by the next call.
+     * @throws IOException The file could not be read.
+     */
+    void read() throws IOException {
+        try {
+            if (channel == null) {
+                channel = new RandomAccessFile(file, "r").getChannel();
+            }
+
+            while (true) {
+                buffer.clear();
+                long offset = 0;
+                int read;
+                while (buffer.hasRemaining() && (read = channel.read(buffer, offset)) > 0) {
+                    offset += read;
+                }
+
+                // Files of these filesystems report no size, a full buffer might have cut the content
+                if (buffer.hasRemaining() || buffer.capacity() >= MAX_CAPACITY) {
+                    break;
+                }
+                buffer = ByteBuffer.allocateDirect(Math.min(MAX_CAPACITY, buffer.capacity() * 2));
+            }
+        } catch (IOException e) {
+            close();
+            limit = 0;
+            throw e;
+        }
+
+        limit = buffer.position();
+        lineStart = 0;
+        lineEnd = -1;
+        position = 0;
+    }
+
+    void close() {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Nothing to do, the channel is dropped anyway
+        }
+        channel = null;
+    }
+
+    /**
+     * Moves to the start of the next line.
+     * @return False when there are no more lines.
+     */
+    boolean nextLine() {
+        int start = lineEnd + 1;
+        if (start >= limit) {
+            lineStart = lineEnd = position = limit;
+            return false;
+        }
+
+        int end = start;
+        while (end < limit && buffer.get(end) != '\n') {
+            ++end;
+        }
+
+        lineStart = start;
+        lineEnd = end;
+        position = start;
+        return true;
+    }
+
+    /**
+     * Checks if the current line starts with the prefix, and if it does moves past it.
+     * @param prefix The ASCII prefix.
+     * @return True if the line starts with the prefix.
+     */
+    boolean skipPrefix(byte[] prefix) {
+        if (lineEnd - lineStart < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; ++i) {
+            if (buffer.get(lineStart + i) != prefix[i]) {
+                return false;
+            }
+        }
+
+        position = lineStart + prefix.length;
+        return true;
+    }
+
+    /**
+     * @return True if the next character of the current line is a digit.
+     */
+    boolean nextIsDigit() {
+        return position < lineEnd && isDigit(buffer.get(position));
+    }
+
+    /**
+     * Parses the next number of the current line, characters before it are skipped.
+     * A number that does not fit a long is returned as {@link Long#MAX_VALUE}.
+     * @param defaultValue The value to return when the line has no more numbers.
+     * @return The number, or the default value.
+     */
+    long nextLong(long defaultValue) {
+        while (position < lineEnd && !isDigit(buffer.get(position))) {
+            ++position;
+        }
+        if (position == lineEnd) {
+            return defaultValue;
+        }
+
+        boolean negative = position > lineStart && buffer.get(position - 1) == '-';
+        long value = 0;
+        while (position < lineEnd) {
+            byte b = buffer.get(position);
+            if (!isDigit(b)) {
+                break;
+            }
+
+            ++position;
+            if (value > (Long.MAX_VALUE - 9) / 10) {
+                value = Long.MAX_VALUE;
+            } else if (value != Long.MAX_VALUE) {
+                value = value * 10 + (b - '0');
+            }
+        }
+
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
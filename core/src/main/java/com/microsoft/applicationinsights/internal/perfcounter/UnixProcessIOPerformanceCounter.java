@@ -21,9 +21,6 @@
 
 package com.microsoft.applicationinsights.internal.perfcounter;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-
 import com.microsoft.applicationinsights.TelemetryClient;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.system.SystemInformation;
@@ -47,6 +44,8 @@ final class UnixProcessIOPerformanceCounter extends AbstractUnixPerformanceCount
 
     private long lastCollectionInNanos = -1;
 
+    private final UnixProcessIOtParser parser = new UnixProcessIOtParser();
+
     public UnixProcessIOPerformanceCounter() {
         super("/proc/" + SystemInformation.INSTANCE.getProcessId() + "/io");
     }
@@ -84,31 +83,20 @@ final class UnixProcessIOPerformanceCounter extends AbstractUnixPerformanceCount
     }
 
     public double getCurrentIOForCurrentProcess() {
-        BufferedReader bufferedReader = null;
-
-        double result = Constants.DEFAULT_DOUBLE_VALUE;
-        UnixProcessIOtParser parser = new UnixProcessIOtParser();
+        double result;
+        UnixProcFileReader reader = getProcFileReader();
+        parser.reset();
         try {
-            bufferedReader = new BufferedReader(new FileReader(getProcessFile()));
-            String line;
-            while (!parser.done() && (line = bufferedReader.readLine()) != null) {
-                parser.process(line);
+            reader.read();
+            while (!parser.done() && reader.nextLine()) {
+                parser.process(reader);
             }
 
             result = parser.getValue();
         } catch (Exception e) {
             result = Constants.DEFAULT_DOUBLE_VALUE;
-            logError("Error while parsing file: '%s'", getId(), e.getMessage());
+            logError("Error while parsing file: '%s'", e.getMessage());
             InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(e));
-        } finally {
-            if (bufferedReader != null ) {
-                try {
-                    bufferedReader.close();
-                } catch (Exception e) {
-                    logError("Error while closing file : '%s'", e.getMessage());
-                    InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(e));
-                }
-            }
         }
 
         return result;
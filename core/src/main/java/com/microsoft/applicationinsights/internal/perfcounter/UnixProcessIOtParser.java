@@ -22,14 +22,15 @@
 package com.microsoft.applicationinsights.internal.perfcounter;
 
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
-import org.apache.commons.lang3.exception.ExceptionUtils;
 
 /**
+ * Parses the read and write bytes of the lines of '/proc/[pid]/io', see {@link UnixProcFileReader}.
+ *
  * Created by gupele on 3/16/2015.
  */
 final class UnixProcessIOtParser {
-    private final static String READ_BYTES_PART = "read_bytes:";
-    private final static String WRITE_BYTES_PART = "write_bytes:";
+    private final static byte[] READ_BYTES_PART = "read_bytes:".getBytes();
+    private final static byte[] WRITE_BYTES_PART = "write_bytes:".getBytes();
 
     UnixParsingState state = new UnixParsingState(2);
     boolean readBytesDone = false;
@@ -43,33 +44,41 @@ final class UnixProcessIOtParser {
         return state.returnValue;
     }
 
-    void process(String line) {
+    void reset() {
+        state.doneCounter = 2;
+        state.returnValue = 0.0;
+        readBytesDone = false;
+        writeBytesDone = false;
+    }
+
+    /**
+     * Parses the current line of the reader.
+     */
+    void process(UnixProcFileReader reader) {
         if (!readBytesDone) {
-            if (parseValue(line, READ_BYTES_PART)) {
+            if (parseValue(reader, READ_BYTES_PART)) {
                 readBytesDone = true;
                 return;
             }
         }
         if (!writeBytesDone) {
-            if (parseValue(line, WRITE_BYTES_PART)) {
+            if (parseValue(reader, WRITE_BYTES_PART)) {
                 writeBytesDone = true;
                 return;
             }
         }
     }
 
-    private boolean parseValue(String line, String part) {
-        int index = line.indexOf(part);
-        if (index != -1) {
-            String doubleValueAsString = line.substring(index + part.length());
-            try {
-                state.returnValue += Double.valueOf(doubleValueAsString.trim());
+    private boolean parseValue(UnixProcFileReader reader, byte[] part) {
+        if (reader.skipPrefix(part)) {
+            long value = reader.nextLong(-1);
+            if (value >= 0) {
+                state.returnValue += value;
                 --(state.doneCounter);
                 return true;
-            } catch (Exception e) {
-                InternalLogger.INSTANCE.error("Error in parsing value of UnixProcess counter");
-                InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(e));
             }
+
+            InternalLogger.INSTANCE.error("Error in parsing value of UnixProcess counter");
         }
 
         return false;
@@ -21,32 +21,48 @@
 
 package com.microsoft.applicationinsights.internal.perfcounter;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
 
 import com.microsoft.applicationinsights.TelemetryClient;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.telemetry.PerformanceCounterTelemetry;
 import com.microsoft.applicationinsights.telemetry.Telemetry;
 
-import com.google.common.base.Strings;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 /**
- * The class supplies the overall cpu usage of the machine.
+ * The class supplies the overall cpu usage of the machine, the usage of every core, and the context switches per second.
+ *
+ * The values are calculated from the difference between two readings of '/proc/stat', so the first
+ * collection only keeps the counters and reports nothing.
  *
  * Created by gupele on 3/8/2015.
  */
 final class UnixTotalCpuPerformanceCounter extends AbstractUnixPerformanceCounter {
     private final static String STAT_FILE = "/proc/stat";
+    private final static double NANOS_IN_SECOND = 1000000000.0;
+
+    private final static byte[] CPU_PREFIX = "cpu".getBytes();
+    private final static byte[] CONTEXT_SWITCHES_PREFIX = "ctxt".getBytes();
+
+    // The 'idle' column of a cpu line
+    private final static int IDLE_COLUMN = 3;
 
-    private long[] prevCpuCounters;
-    private long prevTotalCpuValue;
+    // Index 0 is the total of all cores, index i + 1 is core i, a total of -1 means there is no previous reading
+    private long[] prevTotalCpuValues = new long[0];
+    private long[] prevIdleCpuValues = new long[0];
+    private String[] instanceNames = new String[0];
+
+    private long prevContextSwitches = -1;
+    private long prevCollectionInNanos;
 
     public UnixTotalCpuPerformanceCounter() {
-        super(STAT_FILE);
-        prevCpuCounters = null;
+        this(STAT_FILE);
+    }
+
+    UnixTotalCpuPerformanceCounter(String statFile) {
+        super(statFile);
     }
 
     @Override
@@ -56,97 +72,96 @@ final class UnixTotalCpuPerformanceCounter extends AbstractUnixPerformanceCounte
 
     @Override
     public void report(TelemetryClient telemetryClient) {
-        String line = getLineOfData();
-
-        if (!Strings.isNullOrEmpty(line)) {
-            String[] rawStringValues = line.split(" ");
-
-            ArrayList<String> stringValues = new ArrayList<String>(rawStringValues.length - 1);
-            for (int i = 1; i < rawStringValues.length; ++i) {
-                String stringValue = rawStringValues[i];
-                if (Strings.isNullOrEmpty(stringValue)) {
-                    continue;
-                }
+        long currentCollectionInNanos = System.nanoTime();
+        UnixProcFileReader reader = getProcFileReader();
+        try {
+            reader.read();
+        } catch (IOException e) {
+            logError("Error while parsing file: '%s'", e.getMessage());
+            InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(e));
+            return;
+        }
 
-                stringValues.add(stringValue);
+        while (reader.nextLine()) {
+            if (reader.skipPrefix(CPU_PREFIX)) {
+                int index = reader.nextIsDigit() ? (int) reader.nextLong(0) + 1 : 0;
+                reportCpuUsage(reader, index, telemetryClient);
+            } else if (reader.skipPrefix(CONTEXT_SWITCHES_PREFIX)) {
+                reportContextSwitches(reader.nextLong(-1), currentCollectionInNanos, telemetryClient);
             }
+        }
 
-            String[] array = stringValues.toArray(new String[stringValues.size()]);
+        prevCollectionInNanos = currentCollectionInNanos;
+    }
 
-            if (prevCpuCounters == null) {
-                getCountersForTheFirstTime(array);
-                return;
+    private void reportCpuUsage(UnixProcFileReader reader, int index, TelemetryClient telemetryClient) {
+        long totalCpuValue = 0;
+        long idleCpuValue = 0;
+        int column = 0;
+        long value;
+        while ((value = reader.nextLong(-1)) >= 0) {
+            totalCpuValue += value;
+            if (column == IDLE_COLUMN) {
+                idleCpuValue = value;
             }
+            ++column;
+        }
 
-            double totalCpuUsage = calculateTotalCpuUsage(array);
-
-            InternalLogger.INSTANCE.trace("Sending Performance Counter: %s %s %s: %s", Constants.TOTAL_CPU_PC_CATEGORY_NAME, Constants.CPU_PC_COUNTER_NAME, Constants.INSTANCE_NAME_TOTAL, totalCpuUsage);
-            Telemetry telemetry = new PerformanceCounterTelemetry(
-                    Constants.TOTAL_CPU_PC_CATEGORY_NAME,
-                    Constants.CPU_PC_COUNTER_NAME,
-                    Constants.INSTANCE_NAME_TOTAL,
-                    totalCpuUsage);
+        ensureCapacity(index + 1);
+        long prevTotalCpuValue = prevTotalCpuValues[index];
+        long prevIdleCpuValue = prevIdleCpuValues[index];
+        prevTotalCpuValues[index] = totalCpuValue;
+        prevIdleCpuValues[index] = idleCpuValue;
 
-            telemetryClient.track(telemetry);
+        double totalDiff = totalCpuValue - prevTotalCpuValue;
+        if (prevTotalCpuValue == -1 || totalDiff <= 0) {
+            return;
         }
-    }
 
-    private String getLineOfData() {
-        BufferedReader bufferedReader = null;
+        double cpuUsage = 100 * ((totalDiff - (idleCpuValue - prevIdleCpuValue)) / totalDiff);
 
-        String line = null;
-        try {
-            bufferedReader = new BufferedReader(new FileReader(getProcessFile()));
-            line = bufferedReader.readLine();
-        } catch (Exception e) {
-            logError("Error while parsing file: '%s'", e.getMessage());
-            InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(e));
-        } finally {
-            if (bufferedReader != null ) {
-                try {
-                    bufferedReader.close();
-                } catch (Exception e) {
-                    logError("Error while closing file : '%s'", e.getMessage());
-                    InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(e));
-                }
-            }
-        }
+        InternalLogger.INSTANCE.trace("Sending Performance Counter: %s %s %s: %s", Constants.TOTAL_CPU_PC_CATEGORY_NAME, Constants.CPU_PC_COUNTER_NAME, instanceNames[index], cpuUsage);
+        Telemetry telemetry = new PerformanceCounterTelemetry(
+                Constants.TOTAL_CPU_PC_CATEGORY_NAME,
+                Constants.CPU_PC_COUNTER_NAME,
+                instanceNames[index],
+                cpuUsage);
 
-        return line;
+        telemetryClient.track(telemetry);
     }
 
-    private void getCountersForTheFirstTime(String[] stringValues) {
-        prevCpuCounters = new long[stringValues.length];
-        prevTotalCpuValue = 0;
-        for (int i = 0; i < stringValues.length; ++i) {
-            String stringValue = stringValues[i];
-            long value = Long.parseLong(stringValue);
-            prevCpuCounters[i] = value;
-            prevTotalCpuValue += value;
+    private void reportContextSwitches(long contextSwitches, long currentCollectionInNanos, TelemetryClient telemetryClient) {
+        long prev = prevContextSwitches;
+        prevContextSwitches = contextSwitches;
+        if (prev == -1 || contextSwitches < prev || currentCollectionInNanos <= prevCollectionInNanos) {
+            return;
         }
-    }
 
-    private double calculateTotalCpuUsage(String[] stringValues) {
-        long[] cpuCounters = new long[stringValues.length];
-        long totalCpuValue = 0;
-        double diffIdle = 0.0;
-        for (int i = 0; i < stringValues.length; ++i) {
-            String stringValue = stringValues[i];
-            long value = Long.parseLong(stringValue);
-            cpuCounters[i] = value - prevCpuCounters[i];
-            prevCpuCounters[i] = value;
+        double timeElapsedInSeconds = (currentCollectionInNanos - prevCollectionInNanos) / NANOS_IN_SECOND;
+        double value = (contextSwitches - prev) / timeElapsedInSeconds;
 
-            totalCpuValue += value;
-            if (i == 3) {
-                diffIdle = cpuCounters[i];
-            }
-        }
+        InternalLogger.INSTANCE.trace("Sending Performance Counter: %s %s: %s", Constants.SYSTEM_PC_CATEGORY_NAME, Constants.CONTEXT_SWITCHES_PC_COUNTER_NAME, value);
+        Telemetry telemetry = new PerformanceCounterTelemetry(
+                Constants.SYSTEM_PC_CATEGORY_NAME,
+                Constants.CONTEXT_SWITCHES_PC_COUNTER_NAME,
+                "",
+                value);
 
-        double totalDiff = totalCpuValue - prevTotalCpuValue;
-        double result = 100 * ((totalDiff - diffIdle) / (totalDiff));
+        telemetryClient.track(telemetry);
+    }
 
-        prevTotalCpuValue = totalCpuValue;
+    private void ensureCapacity(int size) {
+        int prevSize = prevTotalCpuValues.length;
+        if (size <= prevSize) {
+            return;
+        }
 
-        return result;
+        prevTotalCpuValues = Arrays.copyOf(prevTotalCpuValues, size);
+        prevIdleCpuValues = Arrays.copyOf(prevIdleCpuValues, size);
+        instanceNames = Arrays.copyOf(instanceNames, size);
+        Arrays.fill(prevTotalCpuValues, prevSize, size, -1L);
+        for (int i = prevSize; i < size; ++i) {
+            instanceNames[i] = i == 0 ? Constants.INSTANCE_NAME_TOTAL : String.valueOf(i - 1);
+        }
     }
 }
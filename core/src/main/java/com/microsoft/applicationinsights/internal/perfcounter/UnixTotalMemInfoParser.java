@@ -22,12 +22,14 @@
 package com.microsoft.applicationinsights.internal.perfcounter;
 
 /**
+ * Parses the free, buffers and cached memory of the lines of '/proc/meminfo', see {@link UnixProcFileReader}.
+ *
  * Created by gupele on 3/16/2015.
  */
 final class UnixTotalMemInfoParser {
-    private final static String MEM_FREE_PREFIX = "MemFree:";
-    private final static String BUFFERS_PREFIX = "Buffers";
-    private final static String CACHED_PREFIX = "Cached";
+    private final static byte[] MEM_FREE_PREFIX = "MemFree:".getBytes();
+    private final static byte[] BUFFERS_PREFIX = "Buffers:".getBytes();
+    private final static byte[] CACHED_PREFIX = "Cached:".getBytes();
 
     boolean memFreeDone = false;
     boolean buffersDone = false;
@@ -38,25 +40,36 @@ final class UnixTotalMemInfoParser {
         return state.doneCounter == 0;
     }
 
-    void process(String line) {
+    void reset() {
+        state.doneCounter = 3;
+        state.returnValue = 0.0;
+        memFreeDone = false;
+        buffersDone = false;
+        cachedDone = false;
+    }
+
+    /**
+     * Parses the current line of the reader.
+     */
+    void process(UnixProcFileReader reader) {
         if (done()) {
             return;
         }
 
         if (!memFreeDone) {
-            if (parseValue(state, line, MEM_FREE_PREFIX)) {
+            if (parseValue(state, reader, MEM_FREE_PREFIX)) {
                 memFreeDone = true;
                 return;
             }
         }
         if (!buffersDone) {
-            if (parseValue(state, line, BUFFERS_PREFIX)) {
+            if (parseValue(state, reader, BUFFERS_PREFIX)) {
                 buffersDone = true;
                 return;
             }
         }
         if (!cachedDone) {
-            if (parseValue(state, line, CACHED_PREFIX)) {
+            if (parseValue(state, reader, CACHED_PREFIX)) {
                 cachedDone = true;
                 return;
             }
@@ -67,12 +80,9 @@ final class UnixTotalMemInfoParser {
         return state.returnValue;
     }
 
-    private boolean parseValue(UnixParsingState parsingData, String line, String part) {
-        int index = line.indexOf(part);
-        if (index != -1) {
-            line = line.trim();
-            String[] strings = line.split(" ");
-            parsingData.returnValue += Double.valueOf(strings[strings.length - 2]);
+    private boolean parseValue(UnixParsingState parsingData, UnixProcFileReader reader, byte[] part) {
+        if (reader.skipPrefix(part)) {
+            parsingData.returnValue += reader.nextLong(0);
             --(parsingData.doneCounter);
             return true;
         }
@@ -21,9 +21,6 @@
 
 package com.microsoft.applicationinsights.internal.perfcounter;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-
 import com.microsoft.applicationinsights.TelemetryClient;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.telemetry.PerformanceCounterTelemetry;
@@ -38,6 +35,8 @@ final class UnixTotalMemoryPerformanceCounter extends AbstractUnixPerformanceCou
     private final static String MEM_FILE = "/proc/meminfo";
     private final static double KB = 1024.0;
 
+    private final UnixTotalMemInfoParser parser = new UnixTotalMemInfoParser();
+
     public UnixTotalMemoryPerformanceCounter() {
         super(MEM_FILE);
     }
@@ -62,30 +61,20 @@ final class UnixTotalMemoryPerformanceCounter extends AbstractUnixPerformanceCou
     }
 
     private double getTotalAvailableMemory() {
-        BufferedReader bufferedReader = null;
-
-        double result = Constants.DEFAULT_DOUBLE_VALUE;
-        UnixTotalMemInfoParser reader = new UnixTotalMemInfoParser();
+        double result;
+        UnixProcFileReader reader = getProcFileReader();
+        parser.reset();
         try {
-            bufferedReader = new BufferedReader(new FileReader(getProcessFile()));
-            String line;
-            while (!reader.done() && (line = bufferedReader.readLine()) != null) {
-                reader.process(line);
+            reader.read();
+            while (!parser.done() && reader.nextLine()) {
+                parser.process(reader);
             }
 
             // The value we get is in KB so we need to translate that to bytes.
-            result = reader.getValue() * KB;
+            result = parser.getValue() * KB;
         } catch (Exception e) {
             result = Constants.DEFAULT_DOUBLE_VALUE;
             logError("Error while parsing file: '%s'", e.getMessage());
-        } finally {
-            if (bufferedReader != null ) {
-                try {
-                    bufferedReader.close();
-                } catch (Exception e) {
-                    logError("Error while closing file : '%s'", e.getMessage());
-                }
-            }
         }
 
         return result;
@@ -48,6 +48,7 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 public final class DeadLockDetectorPerformanceCounter implements PerformanceCounter {
 
     public final static String NAME = "ThreadDeadLockDetector";
+    public final static String ID = "DeadLockDetector";
 
     private final static String INDENT = "    ";
     private final static String SEPERATOR = " | ";
@@ -67,7 +68,7 @@ public final class DeadLockDetectorPerformanceCounter implements PerformanceCoun
 
     @Override
     public String getId() {
-        return "DeadLockDetector";
+        return ID;
     }
 
     @Override
@@ -36,6 +36,7 @@ import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
  */
 public final class GCPerformanceCounter implements PerformanceCounter {
     public final static String NAME = "GC";
+    public final static String ID = "GCPerformanceCounter";
 
     private static final String GC_TOTAL_COUNT = "GC Total Count";
     private static final String GC_TOTAL_TIME = "GC Total Time";
@@ -45,7 +46,7 @@ public final class GCPerformanceCounter implements PerformanceCounter {
 
     @Override
     public String getId() {
-        return "GCPerformanceCounter";
+        return ID;
     }
 
     @Override
@@ -37,6 +37,7 @@ import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
 public class JvmHeapMemoryUsedPerformanceCounter implements PerformanceCounter {
 
     public final static String NAME = "MemoryUsage";
+    public final static String ID = "JvmHeapMemoryUsedPerformanceCounter";
 
         private final static String HEAP_MEM_USED = "Heap Memory Used (MB)";
 
@@ -50,7 +51,7 @@ public class JvmHeapMemoryUsedPerformanceCounter implements PerformanceCounter {
 
     @Override
     public String getId() {
-        return "JvmHeapMemoryUsedPerformanceCounter";
+        return ID;
     }
 
     @Override
@@ -0,0 +1,329 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.processor;
+
+import com.microsoft.applicationinsights.TelemetryConfiguration;
+import com.microsoft.applicationinsights.channel.TelemetryChannel;
+import com.microsoft.applicationinsights.extensibility.TelemetryModule;
+import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.extensibility.TelemetryTypeSpecific;
+import com.microsoft.applicationinsights.internal.annotation.BuiltInProcessor;
+import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.shutdown.SDKShutdownActivity;
+import com.microsoft.applicationinsights.internal.shutdown.Stoppable;
+import com.microsoft.applicationinsights.internal.util.StackTraceKey;
+import com.microsoft.applicationinsights.internal.util.ThreadPoolUtils;
+import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class deduplicates ExceptionTelemetries, of the same exception type thrown from the same place,
+ * so that at most one of them is sent per interval instead of every single one.
+ *
+ * The first exception of a kind starts an interval and is sent, the ones that follow it in that interval are
+ * filtered out. When the interval ends, a copy of the first of the filtered out exceptions is sent with the number
+ * of exceptions that were filtered out. The copy keeps the converted exception details, context, properties
+ * and metrics, but not the Throwable, so the pending counts do not keep the exceptions alive. Every sent exception carries that number in the metric 'OccurrenceCount',
+ * which is 1 for the exception that started the interval. The pending counts are also sent when the SDK shuts down.
+ *
+ * The counts are sent to the channel of the configuration the processor is loaded into, the processors that
+ * follow this one do not see them.
+ *
+ * The interval is set by 'IntervalInSeconds', the default is 60 seconds.
+ */
+@BuiltInProcessor("ExceptionTelemetryDeduplicator")
+public final class ExceptionTelemetryDeduplicator implements TelemetryProcessor, TelemetryTypeSpecific, TelemetryModule, Stoppable {
+    public static final String OCCURRENCE_COUNT_METRIC_NAME = "OccurrenceCount";
+
+    static final int DEFAULT_INTERVAL_IN_SECONDS = 60;
+    static final int MAX_TRACKED_EXCEPTIONS = 1024;
+
+    // How often the ended intervals are looked for, the counts are sent at most that late
+    private static final long FLUSH_PERIOD_IN_SECONDS = 1;
+
+    private static final class Occurrences {
+        private long intervalStart;
+        private int suppressed;
+
+        // A copy of the first filtered out exception, without its Throwable, sent with the count when the interval ends
+        private ExceptionTelemetry summary;
+
+        private Occurrences(long intervalStart) {
+            this.intervalStart = intervalStart;
+        }
+
+        /**
+         * @return True if the exception starts an interval and should be sent, false if it is counted.
+         */
+        synchronized boolean occurred(ExceptionTelemetry telemetry, long now, long intervalInNanos) {
+            if (now - intervalStart < intervalInNanos) {
+                if (summary == null) {
+                    summary = telemetry.copyWithoutThrowable();
+                }
+                ++suppressed;
+                return false;
+            }
+
+            intervalStart = now;
+            return true;
+        }
+
+        /**
+         * Takes the exception to send with the count of the filtered out ones, if the interval ended or the end is forced.
+         * @return The exception to send, or null if there is none.
+         */
+        synchronized ExceptionTelemetry takeEnded(long now, long intervalInNanos, boolean force) {
+            if (summary == null || (!force && now - intervalStart < intervalInNanos)) {
+                return null;
+            }
+
+            ExceptionTelemetry ended = summary;
+            ended.getMetrics().put(OCCURRENCE_COUNT_METRIC_NAME, (double)suppressed);
+            summary = null;
+            suppressed = 0;
+            return ended;
+        }
+
+        synchronized boolean isIdle(long now, long intervalInNanos) {
+            return summary == null && now - intervalStart >= intervalInNanos;
+        }
+    }
+
+    private final ConcurrentMap<StackTraceKey, Occurrences> occurrences = new ConcurrentHashMap<StackTraceKey, Occurrences>();
+    private volatile long intervalInNanos = TimeUnit.SECONDS.toNanos(DEFAULT_INTERVAL_IN_SECONDS);
+
+    // Null for the channel of the configuration
+    private final TelemetryChannel channel;
+
+    // The configuration the processor is loaded into, its channel gets the counts
+    private volatile TelemetryConfiguration configuration;
+
+    // Whether a thread flushes the ended intervals, it is started with the first filtered out exception
+    private final boolean scheduleFlushes;
+    private ScheduledThreadPoolExecutor threads;
+    private boolean stopped;
+
+    public ExceptionTelemetryDeduplicator() {
+        this(null, true);
+    }
+
+    /**
+     * @param channel The channel to send the counts to, the ended intervals are flushed only by {@link #flush(long)}.
+     */
+    ExceptionTelemetryDeduplicator(TelemetryChannel channel) {
+        this(channel, false);
+    }
+
+    private ExceptionTelemetryDeduplicator(TelemetryChannel channel, boolean scheduleFlushes) {
+        this.channel = channel;
+        this.scheduleFlushes = scheduleFlushes;
+    }
+
+    /**
+     * Called with the configuration the processor is loaded into.
+     * @param configuration The configuration whose channel gets the counts.
+     */
+    @Override
+    public void initialize(TelemetryConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+    @Override
+    public boolean isApplicableTo(Class<? extends Telemetry> telemetryType) {
+        return ExceptionTelemetry.class.isAssignableFrom(telemetryType);
+    }
+
+    @Override
+    public boolean process(Telemetry telemetry) {
+        return process(telemetry, System.nanoTime());
+    }
+
+    boolean process(Telemetry telemetry, long now) {
+        if (!(telemetry instanceof ExceptionTelemetry)) {
+            return true;
+        }
+
+        ExceptionTelemetry exceptionTelemetry = (ExceptionTelemetry)telemetry;
+        Throwable throwable = exceptionTelemetry.getThrowable();
+        if (throwable == null) {
+            return true;
+        }
+
+        long interval = intervalInNanos;
+        StackTraceKey key = new StackTraceKey(throwable.getClass().getName(), throwable.getStackTrace());
+        Occurrences current = occurrences.get(key);
+        boolean send;
+        if (current == null) {
+            if (occurrences.size() >= MAX_TRACKED_EXCEPTIONS) {
+                flush(now);
+            }
+            if (occurrences.size() >= MAX_TRACKED_EXCEPTIONS) {
+                // Too many kinds are counted, the new ones are sent as they come
+                send = true;
+            } else {
+                current = occurrences.putIfAbsent(key, new Occurrences(now));
+                send = current == null || occurred(current, exceptionTelemetry, now, interval);
+            }
+        } else {
+            send = occurred(current, exceptionTelemetry, now, interval);
+        }
+
+        if (!send) {
+            startFlushes();
+            return false;
+        }
+
+        exceptionTelemetry.getMetrics().put(OCCURRENCE_COUNT_METRIC_NAME, 1.0);
+        return true;
+    }
+
+    /**
+     * Sends the counts of the intervals that ended and forgets the kinds of exceptions that are not seen anymore.
+     * @param now The current time in nanoseconds.
+     */
+    void flush(long now) {
+        flush(now, false);
+    }
+
+    /**
+     * Sends the pending counts, their intervals end now.
+     */
+    @Override
+    public void stop(long timeout, TimeUnit timeUnit) {
+        flush(System.nanoTime(), true);
+
+        ScheduledThreadPoolExecutor flushThreads;
+        synchronized (this) {
+            stopped = true;
+            flushThreads = threads;
+            threads = null;
+        }
+        if (flushThreads != null) {
+            ThreadPoolUtils.stop(flushThreads, timeout, timeUnit);
+        }
+    }
+
+    int getTrackedExceptionsCount() {
+        return occurrences.size();
+    }
+
+    private boolean occurred(Occurrences current, ExceptionTelemetry telemetry, long now, long interval) {
+        // The count of an interval that ended but was not flushed yet is sent on its own
+        ExceptionTelemetry ended = current.takeEnded(now, interval, false);
+        if (ended != null) {
+            send(ended);
+        }
+
+        return current.occurred(telemetry, now, interval);
+    }
+
+    private void flush(long now, boolean force) {
+        long interval = intervalInNanos;
+        Iterator<Map.Entry<StackTraceKey, Occurrences>> iterator = occurrences.entrySet().iterator();
+        List<ExceptionTelemetry> ended = new ArrayList<ExceptionTelemetry>();
+        while (iterator.hasNext()) {
+            Occurrences current = iterator.next().getValue();
+            ExceptionTelemetry summary = current.takeEnded(now, interval, force);
+            if (summary != null) {
+                ended.add(summary);
+            } else if (current.isIdle(now, interval)) {
+                iterator.remove();
+            }
+        }
+
+        for (ExceptionTelemetry summary : ended) {
+            send(summary);
+        }
+    }
+
+    private void send(ExceptionTelemetry telemetry) {
+        try {
+            TelemetryChannel target = channel;
+            if (target == null) {
+                TelemetryConfiguration loadedInto = configuration;
+                target = loadedInto != null ? loadedInto.getChannel() : TelemetryConfiguration.getActive().getChannel();
+            }
+            target.send(telemetry);
+        } catch (Throwable t) {
+            InternalLogger.INSTANCE.error("ExceptionTelemetryDeduplicator: exception while sending telemetry: '%s'", t.getMessage());
+        }
+    }
+
+    private void startFlushes() {
+        if (!scheduleFlushes) {
+            return;
+        }
+
+        synchronized (this) {
+            if (threads != null || stopped) {
+                return;
+            }
+
+            threads = new ScheduledThreadPoolExecutor(1);
+            threads.setThreadFactory(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, ExceptionTelemetryDeduplicator.class.getSimpleName());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            threads.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush(System.nanoTime());
+                    } catch (Throwable t) {
+                    }
+                }
+            }, FLUSH_PERIOD_IN_SECONDS, FLUSH_PERIOD_IN_SECONDS, TimeUnit.SECONDS);
+
+            // The pending counts are sent before the channels are stopped
+            SDKShutdownActivity.INSTANCE.register(this);
+        }
+    }
+
+    public void setIntervalInSeconds(String intervalInSeconds) throws Throwable {
+        try {
+            int value = Integer.parseInt(intervalInSeconds.trim());
+            if (value <= 0) {
+                throw new IllegalArgumentException(String.format("Interval must be positive: %s", intervalInSeconds));
+            }
+            intervalInNanos = TimeUnit.SECONDS.toNanos(value);
+            InternalLogger.INSTANCE.trace(String.format("ExceptionTelemetryDeduplicator: set interval to %d seconds", value));
+        } catch (Throwable e) {
+            InternalLogger.INSTANCE.logAlways(InternalLogger.LoggingLevel.ERROR,
+                    String.format("ExceptionTelemetryDeduplicator: failed to parse: %s", intervalInSeconds));
+            throw e;
+        }
+    }
+}
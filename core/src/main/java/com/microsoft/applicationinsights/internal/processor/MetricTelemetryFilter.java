@@ -26,6 +26,7 @@ import java.util.HashSet;
 import java.util.List;
 
 import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.extensibility.TelemetryTypeSpecific;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
 import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
@@ -39,7 +40,7 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
  *
  * Created by gupele on 8/7/2016.
  */
-public final class MetricTelemetryFilter implements TelemetryProcessor {
+public final class MetricTelemetryFilter implements TelemetryProcessor, TelemetryTypeSpecific {
     private HashSet<String> notNeeded = new HashSet<String>();
 
     public void setNotNeeded(String allNotNeeded) throws Throwable{
@@ -61,6 +62,11 @@ public final class MetricTelemetryFilter implements TelemetryProcessor {
         }
     }
 
+    @Override
+    public boolean isApplicableTo(Class<? extends Telemetry> telemetryType) {
+        return MetricTelemetry.class.isAssignableFrom(telemetryType);
+    }
+
     @Override
     public boolean process(Telemetry telemetry) {
         if (telemetry == null) {
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 
 import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.extensibility.TelemetryTypeSpecific;
 import com.microsoft.applicationinsights.internal.annotation.BuiltInProcessor;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
@@ -45,7 +46,7 @@ import com.microsoft.applicationinsights.telemetry.Telemetry;
  * Created by gupele on 7/26/2016.
  */
 @BuiltInProcessor("RequestTelemetryFilter")
-public final class RequestTelemetryFilter implements TelemetryProcessor {
+public final class RequestTelemetryFilter implements TelemetryProcessor, TelemetryTypeSpecific {
     private final class FromTo {
         public final int from;
         public final int to;
@@ -64,6 +65,11 @@ public final class RequestTelemetryFilter implements TelemetryProcessor {
     public RequestTelemetryFilter() {
     }
 
+    @Override
+    public boolean isApplicableTo(Class<? extends Telemetry> telemetryType) {
+        return RequestTelemetry.class.isAssignableFrom(telemetryType);
+    }
+
     @Override
     public boolean process(Telemetry telemetry) {
         if (telemetry == null) {
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Set;
 
 import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.extensibility.TelemetryTypeSpecific;
 import com.microsoft.applicationinsights.internal.annotation.BuiltInProcessor;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
@@ -41,12 +42,17 @@ import com.microsoft.applicationinsights.telemetry.Telemetry;
  * Created by gupele on 7/26/2016.
  */
 @BuiltInProcessor("TelemetryEventFilter")
-public final class TelemetryEventFilter implements TelemetryProcessor {
+public final class TelemetryEventFilter implements TelemetryProcessor, TelemetryTypeSpecific {
     private final Set<String> notNeededNames = new HashSet<String>();
 
     public TelemetryEventFilter() {
     }
 
+    @Override
+    public boolean isApplicableTo(Class<? extends Telemetry> telemetryType) {
+        return EventTelemetry.class.isAssignableFrom(telemetryType);
+    }
+
     @Override
     public boolean process(Telemetry telemetry) {
         if (telemetry == null) {
@@ -22,6 +22,7 @@
 package com.microsoft.applicationinsights.internal.processor;
 
 import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.extensibility.TelemetryTypeSpecific;
 import com.microsoft.applicationinsights.internal.annotation.BuiltInProcessor;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
@@ -47,12 +48,17 @@ import java.util.Map;
  * Created by gupele on 7/26/2016.
  */
 @BuiltInProcessor("TraceTelemetryFilter")
-public final class TraceTelemetryFilter implements TelemetryProcessor {
+public final class TraceTelemetryFilter implements TelemetryProcessor, TelemetryTypeSpecific {
     private SeverityLevel fromSeverityLevel = null;
 
     public TraceTelemetryFilter() {
     }
 
+    @Override
+    public boolean isApplicableTo(Class<? extends Telemetry> telemetryType) {
+        return TraceTelemetry.class.isAssignableFrom(telemetryType);
+    }
+
     @Override
     public boolean process(Telemetry telemetry) {
         if (telemetry == null) {
@@ -64,6 +64,8 @@ final class DefaultQuickPulseCoordinator implements QuickPulseCoordinator, Runna
                 }
             }
         } catch (Throwable t) {
+        } finally {
+            dataFetcher.stop();
         }
     }
 
@@ -21,27 +21,36 @@
 
 package com.microsoft.applicationinsights.internal.quickpulse;
 
-import java.util.Date;
 import java.util.concurrent.ArrayBlockingQueue;
-
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ByteArrayEntity;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
+import com.microsoft.applicationinsights.internal.util.StripedHistogram;
 
 /**
  * Created by gupele on 12/12/2016.
  */
 final class DefaultQuickPulseDataFetcher implements QuickPulseDataFetcher {
-    private final static String QP_BASE_URI = "https://rt.services.visualstudio.com/QuickPulseService.svc/";
-    private final String quickPulsePostUri;
-    private final ArrayBlockingQueue<HttpPost> sendQueue;
-    private final QuickPulseNetworkHelper networkHelper = new QuickPulseNetworkHelper();
-    private String postPrefix;
-
-    public DefaultQuickPulseDataFetcher(final ArrayBlockingQueue<HttpPost> sendQueue, final String ikey, final String instanceName, final String quickPulseId) {
-        quickPulsePostUri = QP_BASE_URI + "post?ikey=" + ikey;
+    private final static String[] REQUEST_DURATION_PERCENTILE_NAMES = percentileMetricNames("\\\\ApplicationInsights\\\\Request Duration");
+    private final static String[] DEPENDENCY_DURATION_PERCENTILE_NAMES = percentileMetricNames("\\\\ApplicationInsights\\\\Dependency Call Duration");
+
+    private final ArrayBlockingQueue<QuickPulsePayload> sendQueue;
+    private final ArrayBlockingQueue<QuickPulsePayload> freePayloads;
+    private final String postPrefix;
+
+    // Null if the payloads are not compressed
+    private final Deflater deflater;
+    private final CRC32 crc;
+
+    /**
+     * @param sendQueue The queue of the payloads that are ready to be sent.
+     * @param freePayloads The payloads that can be filled, the data sender gives them back once they are sent.
+     */
+    public DefaultQuickPulseDataFetcher(final ArrayBlockingQueue<QuickPulsePayload> sendQueue, final ArrayBlockingQueue<QuickPulsePayload> freePayloads,
+                                        final String ikey, final String instanceName, final String quickPulseId, boolean compressPayload) {
         this.sendQueue = sendQueue;
+        this.freePayloads = freePayloads;
         final StringBuilder sb = new StringBuilder();
         sb.append("[{");
         formatDocuments(sb);
@@ -52,71 +61,124 @@ final class DefaultQuickPulseDataFetcher implements QuickPulseDataFetcher {
         sb.append("\"StreamId\": \"" + quickPulseId + "\",");
         
         postPrefix = sb.toString();
+
+        if (compressPayload) {
+            // 'nowrap' since the gzip header and trailer are written by the payload
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            crc = new CRC32();
+        } else {
+            deflater = null;
+            crc = null;
+        }
     }
 
     @Override
     public void prepareQuickPulseDataForSend() {
         try {
             QuickPulseDataCollector.FinalCounters counters = QuickPulseDataCollector.INSTANCE.getAndRestart();
+            if (counters == null) {
+                return;
+            }
 
-            final Date currentDate = new Date();
-            final HttpPost request = networkHelper.buildRequest(currentDate, quickPulsePostUri);
-
-            final ByteArrayEntity postEntity = buildPostEntity(counters);
-
-            request.setEntity(postEntity);
-
-            if (!sendQueue.offer(request)) {
+            QuickPulsePayload payload = freePayloads.poll();
+            if (payload == null) {
                 InternalLogger.INSTANCE.trace("Quick Pulse send queue is full");
+                return;
+            }
+
+            boolean queued = false;
+            try {
+                buildPayload(counters, payload);
+                if (deflater != null) {
+                    payload.compress(deflater, crc);
+                }
+                queued = sendQueue.offer(payload);
+                if (!queued) {
+                    InternalLogger.INSTANCE.trace("Quick Pulse send queue is full");
+                }
+            } finally {
+                if (!queued) {
+                    freePayloads.offer(payload);
+                }
             }
         } catch (Throwable e) {
             InternalLogger.INSTANCE.trace("Quick Pulse failed to prepare data for send");
         }
     }
 
-    private ByteArrayEntity buildPostEntity(QuickPulseDataCollector.FinalCounters counters) {
-        StringBuilder sb = new StringBuilder(postPrefix);
-        formatMetrics(counters, sb);
-        sb.append("\"Timestamp\": \"\\/Date(");
+    @Override
+    public void stop() {
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+
+    void buildPayload(QuickPulseDataCollector.FinalCounters counters, QuickPulsePayload payload) {
         long ms = System.currentTimeMillis();
-        sb.append(ms);
-        sb.append(")\\/\",");
-        sb.append("\"Version\": \"2.2.0-738\"");
-        sb.append("}]");
-        ByteArrayEntity bae = new ByteArrayEntity(sb.toString().getBytes());
-        return bae;
+        payload.reset(ms);
+        payload.write(postPrefix);
+        formatMetrics(counters, payload);
+        payload.write("\"Timestamp\": \"\\/Date(");
+        payload.write(ms);
+        payload.write(")\\/\",");
+        payload.write("\"Version\": \"2.2.0-738\"");
+        payload.write("}]");
     }
 
     private void formatDocuments(StringBuilder sb) {
         sb.append("\"Documents\": [] ,");
     }
-    
-    private void formatSingleMetric(StringBuilder sb, String metricName, double metricValue, int metricWeight, Boolean includeComma) {
-    	String comma = includeComma ? "," : "";
-    	sb.append(String.format("{\"Name\": \"%s\",\"Value\": %s,\"Weight\": %s}%s", metricName, metricValue, metricWeight, comma));
+
+    private void formatSingleMetric(QuickPulsePayload payload, String metricName, double metricValue, boolean includeComma) {
+        formatMetricName(payload, metricName);
+        payload.write(metricValue);
+        formatMetricWeight(payload, includeComma);
     }
-    private void formatSingleMetric(StringBuilder sb, String metricName, long metricValue, int metricWeight, Boolean includeComma) {
-    	String comma = includeComma ? "," : "";
-    	sb.append(String.format("{\"Name\": \"%s\",\"Value\": %s,\"Weight\": %s}%s", metricName, metricValue, metricWeight, comma));
+
+    private void formatSingleMetric(QuickPulsePayload payload, String metricName, long metricValue, boolean includeComma) {
+        formatMetricName(payload, metricName);
+        payload.write(metricValue);
+        formatMetricWeight(payload, includeComma);
+    }
+
+    private void formatMetricName(QuickPulsePayload payload, String metricName) {
+        payload.write("{\"Name\": \"");
+        payload.write(metricName);
+        payload.write("\",\"Value\": ");
     }
-    private void formatSingleMetric(StringBuilder sb, String metricName, int metricValue, int metricWeight, Boolean includeComma) {
-    	String comma = includeComma ? "," : "";
-    	sb.append(String.format("{\"Name\": \"%s\",\"Value\": %s,\"Weight\": %s}%s", metricName, metricValue, metricWeight, comma));
+
+    private void formatMetricWeight(QuickPulsePayload payload, boolean includeComma) {
+        payload.write(",\"Weight\": 1}");
+        if (includeComma) {
+            payload.write(',');
+        }
+    }
+
+    private void formatPercentileMetrics(QuickPulsePayload payload, String[] metricNames, StripedHistogram.Snapshot durations) {
+        formatSingleMetric(payload, metricNames[0], durations.getValueAtPercentile(50.0), true);
+        formatSingleMetric(payload, metricNames[1], durations.getValueAtPercentile(95.0), true);
+        formatSingleMetric(payload, metricNames[2], durations.getValueAtPercentile(99.0), true);
+    }
+
+    private static String[] percentileMetricNames(String metricName) {
+        return new String[] {metricName + " P50", metricName + " P95", metricName + " P99"};
     }
 
-    private void formatMetrics(QuickPulseDataCollector.FinalCounters counters, StringBuilder sb) {
-        sb.append("\"Metrics\":[");
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Requests\\/Sec", counters.requests, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Request Duration", counters.requestsDuration, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Requests Failed\\/Sec", counters.unsuccessfulRequests, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Requests Succeeded\\/Sec", (counters.requests - counters.unsuccessfulRequests), 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Dependency Calls\\/Sec", counters.rdds, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Dependency Call Duration", counters.rddsDuration, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Dependency Calls Failed\\/Sec", counters.unsuccessfulRdds, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Dependency Calls Succeeded\\/Sec", counters.rdds - counters.unsuccessfulRdds, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Exceptions\\/Sec", counters.exceptions, 1, true);
-        formatSingleMetric(sb, "\\\\Memory\\\\Committed Bytes", counters.memoryCommitted, 1, true);
-        formatSingleMetric(sb, "\\\\Processor(_Total)\\\\% Processor Time", counters.cpuUsage, 1, false);
-        sb.append("],");
+    private void formatMetrics(QuickPulseDataCollector.FinalCounters counters, QuickPulsePayload payload) {
+        payload.write("\"Metrics\":[");
+        formatSingleMetric(payload, "\\\\ApplicationInsights\\\\Requests\\/Sec", counters.requests, true);
+        formatSingleMetric(payload, "\\\\ApplicationInsights\\\\Request Duration", counters.requestsDuration, true);
+        formatPercentileMetrics(payload, REQUEST_DURATION_PERCENTILE_NAMES, counters.requestsDurations);
+        formatSingleMetric(payload, "\\\\ApplicationInsights\\\\Requests Failed\\/Sec", counters.unsuccessfulRequests, true);
+        formatSingleMetric(payload, "\\\\ApplicationInsights\\\\Requests Succeeded\\/Sec", (counters.requests - counters.unsuccessfulRequests), true);
+        formatSingleMetric(payload, "\\\\ApplicationInsights\\\\Dependency Calls\\/Sec", counters.rdds, true);
+        formatSingleMetric(payload, "\\\\ApplicationInsights\\\\Dependency Call Duration", counters.rddsDuration, true);
+        formatPercentileMetrics(payload, DEPENDENCY_DURATION_PERCENTILE_NAMES, counters.rddsDurations);
+        formatSingleMetric(payload, "\\\\ApplicationInsights\\\\Dependency Calls Failed\\/Sec", counters.unsuccessfulRdds, true);
+        formatSingleMetric(payload, "\\\\ApplicationInsights\\\\Dependency Calls Succeeded\\/Sec", counters.rdds - counters.unsuccessfulRdds, true);
+        formatSingleMetric(payload, "\\\\ApplicationInsights\\\\Exceptions\\/Sec", counters.exceptions, true);
+        formatSingleMetric(payload, "\\\\Memory\\\\Committed Bytes", counters.memoryCommitted, true);
+        formatSingleMetric(payload, "\\\\Processor(_Total)\\\\% Processor Time", counters.cpuUsage, false);
+        payload.write("],");
     }
 }
@@ -33,6 +33,7 @@ import com.microsoft.applicationinsights.internal.channel.common.ApacheSender;
  * Created by gupele on 12/12/2016.
  */
 final class DefaultQuickPulseDataSender implements QuickPulseDataSender {
+    private final static String QP_BASE_URI = "https://rt.services.visualstudio.com/QuickPulseService.svc/";
 
     private final QuickPulseNetworkHelper networkHelper = new QuickPulseNetworkHelper();
     private final ApacheSender apacheSender;
@@ -40,25 +41,38 @@ final class DefaultQuickPulseDataSender implements QuickPulseDataSender {
     private volatile boolean stopped = false;
     private long lastValidTransmission = 0;
 
-    private final ArrayBlockingQueue<HttpPost> sendQueue;
-
-    public DefaultQuickPulseDataSender(final ApacheSender apacheSender, final ArrayBlockingQueue<HttpPost> sendQueue) {
+    private final ArrayBlockingQueue<QuickPulsePayload> sendQueue;
+    private final ArrayBlockingQueue<QuickPulsePayload> freePayloads;
+    private final String quickPulsePostUri;
+
+    /**
+     * @param sendQueue The queue of the payloads to send.
+     * @param freePayloads The payloads are given back to it once they are sent, or dropped.
+     * @param ikey The instrumentation key the payloads are posted for.
+     */
+    public DefaultQuickPulseDataSender(final ApacheSender apacheSender, final ArrayBlockingQueue<QuickPulsePayload> sendQueue,
+                                       final ArrayBlockingQueue<QuickPulsePayload> freePayloads, final String ikey) {
         this.apacheSender = apacheSender;
         this.sendQueue = sendQueue;
+        this.freePayloads = freePayloads;
+        this.quickPulsePostUri = QP_BASE_URI + "post?ikey=" + ikey;
     }
 
     @Override
     public void run() {
         try {
             while (!stopped) {
-                HttpPost post = sendQueue.take();
+                QuickPulsePayload payload = sendQueue.take();
                 if (quickPulseStatus != QuickPulseStatus.QP_IS_ON) {
+                    freePayloads.offer(payload);
                     continue;
                 }
 
                 final long sendTime = System.nanoTime();
                 HttpResponse response = null;
                 try {
+                    HttpPost post = networkHelper.buildRequest(payload.getTransmissionTimeInMillis(), quickPulsePostUri);
+                    post.setEntity(payload);
                     response = apacheSender.sendPostRequest(post);
                     if (networkHelper.isSuccess(response)) {
                         final QuickPulseStatus quickPulseResultStatus = networkHelper.getQuickPulseStatus(response);
@@ -83,6 +97,7 @@ final class DefaultQuickPulseDataSender implements QuickPulseDataSender {
                 	if (response != null) {
                 		apacheSender.dispose(response);
                 	}
+                    freePayloads.offer(payload);
                 }
             }
         } catch (Throwable t) {
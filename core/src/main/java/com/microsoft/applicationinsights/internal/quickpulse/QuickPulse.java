@@ -29,7 +29,6 @@ import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.util.DeviceInfo;
 import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
-import org.apache.http.client.methods.HttpPost;
 
 import com.microsoft.applicationinsights.TelemetryConfiguration;
 import com.microsoft.applicationinsights.internal.channel.common.ApacheSender;
@@ -43,6 +42,9 @@ import com.microsoft.applicationinsights.internal.shutdown.Stoppable;
 public enum QuickPulse implements Stoppable {
     INSTANCE;
 
+    // A post is prepared every second, the payloads that wait for a slow network beyond these are dropped
+    private final static int NUMBER_OF_PAYLOADS = 4;
+
     private volatile boolean initialized = false;
     private Thread thread;
     private Thread senderThread;
@@ -51,25 +53,37 @@ public enum QuickPulse implements Stoppable {
     private QuickPulseDataSender quickPulseDataSender;
 
     public void initialize() {
+        initialize(false);
+    }
+
+    /**
+     * @param compressPayload True to gzip the posted live metrics.
+     */
+    public void initialize(boolean compressPayload) {
         if (!initialized) {
             synchronized (INSTANCE) {
                 if (!initialized) {
                     initialized = true;
                     final String quickPulseId = UUID.randomUUID().toString().replace("-", "");
                     apacheSender = ApacheSenderFactory.INSTANCE.create();
-                    ArrayBlockingQueue<HttpPost> sendQueue = new ArrayBlockingQueue<HttpPost>(256, true);
+                    final String ikey = TelemetryConfiguration.getActive().getInstrumentationKey();
+
+                    // Every payload is either free, being filled, queued or being sent, none is allocated afterwards
+                    ArrayBlockingQueue<QuickPulsePayload> sendQueue = new ArrayBlockingQueue<QuickPulsePayload>(NUMBER_OF_PAYLOADS);
+                    ArrayBlockingQueue<QuickPulsePayload> freePayloads = new ArrayBlockingQueue<QuickPulsePayload>(NUMBER_OF_PAYLOADS);
+                    for (int i = 0; i < NUMBER_OF_PAYLOADS; ++i) {
+                        freePayloads.add(new QuickPulsePayload());
+                    }
 
-                    quickPulseDataSender = new DefaultQuickPulseDataSender(apacheSender, sendQueue);
+                    quickPulseDataSender = new DefaultQuickPulseDataSender(apacheSender, sendQueue, freePayloads, ikey);
 
                     String instanceName = DeviceInfo.getHostName();
                     if (LocalStringsUtils.isNullOrEmpty(instanceName)) {
                         instanceName = "Unknown host";
                     }
 
-                    final String ikey = TelemetryConfiguration.getActive().getInstrumentationKey();
-
                     final QuickPulsePingSender quickPulsePingSender = new DefaultQuickPulsePingSender(apacheSender, instanceName, quickPulseId);
-                    final QuickPulseDataFetcher quickPulseDataFetcher = new DefaultQuickPulseDataFetcher(sendQueue, ikey, instanceName, quickPulseId);
+                    final QuickPulseDataFetcher quickPulseDataFetcher = new DefaultQuickPulseDataFetcher(sendQueue, freePayloads, ikey, instanceName, quickPulseId, compressPayload);
 
                     final QuickPulseCoordinatorInitData coordinatorInitData =
                             new QuickPulseCoordinatorInitDataBuilder()
@@ -24,12 +24,12 @@ package com.microsoft.applicationinsights.internal.quickpulse;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.perfcounter.CpuPerformanceCounterCalculator;
+import com.microsoft.applicationinsights.internal.util.StripedCounter;
+import com.microsoft.applicationinsights.internal.util.StripedHistogram;
 import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
 import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
 import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
@@ -42,6 +42,9 @@ import org.apache.commons.lang3.exception.ExceptionUtils;
 public enum QuickPulseDataCollector {
     INSTANCE;
 
+    // The metric that holds the number of calls a dependency aggregated by the agent stands for
+    private final static String AGGREGATED_COUNT_METRIC_NAME = "AggregatedCount";
+
     private String ikey;
 
     static class FinalCounters {
@@ -54,6 +57,8 @@ public enum QuickPulseDataCollector {
         public final long unsuccessfulRdds;
         public final long memoryCommitted;
         public final double cpuUsage;
+        public final StripedHistogram.Snapshot requestsDurations;
+        public final StripedHistogram.Snapshot rddsDurations;
 
         public FinalCounters(Counters currentCounters, MemoryMXBean memory, CpuPerformanceCounterCalculator cpuPerformanceCounterCalculator) {
             if (memory != null && memory.getHeapMemoryUsage() != null) {
@@ -66,53 +71,37 @@ public enum QuickPulseDataCollector {
             } else {
                 cpuUsage = -1;
             }
-            exceptions = currentCounters.exceptions.get();
-
-            CountAndDuration countAndDuration = currentCounters.decodeCountAndDuration(currentCounters.requestsAndDurations.get());
-            requests = countAndDuration.count;
-            this.requestsDuration = countAndDuration.duration;
-            this.unsuccessfulRequests = currentCounters.unsuccessfulRequests.get();
-
-            countAndDuration = currentCounters.decodeCountAndDuration(currentCounters.rddsAndDuations.get());
-            this.rdds = countAndDuration.count;
-            this.rddsDuration = countAndDuration.duration;
-            this.unsuccessfulRdds = currentCounters.unsuccessfulRdds.get();
-        }
-    }
+            exceptions = currentCounters.exceptions.getAndReset();
 
-    private static class CountAndDuration {
-        public final long count;
-        public final long duration;
+            requests = currentCounters.requests.getAndReset();
+            requestsDuration = currentCounters.requestsDuration.getAndReset();
+            unsuccessfulRequests = currentCounters.unsuccessfulRequests.getAndReset();
+            requestsDurations = currentCounters.requestsDurations.getAndReset();
 
-        private CountAndDuration(long count, long duration) {
-            this.count = count;
-            this.duration = duration;
+            rdds = currentCounters.rdds.getAndReset();
+            rddsDuration = currentCounters.rddsDuration.getAndReset();
+            unsuccessfulRdds = currentCounters.unsuccessfulRdds.getAndReset();
+            rddsDurations = currentCounters.rddsDurations.getAndReset();
         }
     }
 
-    private static class Counters {
-        private final static long MAX_COUNT = 524287L;
-        private final static long MAX_DURATION = 17592186044415L;
-
-        public AtomicInteger exceptions = new AtomicInteger(0);
-
-        public AtomicLong requestsAndDurations = new AtomicLong(0);
-        public AtomicInteger unsuccessfulRequests = new AtomicInteger(0);
-
-        public AtomicLong rddsAndDuations = new AtomicLong(0);
-        public AtomicInteger unsuccessfulRdds = new AtomicInteger(0);
-
-        public static long encodeCountAndDuration(long  count, long duration) {
-            if (count > MAX_COUNT || duration > MAX_DURATION) {
-                return 0;
-            }
-
-            return (count << 44) + duration;
-        }
-
-        public static CountAndDuration decodeCountAndDuration(long countAndDuration) {
-            return new CountAndDuration(countAndDuration >> 44, countAndDuration & MAX_DURATION);
-        }
+    /**
+     * The counters are created once, when the collector is enabled, and reset every time they are read
+     * so the hot path never allocates. A telemetry that is counted while the counters are read is part
+     * of the current interval or of the next one.
+     */
+    static class Counters {
+        public final StripedCounter exceptions = new StripedCounter();
+
+        public final StripedCounter requests = new StripedCounter();
+        public final StripedCounter requestsDuration = new StripedCounter();
+        public final StripedCounter unsuccessfulRequests = new StripedCounter();
+        public final StripedHistogram requestsDurations = new StripedHistogram();
+
+        public final StripedCounter rdds = new StripedCounter();
+        public final StripedCounter rddsDuration = new StripedCounter();
+        public final StripedCounter unsuccessfulRdds = new StripedCounter();
+        public final StripedHistogram rddsDurations = new StripedHistogram();
     }
 
     private AtomicReference<Counters> counters = new AtomicReference<Counters>(null);
@@ -141,7 +130,7 @@ public enum QuickPulseDataCollector {
     }
 
     public FinalCounters getAndRestart() {
-        final Counters currentCounters = counters.getAndSet(new Counters());
+        final Counters currentCounters = counters.get();
         if (currentCounters != null) {
             return new FinalCounters(currentCounters, memory, cpuPerformanceCounterCalculator);
         }
@@ -165,6 +154,24 @@ public enum QuickPulseDataCollector {
     }
 
     private void addDependency(RemoteDependencyTelemetry telemetry) {
+        Counters counters = this.counters.get();
+        if (counters == null) {
+            return;
+        }
+
+        long count = 1L;
+        Double aggregatedCount = telemetry.getMetrics().get(AGGREGATED_COUNT_METRIC_NAME);
+        if (aggregatedCount != null) {
+            count = Math.max(1L, aggregatedCount.longValue());
+        }
+        long durationInMS = telemetry.getDuration().getTotalMilliseconds();
+
+        counters.rdds.add(count);
+        counters.rddsDuration.add(durationInMS);
+        counters.rddsDurations.record(durationInMS / count, count);
+        if (!telemetry.getSuccess()) {
+            counters.unsuccessfulRdds.add(count);
+        }
     }
 
     private void addException() {
@@ -173,7 +180,7 @@ public enum QuickPulseDataCollector {
             return;
         }
 
-        counters.exceptions.incrementAndGet();
+        counters.exceptions.increment();
     }
 
     private void addRequest(RequestTelemetry requestTelemetry) {
@@ -182,9 +189,12 @@ public enum QuickPulseDataCollector {
             return;
         }
 
-        counters.requestsAndDurations.addAndGet(Counters.encodeCountAndDuration(1, requestTelemetry.getDuration().getMilliseconds()));
+        long durationInMS = requestTelemetry.getDuration().getTotalMilliseconds();
+        counters.requests.increment();
+        counters.requestsDuration.add(durationInMS);
+        counters.requestsDurations.record(durationInMS);
         if (!requestTelemetry.isSuccess()) {
-            counters.unsuccessfulRequests.incrementAndGet();
+            counters.unsuccessfulRequests.increment();
         }
     }
 }
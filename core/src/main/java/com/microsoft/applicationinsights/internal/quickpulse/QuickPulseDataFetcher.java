@@ -26,4 +26,9 @@ package com.microsoft.applicationinsights.internal.quickpulse;
  */
 interface QuickPulseDataFetcher {
     void prepareQuickPulseDataForSend();
+
+    /**
+     * Releases the resources of the fetcher, called once by the coordinator's thread when it is done with it.
+     */
+    void stop();
 }
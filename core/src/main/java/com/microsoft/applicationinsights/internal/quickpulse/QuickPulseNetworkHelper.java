@@ -36,7 +36,11 @@ final class QuickPulseNetworkHelper {
     private final static String QP_STATUS_HEADER = "x-ms-qps-subscribed";
 
     public HttpPost buildRequest(Date currentDate, String address) {
-        final long ticks = currentDate.getTime() * 10000 + TICKS_AT_EPOCH;
+        return buildRequest(currentDate.getTime(), address);
+    }
+
+    public HttpPost buildRequest(long timeInMillis, String address) {
+        final long ticks = timeInMillis * 10000 + TICKS_AT_EPOCH;
 
         HttpPost request = new HttpPost(address);
         request.addHeader(HEADER_TRANSMISSION_TIME, String.valueOf(ticks));
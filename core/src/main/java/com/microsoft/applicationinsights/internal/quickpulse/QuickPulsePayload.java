@@ -0,0 +1,237 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.quickpulse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.microsoft.applicationinsights.internal.util.Utf8ByteArrayWriter;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * The body of a QuickPulse post, the JSON is written straight into a byte buffer and optionally gzipped into
+ * a second one. The instances are pooled, {@link #reset()} keeps the buffers, so a post allocates neither
+ * strings nor byte arrays once the buffers reached their size.
+ *
+ * The class is not thread safe, an instance is filled by the data fetcher and then handed to the data sender.
+ */
+final class QuickPulsePayload extends AbstractHttpEntity {
+    private final static String GZIP_CONTENT_ENCODING = "gzip";
+    private final static int GZIP_MAGIC = 0x8b1f;
+    private final static int INITIAL_CAPACITY = 4 * 1024;
+
+    private final Utf8ByteArrayWriter json = new Utf8ByteArrayWriter(INITIAL_CAPACITY, 64 * 1024);
+
+    // Digits of a number are written backwards into it, long values have at most 20 characters
+    private final char[] digits = new char[20];
+
+    private final OutputStream compressingStream = new OutputStream() {
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            crc.update(bytes, offset, length);
+            deflater.setInput(bytes, offset, length);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+    };
+
+    private byte[] compressed = new byte[INITIAL_CAPACITY];
+    private int compressedLength;
+    private boolean isCompressed;
+    private long transmissionTimeInMillis;
+
+    private Deflater deflater;
+    private CRC32 crc;
+
+    /**
+     * Makes the payload ready for new content.
+     * @param transmissionTimeInMillis The time the content is taken at.
+     */
+    void reset(long transmissionTimeInMillis) {
+        json.reset();
+        compressedLength = 0;
+        isCompressed = false;
+        setContentEncoding((String) null);
+        this.transmissionTimeInMillis = transmissionTimeInMillis;
+    }
+
+    long getTransmissionTimeInMillis() {
+        return transmissionTimeInMillis;
+    }
+
+    void write(String value) {
+        json.write(value, 0, value.length());
+    }
+
+    void write(char c) {
+        json.write(c);
+    }
+
+    void write(long value) {
+        if (value < 0) {
+            json.write('-');
+            if (value == Long.MIN_VALUE) {
+                json.write("9223372036854775808", 0, 19);
+                return;
+            }
+            value = -value;
+        }
+
+        int position = digits.length;
+        do {
+            digits[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        json.write(digits, position, digits.length - position);
+    }
+
+    /**
+     * Writes the value with up to three decimals, values that JSON cannot represent, NaN and infinities, are written as 0.
+     */
+    void write(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            json.write('0');
+            return;
+        }
+        if (value < 0) {
+            json.write('-');
+            value = -value;
+        }
+
+        long integral = (long) value;
+        long thousandths = Math.round((value - integral) * 1000);
+        if (thousandths == 1000) {
+            ++integral;
+            thousandths = 0;
+        }
+        write(integral);
+        if (thousandths != 0) {
+            json.write('.');
+            json.write((char) ('0' + thousandths / 100));
+            thousandths %= 100;
+            if (thousandths != 0) {
+                json.write((char) ('0' + thousandths / 10));
+                thousandths %= 10;
+                if (thousandths != 0) {
+                    json.write((char) ('0' + thousandths));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gzips the written JSON, the body of the post is then the compressed content.
+     * @param deflater A deflater created with 'nowrap', it is reset at the end so it can be reused.
+     * @param crc The checksum of the content, it is reset at the end so it can be reused.
+     */
+    void compress(Deflater deflater, CRC32 crc) throws IOException {
+        this.deflater = deflater;
+        this.crc = crc;
+        try {
+            compressedLength = 0;
+            // The same header GZIPOutputStream writes: magic, 'deflate' method and no flags, time, extra flags or OS
+            ensureCompressedCapacity(10);
+            compressed[compressedLength++] = (byte) (GZIP_MAGIC & 0xFF);
+            compressed[compressedLength++] = (byte) ((GZIP_MAGIC >> 8) & 0xFF);
+            compressed[compressedLength++] = Deflater.DEFLATED;
+            for (int i = 0; i < 7; ++i) {
+                compressed[compressedLength++] = 0;
+            }
+
+            json.writeTo(compressingStream);
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            writeCompressedInt((int) crc.getValue());
+            writeCompressedInt(json.size());
+
+            isCompressed = true;
+            setContentEncoding(GZIP_CONTENT_ENCODING);
+        } finally {
+            deflater.reset();
+            crc.reset();
+            this.deflater = null;
+            this.crc = null;
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return isCompressed ? compressedLength : json.size();
+    }
+
+    @Override
+    public InputStream getContent() {
+        return new ByteArrayInputStream(isCompressed ? Arrays.copyOf(compressed, compressedLength) : json.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (isCompressed) {
+            outputStream.write(compressed, 0, compressedLength);
+        } else {
+            json.writeTo(outputStream);
+        }
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    private void deflate() {
+        ensureCompressedCapacity(1024);
+        compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+    }
+
+    // gzip integers are little endian
+    private void writeCompressedInt(int value) {
+        ensureCompressedCapacity(4);
+        compressed[compressedLength++] = (byte) (value & 0xFF);
+        compressed[compressedLength++] = (byte) ((value >> 8) & 0xFF);
+        compressed[compressedLength++] = (byte) ((value >> 16) & 0xFF);
+        compressed[compressedLength++] = (byte) ((value >> 24) & 0xFF);
+    }
+
+    private void ensureCompressedCapacity(int extra) {
+        if (compressedLength + extra > compressed.length) {
+            compressed = Arrays.copyOf(compressed, Math.max(compressed.length * 2, compressedLength + extra));
+        }
+    }
+}
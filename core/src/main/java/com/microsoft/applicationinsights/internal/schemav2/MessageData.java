@@ -23,10 +23,10 @@
 */
 package com.microsoft.applicationinsights.internal.schemav2;
 
+import com.microsoft.applicationinsights.internal.util.LayeredConcurrentMap;
 import com.microsoft.applicationinsights.telemetry.JsonTelemetryDataSerializer;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -109,7 +109,7 @@ public class MessageData extends Domain
      */
     public ConcurrentMap<String, String> getProperties() {
         if (this.properties == null) {
-            this.properties = new ConcurrentHashMap<String, String>();
+            this.properties = new LayeredConcurrentMap<String, String>();
         }
         return this.properties;
     }
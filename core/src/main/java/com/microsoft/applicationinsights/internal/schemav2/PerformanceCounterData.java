@@ -22,10 +22,10 @@
 package com.microsoft.applicationinsights.internal.schemav2;
 
 import com.google.common.base.Preconditions;
+import com.microsoft.applicationinsights.internal.util.LayeredConcurrentMap;
 import com.microsoft.applicationinsights.telemetry.JsonTelemetryDataSerializer;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -87,7 +87,7 @@ public final class PerformanceCounterData extends Domain {
 
     public ConcurrentMap<String, String> getProperties() {
         if (this.properties == null) {
-            this.properties = new ConcurrentHashMap<String, String>();
+            this.properties = new LayeredConcurrentMap<String, String>();
         }
         return this.properties;
     }
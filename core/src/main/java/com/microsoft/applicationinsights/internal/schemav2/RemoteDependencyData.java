@@ -24,6 +24,7 @@
 package com.microsoft.applicationinsights.internal.schemav2;
 
 import com.microsoft.applicationinsights.telemetry.Duration;
+import com.microsoft.applicationinsights.internal.util.LayeredConcurrentMap;
 import com.microsoft.applicationinsights.telemetry.JsonTelemetryDataSerializer;
 
 import java.io.IOException;
@@ -229,7 +230,7 @@ public class RemoteDependencyData extends Domain
      */
     public ConcurrentMap<String, String> getProperties() {
         if (this.properties == null) {
-            this.properties = new ConcurrentHashMap<String, String>();
+            this.properties = new LayeredConcurrentMap<String, String>();
         }
         return this.properties;
     }
@@ -22,21 +22,33 @@
 package com.microsoft.applicationinsights.internal.shutdown;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import com.microsoft.applicationinsights.channel.TelemetryChannel;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.util.ChannelFetcher;
+import com.microsoft.applicationinsights.internal.util.Deadline;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 /**
  * The class is responsible for all shutdown activities done in the SDK.
  *
+ * The registered components are stopped by {@link ShutdownPhase}, the components of a phase
+ * are stopped in parallel, and the whole shutdown is bounded by one timeout.
+ *
  * Created by gupele on 2/2/2015.
  */
 public enum SDKShutdownActivity {
     INSTANCE;
 
+    static final long DEFAULT_TIMEOUT_IN_MILLIS = 5000L;
+
     /**
      * An helper class that does the cleanup
      *
@@ -44,21 +56,28 @@ public enum SDKShutdownActivity {
      * 1. The class should not throw an exception
      * 2. The class 'run' method should exit as soon as possible
      */
-    private static class SDKShutdownThread extends Thread {
+    static class SDKShutdownThread extends Thread {
         private boolean stopped = false;
 
-        private final ArrayList<ChannelFetcher> fetchers = new ArrayList<ChannelFetcher>();
-        private final ArrayList<Stoppable> stoppables = new ArrayList<Stoppable>();
+        private final long timeoutInMillis;
 
-        public synchronized void register(ChannelFetcher fetcher) {
-            fetchers.add(fetcher);
+        // Clients that share a configuration register equal fetchers, so they are kept once
+        private final Set<ChannelFetcher> fetchers = new LinkedHashSet<ChannelFetcher>();
+        private final EnumMap<ShutdownPhase, Set<Stoppable>> stoppables = new EnumMap<ShutdownPhase, Set<Stoppable>>(ShutdownPhase.class);
+
+        public SDKShutdownThread(long timeoutInMillis) {
+            this.timeoutInMillis = timeoutInMillis;
+            for (ShutdownPhase phase : ShutdownPhase.values()) {
+                stoppables.put(phase, Collections.newSetFromMap(new IdentityHashMap<Stoppable, Boolean>()));
+            }
         }
 
-        public synchronized void register(Stoppable stoppable) {
-            stoppables.add(stoppable);
+        public synchronized void register(ChannelFetcher fetcher) {
+            fetchers.add(fetcher);
         }
 
-        public SDKShutdownThread() {
+        public synchronized void register(Stoppable stoppable, ShutdownPhase phase) {
+            stoppables.get(phase).add(stoppable);
         }
 
         @Override
@@ -69,8 +88,7 @@ public enum SDKShutdownActivity {
             }
 
             try {
-                stopChannels();
-                stopStoppables();
+                stopComponents();
             } finally {
                 // As the last step, the SDK gracefully closes the Internal Logger
                 stopInternalLogger();
@@ -80,54 +98,178 @@ public enum SDKShutdownActivity {
         }
 
         /**
-         * Make sure no exception is thrown!
+         * Stops the registered components phase by phase, each phase ends at its share of the timeout.
          */
-        private void stopInternalLogger() {
-            try {
-                InternalLogger.INSTANCE.stop();
-            } catch (Throwable t) {
+        synchronized void stopComponents() {
+            long startInNanos = System.nanoTime();
+            long timeoutInNanos = TimeUnit.MILLISECONDS.toNanos(timeoutInMillis);
+            for (ShutdownPhase phase : ShutdownPhase.values()) {
+                long endOfPhaseInNanos = (long)(timeoutInNanos * phase.getEndOfPhase()) - (System.nanoTime() - startInNanos);
+                stopInParallel(phase, createStopTasks(phase), Deadline.after(endOfPhaseInNanos, TimeUnit.NANOSECONDS));
+            }
+        }
+
+        private List<StopTask> createStopTasks(ShutdownPhase phase) {
+            List<StopTask> tasks = new ArrayList<StopTask>();
+            if (phase == ShutdownPhase.CHANNELS) {
+                for (TelemetryChannel channel : fetchChannels()) {
+                    tasks.add(new ChannelStopTask(channel));
+                }
+            }
+            for (Stoppable stoppable : stoppables.get(phase)) {
+                tasks.add(new StoppableStopTask(stoppable));
             }
+
+            return tasks;
         }
 
         /**
          * Make sure no exception is thrown!
+         * Several fetchers might fetch the same channel, each channel is returned once.
          */
-        private void stopChannels() {
+        private Set<TelemetryChannel> fetchChannels() {
+            Set<TelemetryChannel> channels = Collections.newSetFromMap(new IdentityHashMap<TelemetryChannel, Boolean>());
             for (ChannelFetcher fetcher : fetchers) {
                 try {
-                    TelemetryChannel channelToStop = fetcher.fetch();
-                    if (channelToStop != null) {
-                        channelToStop.stop(1L, TimeUnit.SECONDS);
+                    TelemetryChannel channel = fetcher.fetch();
+                    if (channel != null) {
+                        channels.add(channel);
                     }
                 } catch (Throwable t) {
-                    InternalLogger.INSTANCE.error("Failed to stop channel: '%s'", t.getMessage());
+                    InternalLogger.INSTANCE.error("Failed to fetch channel: '%s'", t.getMessage());
                     InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(t));
                 }
             }
+
+            return channels;
         }
+
         /**
          * Make sure no exception is thrown!
+         * Each task is run by its own daemon thread, a task that is not done by the deadline is left behind.
          */
-        private void stopStoppables() {
-            for (Stoppable stoppable : stoppables) {
+        private static void stopInParallel(ShutdownPhase phase, List<StopTask> tasks, Deadline deadline) {
+            if (tasks.isEmpty()) {
+                return;
+            }
+
+            List<Thread> threads = new ArrayList<Thread>(tasks.size());
+            for (StopTask task : tasks) {
+                task.deadline = deadline;
                 try {
-                    stoppable.stop(1L, TimeUnit.SECONDS);
+                    Thread thread = new Thread(task, "ApplicationInsights-Shutdown-" + phase);
+                    thread.setDaemon(true);
+                    thread.start();
+                    threads.add(thread);
                 } catch (Throwable t) {
-                    InternalLogger.INSTANCE.error("Failed to stop stoppable class '%s': '%s'", stoppable.getClass().getName(), t.getMessage());
-                    InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(t));
+                    InternalLogger.INSTANCE.error("Failed to start stopping %s: '%s'", task, t.getMessage());
+                }
+            }
+
+            try {
+                for (Thread thread : threads) {
+                    long remaining = deadline.remainingMillis();
+                    if (remaining > 0) {
+                        thread.join(remaining);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            for (int i = 0; i < threads.size(); ++i) {
+                if (threads.get(i).isAlive()) {
+                    InternalLogger.INSTANCE.error("Shutdown phase %s timed out while stopping %s", phase, tasks.get(i));
                 }
             }
         }
+
+        /**
+         * Make sure no exception is thrown!
+         */
+        private void stopInternalLogger() {
+            try {
+                InternalLogger.INSTANCE.stop();
+            } catch (Throwable t) {
+            }
+        }
+    }
+
+    private static abstract class StopTask implements Runnable {
+        protected volatile Deadline deadline;
+
+        /**
+         * Make sure no exception is thrown!
+         */
+        @Override
+        public void run() {
+            try {
+                stop(deadline.remainingMillis());
+            } catch (Throwable t) {
+                InternalLogger.INSTANCE.error("Failed to stop %s: '%s'", this, t.getMessage());
+                InternalLogger.INSTANCE.trace("Stack trace generated is %s", ExceptionUtils.getStackTrace(t));
+            }
+        }
+
+        protected abstract void stop(long timeoutInMillis);
+    }
+
+    private static final class ChannelStopTask extends StopTask {
+        private final TelemetryChannel channel;
+
+        private ChannelStopTask(TelemetryChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        protected void stop(long timeoutInMillis) {
+            channel.stop(timeoutInMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return "channel '" + channel.getClass().getName() + "'";
+        }
+    }
+
+    private static final class StoppableStopTask extends StopTask {
+        private final Stoppable stoppable;
+
+        private StoppableStopTask(Stoppable stoppable) {
+            this.stoppable = stoppable;
+        }
+
+        @Override
+        protected void stop(long timeoutInMillis) {
+            stoppable.stop(timeoutInMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return "stoppable class '" + stoppable.getClass().getName() + "'";
+        }
     }
 
     private static volatile SDKShutdownThread shutdownThread;
 
+    /**
+     * Registers a fetcher of a channel to stop on shutdown, fetchers that are equal are registered once.
+     * @param fetcher The fetcher of the channel.
+     */
     public void register(ChannelFetcher fetcher) {
         getShutdownThread().register(fetcher);
     }
 
+    /**
+     * Registers a component that produces telemetries, it is stopped before the channels.
+     * @param stoppable The component.
+     */
     public void register(Stoppable stoppable) {
-        getShutdownThread().register(stoppable);
+        register(stoppable, ShutdownPhase.PRODUCERS);
+    }
+
+    public void register(Stoppable stoppable, ShutdownPhase phase) {
+        getShutdownThread().register(stoppable, phase);
     }
 
     private SDKShutdownThread getShutdownThread() {
@@ -135,7 +277,7 @@ public enum SDKShutdownActivity {
             synchronized (this) {
                 if (shutdownThread == null) {
                     try {
-                        shutdownThread = new SDKShutdownThread();
+                        shutdownThread = new SDKShutdownThread(DEFAULT_TIMEOUT_IN_MILLIS);
                         Runtime.getRuntime().addShutdownHook(shutdownThread);
                     } catch (Exception e) {
                         InternalLogger.INSTANCE.error("Error while adding shutdown hook in getShutDownThread call");
@@ -0,0 +1,60 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.shutdown;
+
+/**
+ * The phases of the SDK shutdown, in the order they are done.
+ *
+ * Components that are stopped in the same phase are stopped in parallel, the next phase starts
+ * once all of them are stopped or the share of the phase in the shutdown timeout is over.
+ */
+public enum ShutdownPhase {
+    /**
+     * Components that produce telemetries and might send the last of them when stopped,
+     * they are stopped while the channels still work.
+     */
+    PRODUCERS(0.25),
+
+    /**
+     * The telemetry channels, stopping them sends the buffered telemetries to the network
+     * and persists, to the disk, what could not be sent in time.
+     */
+    CHANNELS(0.9),
+
+    /**
+     * Components the channels depend on, they are stopped only after the channels.
+     */
+    TRANSMISSION(1.0);
+
+    private final double endOfPhase;
+
+    ShutdownPhase(double endOfPhase) {
+        this.endOfPhase = endOfPhase;
+    }
+
+    /**
+     * @return The fraction of the shutdown timeout that must have passed when the phase ends.
+     */
+    double getEndOfPhase() {
+        return endOfPhase;
+    }
+}
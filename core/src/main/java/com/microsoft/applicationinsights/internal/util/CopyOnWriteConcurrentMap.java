@@ -0,0 +1,215 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A concurrent map for values that are read much more often than they are changed.
+ *
+ * Every change replaces the content with an updated copy, so the content at any moment
+ * can be taken with {@link #snapshot()} without copying it.
+ * Like {@link java.util.concurrent.ConcurrentHashMap}, null keys and values are not allowed.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public final class CopyOnWriteConcurrentMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+    private volatile Map<K, V> content = Collections.emptyMap();
+
+    /**
+     * Gets the current content of the map, the returned map is immutable and is not affected by later changes.
+     * @return The current content.
+     */
+    public Map<K, V> snapshot() {
+        return content;
+    }
+
+    @Override
+    public int size() {
+        return content.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return content.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return content.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return content.containsValue(value);
+    }
+
+    @Override
+    public V get(Object key) {
+        return content.get(key);
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        checkNotNull(key, value);
+
+        Map<K, V> updated = new HashMap<K, V>(content);
+        V previous = updated.put(key, value);
+        content = Collections.unmodifiableMap(updated);
+
+        return previous;
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends K, ? extends V> values) {
+        Map<K, V> updated = new HashMap<K, V>(content);
+        for (Map.Entry<? extends K, ? extends V> entry : values.entrySet()) {
+            checkNotNull(entry.getKey(), entry.getValue());
+            updated.put(entry.getKey(), entry.getValue());
+        }
+        content = Collections.unmodifiableMap(updated);
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        if (!content.containsKey(key)) {
+            return null;
+        }
+
+        Map<K, V> updated = new HashMap<K, V>(content);
+        V previous = updated.remove(key);
+        content = Collections.unmodifiableMap(updated);
+
+        return previous;
+    }
+
+    @Override
+    public synchronized void clear() {
+        content = Collections.emptyMap();
+    }
+
+    @Override
+    public synchronized V putIfAbsent(K key, V value) {
+        V current = content.get(key);
+        if (current == null) {
+            put(key, value);
+        }
+
+        return current;
+    }
+
+    @Override
+    public synchronized boolean remove(Object key, Object value) {
+        V current = content.get(key);
+        if (current == null || !current.equals(value)) {
+            return false;
+        }
+
+        remove(key);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean replace(K key, V oldValue, V newValue) {
+        V current = content.get(key);
+        if (current == null || !current.equals(oldValue)) {
+            return false;
+        }
+
+        put(key, newValue);
+        return true;
+    }
+
+    @Override
+    public synchronized V replace(K key, V value) {
+        V current = content.get(key);
+        if (current != null) {
+            put(key, value);
+        }
+
+        return current;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                final Iterator<Map.Entry<K, V>> snapshotIterator = content.entrySet().iterator();
+                return new Iterator<Map.Entry<K, V>>() {
+                    private Map.Entry<K, V> last;
+
+                    @Override
+                    public boolean hasNext() {
+                        return snapshotIterator.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+                        last = new WriteThroughEntry(snapshotIterator.next());
+                        return last;
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == null) {
+                            throw new IllegalStateException();
+                        }
+                        CopyOnWriteConcurrentMap.this.remove(last.getKey());
+                        last = null;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return CopyOnWriteConcurrentMap.this.size();
+            }
+        };
+    }
+
+    private final class WriteThroughEntry extends SimpleEntry<K, V> {
+        WriteThroughEntry(Map.Entry<K, V> entry) {
+            super(entry);
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+
+    private static void checkNotNull(Object key, Object value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+    }
+}
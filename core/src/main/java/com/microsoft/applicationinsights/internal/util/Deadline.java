@@ -0,0 +1,61 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time, measured by {@link System#nanoTime()}, that a sequence of activities must not pass.
+ *
+ * The class is used when several steps share one timeout, each step gets the time that is
+ * left instead of the full timeout so the sequence as a whole honors it.
+ */
+public final class Deadline {
+    private final long deadlineInNanos;
+
+    private Deadline(long deadlineInNanos) {
+        this.deadlineInNanos = deadlineInNanos;
+    }
+
+    public static Deadline after(long timeout, TimeUnit timeUnit) {
+        return new Deadline(System.nanoTime() + timeUnit.toNanos(timeout));
+    }
+
+    /**
+     * @return The time left until the deadline in nanoseconds, 0 if the deadline has passed.
+     */
+    public long remainingNanos() {
+        return Math.max(0L, deadlineInNanos - System.nanoTime());
+    }
+
+    /**
+     * @return The time left until the deadline in milliseconds, rounded up, 0 if the deadline has passed.
+     */
+    public long remainingMillis() {
+        long remaining = remainingNanos();
+        return remaining == 0 ? 0L : TimeUnit.NANOSECONDS.toMillis(remaining + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+    }
+
+    public boolean hasPassed() {
+        return remainingNanos() == 0;
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A concurrent map made of an immutable layer of inherited values and a layer of its own values.
+ *
+ * The inherited layer is shared, typically the {@link CopyOnWriteConcurrentMap#snapshot()} of the values
+ * of a telemetry client, so inheriting the values costs a reference instead of a copy.
+ * All changes go to the map's own layer whose values hide the inherited ones with the same key.
+ * Inherited values that are removed are only hidden, the inherited layer is never changed.
+ * The own layer is created with the first change.
+ *
+ * Like {@link java.util.concurrent.ConcurrentHashMap}, null keys and values are not allowed.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public final class LayeredConcurrentMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+    private volatile Map<K, V> inherited = Collections.emptyMap();
+    private volatile ConcurrentHashMap<K, V> own;
+
+    // The inherited keys that were removed from this map
+    private volatile Set<K> hidden;
+
+    /**
+     * Sets the inherited layer, the map must not change afterwards.
+     * A map has one inherited layer, values that should be inherited later must be copied.
+     * @param values The values to inherit.
+     * @return True if the values were set as the inherited layer, false if the map already has one.
+     */
+    public synchronized boolean inherit(Map<K, V> values) {
+        if (!inherited.isEmpty() || hidden != null) {
+            return false;
+        }
+
+        inherited = values;
+        return true;
+    }
+
+    @Override
+    public V get(Object key) {
+        ConcurrentHashMap<K, V> own = this.own;
+        if (own != null) {
+            V value = own.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+
+        return getInherited(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        ConcurrentHashMap<K, V> own = this.own;
+        int size = own == null ? 0 : own.size();
+        for (K key : inherited.keySet()) {
+            if (isVisibleInherited(key, own)) {
+                ++size;
+            }
+        }
+
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        ConcurrentHashMap<K, V> own = this.own;
+        if (own != null && !own.isEmpty()) {
+            return false;
+        }
+        for (K key : inherited.keySet()) {
+            if (isVisibleInherited(key, own)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+
+        V previous = getOwn().put(key, value);
+        if (previous == null) {
+            previous = getInherited(key);
+        }
+        if (hidden != null) {
+            hidden.remove(key);
+        }
+
+        return previous;
+    }
+
+    @Override
+    public synchronized V remove(Object key) {
+        V previous = own == null ? null : own.remove(key);
+        V inheritedValue = getInherited(key);
+        if (inheritedValue != null) {
+            hide(key);
+            if (previous == null) {
+                previous = inheritedValue;
+            }
+        }
+
+        return previous;
+    }
+
+    @Override
+    public synchronized void clear() {
+        if (own != null) {
+            own.clear();
+        }
+        inherited = Collections.emptyMap();
+        hidden = null;
+    }
+
+    @Override
+    public synchronized V putIfAbsent(K key, V value) {
+        V current = get(key);
+        if (current == null) {
+            put(key, value);
+        }
+
+        return current;
+    }
+
+    @Override
+    public synchronized boolean remove(Object key, Object value) {
+        V current = get(key);
+        if (current == null || !current.equals(value)) {
+            return false;
+        }
+
+        remove(key);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean replace(K key, V oldValue, V newValue) {
+        V current = get(key);
+        if (current == null || !current.equals(oldValue)) {
+            return false;
+        }
+
+        put(key, newValue);
+        return true;
+    }
+
+    @Override
+    public synchronized V replace(K key, V value) {
+        V current = get(key);
+        if (current != null) {
+            put(key, value);
+        }
+
+        return current;
+    }
+
+    /**
+     * The entries of the own layer followed by the visible entries of the inherited layer.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new LayersIterator();
+            }
+
+            @Override
+            public int size() {
+                return LayeredConcurrentMap.this.size();
+            }
+        };
+    }
+
+    private V getInherited(Object key) {
+        Set<K> hidden = this.hidden;
+        if (hidden != null && hidden.contains(key)) {
+            return null;
+        }
+
+        return inherited.get(key);
+    }
+
+    private boolean isVisibleInherited(K key, ConcurrentHashMap<K, V> own) {
+        Set<K> hidden = this.hidden;
+        return (own == null || !own.containsKey(key)) && (hidden == null || !hidden.contains(key));
+    }
+
+    private ConcurrentHashMap<K, V> getOwn() {
+        if (own == null) {
+            own = new ConcurrentHashMap<K, V>();
+        }
+
+        return own;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void hide(Object key) {
+        if (hidden == null) {
+            hidden = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+        }
+        hidden.add((K) key);
+    }
+
+    private final class LayersIterator implements Iterator<Map.Entry<K, V>> {
+        private final ConcurrentHashMap<K, V> ownLayer = own;
+        private final Iterator<Map.Entry<K, V>> ownIterator;
+        private final Iterator<Map.Entry<K, V>> inheritedIterator = inherited.entrySet().iterator();
+        private Map.Entry<K, V> next;
+        private Map.Entry<K, V> last;
+
+        LayersIterator() {
+            Map<K, V> ownEntries = ownLayer;
+            if (ownEntries == null) {
+                ownEntries = Collections.emptyMap();
+            }
+            ownIterator = ownEntries.entrySet().iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (ownIterator.hasNext()) {
+                next = ownIterator.next();
+                return true;
+            }
+            while (inheritedIterator.hasNext()) {
+                Map.Entry<K, V> entry = inheritedIterator.next();
+                if (isVisibleInherited(entry.getKey(), ownLayer)) {
+                    next = new WriteThroughEntry(entry);
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            last = next;
+            next = null;
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            LayeredConcurrentMap.this.remove(last.getKey());
+            last = null;
+        }
+    }
+
+    private final class WriteThroughEntry extends SimpleEntry<K, V> {
+        WriteThroughEntry(Map.Entry<K, V> entry) {
+            super(entry);
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.Arrays;
+
+/**
+ * An immutable key describing the 'shape' of a stack trace, i.e. its frames and, optionally,
+ * the name of the type that was thrown, so that repeated throws from the same place can be
+ * recognized without converting their frames.
+ *
+ * The key keeps only the {@link StackTraceElement}s, which hold strings, so it never
+ * retains the throwable or its classes.
+ */
+public final class StackTraceKey {
+    private final String typeName;
+    private final StackTraceElement[] trace;
+    private final int hashCode;
+
+    /**
+     * Creates a key for the passed trace, the array is owned by the key from now on and must not be changed.
+     * @param typeName The name of the thrown type, can be null if only the frames matter.
+     * @param trace The stack trace, as returned by {@link Throwable#getStackTrace()}.
+     */
+    public StackTraceKey(String typeName, StackTraceElement[] trace) {
+        this.typeName = typeName;
+        this.trace = trace;
+        this.hashCode = 31 * (typeName == null ? 0 : typeName.hashCode()) + Arrays.hashCode(trace);
+    }
+
+    public StackTraceElement[] getTrace() {
+        return trace;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof StackTraceKey)) {
+            return false;
+        }
+
+        StackTraceKey that = (StackTraceKey)other;
+        return hashCode == that.hashCode &&
+                (typeName == null ? that.typeName == null : typeName.equals(that.typeName)) &&
+                Arrays.equals(trace, that.trace);
+    }
+}
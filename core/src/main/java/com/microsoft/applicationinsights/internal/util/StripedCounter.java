@@ -0,0 +1,89 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free counter for counting on many threads at once.
+ *
+ * A thread adds to the cell picked by its id, so concurrent threads rarely contend on the same memory.
+ * Every cell takes a cache line in an {@link AtomicLongArray}, reading the counter sums the cells.
+ */
+public final class StripedCounter {
+    private final static int MAX_STRIPES = 64;
+
+    // 8 longs, 64 bytes, per cell so two cells never share a cache line
+    private final static int CELL_SIZE = 8;
+
+    private final int stripeMask;
+    private final AtomicLongArray cells;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param concurrency The expected number of threads that count at once, the number of cells is the
+     *                    power of two that is not smaller, up to 64.
+     */
+    public StripedCounter(int concurrency) {
+        int stripes = 1;
+        while (stripes < concurrency && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+
+        stripeMask = stripes - 1;
+        cells = new AtomicLongArray(stripes * CELL_SIZE);
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void add(long delta) {
+        cells.addAndGet(((int) Thread.currentThread().getId() & stripeMask) * CELL_SIZE, delta);
+    }
+
+    public long get() {
+        long sum = 0L;
+        for (int cell = 0; cell < cells.length(); cell += CELL_SIZE) {
+            sum += cells.get(cell);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Gets the count and resets the counter, a count that is added meanwhile is either
+     * part of the returned count or of the next one, it is never lost.
+     * @return The count since the previous reset.
+     */
+    public long getAndReset() {
+        long sum = 0L;
+        for (int cell = 0; cell < cells.length(); cell += CELL_SIZE) {
+            sum += cells.getAndSet(cell, 0L);
+        }
+
+        return sum;
+    }
+}
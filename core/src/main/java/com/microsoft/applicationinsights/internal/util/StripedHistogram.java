@@ -0,0 +1,178 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of non negative values, durations in milliseconds for example, that estimates percentiles.
+ *
+ * Values below 32 have their own bucket, above that every power of two is split into 16 buckets so a value is
+ * known within about 6% of its size, up to {@link #MAX_VALUE}. Recording a value increments one bucket and
+ * allocates nothing. Like {@link StripedCounter} a thread records into the stripe picked by its id.
+ */
+public final class StripedHistogram {
+    private final static int SUB_BUCKET_BITS = 4;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private final static int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+    private final static int MAX_EXPONENT = 31;
+    private final static int MAX_STRIPES = 8;
+
+    public final static long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    final static int NUMBER_OF_BUCKETS = bucketIndex(MAX_VALUE) + 1;
+
+    /**
+     * The counts of the buckets of a histogram at some point, snapshots of several
+     * histograms, or of several intervals, can be merged into one.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private long totalCount;
+
+        public Snapshot() {
+            this(new long[NUMBER_OF_BUCKETS], 0L);
+        }
+
+        private Snapshot(long[] counts, long totalCount) {
+            this.counts = counts;
+            this.totalCount = totalCount;
+        }
+
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        public void merge(Snapshot other) {
+            for (int i = 0; i < NUMBER_OF_BUCKETS; ++i) {
+                counts[i] += other.counts[i];
+            }
+            totalCount += other.totalCount;
+        }
+
+        /**
+         * @param percentile The percentile, between 0 and 100.
+         * @return The estimated value at the percentile, the middle of its bucket, or 0 if the snapshot is empty.
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (totalCount == 0) {
+                return 0L;
+            }
+
+            long rank = (long) Math.ceil(totalCount * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+            if (rank < 1) {
+                rank = 1;
+            }
+            long seen = 0L;
+            for (int i = 0; i < NUMBER_OF_BUCKETS; ++i) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bucketMiddle(i);
+                }
+            }
+
+            return bucketMiddle(NUMBER_OF_BUCKETS - 1);
+        }
+    }
+
+    private final int stripeMask;
+    private final AtomicLongArray buckets;
+
+    public StripedHistogram() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param concurrency The expected number of threads that record at once, the number of stripes is the
+     *                    power of two that is not smaller, up to 8.
+     */
+    public StripedHistogram(int concurrency) {
+        int stripes = 1;
+        while (stripes < concurrency && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+
+        stripeMask = stripes - 1;
+        buckets = new AtomicLongArray(stripes * NUMBER_OF_BUCKETS);
+    }
+
+    public void record(long value) {
+        record(value, 1L);
+    }
+
+    /**
+     * Records a value several times, negative values are recorded as 0 and values above {@link #MAX_VALUE} as it.
+     */
+    public void record(long value, long count) {
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        buckets.addAndGet(stripe * NUMBER_OF_BUCKETS + bucketIndex(value), count);
+    }
+
+    /**
+     * Gets the counts and resets the histogram, a value that is recorded meanwhile is either
+     * part of the returned snapshot or of the next one, it is never lost.
+     */
+    public Snapshot getAndReset() {
+        long[] counts = new long[NUMBER_OF_BUCKETS];
+        long totalCount = 0L;
+        for (int i = 0; i < buckets.length(); ++i) {
+            if (buckets.get(i) != 0L) {
+                long count = buckets.getAndSet(i, 0L);
+                counts[i % NUMBER_OF_BUCKETS] += count;
+                totalCount += count;
+            }
+        }
+
+        return new Snapshot(counts, totalCount);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        return ((long) (index % SUB_BUCKETS + SUB_BUCKETS)) << shift;
+    }
+
+    private static long bucketMiddle(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+
+        int shift = index / SUB_BUCKETS - 1;
+        return bucketLowerBound(index) + (((1L << shift) - 1) >>> 1);
+    }
+}
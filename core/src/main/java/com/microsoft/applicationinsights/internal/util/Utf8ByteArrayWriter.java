@@ -0,0 +1,164 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A {@link Writer} that encodes the characters as UTF-8 straight into a growing byte array.
+ *
+ * The instance is meant to be reused: {@link #reset()} keeps the array, unless it grew above
+ * the retained capacity because of an unusually large content, so a thread that serializes many
+ * items does not allocate a new buffer, nor intermediate strings, per item.
+ *
+ * Malformed surrogate pairs are replaced by '?', the same as {@link String#getBytes(String)} does.
+ */
+public final class Utf8ByteArrayWriter extends Writer {
+    private final static int DEFAULT_INITIAL_CAPACITY = 1024;
+    private final static int DEFAULT_MAX_RETAINED_CAPACITY = 64 * 1024;
+    private final static byte REPLACEMENT_BYTE = (byte) '?';
+
+    private final int initialCapacity;
+    private final int maxRetainedCapacity;
+
+    private byte[] buffer;
+    private int size;
+    private char pendingHighSurrogate;
+
+    public Utf8ByteArrayWriter() {
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_RETAINED_CAPACITY);
+    }
+
+    public Utf8ByteArrayWriter(int initialCapacity, int maxRetainedCapacity) {
+        this.initialCapacity = Math.max(initialCapacity, 16);
+        this.maxRetainedCapacity = Math.max(maxRetainedCapacity, this.initialCapacity);
+        this.buffer = new byte[this.initialCapacity];
+    }
+
+    @Override
+    public void write(int c) {
+        writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; ++i) {
+            writeChar(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int offset, int length) {
+        for (int i = offset; i < offset + length; ++i) {
+            writeChar(str.charAt(i));
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Completes the content, a dangling high surrogate is written as '?'.
+     * The writer can still be used after it was closed.
+     */
+    @Override
+    public void close() {
+        if (pendingHighSurrogate != 0) {
+            pendingHighSurrogate = 0;
+            ensureCapacity(1);
+            buffer[size++] = REPLACEMENT_BYTE;
+        }
+    }
+
+    /**
+     * Makes the writer ready for new content.
+     */
+    public void reset() {
+        size = 0;
+        pendingHighSurrogate = 0;
+        if (buffer.length > maxRetainedCapacity) {
+            buffer = new byte[initialCapacity];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        close();
+        return Arrays.copyOf(buffer, size);
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        close();
+        outputStream.write(buffer, 0, size);
+    }
+
+    private void writeChar(char c) {
+        if (pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                ensureCapacity(4);
+                buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+
+            ensureCapacity(1);
+            buffer[size++] = REPLACEMENT_BYTE;
+        }
+
+        if (c < 0x80) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) c;
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            buffer[size++] = (byte) (0xC0 | (c >> 6));
+            buffer[size++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            ensureCapacity(1);
+            buffer[size++] = REPLACEMENT_BYTE;
+        } else {
+            ensureCapacity(3);
+            buffer[size++] = (byte) (0xE0 | (c >> 12));
+            buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[size++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.RandomAccess;
+
+/**
+ * An array backed list that counts its modifications, so state derived from the list
+ * can tell that it is stale by comparing the version it was derived from to the current one.
+ *
+ * All the modifications, including those done through iterators and sub lists,
+ * are done by the 'add', 'set' and 'remove' methods of the class.
+ */
+public final class VersionedList<E> extends AbstractList<E> implements RandomAccess {
+    private final ArrayList<E> elements = new ArrayList<E>();
+    private volatile int version;
+
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public E get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public void add(int index, E element) {
+        elements.add(index, element);
+        ++modCount;
+        ++version;
+    }
+
+    @Override
+    public E set(int index, E element) {
+        E previous = elements.set(index, element);
+        ++version;
+        return previous;
+    }
+
+    @Override
+    public E remove(int index) {
+        E removed = elements.remove(index);
+        ++modCount;
+        ++version;
+        return removed;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.metrics;
+
+import java.util.Map;
+
+/**
+ * A metric series, a metric name with a set of dimension values, whose values are aggregated
+ * locally and sent once per aggregation interval as a single {@link com.microsoft.applicationinsights.telemetry.MetricTelemetry}
+ * that carries the count, sum, min, max and standard deviation of the values tracked during the interval.
+ *
+ * Instances are fetched with {@link com.microsoft.applicationinsights.TelemetryClient#getMetric(String)}
+ * and can be kept and used by any number of threads.
+ */
+public interface Metric {
+    /**
+     * Gets the name of the metric.
+     * @return The name of the metric.
+     */
+    String getName();
+
+    /**
+     * Gets the dimension names and values of the series.
+     * @return The dimensions, an empty map if the series has none.
+     */
+    Map<String, String> getDimensions();
+
+    /**
+     * Adds a value to the aggregation of the current interval, the method does not allocate memory.
+     * Values that are not finite numbers are ignored.
+     * @param value The value to track.
+     */
+    void trackValue(double value);
+}
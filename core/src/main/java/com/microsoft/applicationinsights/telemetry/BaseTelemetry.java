@@ -24,13 +24,13 @@ package com.microsoft.applicationinsights.telemetry;
 import com.microsoft.applicationinsights.internal.schemav2.Data;
 import com.microsoft.applicationinsights.internal.schemav2.Domain;
 import com.microsoft.applicationinsights.internal.schemav2.Envelope;
+import com.microsoft.applicationinsights.internal.util.LayeredConcurrentMap;
 import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
 import com.microsoft.applicationinsights.internal.util.Sanitizer;
 
 import java.io.IOException;
 import java.util.Date;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang3.StringUtils;
@@ -54,7 +54,7 @@ public abstract class BaseTelemetry<T extends Domain> implements Telemetry {
      * @param properties The context properties
      */
     protected void initialize(ConcurrentMap<String, String> properties) {
-        this.context = new TelemetryContext(properties, new ConcurrentHashMap<String, String>());
+        this.context = new TelemetryContext(properties, new LayeredConcurrentMap<String, String>());
     }
 
     /**
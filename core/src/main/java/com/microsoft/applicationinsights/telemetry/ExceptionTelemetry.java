@@ -24,7 +24,6 @@ package com.microsoft.applicationinsights.telemetry;
 import com.google.common.base.Strings;
 import com.microsoft.applicationinsights.internal.schemav2.ExceptionData;
 import com.microsoft.applicationinsights.internal.schemav2.ExceptionDetails;
-import com.microsoft.applicationinsights.internal.schemav2.StackFrame;
 import com.microsoft.applicationinsights.internal.util.Sanitizer;
 
 import java.util.ArrayList;
@@ -92,6 +91,24 @@ public final class ExceptionTelemetry extends BaseSampleSourceTelemetry<Exceptio
         updateException(throwable, stackSize);
     }
 
+    /**
+     * Creates a telemetry of the same exception that does not reference its {@link Throwable}, so it can be kept
+     * for a later send without keeping the exception, and what it references, alive.
+     * The exception details are shared with this telemetry, the context, properties and metrics are copied.
+     * @return The new telemetry, whose {@link #getThrowable()} is null.
+     */
+    public ExceptionTelemetry copyWithoutThrowable() {
+        ExceptionTelemetry copy = new ExceptionTelemetry();
+        copy.data.setExceptions(data.getExceptions());
+        copy.data.setSeverityLevel(data.getSeverityLevel());
+        copy.data.getMeasurements().putAll(data.getMeasurements());
+        copy.getContext().initialize(getContext());
+        copy.setTimestamp(getTimestamp());
+        copy.samplingPercentage = samplingPercentage;
+
+        return copy;
+    }
+
     /**
      * @deprecated
      * Gets the value indicated where the exception was handled.
@@ -200,33 +217,8 @@ public final class ExceptionTelemetry extends BaseSampleSourceTelemetry<Exceptio
         StackTraceElement[] trace = exception.getStackTrace();
 
         if (trace != null && trace.length > 0) {
-            List<StackFrame> stack = exceptionDetails.getParsedStack();
-
-            // We need to present the stack trace in reverse order.
-
-            for (int idx = 0; idx < trace.length; idx++) {
-                StackTraceElement elem = trace[idx];
-
-                if (elem.isNativeMethod()) {
-                    continue;
-                }
-
-                String className = elem.getClassName();
-
-                StackFrame frame = new StackFrame();
-                frame.setLevel(idx);
-                frame.setFileName(elem.getFileName());
-                frame.setLine(elem.getLineNumber());
-
-                if (!Strings.isNullOrEmpty(className)) {
-                    frame.setMethod(elem.getClassName() + "." + elem.getMethodName());
-                }
-                else {
-                    frame.setMethod(elem.getMethodName());
-                }
-
-                stack.add(frame);
-            }
+            // The frames are converted once for the exceptions thrown from the same place, each gets copies of its own.
+            exceptionDetails.setParsedStack(StackFramesCache.INSTANCE.getFrames(trace));
 
             exceptionDetails.setHasFullStack(true); // TODO: sanitize and trim exception stack trace.
         }
@@ -25,11 +25,9 @@ import com.google.common.base.Strings;
 import com.microsoft.applicationinsights.internal.schemav2.DataPointType;
 import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.StringWriter;
 import java.io.Writer;
-import java.text.StringCharacterIterator;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -38,6 +36,9 @@ import java.util.Set;
 
 /**
  * This class knows how to transform data that is relevant to {@link Telemetry} instances into JSON.
+ *
+ * Everything, including nested {@link JsonSerializable} objects, is written straight to the {@link Writer}
+ * the instance was created with, no intermediate strings are built for the nested objects.
  */
 public final class JsonTelemetryDataSerializer {
 
@@ -48,8 +49,8 @@ public final class JsonTelemetryDataSerializer {
     private final static String JSON_CLOSE_ARRAY = "]";
     private final static String JSON_COMMA = "\"";
     private final static String JSON_NAME_VALUE_SEPARATOR = ":";
-    private final static String JSON_EMPTY_OBJECT = "{}";
     private final static int DELTA = 2;
+    private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
     private static final Set<Class<?>> WRAPPER_TYPES = getWrapperTypes();
 
@@ -57,12 +58,20 @@ public final class JsonTelemetryDataSerializer {
 
     private String separator = "";
 
+    // Nested objects whose opening was not written yet: an object that turns out to be empty is not written at all
+    private String[] pendingObjectNames = new String[4];
+    private String[] pendingObjectSeparators = new String[4];
+    private int pendingObjectsCount;
+
+    private final char[] numberBuffer = new char[20];
+
     public JsonTelemetryDataSerializer(Writer out) throws IOException {
         reset(out);
     }
 
     public void reset(Writer out) throws IOException {
         separator = "";
+        pendingObjectsCount = 0;
         this.out = out;
         this.out.write(JSON_START_OBJECT);
     }
@@ -81,14 +90,14 @@ public final class JsonTelemetryDataSerializer {
     public void write(String name, DataPointType value) throws IOException {
         if (value != null) {
             writeName(name);
-            out.write(String.valueOf(value.getValue()));
+            writeNumber(value.getValue());
             separator = JSON_SEPARATOR;
         }
     }
 
     public void write(String name, int value) throws IOException {
         writeName(name);
-        out.write(String.valueOf(value));
+        writeNumber(value);
         separator = JSON_SEPARATOR;
     }
 
@@ -108,7 +117,7 @@ public final class JsonTelemetryDataSerializer {
         }
 
         writeName(name);
-        out.write(String.valueOf(value));
+        writeNumber(value);
         separator = JSON_SEPARATOR;
     }
 
@@ -130,7 +139,7 @@ public final class JsonTelemetryDataSerializer {
 
     public void write(String name, short value) throws IOException {
         writeName(name);
-        out.write(String.valueOf(value));
+        writeNumber(value);
         separator = JSON_SEPARATOR;
     }
 
@@ -140,13 +149,13 @@ public final class JsonTelemetryDataSerializer {
         }
 
         writeName(name);
-        out.write(String.valueOf(value));
+        writeNumber(value);
         separator = JSON_SEPARATOR;
     }
 
     public void write(String name, long value) throws IOException {
         writeName(name);
-        out.write(String.valueOf(value));
+        writeNumber(value);
         separator = JSON_SEPARATOR;
     }
 
@@ -156,13 +165,13 @@ public final class JsonTelemetryDataSerializer {
         }
 
         writeName(name);
-        out.write(String.valueOf(value));
+        writeNumber(value);
         separator = JSON_SEPARATOR;
     }
 
     public void write(String name, boolean value) throws IOException {
         writeName(name);
-        out.write(String.valueOf(value));
+        out.write(value ? "true" : "false");
         separator = JSON_SEPARATOR;
     }
 
@@ -172,7 +181,7 @@ public final class JsonTelemetryDataSerializer {
         }
 
         writeName(name);
-        out.write(String.valueOf(value));
+        out.write(value ? "true" : "false");
         separator = JSON_SEPARATOR;
     }
 
@@ -219,8 +228,7 @@ public final class JsonTelemetryDataSerializer {
 
         writeName(name);
         out.write(JSON_COMMA);
-        String sanitizedValue = sanitizeStringForJSON(value, len);
-        out.write(sanitizedValue);
+        appendSanitizedForJSON(out, value, len);
         out.write(JSON_COMMA);
         separator = JSON_SEPARATOR;
     }
@@ -230,15 +238,7 @@ public final class JsonTelemetryDataSerializer {
             return;
         }
 
-        String jsonStringToAppend = createJsonFor(value);
-        if (Strings.isNullOrEmpty(jsonStringToAppend)) {
-            return;
-        }
-
-        writeName(name);
-        out.write(jsonStringToAppend);
-
-        separator = JSON_SEPARATOR;
+        writeObject(name, value);
     }
 
     public <T> void write(String name, Map<String, T> map) throws IOException {
@@ -296,43 +296,89 @@ public final class JsonTelemetryDataSerializer {
 
     private <T> void write(T item) throws IOException {
         if (item instanceof JsonSerializable) {
-            StringWriter stringWriter = new StringWriter();
-
-            String jsonStringToAppend = createJsonFor((JsonSerializable)item);
-            if (Strings.isNullOrEmpty(jsonStringToAppend)) {
-                return;
-            }
-
-            out.write(jsonStringToAppend);
+            writeObject(null, (JsonSerializable) item);
         } else {
             if (WRAPPER_TYPES.contains(item.getClass()))
             {
                 out.write(String.valueOf(item));
             } else {
-                String truncatedName = truncate(String.valueOf(item), 8192);
-                String sanitizedItem = sanitizeStringForJSON(truncatedName, 8192);
+                // The sanitizer never writes more than the max length, so there is no need to truncate first
                 out.write(JSON_COMMA);
-                out.write(sanitizedItem);
+                appendSanitizedForJSON(out, String.valueOf(item), 8192);
                 out.write(JSON_COMMA);
             }
         }
     }
 
-    private <T extends JsonSerializable> String createJsonFor(T value) throws IOException {
-        StringWriter stringWriter = new StringWriter();
-        JsonTelemetryDataSerializer temp = new JsonTelemetryDataSerializer(new BufferedWriter(stringWriter));
+    /**
+     * Writes the object in place. Its opening is only written once the object writes its first field,
+     * so an object without fields is not written at all, name included.
+     * @param name The name of the object, null for array items
+     * @param value The object to write
+     */
+    private void writeObject(String name, JsonSerializable value) throws IOException {
+        String outerSeparator = separator;
+        if (pendingObjectsCount == pendingObjectNames.length) {
+            pendingObjectNames = Arrays.copyOf(pendingObjectNames, pendingObjectsCount * 2);
+            pendingObjectSeparators = Arrays.copyOf(pendingObjectSeparators, pendingObjectsCount * 2);
+        }
+        pendingObjectNames[pendingObjectsCount] = name;
+        // Array items get their separator from the array itself
+        pendingObjectSeparators[pendingObjectsCount] = name == null ? "" : outerSeparator;
+        int depth = ++pendingObjectsCount;
+        separator = "";
+
+        value.serialize(this);
 
-        value.serialize(temp);
-        temp.close();
-        String jsonStringToAppend = stringWriter.toString();
-        if (Strings.isNullOrEmpty(jsonStringToAppend) || JSON_EMPTY_OBJECT.equals(jsonStringToAppend)) {
-            return "";
+        if (pendingObjectsCount >= depth) {
+            // Nothing was written by the object
+            pendingObjectsCount = depth - 1;
+            separator = outerSeparator;
+            return;
         }
 
-        return jsonStringToAppend;
+        out.write(JSON_CLOSE_OBJECT);
+        separator = JSON_SEPARATOR;
+    }
+
+    private void writePendingObjects() throws IOException {
+        for (int i = 0; i < pendingObjectsCount; ++i) {
+            out.write(pendingObjectSeparators[i]);
+            String name = pendingObjectNames[i];
+            if (name != null) {
+                out.write(JSON_COMMA);
+                out.write(name);
+                out.write(JSON_COMMA);
+                out.write(JSON_NAME_VALUE_SEPARATOR);
+            }
+            out.write(JSON_START_OBJECT);
+        }
+        pendingObjectsCount = 0;
+    }
+
+    private void writeNumber(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            out.write(String.valueOf(value));
+            return;
+        }
+
+        int position = numberBuffer.length;
+        long remainder = value < 0 ? -value : value;
+        do {
+            numberBuffer[--position] = (char) ('0' + (remainder % 10));
+            remainder /= 10;
+        } while (remainder != 0);
+        if (value < 0) {
+            numberBuffer[--position] = '-';
+        }
+
+        out.write(numberBuffer, position, numberBuffer.length - position);
     }
 
     private void writeName(String name) throws IOException {
+        if (pendingObjectsCount != 0) {
+            writePendingObjects();
+        }
 
         out.write(separator);
         out.write(JSON_COMMA);
@@ -356,54 +402,70 @@ public final class JsonTelemetryDataSerializer {
         return ret;
     }
 
-    private String sanitizeStringForJSON(String text, int maxLength) {
-
-        final StringBuilder result = new StringBuilder();
-        StringCharacterIterator iterator = new StringCharacterIterator(text);
-        for (char curr = iterator.current(); curr != iterator.DONE && result.length() < maxLength - DELTA; curr = iterator.next()) {
+    /**
+     * Escapes the text into the target, stops once 'maxLength' characters, the escape characters included, were written.
+     */
+    private static void appendSanitizedForJSON(Appendable target, String text, int maxLength) throws IOException {
+        int length = 0;
+        for (int i = 0; i < text.length() && length < maxLength - DELTA; ++i) {
+            char curr = text.charAt(i);
             if( curr == '\"' ){
-                result.append("\\\"");
+                target.append('\\').append('\"');
+                length += 2;
             }
             else if(curr == '\\'){
-                result.append("\\\\");
+                target.append('\\').append('\\');
+                length += 2;
             }
             else if(curr == '/'){
-                result.append("\\/");
+                target.append('\\').append('/');
+                length += 2;
             }
             else if(curr == '\b'){
-                result.append("\\b");
+                target.append('\\').append('b');
+                length += 2;
             }
             else if(curr == '\f'){
-                result.append("\\f");
+                target.append('\\').append('f');
+                length += 2;
             }
             else if(curr == '\n'){
-                result.append("\\n");
+                target.append('\\').append('n');
+                length += 2;
             }
             else if(curr == '\r'){
-                result.append("\\r");
+                target.append('\\').append('r');
+                length += 2;
             }
             else if(curr == '\t'){
-                result.append("\\t");
+                target.append('\\').append('t');
+                length += 2;
             }
             else if (!Character.isISOControl(curr)){
-                result.append(curr);
+                target.append(curr);
+                ++length;
             }
             else {
-                if (result.length() + 7 < maxLength) { // needs 7 more character space to be appended
-                    result.append("\\u");
-                    result.append((String.format( "%04x", Integer.valueOf(curr))));
+                if (length + 7 < maxLength) { // needs 7 more character space to be appended
+                    target.append('\\').append('u')
+                          .append(HEX_DIGITS[(curr >> 12) & 0xF])
+                          .append(HEX_DIGITS[(curr >> 8) & 0xF])
+                          .append(HEX_DIGITS[(curr >> 4) & 0xF])
+                          .append(HEX_DIGITS[curr & 0xF]);
+                    length += 6;
                 }
                 else {
                     break;
                 }
             }
         }
-        return result.toString();
     }
 
-    private String sanitizeKey(String key) {
+    private String sanitizeKey(String key) throws IOException {
         String sanitizedKey = trimAndTruncate(key, 150);
-        sanitizedKey = sanitizeStringForJSON(sanitizedKey, 150);
+        StringBuilder builder = new StringBuilder(sanitizedKey.length());
+        appendSanitizedForJSON(builder, sanitizedKey, 150);
+        sanitizedKey = builder.toString();
         sanitizedKey = MakeKeyNonEmpty(sanitizedKey);
         return sanitizedKey;
     }
@@ -425,11 +487,4 @@ public final class JsonTelemetryDataSerializer {
         return Strings.isNullOrEmpty(key) ? "(required property name is empty)" : key;
     }
 
-    private String truncate(String value, int len) {
-        if (value.length() > len) {
-            return value.substring(0, len);
-        }
-        return value;
-    }
-
 }
@@ -21,6 +21,8 @@
 
 package com.microsoft.applicationinsights.telemetry;
 
+import java.util.concurrent.ConcurrentMap;
+
 import com.google.common.base.Strings;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.schemav2.DependencyKind;
@@ -130,6 +132,14 @@ public final class RemoteDependencyTelemetry extends BaseSampleSourceTelemetry<R
      */
     public void setCommandName(String commandName) { this.data.setData(commandName); }
 
+    /**
+     * Gets a map of application-defined dependency metrics.
+     * @return The map of metrics
+     */
+    public ConcurrentMap<String, Double> getMetrics() {
+        return data.getMeasurements();
+    }
+
     /**
      * @deprecated
      * Gets the Count property.
@@ -359,6 +369,7 @@ public final class RemoteDependencyTelemetry extends BaseSampleSourceTelemetry<R
     @Deprecated
     protected void additionalSanitize() {
         data.setName(Sanitizer.sanitizeName(data.getName()));
+        Sanitizer.sanitizeMeasurements(getMetrics());
     }
 
     @Override
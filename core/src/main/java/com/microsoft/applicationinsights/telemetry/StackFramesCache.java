@@ -0,0 +1,131 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.telemetry;
+
+import com.google.common.base.Strings;
+import com.microsoft.applicationinsights.internal.schemav2.StackFrame;
+import com.microsoft.applicationinsights.internal.util.StackTraceKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A bounded cache of converted stack traces.
+ *
+ * The same exception is typically thrown from the same place over and over, so the method names and the other
+ * values of the frames of a stack trace are computed once and kept as immutable entries. Every
+ * {@link ExceptionTelemetry} gets a list and {@link StackFrame}s of its own built from them, which it may modify.
+ *
+ * When the cache is full it is simply cleared, the cost of that is converting the
+ * traces that are still in use once more.
+ */
+enum StackFramesCache {
+    INSTANCE;
+
+    static final int MAX_ENTRIES = 1024;
+
+    /**
+     * The immutable values of a {@link StackFrame}.
+     */
+    private static final class CachedFrame {
+        private final int level;
+        private final String fileName;
+        private final int line;
+        private final String method;
+
+        private CachedFrame(int level, String fileName, int line, String method) {
+            this.level = level;
+            this.fileName = fileName;
+            this.line = line;
+            this.method = method;
+        }
+    }
+
+    private final ConcurrentMap<StackTraceKey, CachedFrame[]> frames = new ConcurrentHashMap<StackTraceKey, CachedFrame[]>();
+
+    /**
+     * Gets the converted frames of the trace, native frames are skipped.
+     * @param trace The stack trace, the cache may keep a reference to it.
+     * @return A new list of new frames, that is not shared with the other callers.
+     */
+    List<StackFrame> getFrames(StackTraceElement[] trace) {
+        StackTraceKey key = new StackTraceKey(null, trace);
+        CachedFrame[] cached = frames.get(key);
+        if (cached == null) {
+            cached = convert(trace);
+            if (frames.size() >= MAX_ENTRIES) {
+                frames.clear();
+            }
+            CachedFrame[] current = frames.putIfAbsent(key, cached);
+            if (current != null) {
+                cached = current;
+            }
+        }
+
+        ArrayList<StackFrame> stack = new ArrayList<StackFrame>(cached.length);
+        for (CachedFrame cachedFrame : cached) {
+            StackFrame frame = new StackFrame();
+            frame.setLevel(cachedFrame.level);
+            frame.setFileName(cachedFrame.fileName);
+            frame.setLine(cachedFrame.line);
+            frame.setMethod(cachedFrame.method);
+            stack.add(frame);
+        }
+
+        return stack;
+    }
+
+    int size() {
+        return frames.size();
+    }
+
+    void clear() {
+        frames.clear();
+    }
+
+    private static CachedFrame[] convert(StackTraceElement[] trace) {
+        ArrayList<CachedFrame> stack = new ArrayList<CachedFrame>(trace.length);
+        for (int idx = 0; idx < trace.length; idx++) {
+            StackTraceElement elem = trace[idx];
+
+            if (elem.isNativeMethod()) {
+                continue;
+            }
+
+            String className = elem.getClassName();
+
+            String method;
+            if (!Strings.isNullOrEmpty(className)) {
+                method = className + "." + elem.getMethodName();
+            }
+            else {
+                method = elem.getMethodName();
+            }
+
+            stack.add(new CachedFrame(idx, elem.getFileName(), elem.getLineNumber(), method));
+        }
+
+        return stack.toArray(new CachedFrame[stack.size()]);
+    }
+}
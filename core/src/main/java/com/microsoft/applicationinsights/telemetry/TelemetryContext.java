@@ -29,9 +29,11 @@ import com.microsoft.applicationinsights.extensibility.context.LocationContext;
 import com.microsoft.applicationinsights.extensibility.context.OperationContext;
 import com.microsoft.applicationinsights.extensibility.context.SessionContext;
 import com.microsoft.applicationinsights.extensibility.context.UserContext;
+import com.microsoft.applicationinsights.internal.util.CopyOnWriteConcurrentMap;
+import com.microsoft.applicationinsights.internal.util.LayeredConcurrentMap;
 import com.microsoft.applicationinsights.internal.util.MapUtil;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -57,9 +59,12 @@ public final class TelemetryContext {
 
     /**
      * Default Ctor
+     *
+     * The values of such a context, like the context of a {@link com.microsoft.applicationinsights.TelemetryClient},
+     * are shared by the telemetries that are initialized with it, so they are kept in copy-on-write maps.
      */
     public TelemetryContext() {
-        this(new ConcurrentHashMap<String, String>(), new ConcurrentHashMap<String, String>());
+        this(new CopyOnWriteConcurrentMap<String, String>(), new CopyOnWriteConcurrentMap<String, String>());
     }
 
     /**
@@ -183,15 +188,22 @@ public final class TelemetryContext {
         return tags;
     }
 
+    /**
+     * Adds the values of the source context that are not set in this context.
+     * When the source keeps its values in copy-on-write maps and this context in layered maps, which is the case
+     * of a telemetry initialized with the context of a {@link com.microsoft.applicationinsights.TelemetryClient},
+     * the current values of the source are referenced instead of copied.
+     * @param source The context whose values are added.
+     */
     public void initialize(TelemetryContext source) {
         if (Strings.isNullOrEmpty(this.instrumentationKey) && !Strings.isNullOrEmpty(source.getInstrumentationKey()))
             setInstrumentationKey(source.getInstrumentationKey());
 
         if (source.tags != null && source.tags.size() > 0) {
-            MapUtil.copy(source.tags, this.tags);
+            inherit(source.tags, this.tags);
         }
         if (source.properties != null && source.properties.size() > 0) {
-            MapUtil.copy(source.properties, this.properties);
+            inherit(source.properties, this.properties);
         }
     }
 
@@ -203,6 +215,17 @@ public final class TelemetryContext {
         return internal;
     }
 
+    private static void inherit(ConcurrentMap<String, String> source, ConcurrentMap<String, String> target) {
+        if (source instanceof CopyOnWriteConcurrentMap && target instanceof LayeredConcurrentMap) {
+            Map<String, String> snapshot = ((CopyOnWriteConcurrentMap<String, String>) source).snapshot();
+            if (((LayeredConcurrentMap<String, String>) target).inherit(snapshot)) {
+                return;
+            }
+        }
+
+        MapUtil.copy(source, target);
+    }
+
     TelemetryContext(ConcurrentMap<String, String> properties, ConcurrentMap<String, String> tags) {
         if (properties == null) {
             throw new IllegalArgumentException("properties cannot be null");
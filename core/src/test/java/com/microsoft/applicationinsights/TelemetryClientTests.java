@@ -33,6 +33,8 @@ import com.microsoft.applicationinsights.channel.TelemetryChannel;
 import com.microsoft.applicationinsights.extensibility.ContextInitializer;
 import com.microsoft.applicationinsights.extensibility.TelemetryInitializer;
 import com.microsoft.applicationinsights.channel.TelemetrySampler;
+import com.microsoft.applicationinsights.internal.channel.samplingV2.FixedRateSamplingTelemetryProcessor;
+import com.microsoft.applicationinsights.internal.metrics.MetricAggregationManager;
 import com.microsoft.applicationinsights.internal.processor.RequestTelemetryFilter;
 import com.microsoft.applicationinsights.telemetry.*;
 
@@ -317,6 +319,21 @@ public final class TelemetryClientTests {
         verifyAndGetLastEventSent();
     }
 
+    @Test
+    public void testGetMetricSendsOneAggregationPerSeries() {
+        Map<String, String> dimensions = new HashMap<String, String>() {{ put("key", "value"); }};
+        client.getMetric("AggregatedMetric", dimensions).trackValue(1);
+        client.getMetric("AggregatedMetric", dimensions).trackValue(3);
+
+        MetricAggregationManager.INSTANCE.flush();
+
+        MetricTelemetry telemetry = (MetricTelemetry) verifyAndGetLastEventSent();
+        assertEquals("AggregatedMetric", telemetry.getName());
+        assertEquals(4.0, telemetry.getValue(), 0.0);
+        assertEquals(Integer.valueOf(2), telemetry.getCount());
+        assertEquals("value", telemetry.getProperties().get("key"));
+    }
+
     @Test
     public void testTrackExceptionWithPropertiesAndMetrics() {
         Exception exception = new Exception("Exception");
@@ -443,6 +460,61 @@ public final class TelemetryClientTests {
         Mockito.verify(channel, Mockito.times(1)).send(rt);
     }
 
+    @Test
+    public void testSampledOutTelemetryIsNotInitialized() {
+        TelemetryInitializer initializer = mock(TelemetryInitializer.class);
+        configuration.getTelemetryInitializers().add(initializer);
+        configuration.getTelemetryProcessors().add(createSamplingProcessor("0"));
+
+        RequestTelemetry rt = new RequestTelemetry();
+        rt.getContext().getOperation().setId("operation");
+        client.trackRequest(rt);
+
+        Mockito.verify(initializer, Mockito.never()).initialize(any(Telemetry.class));
+        Mockito.verify(channel, Mockito.never()).send(rt);
+        Assert.assertNull(rt.getContext().getInstrumentationKey());
+    }
+
+    @Test
+    public void testSampledOutTelemetryOfClientOperationIsNotInitialized() {
+        TelemetryInitializer initializer = mock(TelemetryInitializer.class);
+        configuration.getTelemetryInitializers().add(initializer);
+        configuration.getTelemetryProcessors().add(createSamplingProcessor("0"));
+        client.getContext().getOperation().setId("operation");
+
+        client.trackRequest(new RequestTelemetry());
+
+        Mockito.verify(initializer, Mockito.never()).initialize(any(Telemetry.class));
+        Mockito.verify(channel, Mockito.never()).send(any(Telemetry.class));
+    }
+
+    @Test
+    public void testTelemetryWithoutOperationIdIsSampledAfterInitialization() {
+        TelemetryInitializer initializer = mock(TelemetryInitializer.class);
+        configuration.getTelemetryInitializers().add(initializer);
+        configuration.getTelemetryProcessors().add(createSamplingProcessor("0"));
+
+        client.trackRequest(new RequestTelemetry());
+
+        Mockito.verify(initializer, Mockito.times(1)).initialize(any(Telemetry.class));
+        Mockito.verify(channel, Mockito.never()).send(any(Telemetry.class));
+    }
+
+    @Test
+    public void testKeptTelemetryIsInitializedAndSampled() {
+        TelemetryInitializer initializer = mock(TelemetryInitializer.class);
+        configuration.getTelemetryInitializers().add(initializer);
+        configuration.getTelemetryProcessors().add(createSamplingProcessor("100"));
+
+        RequestTelemetry rt = new RequestTelemetry();
+        rt.getContext().getOperation().setId("operation");
+        client.trackRequest(rt);
+
+        Mockito.verify(initializer, Mockito.times(1)).initialize(rt);
+        RequestTelemetry sent = (RequestTelemetry) verifyAndGetLastEventSent();
+        assertEquals(100.0, sent.getSamplingPercentage(), 0.0);
+    }
+
     // endregion Track tests
 
     // region Private methods
@@ -477,6 +549,13 @@ public final class TelemetryClientTests {
         assertEquals(mockContext.getInstrumentationKey(), "00000000-0000-0000-0000-000000000000");
     }
 
+    private static FixedRateSamplingTelemetryProcessor createSamplingProcessor(String samplingPercentage) {
+        FixedRateSamplingTelemetryProcessor processor = new FixedRateSamplingTelemetryProcessor();
+        processor.setSamplingPercentage(samplingPercentage);
+
+        return processor;
+    }
+
     private Telemetry verifyAndGetLastEventSent() {
         verify(channel, times(1)).send(any(Telemetry.class));
 
@@ -0,0 +1,164 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.microsoft.applicationinsights.extensibility.TelemetryInitializer;
+import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.extensibility.TelemetryTypeSpecific;
+import com.microsoft.applicationinsights.telemetry.EventTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.microsoft.applicationinsights.telemetry.TraceTelemetry;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class TelemetryPipelineTest {
+    private static class RecordingProcessor implements TelemetryProcessor {
+        private final String name;
+        private final List<String> calls;
+        private final boolean result;
+
+        private RecordingProcessor(String name, List<String> calls, boolean result) {
+            this.name = name;
+            this.calls = calls;
+            this.result = result;
+        }
+
+        @Override
+        public boolean process(Telemetry telemetry) {
+            calls.add(name);
+            return result;
+        }
+    }
+
+    private static final class TraceOnlyProcessor extends RecordingProcessor implements TelemetryTypeSpecific {
+        private TraceOnlyProcessor(String name, List<String> calls) {
+            super(name, calls, true);
+        }
+
+        @Override
+        public boolean isApplicableTo(Class<? extends Telemetry> telemetryType) {
+            return TraceTelemetry.class.isAssignableFrom(telemetryType);
+        }
+    }
+
+    private static final class TraceOnlyInitializer implements TelemetryInitializer, TelemetryTypeSpecific {
+        private final List<String> calls;
+
+        private TraceOnlyInitializer(List<String> calls) {
+            this.calls = calls;
+        }
+
+        @Override
+        public void initialize(Telemetry telemetry) {
+            calls.add("initializer");
+        }
+
+        @Override
+        public boolean isApplicableTo(Class<? extends Telemetry> telemetryType) {
+            return TraceTelemetry.class.isAssignableFrom(telemetryType);
+        }
+    }
+
+    @Test
+    public void testOnlyApplicableComponentsAreCalled() {
+        List<String> calls = new ArrayList<String>();
+        TelemetryConfiguration configuration = new TelemetryConfiguration();
+        configuration.getTelemetryInitializers().add(new TraceOnlyInitializer(calls));
+        configuration.getTelemetryProcessors().add(new RecordingProcessor("all", calls, true));
+        configuration.getTelemetryProcessors().add(new TraceOnlyProcessor("trace", calls));
+
+        TelemetryPipeline eventPipeline = configuration.getPipeline(EventTelemetry.class);
+        eventPipeline.initialize(new EventTelemetry("mock"));
+        assertTrue(eventPipeline.process(new EventTelemetry("mock")));
+        assertEquals(1, calls.size());
+        assertEquals("all", calls.get(0));
+
+        calls.clear();
+        TelemetryPipeline tracePipeline = configuration.getPipeline(TraceTelemetry.class);
+        tracePipeline.initialize(new TraceTelemetry("mock"));
+        assertTrue(tracePipeline.process(new TraceTelemetry("mock")));
+        assertEquals(3, calls.size());
+        assertEquals("initializer", calls.get(0));
+        assertEquals("all", calls.get(1));
+        assertEquals("trace", calls.get(2));
+    }
+
+    @Test
+    public void testProcessingStopsAtTheFirstRejection() {
+        List<String> calls = new ArrayList<String>();
+        TelemetryConfiguration configuration = new TelemetryConfiguration();
+        configuration.getTelemetryProcessors().add(new RecordingProcessor("first", calls, false));
+        configuration.getTelemetryProcessors().add(new RecordingProcessor("second", calls, true));
+
+        assertFalse(configuration.getPipeline(EventTelemetry.class).process(new EventTelemetry("mock")));
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void testFailingProcessorDoesNotStopProcessing() {
+        List<String> calls = new ArrayList<String>();
+        TelemetryConfiguration configuration = new TelemetryConfiguration();
+        configuration.getTelemetryProcessors().add(new TelemetryProcessor() {
+            @Override
+            public boolean process(Telemetry telemetry) {
+                throw new IllegalStateException("mock");
+            }
+        });
+        configuration.getTelemetryProcessors().add(new RecordingProcessor("second", calls, true));
+
+        assertTrue(configuration.getPipeline(EventTelemetry.class).process(new EventTelemetry("mock")));
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void testPipelineIsCompiledOnce() {
+        TelemetryConfiguration configuration = new TelemetryConfiguration();
+        configuration.getTelemetryProcessors().add(new RecordingProcessor("mock", new ArrayList<String>(), true));
+
+        assertSame(configuration.getPipeline(EventTelemetry.class), configuration.getPipeline(EventTelemetry.class));
+    }
+
+    @Test
+    public void testPipelineIsCompiledAgainWhenTheConfigurationChanges() {
+        List<String> calls = new ArrayList<String>();
+        TelemetryConfiguration configuration = new TelemetryConfiguration();
+        TelemetryPipeline pipeline = configuration.getPipeline(EventTelemetry.class);
+        assertTrue(pipeline.process(new EventTelemetry("mock")));
+
+        configuration.getTelemetryProcessors().add(new RecordingProcessor("added", calls, false));
+        TelemetryPipeline compiled = configuration.getPipeline(EventTelemetry.class);
+        assertNotSame(pipeline, compiled);
+        assertFalse(compiled.process(new EventTelemetry("mock")));
+
+        configuration.getTelemetryProcessors().clear();
+        assertTrue(configuration.getPipeline(EventTelemetry.class).process(new EventTelemetry("mock")));
+        assertEquals(1, calls.size());
+    }
+}
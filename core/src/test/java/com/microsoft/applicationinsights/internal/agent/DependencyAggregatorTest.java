@@ -0,0 +1,116 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.agent;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.telemetry.Duration;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class DependencyAggregatorTest {
+    @Test
+    public void testIdenticalCallsAreAggregated() {
+        DependencyAggregator aggregator = new DependencyAggregator();
+        for (long duration : new long[] {2, 4, 6}) {
+            assertTrue(aggregator.add(createSql("SELECT * FROM T WHERE ID = ?", duration), duration, 0L));
+        }
+
+        List<RemoteDependencyTelemetry> telemetries = aggregator.drain();
+        assertEquals(1, telemetries.size());
+
+        RemoteDependencyTelemetry aggregate = telemetries.get(0);
+        assertEquals(12L, aggregate.getDuration().getTotalMilliseconds());
+        assertEquals(3.0, aggregate.getMetrics().get(DependencyAggregator.COUNT_METRIC_NAME), 0.0);
+        assertEquals(2.0, aggregate.getMetrics().get(DependencyAggregator.MIN_DURATION_METRIC_NAME), 0.0);
+        assertEquals(6.0, aggregate.getMetrics().get(DependencyAggregator.MAX_DURATION_METRIC_NAME), 0.0);
+        assertEquals(Math.sqrt(8.0 / 3), aggregate.getMetrics().get(DependencyAggregator.STD_DEV_DURATION_METRIC_NAME), 1e-9);
+        assertFalse(aggregate.getContext().getProperties().containsKey("Args"));
+        assertTrue(aggregator.isEmpty());
+    }
+
+    @Test
+    public void testDifferentCommandsAreNotAggregated() {
+        DependencyAggregator aggregator = new DependencyAggregator();
+        RemoteDependencyTelemetry first = createSql("SELECT * FROM A", 1);
+        RemoteDependencyTelemetry second = createSql("SELECT * FROM B", 1);
+        aggregator.add(first, 1, 0L);
+        aggregator.add(second, 1, 0L);
+
+        List<RemoteDependencyTelemetry> telemetries = aggregator.drain();
+        assertEquals(2, telemetries.size());
+        assertSame(first, telemetries.get(0));
+        assertSame(second, telemetries.get(1));
+    }
+
+    @Test
+    public void testSingleCallIsSentAsIs() {
+        DependencyAggregator aggregator = new DependencyAggregator();
+        RemoteDependencyTelemetry telemetry = createSql("SELECT 1", 3);
+        aggregator.add(telemetry, 3, 0L);
+
+        RemoteDependencyTelemetry sent = aggregator.drain().get(0);
+        assertSame(telemetry, sent);
+        assertTrue(sent.getMetrics().isEmpty());
+        assertEquals("[1]", sent.getContext().getProperties().get("Args"));
+    }
+
+    @Test
+    public void testNumberOfAggregatesIsBounded() {
+        DependencyAggregator aggregator = new DependencyAggregator();
+        for (int i = 0; i < DependencyAggregator.MAX_AGGREGATES; ++i) {
+            assertTrue(aggregator.add(createSql("SELECT " + i, 1), 1, 0L));
+        }
+
+        assertFalse(aggregator.add(createSql("SELECT new", 1), 1, 0L));
+        assertTrue(aggregator.add(createSql("SELECT 0", 1), 1, 0L));
+        assertEquals(DependencyAggregator.MAX_AGGREGATES, aggregator.drain().size());
+    }
+
+    @Test
+    public void testAgeIsOfTheOldestAggregate() {
+        long interval = TimeUnit.SECONDS.toNanos(10);
+        DependencyAggregator aggregator = new DependencyAggregator();
+        assertFalse(aggregator.isOlderThan(interval, interval));
+
+        aggregator.add(createSql("SELECT 1", 1), 1, 0L);
+        aggregator.add(createSql("SELECT 2", 1), 1, interval - 1);
+        assertFalse(aggregator.isOlderThan(interval - 1, interval));
+        assertTrue(aggregator.isOlderThan(interval, interval));
+
+        aggregator.drain();
+        aggregator.add(createSql("SELECT 1", 1), 1, interval);
+        assertFalse(aggregator.isOlderThan(interval, interval));
+    }
+
+    private static RemoteDependencyTelemetry createSql(String command, long durationInMS) {
+        RemoteDependencyTelemetry telemetry = new RemoteDependencyTelemetry("jdbc:h2:mem:test", command, new Duration(durationInMS), true);
+        telemetry.getContext().getProperties().put("Args", "[1]");
+        return telemetry;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.agent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class MethodDataStackTest {
+    @Test
+    public void testPopsInReverseOrder() {
+        MethodDataStack stack = new MethodDataStack();
+        for (int i = 0; i < 20; ++i) {
+            stack.push().setName("method" + i);
+        }
+
+        assertEquals(20, stack.size());
+        for (int i = 19; i >= 0; --i) {
+            MethodData frame = stack.pop();
+            assertEquals("method" + i, frame.getName());
+            stack.release(frame);
+        }
+
+        assertTrue(stack.isEmpty());
+        assertNull(stack.pop());
+    }
+
+    @Test
+    public void testReleasedFrameIsClearedAndReused() {
+        MethodDataStack stack = new MethodDataStack();
+        MethodData frame = stack.push();
+        frame.setName("method");
+        frame.interval = 10L;
+        frame.sqlArguments = new Object[] {"arg"};
+
+        assertSame(frame, stack.pop());
+        stack.release(frame);
+
+        MethodData reused = stack.push();
+        assertSame(frame, reused);
+        assertNull(reused.getName());
+        assertEquals(0L, reused.interval);
+        assertNull(reused.sqlArguments);
+    }
+
+    @Test
+    public void testPoppedFrameIsNotReusedBeforeRelease() {
+        MethodDataStack stack = new MethodDataStack();
+        MethodData outer = stack.push();
+        outer.setName("outer");
+        stack.pop();
+
+        // A method that starts while the popped one is reported
+        MethodData nested = stack.push();
+        assertNotSame(outer, nested);
+        assertNull(nested.getName());
+        assertEquals("outer", outer.getName());
+
+        stack.release(stack.pop());
+        stack.release(outer);
+        assertSame(nested, stack.push());
+    }
+
+    @Test
+    public void testRemoveFromTheMiddle() {
+        MethodDataStack stack = new MethodDataStack();
+        stack.push().setName("first");
+        MethodData second = stack.push();
+        second.setName("second");
+        stack.push().setName("third");
+
+        assertTrue(stack.contains("second"));
+        assertTrue(stack.remove(second));
+        assertFalse(stack.contains("second"));
+        assertFalse(stack.remove(second));
+
+        assertEquals("third", stack.pop().getName());
+        assertEquals("first", stack.pop().getName());
+        assertTrue(stack.isEmpty());
+    }
+
+    @Test
+    public void testNameIsCutBeforeItsSuffix() {
+        MethodData frame = new MethodDataStack().push();
+        frame.setName("a.B.method#OTHER", "a.B.method".length());
+        assertEquals("a.B.method", frame.getName());
+
+        frame.setName("a.B.method");
+        assertEquals("a.B.method", frame.getName());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.agent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public final class SqlNormalizerTest {
+    @Test
+    public void testLiteralsAreReplaced() {
+        assertNormalized("SELECT * FROM users WHERE name = ? AND age > ?", "SELECT * FROM users WHERE name = 'bob' AND age > 42");
+        assertNormalized("UPDATE t SET a = ?, b = ?, c = ?", "UPDATE t SET a = 1.5, b = 2e10, c = 0x1F");
+        assertNormalized("SELECT ? FROM t WHERE s = ?", "SELECT .5 FROM t WHERE s = N'unicode'");
+    }
+
+    @Test
+    public void testStringEscapes() {
+        assertNormalized("SELECT * FROM t WHERE a = ? AND b = ?", "SELECT * FROM t WHERE a = 'it''s' AND b = 'back\\'slash'");
+    }
+
+    @Test
+    public void testIdentifiersAreKept() {
+        assertNormalized("SELECT t1.col2, \"Quoted 3\", `x4` FROM table_5 t1 WHERE $1 = @p2",
+                "SELECT t1.col2, \"Quoted 3\", `x4` FROM table_5 t1 WHERE $1 = @p2");
+    }
+
+    @Test
+    public void testPlaceholderListsAreCollapsed() {
+        assertNormalized("SELECT * FROM t WHERE id IN (?)", "SELECT * FROM t WHERE id IN (1, 2, 3)");
+        assertNormalized("SELECT * FROM t WHERE id IN (?)", "SELECT * FROM t WHERE id IN (?,?)");
+        assertNormalized("SELECT COUNT(*), f(a, ?) FROM t", "SELECT COUNT(*), f(a, 1) FROM t");
+        assertNormalized("SELECT f()", "SELECT f()");
+    }
+
+    @Test
+    public void testCommentsAndWhiteSpacesAreRemoved() {
+        assertNormalized("SELECT a FROM t WHERE b = ?", "  SELECT a -- the a\n FROM\tt /* hint */ WHERE\r\n b = 7  ");
+    }
+
+    @Test
+    public void testFingerprintIsStable() {
+        SqlNormalizer normalizer = new SqlNormalizer();
+
+        SqlNormalizer.NormalizedSql first = normalizer.normalize("SELECT * FROM t WHERE id = 1");
+        SqlNormalizer.NormalizedSql second = normalizer.normalize("SELECT * FROM t WHERE id = 2");
+        SqlNormalizer.NormalizedSql other = normalizer.normalize("SELECT * FROM u WHERE id = 1");
+
+        assertEquals(first.getFingerprint(), second.getFingerprint());
+        assertNotEquals(first.getFingerprint(), other.getFingerprint());
+        assertEquals(16, first.getFingerprint().length());
+        assertEquals(Long.toHexString(SqlNormalizer.fingerprint("SELECT 1")), new SqlNormalizer.NormalizedSql("SELECT 1").getFingerprint());
+    }
+
+    @Test
+    public void testNormalizedFormsAreCached() {
+        SqlNormalizer normalizer = new SqlNormalizer();
+
+        SqlNormalizer.NormalizedSql first = normalizer.normalize("SELECT * FROM t WHERE id = 1");
+        SqlNormalizer.NormalizedSql second = normalizer.normalize("SELECT * FROM t WHERE id = 1");
+
+        assertSame(first, second);
+        assertEquals(1, normalizer.size());
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        SqlNormalizer normalizer = new SqlNormalizer(32);
+
+        for (int i = 0; i < 1000; ++i) {
+            normalizer.normalize("SELECT * FROM t WHERE id = " + i);
+        }
+
+        assertEquals(true, normalizer.size() <= 32);
+    }
+
+    @Test
+    public void testLongStatementsAreNotCached() {
+        SqlNormalizer normalizer = new SqlNormalizer();
+        StringBuilder sb = new StringBuilder("SELECT * FROM t WHERE id IN (");
+        for (int i = 0; i < SqlNormalizer.MAX_CACHED_STATEMENT_LENGTH; ++i) {
+            sb.append(i).append(',');
+        }
+        sb.append("0)");
+        String sql = sb.toString();
+
+        SqlNormalizer.NormalizedSql first = normalizer.normalize(sql);
+        SqlNormalizer.NormalizedSql second = normalizer.normalize(sql);
+
+        assertEquals("SELECT * FROM t WHERE id IN (?)", first.getText());
+        assertNotSame(first, second);
+        assertEquals(0, normalizer.size());
+    }
+
+    private static void assertNormalized(String expected, String sql) {
+        assertEquals(expected, SqlNormalizer.normalizeText(sql));
+    }
+}
@@ -26,11 +26,13 @@ import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 import com.microsoft.applicationinsights.internal.channel.TransmissionDispatcher;
+import com.microsoft.applicationinsights.internal.channel.TransmissionsStorage;
 import org.junit.Test;
 import org.mockito.Mockito;
 
 import org.apache.commons.io.FileUtils;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyObject;
@@ -38,6 +40,9 @@ import static org.mockito.Matchers.anyObject;
 public class ActiveTransmissionLoaderTest {
     private final static String TEMP_TEST_FOLDER = "TransmissionTests";
 
+    // The record header, the content type, the encoding type and the content of the test transmission
+    private final static int RECORD_SIZE = 20 + "MockContentType".length() + "MockEncodingType".length() + 2;
+
     @Test(expected = NullPointerException.class)
     public void testNullFileSystem() throws Exception {
         new ActiveTransmissionLoader(null, Mockito.mock(TransmissionDispatcher.class), mockStateFetcher(), 1);
@@ -83,6 +88,78 @@ public class ActiveTransmissionLoaderTest {
         testFilesOnDiskAreLoaded(2, false);
     }
 
+    @Test(timeout = 10000)
+    public void testLoadWithoutWaitingForSeveralThreads() throws Exception {
+        for (int i = 0; i < 20; ++i) {
+            ActiveTransmissionLoader tested = new ActiveTransmissionLoader(Mockito.mock(TransmissionsStorage.class), Mockito.mock(TransmissionDispatcher.class), mockStateFetcher(), 4);
+            try {
+                assertTrue("Failed to load", tested.load(false));
+            } finally {
+                tested.stop(1L, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Test
+    public void testNoReplayWhileSendsAreInFlight() throws Exception {
+        File folder = null;
+        ActiveTransmissionLoader tested = null;
+        try {
+            String filesPath = System.getProperty("java.io.tmpdir") + File.separator + TEMP_TEST_FOLDER;
+            folder = new File(filesPath);
+            if (folder.exists()) {
+                FileUtils.deleteDirectory(folder);
+            }
+
+            TransmissionSegmentLogOutput storage = new TransmissionSegmentLogOutput(filesPath);
+            TransmissionReplayController replayController = new TransmissionReplayController(1);
+            TransmissionDispatcher mockDispatcher = Mockito.mock(TransmissionDispatcher.class);
+            tested = new ActiveTransmissionLoader(storage, mockDispatcher, mockStateFetcher(), 1, replayController);
+
+            storage.send(new Transmission(new byte[2], "MockContentType", "MockEncodingType"));
+            replayController.onSendStarted();
+            assertTrue("Failed to load", tested.load(true));
+
+            Thread.sleep(500);
+            Mockito.verify(mockDispatcher, Mockito.never()).dispatch((Transmission) anyObject());
+            assertEquals(RECORD_SIZE, tested.getBacklogSizeInBytes());
+
+            replayController.onSendEnded();
+            Mockito.verify(mockDispatcher, Mockito.timeout(5000).times(1)).dispatch((Transmission) anyObject());
+            assertEquals(0, tested.getBacklogSizeInBytes());
+            assertEquals(1, replayController.getReplayedTransmissions());
+        } finally {
+            if (tested != null) {
+                tested.stop(1L, TimeUnit.SECONDS);
+            }
+
+            if (folder != null && folder.exists()) {
+                FileUtils.deleteDirectory(folder);
+            }
+        }
+    }
+
+    @Test
+    public void testPurgeIsPacedByTheReplayPause() throws Exception {
+        TransmissionsStorage mockStorage = Mockito.mock(TransmissionsStorage.class);
+        Mockito.doReturn(new Transmission(new byte[2], "MockContentType", "MockEncodingType")).when(mockStorage).fetchOldest();
+        TransmissionPolicyStateFetcher mockStateFetcher = Mockito.mock(TransmissionPolicyStateFetcher.class);
+        Mockito.doReturn(TransmissionPolicy.BLOCKED_AND_CANNOT_BE_PERSISTED).when(mockStateFetcher).getCurrentState();
+        TransmissionDispatcher mockDispatcher = Mockito.mock(TransmissionDispatcher.class);
+
+        ActiveTransmissionLoader tested = new ActiveTransmissionLoader(mockStorage, mockDispatcher, mockStateFetcher, 1, new TransmissionReplayController(1));
+        try {
+            assertTrue("Failed to load", tested.load(true));
+            Thread.sleep(500);
+        } finally {
+            tested.stop(1L, TimeUnit.SECONDS);
+        }
+
+        // The pause is at least 100 milliseconds while blocked
+        Mockito.verify(mockStorage, Mockito.atMost(6)).fetchOldest();
+        Mockito.verify(mockDispatcher, Mockito.never()).dispatch((Transmission) anyObject());
+    }
+
     private void testFilesOnDiskAreLoaded(int amount, boolean putFilesFirst) throws IOException, InterruptedException {
         File folder = null;
         ActiveTransmissionLoader tested = null;
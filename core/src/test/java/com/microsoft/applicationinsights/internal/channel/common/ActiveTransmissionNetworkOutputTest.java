@@ -21,6 +21,7 @@
 
 package com.microsoft.applicationinsights.internal.channel.common;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
@@ -105,7 +106,9 @@ public class ActiveTransmissionNetworkOutputTest {
         ActiveTransmissionNetworkOutput tested = new ActiveTransmissionNetworkOutput(mock, mockStateFetcher, 1);
         numberExpected[0] = tested.getNumberOfMaxThreads();
         testSend(100, 1, tested);
-        assertTrue("Too many calls to send", isError[0]);
+
+        // The queued transmission is not handed to the actual output once the stop timed out
+        assertFalse("Too many calls to send", isError[0]);
     }
 
     private void testSend(int amount) throws InterruptedException {
@@ -144,10 +147,63 @@ public class ActiveTransmissionNetworkOutputTest {
             }
         }
 
-        tested.stop(60L, TimeUnit.SECONDS);
+        // The stop waits for the queued sends, the blocking mock is released only when its own stop is called
+        tested.stop(theTested == null ? 60L : 1L, TimeUnit.SECONDS);
     }
 
     @Test
     public void testStop() throws Exception {
     }
+
+    @Test
+    public void testTransmissionsNotSentByTheStopAreSpilled() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        TransmissionOutput blockingOutput = new TransmissionOutput() {
+            @Override
+            public boolean send(Transmission transmission) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+                return true;
+            }
+
+            @Override
+            public void stop(long timeout, TimeUnit timeUnit) {
+                release.countDown();
+            }
+        };
+        TransmissionOutput spillOutput = Mockito.mock(TransmissionOutput.class);
+        TransmissionPolicyStateFetcher mockStateFetcher = Mockito.mock(TransmissionPolicyStateFetcher.class);
+        Mockito.doReturn(TransmissionPolicy.UNBLOCKED).when(mockStateFetcher).getCurrentState();
+
+        ActiveTransmissionNetworkOutput tested = new ActiveTransmissionNetworkOutput(blockingOutput, mockStateFetcher);
+        tested.setSpillOutput(spillOutput);
+
+        int amount = tested.getNumberOfMaxThreads() + 3;
+        for (int i = 0; i < amount; ++i) {
+            assertTrue(tested.send(new Transmission(new byte[2], MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+        }
+        tested.stop(100L, TimeUnit.MILLISECONDS);
+
+        Mockito.verify(spillOutput, Mockito.times(3)).send((Transmission) anyObject());
+    }
+
+    @Test
+    public void testRefusedTransmissionsAreSpilled() throws Exception {
+        TransmissionOutput refusingOutput = Mockito.mock(TransmissionOutput.class);
+        Mockito.doReturn(false).when(refusingOutput).send((Transmission) anyObject());
+        TransmissionOutput spillOutput = Mockito.mock(TransmissionOutput.class);
+        TransmissionPolicyStateFetcher mockStateFetcher = Mockito.mock(TransmissionPolicyStateFetcher.class);
+        Mockito.doReturn(TransmissionPolicy.UNBLOCKED).when(mockStateFetcher).getCurrentState();
+
+        ActiveTransmissionNetworkOutput tested = new ActiveTransmissionNetworkOutput(refusingOutput, mockStateFetcher);
+        tested.setSpillOutput(spillOutput);
+
+        Transmission transmission = new Transmission(new byte[2], MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE);
+        tested.send(transmission);
+        tested.stop(10L, TimeUnit.SECONDS);
+
+        Mockito.verify(spillOutput, Mockito.times(1)).send(transmission);
+    }
 }
\ No newline at end of file
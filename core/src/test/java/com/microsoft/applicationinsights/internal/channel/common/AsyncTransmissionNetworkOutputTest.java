@@ -0,0 +1,206 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.microsoft.applicationinsights.internal.channel.TransmissionDispatcher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class AsyncTransmissionNetworkOutputTest {
+    private final static String MOCK_CONTENT = "MockContent";
+    private final static long WAIT_TIMEOUT_IN_SECONDS = 10;
+
+    private static final class StubHandler implements HttpHandler {
+        private final AtomicInteger received = new AtomicInteger();
+        private volatile int responseCode = 200;
+        private volatile String lastContent;
+        private volatile CountDownLatch release;
+        private volatile CountDownLatch responded = new CountDownLatch(1);
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            lastContent = readAll(exchange.getRequestBody());
+            received.incrementAndGet();
+            CountDownLatch currentRelease = release;
+            if (currentRelease != null) {
+                try {
+                    currentRelease.await(WAIT_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            exchange.sendResponseHeaders(responseCode, -1);
+            exchange.close();
+            responded.countDown();
+        }
+    }
+
+    private HttpServer server;
+    private StubHandler handler;
+    private TransmissionPolicyManager policyManager;
+    private AsyncTransmissionNetworkOutput tested;
+
+    @Before
+    public void setUp() throws IOException {
+        handler = new StubHandler();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v2/track", handler);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        policyManager = new TransmissionPolicyManager(true);
+    }
+
+    @After
+    public void tearDown() {
+        if (tested != null) {
+            tested.stop(1L, TimeUnit.SECONDS);
+        }
+        policyManager.stop(1L, TimeUnit.SECONDS);
+        server.stop(0);
+    }
+
+    @Test
+    public void testSuccessfulSend() throws Exception {
+        TransmissionReplayController controller = new TransmissionReplayController(4);
+        tested = createTested(4);
+        tested.setReplayController(controller);
+
+        assertTrue(tested.send(createTransmission()));
+        assertTrue(handler.responded.await(WAIT_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS));
+
+        waitForNoInFlight();
+        assertEquals(MOCK_CONTENT, handler.lastContent);
+        assertEquals(1, handler.received.get());
+        assertEquals(0, controller.getInFlightSends());
+    }
+
+    @Test
+    public void testSendWhenWindowIsFullIsRefused() throws Exception {
+        handler.release = new CountDownLatch(1);
+        tested = createTested(1);
+
+        assertTrue(tested.send(createTransmission()));
+        assertEquals(1, tested.getInFlightTransmissions());
+        assertFalse(tested.send(createTransmission()));
+
+        handler.release.countDown();
+        waitForNoInFlight();
+        assertTrue(tested.send(createTransmission()));
+    }
+
+    @Test
+    public void testSendWhenBlockedIsRefused() {
+        tested = createTested(4);
+        policyManager.suspendInSeconds(TransmissionPolicy.BLOCKED_BUT_CAN_BE_PERSISTED, 60);
+
+        assertFalse(tested.send(createTransmission()));
+        assertEquals(0, handler.received.get());
+    }
+
+    @Test
+    public void testThrottledTransmissionIsDispatchedAgain() throws Exception {
+        handler.responseCode = 429;
+        TransmissionDispatcher dispatcher = Mockito.mock(TransmissionDispatcher.class);
+        tested = createTested(4);
+        tested.setTransmissionDispatcher(dispatcher);
+
+        Transmission transmission = createTransmission();
+        assertTrue(tested.send(transmission));
+
+        Mockito.verify(dispatcher, Mockito.timeout(TimeUnit.SECONDS.toMillis(WAIT_TIMEOUT_IN_SECONDS))).dispatch(transmission);
+    }
+
+    @Test
+    public void testFailedTransmissionIsDispatchedAgainAndBlocks() throws Exception {
+        TransmissionDispatcher dispatcher = Mockito.mock(TransmissionDispatcher.class);
+        tested = new AsyncTransmissionNetworkOutput("http://127.0.0.1:1/v2/track", policyManager, 4, 1);
+        tested.setTransmissionDispatcher(dispatcher);
+
+        Transmission transmission = createTransmission();
+        assertTrue(tested.send(transmission));
+
+        Mockito.verify(dispatcher, Mockito.timeout(TimeUnit.SECONDS.toMillis(WAIT_TIMEOUT_IN_SECONDS))).dispatch(transmission);
+        assertEquals(TransmissionPolicy.BLOCKED_BUT_CAN_BE_PERSISTED, policyManager.getTransmissionPolicyState().getCurrentState());
+    }
+
+    @Test
+    public void testTransmissionInFlightWhenStoppedIsDispatchedAgain() throws Exception {
+        handler.release = new CountDownLatch(1);
+        TransmissionDispatcher dispatcher = Mockito.mock(TransmissionDispatcher.class);
+        tested = createTested(4);
+        tested.setTransmissionDispatcher(dispatcher);
+
+        Transmission transmission = createTransmission();
+        assertTrue(tested.send(transmission));
+        tested.stop(100L, TimeUnit.MILLISECONDS);
+
+        Mockito.verify(dispatcher, Mockito.timeout(TimeUnit.SECONDS.toMillis(WAIT_TIMEOUT_IN_SECONDS))).dispatch(transmission);
+        assertFalse(tested.send(createTransmission()));
+        handler.release.countDown();
+    }
+
+    private AsyncTransmissionNetworkOutput createTested(int maxInFlightTransmissions) {
+        String serverUri = "http://127.0.0.1:" + server.getAddress().getPort() + "/v2/track";
+        return new AsyncTransmissionNetworkOutput(serverUri, policyManager, maxInFlightTransmissions, 1);
+    }
+
+    private void waitForNoInFlight() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(WAIT_TIMEOUT_IN_SECONDS);
+        while (tested.getInFlightTransmissions() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, tested.getInFlightTransmissions());
+    }
+
+    private static Transmission createTransmission() {
+        return new Transmission(MOCK_CONTENT.getBytes(), "application/x-json-stream", "identity");
+    }
+
+    private static String readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+        return new String(content.toByteArray(), "UTF-8");
+    }
+}
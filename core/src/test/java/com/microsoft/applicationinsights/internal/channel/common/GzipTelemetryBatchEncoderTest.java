@@ -0,0 +1,144 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class GzipTelemetryBatchEncoderTest {
+    private final static String NEWLINE = System.getProperty("line.separator");
+
+    @Test
+    public void testFinishWithNoTelemetries() {
+        GzipTelemetryBatchEncoder tested = new GzipTelemetryBatchEncoder();
+
+        assertFalse(tested.finish().isPresent());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testAddNull() {
+        new GzipTelemetryBatchEncoder().add(null);
+    }
+
+    @Test
+    public void testBatchHasTheSerializerContent() throws IOException {
+        List<byte[]> telemetries = createTelemetries(50);
+
+        GzipTelemetryBatchEncoder tested = new GzipTelemetryBatchEncoder();
+        for (byte[] telemetry : telemetries) {
+            tested.add(telemetry);
+        }
+        assertEquals(50, tested.size());
+
+        Optional<Transmission> transmission = tested.finish();
+        assertTrue(transmission.isPresent());
+        assertEquals("application/x-json-stream", transmission.get().getWebContentType());
+        assertEquals("gzip", transmission.get().getWebContentEncodingType());
+        assertEquals(0, tested.size());
+
+        Optional<Transmission> expected = new GzipTelemetrySerializer().serialize(telemetries);
+        assertEquals(decompress(expected.get().getContent()), decompress(transmission.get().getContent()));
+        assertEquals(join(telemetries), decompress(transmission.get().getContent()));
+    }
+
+    @Test
+    public void testEncoderIsReusedBetweenBatches() throws IOException {
+        GzipTelemetryBatchEncoder tested = new GzipTelemetryBatchEncoder(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY);
+
+        for (int batch = 0; batch < 3; ++batch) {
+            List<byte[]> telemetries = createTelemetries(batch + 1);
+            for (byte[] telemetry : telemetries) {
+                tested.add(telemetry);
+            }
+
+            assertEquals(join(telemetries), decompress(tested.finish().get().getContent()));
+        }
+    }
+
+    @Test
+    public void testLevelsAndStrategies() throws IOException {
+        int[] strategies = new int[] { Deflater.DEFAULT_STRATEGY, Deflater.FILTERED, Deflater.HUFFMAN_ONLY };
+        List<byte[]> telemetries = createTelemetries(20);
+
+        for (int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; ++level) {
+            for (int strategy : strategies) {
+                GzipTelemetryBatchEncoder tested = new GzipTelemetryBatchEncoder(level, strategy);
+                for (byte[] telemetry : telemetries) {
+                    tested.add(telemetry);
+                }
+
+                assertEquals(join(telemetries), decompress(tested.finish().get().getContent()));
+                tested.end();
+            }
+        }
+    }
+
+    private static List<byte[]> createTelemetries(int amount) throws IOException {
+        List<byte[]> telemetries = new ArrayList<byte[]>();
+        for (int i = 0; i < amount; ++i) {
+            telemetries.add(("{\"ver\":1,\"name\":\"mockTelemetry" + i + "\",\"text\":\"שלום\"}").getBytes("UTF-8"));
+        }
+
+        return telemetries;
+    }
+
+    private static String join(List<byte[]> telemetries) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (byte[] telemetry : telemetries) {
+            if (sb.length() != 0) {
+                sb.append(NEWLINE);
+            }
+            sb.append(new String(telemetry, "UTF-8"));
+        }
+
+        return sb.toString();
+    }
+
+    private static String decompress(byte[] content) throws IOException {
+        GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(content));
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = gzipInputStream.read(buffer)) != -1) {
+                result.write(buffer, 0, read);
+            }
+
+            return new String(result.toByteArray(), "UTF-8");
+        } finally {
+            gzipInputStream.close();
+        }
+    }
+}
@@ -132,7 +132,7 @@ public final class GzipTelemetrySerializerTest {
     @Test(expected = IllegalArgumentException.class)
     public void testNoData() throws Exception {
         GzipTelemetrySerializer tested = new GzipTelemetrySerializer();
-        tested.serialize(new ArrayList<String>());
+        tested.serialize(new ArrayList<byte[]>());
     }
 
     @Test
@@ -154,7 +154,7 @@ public final class GzipTelemetrySerializerTest {
         GzipTelemetrySerializer tested = new GzipTelemetrySerializer();
 
         List<Telemetry> telemetries = new ArrayList<Telemetry>(amount);
-        List<String> telemetriesSerialized = new ArrayList<String>(amount);
+        List<byte[]> telemetriesSerialized = new ArrayList<byte[]>(amount);
 
         HashMap<String, StubTelemetry> expected = new HashMap<String, StubTelemetry>();
 
@@ -166,7 +166,7 @@ public final class GzipTelemetrySerializerTest {
 
             stubTelemetry.serialize(jsonWriter);
             jsonWriter.close();
-            String asJson = writer.toString();
+            byte[] asJson = writer.toString().getBytes("UTF-8");
 
             telemetriesSerialized.add(asJson);
             writer.getBuffer().setLength(0);
@@ -196,7 +196,7 @@ public final class GzipTelemetrySerializerTest {
                 totalLen += len;
             }
 
-            String value = new String(contents.toByteArray());
+            String value = new String(contents.toByteArray(), "UTF-8");
             String[] stubStrings = value.split(System.getProperty("line.separator"));
 
             assertEquals(stubStrings.length, amount);
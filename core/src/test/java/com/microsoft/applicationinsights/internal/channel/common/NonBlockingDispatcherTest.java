@@ -21,9 +21,14 @@
 
 package com.microsoft.applicationinsights.internal.channel.common;
 
+import java.util.concurrent.TimeUnit;
+
 import com.microsoft.applicationinsights.internal.channel.TransmissionOutput;
 import org.junit.Test;
 
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
+import org.mockito.Matchers;
 import org.mockito.Mockito;
 
 import static org.mockito.Matchers.anyObject;
@@ -78,6 +83,32 @@ public class NonBlockingDispatcherTest {
         Mockito.verify(mockOutput2, Mockito.times(1)).send((Transmission) anyObject());
     }
 
+    @Test
+    public void testStopStopsTheOutputsInOrderWithinTheTimeout() {
+        TransmissionOutput mockOutput1 = Mockito.mock(TransmissionOutput.class);
+        TransmissionOutput mockOutput2 = Mockito.mock(TransmissionOutput.class);
+
+        NonBlockingDispatcher tested = new NonBlockingDispatcher(new TransmissionOutput[] {mockOutput1, mockOutput2});
+        tested.stop(2L, TimeUnit.SECONDS);
+
+        InOrder inOrder = Mockito.inOrder(mockOutput1, mockOutput2);
+        inOrder.verify(mockOutput1).stop(Matchers.longThat(new AtMost(TimeUnit.SECONDS.toNanos(1))), Matchers.eq(TimeUnit.NANOSECONDS));
+        inOrder.verify(mockOutput2).stop(Matchers.longThat(new AtMost(TimeUnit.SECONDS.toNanos(2))), Matchers.eq(TimeUnit.NANOSECONDS));
+    }
+
+    private static final class AtMost extends ArgumentMatcher<Long> {
+        private final long max;
+
+        private AtMost(long max) {
+            this.max = max;
+        }
+
+        @Override
+        public boolean matches(Object argument) {
+            return argument instanceof Long && (Long)argument > 0 && (Long)argument <= max;
+        }
+    }
+
     private NonBlockingDispatcher createDispatcher() {
         TransmissionOutput mockOutput1 = Mockito.mock(TransmissionOutput.class);
         TransmissionOutput mockOutput2 = Mockito.mock(TransmissionOutput.class);
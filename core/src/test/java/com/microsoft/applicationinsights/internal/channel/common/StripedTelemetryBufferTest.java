@@ -0,0 +1,217 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter;
+import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class StripedTelemetryBufferTest {
+    private final static String MOCK_PROPERTY_NAME = "MockProperty";
+
+    private static final class CollectingSender implements TelemetriesTransmitter {
+        private final List<TelemetriesFetcher> scheduled = new ArrayList<TelemetriesFetcher>();
+        private final List<Collection<byte[]>> sentNow = new ArrayList<Collection<byte[]>>();
+
+        @Override
+        public synchronized boolean scheduleSend(TelemetriesFetcher telemetriesFetcher, long value, TimeUnit timeUnit) {
+            scheduled.add(telemetriesFetcher);
+            return true;
+        }
+
+        @Override
+        public synchronized boolean sendNow(Collection<byte[]> telemetries) {
+            sentNow.add(telemetries);
+            return true;
+        }
+
+        @Override
+        public boolean sendNow(Transmission transmission) {
+            return false;
+        }
+
+        @Override
+        public void stop(long timeout, TimeUnit timeUnit) {
+        }
+
+        public synchronized List<TelemetriesFetcher> getScheduled() {
+            return new ArrayList<TelemetriesFetcher>(scheduled);
+        }
+
+        public synchronized List<Collection<byte[]>> getSentNow() {
+            return new ArrayList<Collection<byte[]>>(sentNow);
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNoSenderIsSet() {
+        new StripedTelemetryBuffer(null, createEnforcerWithCurrentValue(10), createEnforcerWithCurrentValue(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroBufferSizeSenderIsSet() {
+        new StripedTelemetryBuffer(new CollectingSender(), createEnforcerWithCurrentValue(0), createEnforcerWithCurrentValue(5));
+    }
+
+    @Test
+    public void testAddOneTelemetrySchedulesSend() {
+        CollectingSender sender = new CollectingSender();
+        StripedTelemetryBuffer testedBuffer = new StripedTelemetryBuffer(sender, createEnforcerWithCurrentValue(10), createEnforcerWithCurrentValue(5));
+
+        testedBuffer.add("mockTelemetry".getBytes());
+        testedBuffer.add("mockTelemetry".getBytes());
+
+        assertEquals(1, sender.getScheduled().size());
+        assertEquals(0, sender.getSentNow().size());
+
+        Collection<byte[]> fetched = sender.getScheduled().get(0).fetch();
+        assertEquals(2, fetched.size());
+    }
+
+    @Test
+    public void testSendWhenBufferIsFull() {
+        CollectingSender sender = new CollectingSender();
+        StripedTelemetryBuffer testedBuffer = new StripedTelemetryBuffer(sender, createEnforcerWithCurrentValue(3), createEnforcerWithCurrentValue(5));
+
+        for (int i = 0; i < 3; ++i) {
+            testedBuffer.add(("mockTelemetry" + i).getBytes());
+        }
+
+        assertEquals(1, sender.getSentNow().size());
+        assertEquals(3, sender.getSentNow().get(0).size());
+
+        // The batch was already sent, the scheduled fetcher should find nothing
+        assertEquals(1, sender.getScheduled().size());
+        assertTrue(sender.getScheduled().get(0).fetch().isEmpty());
+    }
+
+    @Test
+    public void testSendWhenBufferIsFullInDeveloperMode() {
+        CollectingSender sender = new CollectingSender();
+        StripedTelemetryBuffer testedBuffer = new StripedTelemetryBuffer(sender, createEnforcerWithCurrentValue(1), createEnforcerWithCurrentValue(5));
+
+        testedBuffer.add("mockTelemetry".getBytes());
+        testedBuffer.add("mockTelemetry".getBytes());
+
+        assertEquals(0, sender.getScheduled().size());
+        assertEquals(2, sender.getSentNow().size());
+    }
+
+    @Test
+    public void testFlush() {
+        CollectingSender sender = new CollectingSender();
+        StripedTelemetryBuffer testedBuffer = new StripedTelemetryBuffer(sender, createEnforcerWithCurrentValue(10), createEnforcerWithCurrentValue(5));
+
+        testedBuffer.flush();
+        assertEquals(0, sender.getSentNow().size());
+
+        for (int i = 0; i < 7; ++i) {
+            testedBuffer.add(("mockTelemetry" + i).getBytes());
+        }
+        testedBuffer.flush();
+
+        assertEquals(1, sender.getSentNow().size());
+        assertEquals(7, sender.getSentNow().get(0).size());
+    }
+
+    @Test
+    public void testFullStripesDropTelemetries() {
+        CollectingSender sender = new CollectingSender();
+        StripedTelemetryBuffer testedBuffer = new StripedTelemetryBuffer(sender, createEnforcerWithCurrentValue(100), createEnforcerWithCurrentValue(5), 1, 4);
+
+        for (int i = 0; i < 6; ++i) {
+            testedBuffer.add(("mockTelemetry" + i).getBytes());
+        }
+        testedBuffer.flush();
+
+        assertEquals(1, sender.getSentNow().size());
+        assertEquals(4, sender.getSentNow().get(0).size());
+    }
+
+    @Test
+    public void testConcurrentAddsAreAllSent() throws InterruptedException {
+        final int numberOfThreads = 8;
+        final int telemetriesPerThread = 5000;
+
+        CollectingSender sender = new CollectingSender();
+        final StripedTelemetryBuffer testedBuffer = new StripedTelemetryBuffer(sender, createEnforcerWithCurrentValue(100), createEnforcerWithCurrentValue(5), 4, 64 * 1024);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numberOfThreads; ++t) {
+            final int threadIndex = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < telemetriesPerThread; ++i) {
+                        testedBuffer.add((threadIndex + "-" + i).getBytes());
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        testedBuffer.flush();
+
+        Set<String> received = new HashSet<String>();
+        for (Collection<byte[]> batch : sender.getSentNow()) {
+            assertTrue(batch.size() <= 100);
+            addAll(received, batch);
+        }
+        for (TelemetriesTransmitter.TelemetriesFetcher fetcher : sender.getScheduled()) {
+            addAll(received, fetcher.fetch());
+        }
+
+        assertEquals(numberOfThreads * telemetriesPerThread, received.size());
+    }
+
+    private static void addAll(Set<String> received, Collection<byte[]> batch) {
+        for (byte[] telemetry : batch) {
+            received.add(new String(telemetry));
+        }
+    }
+
+    private static LimitsEnforcer createEnforcerWithCurrentValue(int currentValue) {
+        return LimitsEnforcer.createWithClosestLimitOnError(MOCK_PROPERTY_NAME, -10, 1000, 20, currentValue);
+    }
+}
@@ -33,8 +33,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter;
 import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -114,7 +116,7 @@ public final class TelemetryBufferTest {
                 public void run() {
                     scheduleSendActualCallCounter.incrementAndGet();
 
-                    Collection<String> telemetries = telemetriesFetcher.fetch();
+                    Collection<byte[]> telemetries = telemetriesFetcher.fetch();
                     if (telemetries == null) {
                         queue.offer(new ScheduledSendResult(false, "Telemetries is null"));
                         return;
@@ -133,7 +135,7 @@ public final class TelemetryBufferTest {
         }
 
         @Override
-        public boolean sendNow(Collection<String> telemetries) {
+        public boolean sendNow(Collection<byte[]> telemetries) {
             int called = sendNowCallCounter.incrementAndGet();
             assertEquals("Wrong number of scheduled sends by the TransmissionBuffer", called, expectedNumberOfSendNowCalls);
 
@@ -143,6 +145,11 @@ public final class TelemetryBufferTest {
             return true;
         }
 
+        @Override
+        public boolean sendNow(Transmission transmission) {
+            return false;
+        }
+
         @Override
         public void stop(long timeout, TimeUnit timeUnit) {
 
@@ -246,7 +253,7 @@ public final class TelemetryBufferTest {
 
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
 
-        testedBuffer.add("mockTelemetry");
+        testedBuffer.add("mockTelemetry".getBytes());
 
         Mockito.verify(mockSender, Mockito.times(1)).scheduleSend((TelemetriesTransmitter.TelemetriesFetcher) any(), anyLong(), (TimeUnit) anyObject());
     }
@@ -265,11 +272,11 @@ public final class TelemetryBufferTest {
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
 
         for (int i = 0; i < 2; ++i) {
-            testedBuffer.add("mockTelemetry");
+            testedBuffer.add("mockTelemetry".getBytes());
         }
 
         Mockito.verify(mockSender, Mockito.times(1)).scheduleSend((TelemetriesTransmitter.TelemetriesFetcher) any(), anyLong(), (TimeUnit) anyObject());
-        Mockito.verify(mockSender, Mockito.times(1)).sendNow(anyCollectionOf(String.class));
+        Mockito.verify(mockSender, Mockito.times(1)).sendNow(anyCollectionOf(byte[].class));
     }
 
 
@@ -277,7 +284,7 @@ public final class TelemetryBufferTest {
     public void testSendReturnsFalseOnScheduleSend() throws Exception {
         class StubTelemetriesTransmitter implements TelemetriesTransmitter {
             private int scheduleSendCounter = 2;
-            private Collection<String> sendNowCollection;
+            private Collection<byte[]> sendNowCollection;
 
             @Override
             public boolean scheduleSend(TelemetriesFetcher telemetriesFetcher, long value, TimeUnit timeUnit) {
@@ -290,25 +297,30 @@ public final class TelemetryBufferTest {
             }
 
             @Override
-            public boolean sendNow(Collection<String> telemetries) {
+            public boolean sendNow(Collection<byte[]> telemetries) {
                 sendNowCollection = telemetries;
                 return true;
             }
 
+            @Override
+            public boolean sendNow(Transmission transmission) {
+                return false;
+            }
+
             @Override
             public void stop(long timeout, TimeUnit timeUnit) {
 
             }
 
-            public Collection<String> getSendNowCollection() {
+            public Collection<byte[]> getSendNowCollection() {
                 return sendNowCollection;
             }
         };
 
-        List<String> all = new ArrayList<String>();
-        List<String> expected = new ArrayList<String>();
+        List<byte[]> all = new ArrayList<byte[]>();
+        List<byte[]> expected = new ArrayList<byte[]>();
         for (int i = 0; i < 4; ++i) {
-            String mockSerializedTelemetry = "mockTelemtry" + String.valueOf(i);
+            byte[] mockSerializedTelemetry = ("mockTelemtry" + String.valueOf(i)).getBytes();
             all.add(mockSerializedTelemetry);
 
             if (i != 0) {
@@ -322,16 +334,16 @@ public final class TelemetryBufferTest {
 
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
 
-        for (String telemetry : all) {
+        for (byte[] telemetry : all) {
             testedBuffer.add(telemetry);
         }
 
-        Collection<String> sendNowCollection = mockSender.getSendNowCollection();
+        Collection<byte[]> sendNowCollection = mockSender.getSendNowCollection();
         assertEquals(sendNowCollection.size(), expected.size());
 
         int i = 0;
-        for (String telemetry : sendNowCollection) {
-            assertEquals(telemetry, expected.get(i));
+        for (byte[] telemetry : sendNowCollection) {
+            assertArrayEquals(telemetry, expected.get(i));
             ++i;
         }
     }
@@ -346,11 +358,11 @@ public final class TelemetryBufferTest {
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
 
         for (int i = 0; i < 2; ++i) {
-            testedBuffer.add("mockTelemetry");
+            testedBuffer.add("mockTelemetry".getBytes());
         }
 
         Mockito.verify(mockSender, Mockito.never()).scheduleSend((TelemetriesTransmitter.TelemetriesFetcher)any(), anyLong(), (TimeUnit)anyObject());
-        Mockito.verify(mockSender, Mockito.times(2)).sendNow(anyCollectionOf(String.class));
+        Mockito.verify(mockSender, Mockito.times(2)).sendNow(anyCollectionOf(byte[].class));
     }
 
     @Test
@@ -369,7 +381,7 @@ public final class TelemetryBufferTest {
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
 
         for (int i = 0; i < 1; ++i) {
-            testedBuffer.add("mockTelemetry");
+            testedBuffer.add("mockTelemetry".getBytes());
         }
 
         mockSender.waitForFinish(6L);
@@ -390,7 +402,7 @@ public final class TelemetryBufferTest {
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
 
         for (int i = 0; i < 10; ++i) {
-            testedBuffer.add("mockTelemetry");
+            testedBuffer.add("mockTelemetry".getBytes());
         }
 
         mockSender.waitForFinish(6L);
@@ -407,7 +419,7 @@ public final class TelemetryBufferTest {
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
         testedBuffer.flush();
 
-        Mockito.verify(mockSender, Mockito.never()).sendNow(anyCollectionOf(String.class));
+        Mockito.verify(mockSender, Mockito.never()).sendNow(anyCollectionOf(byte[].class));
     }
 
     @Test
@@ -435,7 +447,7 @@ public final class TelemetryBufferTest {
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
 
         for (int i = 0; i < 2; ++i) {
-            testedBuffer.add("mockTelemetry");
+            testedBuffer.add("mockTelemetry".getBytes());
         }
         testedBuffer.setTransmitBufferTimeoutInSeconds(1);
 
@@ -457,7 +469,7 @@ public final class TelemetryBufferTest {
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
 
         for (int i = 0; i < 2; ++i) {
-            testedBuffer.add("mockTelemetry");
+            testedBuffer.add("mockTelemetry".getBytes());
         }
         testedBuffer.setMaxTelemetriesInBatch(1);
 
@@ -480,11 +492,11 @@ public final class TelemetryBufferTest {
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
 
         for (int i = 0; i < 2; ++i) {
-            testedBuffer.add("mockTelemetry");
+            testedBuffer.add("mockTelemetry".getBytes());
         }
         testedBuffer.setMaxTelemetriesInBatch(3);
         for (int i = 0; i < 2; ++i) {
-            testedBuffer.add("mockTelemetry");
+            testedBuffer.add("mockTelemetry".getBytes());
         }
 
         mockSender.waitForFinish(1L);
@@ -505,16 +517,86 @@ public final class TelemetryBufferTest {
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
 
         for (int i = 0; i < 1; ++i) {
-            testedBuffer.add("mockTelemetry");
+            testedBuffer.add("mockTelemetry".getBytes());
         }
         testedBuffer.setMaxTelemetriesInBatch(11);
         for (int i = 0; i < 10; ++i) {
-            testedBuffer.add("mockTelemetry");
+            testedBuffer.add("mockTelemetry".getBytes());
         }
 
         mockSender.waitForFinish(1L);
     }
 
+    @Test
+    public void testEncodedSendWhenBufferIsFull() throws Exception {
+        TelemetriesTransmitter mockSender = Mockito.mock(TelemetriesTransmitter.class);
+        Mockito.doReturn(true).when(mockSender).scheduleSend((TelemetriesTransmitter.TelemetriesFetcher) any(), anyLong(), (TimeUnit) anyObject());
+        Mockito.doReturn(true).when(mockSender).sendNow((Transmission) any());
+
+        TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, createEnforcerWithCurrentValue(3), createDefaultSenderTimeoutEnforcer(), new GzipTelemetryBatchEncoder());
+
+        for (int i = 0; i < 3; ++i) {
+            testedBuffer.add("mockTelemetry".getBytes());
+        }
+
+        Mockito.verify(mockSender, Mockito.times(1)).sendNow((Transmission) any());
+        Mockito.verify(mockSender, Mockito.never()).sendNow(anyCollectionOf(byte[].class));
+    }
+
+    @Test
+    public void testEncodedFetchSendsTheCompressedBatch() throws Exception {
+        TelemetriesTransmitter mockSender = Mockito.mock(TelemetriesTransmitter.class);
+        Mockito.doReturn(true).when(mockSender).scheduleSend((TelemetriesTransmitter.TelemetriesFetcher) any(), anyLong(), (TimeUnit) anyObject());
+        Mockito.doReturn(true).when(mockSender).sendNow((Transmission) any());
+
+        TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, createEnforcerWithCurrentValue(10), createDefaultSenderTimeoutEnforcer(), new GzipTelemetryBatchEncoder());
+        testedBuffer.add("mockTelemetry".getBytes());
+        testedBuffer.add("mockTelemetry".getBytes());
+
+        ArgumentCaptor<TelemetriesTransmitter.TelemetriesFetcher> fetcher = ArgumentCaptor.forClass(TelemetriesTransmitter.TelemetriesFetcher.class);
+        Mockito.verify(mockSender, Mockito.times(1)).scheduleSend(fetcher.capture(), anyLong(), (TimeUnit) anyObject());
+
+        assertTrue(fetcher.getValue().fetch().isEmpty());
+        Mockito.verify(mockSender, Mockito.times(1)).sendNow((Transmission) any());
+
+        // The batch was already sent
+        testedBuffer.flush();
+        assertTrue(fetcher.getValue().fetch().isEmpty());
+        Mockito.verify(mockSender, Mockito.times(1)).sendNow((Transmission) any());
+    }
+
+    @Test
+    public void testEncodedFlushWithZero() throws Exception {
+        TelemetriesTransmitter mockSender = Mockito.mock(TelemetriesTransmitter.class);
+
+        TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, createEnforcerWithCurrentValue(10), createDefaultSenderTimeoutEnforcer(), new GzipTelemetryBatchEncoder());
+        testedBuffer.flush();
+
+        Mockito.verify(mockSender, Mockito.never()).sendNow((Transmission) any());
+    }
+
+    @Test
+    public void testEncodedStopSendsTheBatchAndEndsTheEncoder() throws Exception {
+        TelemetriesTransmitter mockSender = Mockito.mock(TelemetriesTransmitter.class);
+        Mockito.doReturn(true).when(mockSender).scheduleSend((TelemetriesTransmitter.TelemetriesFetcher) any(), anyLong(), (TimeUnit) anyObject());
+        Mockito.doReturn(true).when(mockSender).sendNow((Transmission) any());
+        Mockito.doReturn(true).when(mockSender).sendNow(anyCollectionOf(byte[].class));
+
+        GzipTelemetryBatchEncoder encoder = Mockito.spy(new GzipTelemetryBatchEncoder());
+        TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, createEnforcerWithCurrentValue(10), createDefaultSenderTimeoutEnforcer(), encoder);
+        testedBuffer.add("mockTelemetry".getBytes());
+        testedBuffer.stop();
+
+        Mockito.verify(mockSender, Mockito.times(1)).sendNow((Transmission) any());
+        Mockito.verify(encoder, Mockito.times(1)).end();
+
+        // The telemetries added after the stop are kept as is
+        testedBuffer.add("mockTelemetry".getBytes());
+        testedBuffer.flush();
+        Mockito.verify(mockSender, Mockito.times(1)).sendNow(anyCollectionOf(byte[].class));
+        Mockito.verify(encoder, Mockito.times(1)).add((byte[]) any());
+    }
+
     private void testFlushWithData(int expectedTelemetriesNumberInSendNow) {
         MockSender mockSender = new MockSender()
                 .setExpectedNumberOfScheduleSendCalls(1)
@@ -529,7 +611,7 @@ public final class TelemetryBufferTest {
         TelemetryBuffer testedBuffer = new TelemetryBuffer(mockSender, maxEnforcer, sendEnforcer);
 
         for (int i = 0; i < expectedTelemetriesNumberInSendNow; ++i) {
-            testedBuffer.add("mockTelemetry");
+            testedBuffer.add("mockTelemetry".getBytes());
         }
 
         testedBuffer.flush();
@@ -84,7 +84,7 @@ public final class TransmissionFileSystemOutputTest {
             }
 
             for (int i = 1; i <= 10; ++i) {
-                Transmission transmission = tested.fetchOldestFile();
+                Transmission transmission = tested.fetchOldest();
                 assertNotNull(transmission);
 
                 String iAsString = String.valueOf(i);
@@ -94,7 +94,7 @@ public final class TransmissionFileSystemOutputTest {
                 assertEquals(String.format("Wrong content %s", fetchedContent), fetchedContent, MOCK_CONTENT + iAsString);
             }
 
-            Transmission transmission = tested.fetchOldestFile();
+            Transmission transmission = tested.fetchOldest();
             assertNull(transmission);
         } finally {
             if (folder.exists()) {
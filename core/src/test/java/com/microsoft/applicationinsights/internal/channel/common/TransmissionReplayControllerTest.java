@@ -0,0 +1,110 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class TransmissionReplayControllerTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroMaxConcurrency() {
+        new TransmissionReplayController(0);
+    }
+
+    @Test
+    public void testStartsWithOneSendInFlight() {
+        TransmissionReplayController tested = new TransmissionReplayController(4);
+
+        assertEquals(1, tested.getConcurrency());
+        assertTrue(tested.canReplay());
+
+        tested.onSendStarted();
+        assertFalse(tested.canReplay());
+
+        tested.onSendEnded();
+        assertTrue(tested.canReplay());
+    }
+
+    @Test
+    public void testFastSendsIncreaseConcurrencyUpToMax() {
+        TransmissionReplayController tested = new TransmissionReplayController(4);
+        long initialPause = tested.getPauseInMillis();
+
+        succeed(tested, 100, 50);
+
+        assertEquals(4, tested.getConcurrency());
+        assertTrue(tested.getPauseInMillis() < initialPause);
+    }
+
+    @Test
+    public void testThrottlingHalvesConcurrency() {
+        TransmissionReplayController tested = new TransmissionReplayController(8);
+        succeed(tested, 100, 50);
+        assertEquals(8, tested.getConcurrency());
+
+        tested.onSendThrottled();
+
+        assertEquals(4, tested.getConcurrency());
+        assertTrue(tested.getPauseInMillis() >= 500);
+    }
+
+    @Test
+    public void testGrowingLatencySlowsDown() {
+        TransmissionReplayController tested = new TransmissionReplayController(8);
+        succeed(tested, 100, 50);
+        int concurrency = tested.getConcurrency();
+
+        succeed(tested, 10, 1000);
+
+        assertTrue(tested.getConcurrency() < concurrency);
+    }
+
+    @Test
+    public void testBlockedStartsOver() {
+        TransmissionReplayController tested = new TransmissionReplayController(8);
+        succeed(tested, 100, 50);
+
+        tested.onBlocked();
+
+        assertEquals(1, tested.getConcurrency());
+    }
+
+    @Test
+    public void testReplayedAreCounted() {
+        TransmissionReplayController tested = new TransmissionReplayController(1);
+
+        tested.onReplayed(new Transmission(new byte[10], "MockContentType", "MockEncodingType"));
+        tested.onReplayed(new Transmission(new byte[5], "MockContentType", "MockEncodingType"));
+
+        assertEquals(2, tested.getReplayedTransmissions());
+        assertEquals(15, tested.getReplayedBytes());
+    }
+
+    private static void succeed(TransmissionReplayController tested, int times, long latencyInMillis) {
+        for (int i = 0; i < times; ++i) {
+            tested.onSendSucceeded(latencyInMillis);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.internal.util.LocalFileSystemUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.commons.io.FileUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class TransmissionSegmentLogOutputTest {
+    private final static String TEMP_TEST_FOLDER = "TransmissionSegmentLogTests";
+    private final static String MOCK_CONTENT = "MockContent";
+    private final static String MOCK_CONTENT_TYPE_BASE = "MockContent";
+    private final static String MOCK_ENCODING_TYPE_BASE = "MockEncodingType";
+    private final static int SEGMENT_SIZE = 256;
+
+    private File folder;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = new File(LocalFileSystemUtils.getTempDir(), TEMP_TEST_FOLDER);
+        if (folder.exists()) {
+            FileUtils.deleteDirectory(folder);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (folder.exists()) {
+            FileUtils.deleteDirectory(folder);
+        }
+    }
+
+    @Test
+    public void testFetchFromEmptyLog() {
+        TransmissionSegmentLogOutput tested = new TransmissionSegmentLogOutput(folder.getPath());
+
+        assertNull(tested.fetchOldest());
+    }
+
+    @Test
+    public void testFetchOldestInOrder() {
+        TransmissionSegmentLogOutput tested = new TransmissionSegmentLogOutput(folder.getPath(), null, SEGMENT_SIZE);
+
+        sendTransmissions(tested, 1, 20);
+        assertTrue("Expected more than one segment", countSegments() > 1);
+
+        fetchAndVerify(tested, 1, 20);
+        assertNull(tested.fetchOldest());
+    }
+
+    @Test
+    public void testReadSegmentsAreDeleted() {
+        TransmissionSegmentLogOutput tested = new TransmissionSegmentLogOutput(folder.getPath(), null, SEGMENT_SIZE);
+
+        sendTransmissions(tested, 1, 20);
+        fetchAndVerify(tested, 1, 20);
+        assertNull(tested.fetchOldest());
+
+        assertEquals(1, countSegments());
+    }
+
+    @Test
+    public void testCountersArePersisted() {
+        TransmissionSegmentLogOutput tested = new TransmissionSegmentLogOutput(folder.getPath());
+
+        Transmission transmission = new Transmission(MOCK_CONTENT.getBytes(), MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE, 3);
+        transmission.setNumberOfSends(2);
+        transmission.setNumberOfPersistence(5);
+        assertTrue(tested.send(transmission));
+
+        Transmission fetched = tested.fetchOldest();
+        assertNotNull(fetched);
+        assertEquals(3, fetched.getVersion());
+        assertEquals(2, fetched.getNumberOfSends());
+        assertEquals(5, fetched.getNumberOfPersistence());
+    }
+
+    @Test
+    public void testTransmissionBiggerThanSegment() {
+        TransmissionSegmentLogOutput tested = new TransmissionSegmentLogOutput(folder.getPath(), null, SEGMENT_SIZE);
+
+        byte[] content = new byte[SEGMENT_SIZE * 3];
+        content[content.length - 1] = 7;
+        assertTrue(tested.send(new Transmission(content, MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE)));
+        sendTransmissions(tested, 1, 1);
+
+        Transmission fetched = tested.fetchOldest();
+        assertNotNull(fetched);
+        assertEquals(content.length, fetched.getContent().length);
+        assertEquals(7, fetched.getContent()[content.length - 1]);
+        fetchAndVerify(tested, 1, 1);
+    }
+
+    @Test
+    public void testNoRoomLeft() {
+        TransmissionSegmentLogOutput tested = new TransmissionSegmentLogOutput(folder.getPath(), "1", 512 * 1024);
+
+        byte[] content = new byte[300 * 1024];
+        assertTrue(tested.send(new Transmission(content, MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE)));
+        assertTrue(tested.send(new Transmission(content, MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE)));
+        assertFalse(tested.send(new Transmission(content, MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE)));
+
+        assertNotNull(tested.fetchOldest());
+        assertNotNull(tested.fetchOldest());
+        assertTrue(tested.send(new Transmission(content, MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE)));
+    }
+
+    @Test
+    public void testMinimalCapacityKeepsRolling() {
+        TransmissionSegmentLogOutput tested = new TransmissionSegmentLogOutput(folder.getPath(), "1");
+
+        byte[] content = new byte[100 * 1024];
+        for (int i = 0; i < 30; ++i) {
+            assertTrue(tested.send(new Transmission(content, MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE)));
+            assertNotNull(tested.fetchOldest());
+        }
+        assertNull(tested.fetchOldest());
+        assertTrue(countSegments() <= 2);
+    }
+
+    @Test
+    public void testReloadContinuesFromCheckpoint() {
+        TransmissionSegmentLogOutput tested = new TransmissionSegmentLogOutput(folder.getPath(), null, SEGMENT_SIZE);
+        sendTransmissions(tested, 1, 20);
+        fetchAndVerify(tested, 1, 7);
+        tested.stop(1L, TimeUnit.SECONDS);
+
+        TransmissionSegmentLogOutput reloaded = new TransmissionSegmentLogOutput(folder.getPath(), null, SEGMENT_SIZE);
+        sendTransmissions(reloaded, 21, 25);
+        fetchAndVerify(reloaded, 8, 25);
+        assertNull(reloaded.fetchOldest());
+    }
+
+    @Test
+    public void testCorruptedRecordIsSkipped() throws IOException {
+        TransmissionSegmentLogOutput tested = new TransmissionSegmentLogOutput(folder.getPath());
+        sendTransmissions(tested, 1, 3);
+        tested.stop(1L, TimeUnit.SECONDS);
+
+        // Flip the last byte of the first record's content
+        File segment = new File(folder, "Segment0000000000000000.seg");
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            int firstRecordLength = file.readInt();
+            file.seek(firstRecordLength - 1);
+            byte last = file.readByte();
+            file.seek(firstRecordLength - 1);
+            file.writeByte(last ^ 0xFF);
+        } finally {
+            file.close();
+        }
+
+        TransmissionSegmentLogOutput reloaded = new TransmissionSegmentLogOutput(folder.getPath());
+        fetchAndVerify(reloaded, 2, 3);
+        assertNull(reloaded.fetchOldest());
+    }
+
+    @Test
+    public void testTwoOutputsSharingOneFolder() {
+        TransmissionSegmentLogOutput first = new TransmissionSegmentLogOutput(folder.getPath(), null, SEGMENT_SIZE);
+        TransmissionSegmentLogOutput second = new TransmissionSegmentLogOutput(folder.getPath(), null, SEGMENT_SIZE);
+        try {
+            assertEquals(folder, first.getFolder());
+            assertFalse(folder.equals(second.getFolder()));
+
+            sendTransmissions(first, 1, 20);
+            sendTransmissions(second, 21, 40);
+
+            fetchAndVerify(first, 1, 20);
+            assertNull(first.fetchOldest());
+            fetchAndVerify(second, 21, 40);
+            assertNull(second.fetchOldest());
+        } finally {
+            first.stop(1L, TimeUnit.SECONDS);
+            second.stop(1L, TimeUnit.SECONDS);
+        }
+
+        // Once released, the folder can be owned by another instance
+        TransmissionSegmentLogOutput third = new TransmissionSegmentLogOutput(folder.getPath(), null, SEGMENT_SIZE);
+        try {
+            assertEquals(folder, third.getFolder());
+        } finally {
+            third.stop(1L, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void sendTransmissions(TransmissionSegmentLogOutput tested, int from, int to) {
+        for (int i = from; i <= to; ++i) {
+            String iAsString = String.valueOf(i);
+            assertTrue(tested.send(new Transmission((MOCK_CONTENT + iAsString).getBytes(), MOCK_CONTENT_TYPE_BASE + iAsString, MOCK_ENCODING_TYPE_BASE + iAsString)));
+        }
+    }
+
+    private static void fetchAndVerify(TransmissionSegmentLogOutput tested, int from, int to) {
+        for (int i = from; i <= to; ++i) {
+            Transmission transmission = tested.fetchOldest();
+            assertNotNull(transmission);
+
+            String iAsString = String.valueOf(i);
+            assertEquals(MOCK_CONTENT_TYPE_BASE + iAsString, transmission.getWebContentType());
+            assertEquals(MOCK_ENCODING_TYPE_BASE + iAsString, transmission.getWebContentEncodingType());
+            assertEquals(MOCK_CONTENT + iAsString, new String(transmission.getContent()));
+        }
+    }
+
+    private int countSegments() {
+        return FileUtils.listFiles(folder, new String[] {"seg"}, false).size();
+    }
+}
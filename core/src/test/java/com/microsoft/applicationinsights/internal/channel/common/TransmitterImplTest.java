@@ -172,7 +172,7 @@ public final class TransmitterImplTest {
                     }
                 });
             }
-            ArrayList<String> asJsons = toJson(telemetries);
+            ArrayList<byte[]> asJsons = toJson(telemetries);
 
             Transmission mockTransmission = new Transmission(new byte[1], MOCK_WEB_CONTENT_TYPE, MOCK_CONTENT_ENCODING_TYPE);
             Optional<Transmission> mockSerialize = Optional.absent();
@@ -259,7 +259,7 @@ public final class TransmitterImplTest {
                     }
                 });
             }
-            Collection<String> asJsons = toJson(telemetries);
+            Collection<byte[]> asJsons = toJson(telemetries);
 
             Transmission mockTransmission = new Transmission(new byte[1], MOCK_WEB_CONTENT_TYPE, MOCK_CONTENT_ENCODING_TYPE);
             Optional<Transmission> mockSerialize = Optional.absent();
@@ -299,14 +299,14 @@ public final class TransmitterImplTest {
         }
     }
 
-    private static ArrayList<String> toJson(List<Telemetry> telemetries) throws IOException {
+    private static ArrayList<byte[]> toJson(List<Telemetry> telemetries) throws IOException {
         StringWriter writer = new StringWriter();
         JsonTelemetryDataSerializer jsonWriter = new JsonTelemetryDataSerializer(writer);
-        ArrayList<String> asJsons = new ArrayList<String>();
+        ArrayList<byte[]> asJsons = new ArrayList<byte[]>();
         for (Telemetry telemetry : telemetries) {
             telemetry.serialize(jsonWriter);
             jsonWriter.close();
-            String asJson = writer.toString();
+            byte[] asJson = writer.toString().getBytes("UTF-8");
             asJsons.add(asJson);
             writer.getBuffer().setLength(0);
             jsonWriter.reset(writer);
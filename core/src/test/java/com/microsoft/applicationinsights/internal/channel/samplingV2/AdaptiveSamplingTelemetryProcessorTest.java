@@ -0,0 +1,190 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.samplingV2;
+
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.microsoft.applicationinsights.telemetry.TraceTelemetry;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class AdaptiveSamplingTelemetryProcessorTest {
+    private final static long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testSamplingPercentageIsHundredUnderTheTarget() {
+        assertEquals(100.0, AdaptiveSamplingTelemetryProcessor.computeSamplingPercentage(5.0, 5.0, 0.1), 0.0);
+        assertEquals(100.0, AdaptiveSamplingTelemetryProcessor.computeSamplingPercentage(0.0, 5.0, 0.1), 0.0);
+    }
+
+    @Test
+    public void testSamplingPercentageIsHundredDividedByWholeNumber() {
+        assertEquals(50.0, AdaptiveSamplingTelemetryProcessor.computeSamplingPercentage(10.0, 5.0, 0.1), 0.0);
+        assertEquals(100.0 / 3, AdaptiveSamplingTelemetryProcessor.computeSamplingPercentage(12.0, 5.0, 0.1), 0.0);
+    }
+
+    @Test
+    public void testSamplingPercentageIsNotLowerThanTheMinimum() {
+        assertEquals(0.1, AdaptiveSamplingTelemetryProcessor.computeSamplingPercentage(1000000.0, 5.0, 0.1), 1e-9);
+        assertEquals(100.0 / 3, AdaptiveSamplingTelemetryProcessor.computeSamplingPercentage(1000000.0, 5.0, 30.0), 0.0);
+    }
+
+    @Test
+    public void testAllTelemetriesAreKeptUnderTheTarget() {
+        AdaptiveSamplingTelemetryProcessor processor = new AdaptiveSamplingTelemetryProcessor(0L);
+        for (int second = 0; second < 10; ++second) {
+            for (int i = 0; i < 5; ++i) {
+                RequestTelemetry telemetry = createRequest("operation" + second + "-" + i);
+                assertTrue(processor.process(telemetry, second * ONE_SECOND + i));
+                assertEquals(100.0, telemetry.getSamplingPercentage(), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testPercentageIsReducedPerTypeAfterAnInterval() {
+        AdaptiveSamplingTelemetryProcessor processor = new AdaptiveSamplingTelemetryProcessor(0L);
+        for (int i = 0; i < 49; ++i) {
+            processor.process(createRequest("operation" + i), i);
+        }
+        processor.process(createDependency("operation"), 0L);
+
+        RequestTelemetry request = createRequest("late");
+        processor.process(request, ONE_SECOND);
+        RemoteDependencyTelemetry dependency = createDependency("late");
+        processor.process(dependency, ONE_SECOND);
+
+        assertEquals(10.0, request.getSamplingPercentage(), 0.0);
+        assertEquals(100.0, dependency.getSamplingPercentage(), 0.0);
+    }
+
+    @Test
+    public void testPercentageRecoversSlowly() {
+        AdaptiveSamplingTelemetryProcessor processor = new AdaptiveSamplingTelemetryProcessor(0L);
+        processor.setMovingAverageRatio("0.5");
+        for (int i = 0; i < 49; ++i) {
+            processor.process(createRequest("operation" + i), i);
+        }
+        processor.process(createRequest("operation"), ONE_SECOND);
+        assertEquals(10.0, processor.getTypeSampler(new RequestTelemetry()).getSamplingPercentage(), 0.0);
+
+        // One item in the second interval, the average only halves
+        processor.process(createRequest("operation"), 2 * ONE_SECOND);
+        assertEquals(20.0, processor.getTypeSampler(new RequestTelemetry()).getSamplingPercentage(), 0.0);
+    }
+
+    @Test
+    public void testTelemetriesOfAnOperationAreSampledTogether() {
+        AdaptiveSamplingTelemetryProcessor processor = new AdaptiveSamplingTelemetryProcessor(0L);
+        for (int i = 0; i < 20; ++i) {
+            processor.process(createRequest("warmup" + i), 0L);
+            processor.process(createTrace("warmup" + i), 0L);
+        }
+
+        int kept = 0;
+        for (int i = 0; i < 1000; ++i) {
+            String operationId = "operation" + i;
+            boolean requestKept = processor.process(createRequest(operationId), ONE_SECOND);
+            boolean traceKept = processor.process(createTrace(operationId), ONE_SECOND);
+            assertEquals(requestKept, traceKept);
+            if (requestKept) {
+                ++kept;
+            }
+        }
+
+        assertTrue(kept > 0);
+        assertTrue(kept < 1000);
+    }
+
+    @Test
+    public void testTelemetryKeptBeforeInitializationIsNotCountedAgain() {
+        AdaptiveSamplingTelemetryProcessor processor = new AdaptiveSamplingTelemetryProcessor(0L);
+        for (int i = 0; i < 5; ++i) {
+            RequestTelemetry telemetry = new RequestTelemetry();
+            assertFalse(processor.isSampledOut(telemetry, "operation" + i, 0L));
+            assertEquals(100.0, telemetry.getSamplingPercentage(), 0.0);
+            assertTrue(processor.process(telemetry, 0L));
+        }
+
+        // Only the five items were counted, so the rate is on the target
+        processor.process(createRequest("operation"), ONE_SECOND);
+        assertEquals(100.0, processor.getTypeSampler(new RequestTelemetry()).getSamplingPercentage(), 0.0);
+    }
+
+    @Test
+    public void testSamplingPercentageSetByUserIsRespected() {
+        AdaptiveSamplingTelemetryProcessor processor = new AdaptiveSamplingTelemetryProcessor(0L);
+        RequestTelemetry telemetry = new RequestTelemetry();
+        telemetry.setSamplingPercentage(1.0);
+
+        assertFalse(processor.isSampledOut(telemetry, "operation", 0L));
+        assertTrue(processor.process(telemetry, 0L));
+        assertEquals(1.0, telemetry.getSamplingPercentage(), 0.0);
+    }
+
+    @Test
+    public void testIllegalSettingKeepsTheDefault() {
+        AdaptiveSamplingTelemetryProcessor processor = new AdaptiveSamplingTelemetryProcessor(0L);
+        processor.setMaxRequestsPerSecond("-1");
+        processor.setMaxTracesPerSecond("abc");
+        for (int i = 0; i < 10; ++i) {
+            processor.process(createRequest("operation" + i), 0L);
+            processor.process(createTrace("operation" + i), 0L);
+        }
+        processor.process(createRequest("operation"), ONE_SECOND);
+        processor.process(createTrace("operation"), ONE_SECOND);
+
+        assertEquals(50.0, processor.getTypeSampler(new RequestTelemetry()).getSamplingPercentage(), 0.0);
+        assertEquals(50.0, processor.getTypeSampler(new TraceTelemetry()).getSamplingPercentage(), 0.0);
+    }
+
+    @Test
+    public void testTelemetryIsNotSampledBeforeTheFirstInterval() {
+        AdaptiveSamplingTelemetryProcessor processor = new AdaptiveSamplingTelemetryProcessor(0L);
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(processor.process(createRequest("operation" + i), ONE_SECOND - 1));
+        }
+    }
+
+    private static RequestTelemetry createRequest(String operationId) {
+        return withOperation(new RequestTelemetry(), operationId);
+    }
+
+    private static RemoteDependencyTelemetry createDependency(String operationId) {
+        return withOperation(new RemoteDependencyTelemetry("dependency"), operationId);
+    }
+
+    private static TraceTelemetry createTrace(String operationId) {
+        return withOperation(new TraceTelemetry("trace"), operationId);
+    }
+
+    private static <T extends Telemetry> T withOperation(T telemetry, String operationId) {
+        telemetry.getContext().getOperation().setId(operationId);
+        return telemetry;
+    }
+}
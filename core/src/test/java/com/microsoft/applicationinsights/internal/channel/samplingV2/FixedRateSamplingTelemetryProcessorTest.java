@@ -4,6 +4,8 @@ import com.microsoft.applicationinsights.TelemetryClient;
 import com.microsoft.applicationinsights.TelemetryConfiguration;
 import com.microsoft.applicationinsights.TestFramework.StubTelemetryChannel;
 import com.microsoft.applicationinsights.extensibility.TelemetryProcessor;
+import com.microsoft.applicationinsights.telemetry.EventTelemetry;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
 import com.microsoft.applicationinsights.telemetry.PageViewTelemetry;
 import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
 import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
@@ -68,6 +70,39 @@ public class FixedRateSamplingTelemetryProcessorTest {
         Assert.assertEquals(1, sentCount);
     }
 
+    @Test
+    public void samplingBeforeInitializationMatchesSampling() {
+        FixedRateSamplingTelemetryProcessor processor = new FixedRateSamplingTelemetryProcessor();
+        processor.setSamplingPercentage("25.0");
+        for (int i = 0; i < 1000; ++i) {
+            String operationId = "operation" + i;
+            RequestTelemetry requestTelemetry = new RequestTelemetry();
+            boolean sampledOutBeforeInitialization = processor.isSampledOut(requestTelemetry, operationId);
+            Assert.assertNull(requestTelemetry.getSamplingPercentage());
+
+            requestTelemetry.getContext().getOperation().setId(operationId);
+            Assert.assertEquals(sampledOutBeforeInitialization, !processor.process(requestTelemetry));
+        }
+    }
+
+    @Test
+    public void samplingBeforeInitializationKeepsNotApplicableTelemetry() {
+        FixedRateSamplingTelemetryProcessor processor = new FixedRateSamplingTelemetryProcessor();
+        processor.setSamplingPercentage("0.0");
+        processor.addToExcludedType("Request");
+
+        RequestTelemetry sampledByUser = new RequestTelemetry();
+        sampledByUser.setSamplingPercentage(100.0);
+
+        Assert.assertFalse(processor.isSampledOut(new RequestTelemetry(), "operation"));
+        Assert.assertFalse(processor.isSampledOut(new MetricTelemetry(), "operation"));
+        Assert.assertTrue(processor.isSampledOut(new EventTelemetry(), "operation"));
+
+        processor = new FixedRateSamplingTelemetryProcessor();
+        processor.setSamplingPercentage("0.0");
+        Assert.assertFalse(processor.isSampledOut(sampledByUser, "operation"));
+    }
+
     @Test
     public void dependencyTelemetryIsSubjectToSampling() {
         List<Telemetry> dependencyTelemetry = getListOfTelemetry("com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry",100);
@@ -0,0 +1,225 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.samplingV2;
+
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.channel.TelemetryChannel;
+import com.microsoft.applicationinsights.telemetry.Duration;
+import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.microsoft.applicationinsights.telemetry.TraceTelemetry;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public final class TailSamplingTelemetryProcessorTest {
+    private TelemetryChannel channel;
+    private TailSamplingTelemetryProcessor processor;
+
+    @Before
+    public void setUp() throws Throwable {
+        channel = mock(TelemetryChannel.class);
+        processor = new TailSamplingTelemetryProcessor(channel, 0L);
+        processor.setHealthyOperationsSamplingPercentage("0");
+    }
+
+    @Test
+    public void testFailedRequestKeepsTheOperation() {
+        TraceTelemetry trace = withOperation(new TraceTelemetry("trace"), "operation");
+        RemoteDependencyTelemetry dependency = withOperation(new RemoteDependencyTelemetry("dependency"), "operation");
+
+        assertFalse(processor.process(trace, 0L));
+        assertFalse(processor.process(dependency, 0L));
+        verify(channel, never()).send(any(Telemetry.class));
+
+        assertTrue(processor.process(createRequest("operation", 10, false), 0L));
+        verify(channel).send(trace);
+        verify(channel).send(dependency);
+        assertNull(trace.getSamplingPercentage());
+        assertEquals(0, processor.getBufferedItemsCount());
+    }
+
+    @Test
+    public void testHealthyOperationIsDropped() {
+        assertFalse(processor.process(withOperation(new TraceTelemetry("trace"), "operation"), 0L));
+        assertFalse(processor.process(createRequest("operation", 10, true), 0L));
+
+        verify(channel, never()).send(any(Telemetry.class));
+        assertEquals(0, processor.getBufferedItemsCount());
+    }
+
+    @Test
+    public void testExceptionKeepsTheOperation() {
+        ExceptionTelemetry exception = withOperation(new ExceptionTelemetry(new RuntimeException()), "operation");
+        assertFalse(processor.process(exception, 0L));
+
+        assertTrue(processor.process(createRequest("operation", 10, true), 0L));
+        verify(channel).send(exception);
+    }
+
+    @Test
+    public void testFailedDependencyKeepsTheOperation() {
+        RemoteDependencyTelemetry dependency = withOperation(new RemoteDependencyTelemetry("dependency"), "operation");
+        dependency.setSuccess(false);
+        assertFalse(processor.process(dependency, 0L));
+
+        assertTrue(processor.process(createRequest("operation", 10, true), 0L));
+        verify(channel).send(dependency);
+    }
+
+    @Test
+    public void testHealthyOperationIsSampled() throws Throwable {
+        processor.setHealthyOperationsSamplingPercentage("50");
+
+        int kept = 0;
+        for (int i = 0; i < 1000; ++i) {
+            String operationId = "operation" + i;
+            TraceTelemetry trace = withOperation(new TraceTelemetry("trace"), operationId);
+            processor.process(trace, 0L);
+            RequestTelemetry request = createRequest(operationId, 10, true);
+            if (processor.process(request, 0L)) {
+                ++kept;
+                assertEquals(50.0, request.getSamplingPercentage(), 0.0);
+                assertEquals(50.0, trace.getSamplingPercentage(), 0.0);
+                verify(channel).send(trace);
+            }
+        }
+
+        assertTrue(kept > 0);
+        assertTrue(kept < 1000);
+    }
+
+    @Test
+    public void testSlowRequestByThresholdKeepsTheOperation() throws Throwable {
+        processor.setSlowRequestThresholdInMillis("1000");
+
+        assertFalse(processor.process(createRequest("fast", 999, true), 0L));
+        assertTrue(processor.process(createRequest("slow", 1000, true), 0L));
+    }
+
+    @Test
+    public void testSlowRequestByPercentileKeepsTheOperation() {
+        for (int i = 1; i <= TailSamplingTelemetryProcessor.MIN_DURATION_SAMPLES; ++i) {
+            processor.process(createRequest("operation" + i, i, true), 0L);
+        }
+
+        assertFalse(processor.process(createRequest("fast", 50, true), 0L));
+        assertFalse(processor.process(createRequest("usual", 99, true), 0L));
+        assertTrue(processor.process(createRequest("slow", 101, true), 0L));
+    }
+
+    @Test
+    public void testLateTelemetriesFollowTheDecision() {
+        processor.process(createRequest("failed", 10, false), 0L);
+        processor.process(createRequest("healthy", 10, true), 0L);
+
+        assertTrue(processor.process(withOperation(new TraceTelemetry("trace"), "failed"), 0L));
+        assertFalse(processor.process(withOperation(new TraceTelemetry("trace"), "healthy"), 0L));
+        assertEquals(0, processor.getBufferedItemsCount());
+    }
+
+    @Test
+    public void testOperationWithoutRequestIsDecidedAfterTimeout() throws Throwable {
+        processor.setOperationTimeoutInSeconds("30");
+        ExceptionTelemetry exception = withOperation(new ExceptionTelemetry(new RuntimeException()), "background");
+        processor.process(exception, 0L);
+
+        processor.process(withOperation(new TraceTelemetry("trace"), "other"), TimeUnit.SECONDS.toNanos(29));
+        verify(channel, never()).send(any(Telemetry.class));
+
+        processor.process(withOperation(new TraceTelemetry("trace"), "other"), TimeUnit.SECONDS.toNanos(30));
+        verify(channel).send(exception);
+    }
+
+    @Test
+    public void testFailedRequestOverridesAnEarlierDrop() throws Throwable {
+        processor.setOperationTimeoutInSeconds("1");
+        assertFalse(processor.process(withOperation(new TraceTelemetry("trace"), "operation"), 0L));
+
+        // Decided without its request, and dropped
+        long later = TimeUnit.SECONDS.toNanos(2);
+        processor.process(withOperation(new TraceTelemetry("trace"), "other"), later);
+        assertFalse(processor.process(withOperation(new TraceTelemetry("trace"), "operation"), later));
+
+        assertTrue(processor.process(createRequest("operation", 10, false), later));
+        assertTrue(processor.process(withOperation(new TraceTelemetry("trace"), "operation"), later));
+    }
+
+    @Test
+    public void testBufferedTelemetriesAreBounded() throws Throwable {
+        processor.setMaxBufferedItems("16");
+        processor.setHealthyOperationsSamplingPercentage("100");
+
+        for (int i = 0; i < 1000; ++i) {
+            assertFalse(processor.process(withOperation(new TraceTelemetry("trace"), "operation" + i), 0L));
+            assertTrue(processor.getBufferedItemsCount() <= 16);
+        }
+
+        verify(channel, times(1000 - processor.getBufferedItemsCount())).send(any(Telemetry.class));
+    }
+
+    @Test
+    public void testTelemetryWithoutOperationIsNotBuffered() {
+        assertTrue(processor.process(new TraceTelemetry("trace"), 0L));
+        assertEquals(0, processor.getBufferedItemsCount());
+    }
+
+    @Test
+    public void testStopSendsBufferedOperations() {
+        ExceptionTelemetry exception = withOperation(new ExceptionTelemetry(new RuntimeException()), "failed");
+        processor.process(exception, 0L);
+        processor.process(withOperation(new TraceTelemetry("trace"), "healthy"), 0L);
+
+        processor.stop(1L, TimeUnit.SECONDS);
+
+        verify(channel).send(exception);
+        verify(channel, times(1)).send(any(Telemetry.class));
+        assertEquals(0, processor.getBufferedItemsCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalPercentileIsRefused() throws Throwable {
+        processor.setSlowRequestPercentile("101");
+    }
+
+    private static RequestTelemetry createRequest(String operationId, long durationInMillis, boolean success) {
+        RequestTelemetry request = new RequestTelemetry("request", null, new Duration(durationInMillis), success ? "200" : "500", success);
+        return withOperation(request, operationId);
+    }
+
+    private static <T extends Telemetry> T withOperation(T telemetry, String operationId) {
+        telemetry.getContext().getOperation().setId(operationId);
+        return telemetry;
+    }
+}
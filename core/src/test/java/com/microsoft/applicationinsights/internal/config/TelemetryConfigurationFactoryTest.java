@@ -24,6 +24,7 @@ package com.microsoft.applicationinsights.internal.config;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 import com.microsoft.applicationinsights.TelemetryConfiguration;
 import com.microsoft.applicationinsights.channel.concrete.inprocess.InProcessTelemetryChannel;
@@ -34,6 +35,7 @@ import com.microsoft.applicationinsights.internal.channel.stdout.StdOutChannel;
 
 import com.microsoft.applicationinsights.internal.annotation.PerformanceModule;
 import com.microsoft.applicationinsights.internal.perfcounter.PerformanceCounterConfigurationAware;
+import com.microsoft.applicationinsights.internal.perfcounter.PerformanceCounterContainer;
 import com.microsoft.applicationinsights.internal.processor.RequestTelemetryFilter;
 import com.microsoft.applicationinsights.internal.processor.SyntheticSourceFilter;
 import com.microsoft.applicationinsights.internal.reflect.ClassDataUtils;
@@ -488,6 +490,39 @@ public final class TelemetryConfigurationFactoryTest {
     }
 
 
+    @Test
+    public void testPerformanceCountersFrequencyAppliesWithInProcessChannel() throws Exception {
+        PerformanceCounterContainer.INSTANCE.stop(1L, TimeUnit.SECONDS);
+
+        AppInsightsConfigurationBuilder mockParser = createMockParser(true, false, true);
+        ApplicationInsightsXmlConfiguration appConf = mockParser.build(null);
+        appConf.setInstrumentationKey(MOCK_IKEY);
+        appConf.getPerformance().setCollectionFrequencyInSec(5);
+
+        TelemetryConfigurationFactory.INSTANCE.setPerformanceCountersSection("com.microsoft.applicationinsights.internal.config");
+        TelemetryConfiguration mockConfiguration = new TelemetryConfiguration();
+
+        try {
+            initializeWithFactory(mockParser, mockConfiguration);
+
+            assertTrue(mockConfiguration.getChannel() instanceof InProcessTelemetryChannel);
+
+            // The channel's counter started the container, whose collection timeout is bounded by the frequency it started with
+            Field collectorField = PerformanceCounterContainer.class.getDeclaredField("collector");
+            collectorField.setAccessible(true);
+            Object collector = collectorField.get(PerformanceCounterContainer.INSTANCE);
+            Field timeoutField = collector.getClass().getDeclaredField("collectionTimeoutInMillis");
+            timeoutField.setAccessible(true);
+            assertEquals(5000L, timeoutField.getLong(collector));
+        } finally {
+            if (mockConfiguration.getChannel() != null) {
+                mockConfiguration.getChannel().stop(1L, TimeUnit.SECONDS);
+            }
+            PerformanceCounterContainer.INSTANCE.stop(1L, TimeUnit.SECONDS);
+            PerformanceCounterContainer.INSTANCE.setCollectionFrequencyInSec(60);
+        }
+    }
+
     private void initializeWithFactory(AppInsightsConfigurationBuilder mockParser, TelemetryConfiguration mockConfiguration) {
         Field field = null;
         try {
@@ -0,0 +1,136 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class JmxObjectQueryTest {
+    private final static String PATTERN = "JSDKQueryTests:type=QueryStub,*";
+
+    public interface QueryStubMXBean {
+        long getCount();
+        MemoryUsage getUsage();
+        Map<String, Long> getTable();
+    }
+
+    public static class QueryStub implements QueryStubMXBean {
+        private final long count;
+
+        public QueryStub(long count) {
+            this.count = count;
+        }
+
+        @Override
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public MemoryUsage getUsage() {
+            return new MemoryUsage(0, count * 10, count * 20, count * 30);
+        }
+
+        @Override
+        public Map<String, Long> getTable() {
+            Map<String, Long> table = new HashMap<String, Long>();
+            table.put("row", count * 100);
+            return table;
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : server.queryNames(new ObjectName(PATTERN), null)) {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testRegularCompositeAndTabularAttributes() throws Exception {
+        register("first", 1);
+
+        JmxObjectQuery query = new JmxObjectQuery(PATTERN, Arrays.asList(
+                new JmxAttributeData("Count", "Count"),
+                new JmxAttributeData("Used", "Usage.used", "COMPOSITE"),
+                new JmxAttributeData("Committed", "Usage.committed", "COMPOSITE"),
+                new JmxAttributeData("Row", "Table.row.value", "TABULAR")));
+        Map<String, Collection<Object>> result = query.fetch();
+
+        assertEquals(4, result.size());
+        assertEquals(Arrays.<Object>asList(1L), result.get("Count"));
+        assertEquals(Arrays.<Object>asList(10L), result.get("Used"));
+        assertEquals(Arrays.<Object>asList(20L), result.get("Committed"));
+        assertEquals(Arrays.<Object>asList(100L), result.get("Row"));
+    }
+
+    @Test
+    public void testObjectNamesAreCachedUntilMBeansAreRegistered() throws Exception {
+        register("first", 1);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        JmxObjectQuery query = new JmxObjectQuery(PATTERN, Arrays.asList(new JmxAttributeData("Count", "Count")));
+
+        assertEquals(1, query.fetch().get("Count").size());
+        assertSame(JmxObjectNameCache.INSTANCE.queryNames(server, PATTERN), JmxObjectNameCache.INSTANCE.queryNames(server, PATTERN));
+
+        register("second", 2);
+        assertEquals(2, query.fetch().get("Count").size());
+
+        server.unregisterMBean(new ObjectName("JSDKQueryTests:type=QueryStub,name=first"));
+        assertEquals(Arrays.<Object>asList(2L), query.fetch().get("Count"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingObjectName() throws Exception {
+        new JmxObjectQuery(PATTERN, Arrays.asList(new JmxAttributeData("Count", "Count"))).fetch();
+    }
+
+    @Test
+    public void testMissingAttributeFailsWithItsReason() throws Exception {
+        register("first", 1);
+        try {
+            new JmxObjectQuery(PATTERN, Arrays.asList(new JmxAttributeData("Count", "Count"), new JmxAttributeData("Wrong", "Wrong"))).fetch();
+            assertTrue("The fetch should have failed", false);
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Wrong"));
+        }
+    }
+
+    private static void register(String name, long count) throws Exception {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new QueryStub(count), new ObjectName("JSDKQueryTests:type=QueryStub,name=" + name));
+    }
+}
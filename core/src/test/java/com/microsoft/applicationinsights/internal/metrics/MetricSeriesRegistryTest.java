@@ -0,0 +1,182 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.microsoft.applicationinsights.metrics.Metric;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class MetricSeriesRegistryTest {
+    private final static String MOCK_METRIC_NAME = "MockMetric";
+
+    @Test
+    public void testSameNameAndDimensionsReturnSameSeries() {
+        MetricSeriesRegistry tested = new MetricSeriesRegistry(100, 10, 4);
+
+        Map<String, String> dimensions = new HashMap<String, String>();
+        dimensions.put("Region", "West");
+        Map<String, String> sameDimensions = new TreeMap<String, String>(dimensions);
+
+        assertSame(tested.getMetric(null, MOCK_METRIC_NAME, dimensions), tested.getMetric(null, MOCK_METRIC_NAME, sameDimensions));
+        assertSame(tested.getMetric(null, MOCK_METRIC_NAME, Collections.<String, String>emptyMap()), tested.getMetric(null, MOCK_METRIC_NAME, new HashMap<String, String>()));
+        assertEquals(2, tested.getNumberOfSeries());
+    }
+
+    @Test
+    public void testSeriesDoesNotChangeWithCallerDimensions() {
+        MetricSeriesRegistry tested = new MetricSeriesRegistry(100, 10, 4);
+
+        Map<String, String> dimensions = new HashMap<String, String>();
+        dimensions.put("Region", "West");
+        Metric metric = tested.getMetric(null, MOCK_METRIC_NAME, dimensions);
+        dimensions.put("Region", "East");
+
+        assertEquals("West", metric.getDimensions().get("Region"));
+        assertNotSame(metric, tested.getMetric(null, MOCK_METRIC_NAME, dimensions));
+    }
+
+    @Test
+    public void testSeriesPerMetricCapUsesOverflowSeries() {
+        MetricSeriesRegistry tested = new MetricSeriesRegistry(100, 2, 4);
+
+        tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("1"));
+        tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("2"));
+        Metric overflow = tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("3"));
+
+        assertEquals("true", overflow.getDimensions().get(MetricSeriesRegistry.OVERFLOW_DIMENSION_NAME));
+        assertSame(overflow, tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("4")));
+        assertEquals(2, tested.getNumberOfSeries());
+        assertEquals(3, tested.getSeries().size());
+    }
+
+    @Test
+    public void testMaxSeriesCapDropsNewMetrics() {
+        MetricSeriesRegistry tested = new MetricSeriesRegistry(1, 10, 4);
+
+        tested.getMetric(null, MOCK_METRIC_NAME, Collections.<String, String>emptyMap());
+        Metric dropped = tested.getMetric(null, "OtherMetric", Collections.<String, String>emptyMap());
+        dropped.trackValue(1.0);
+
+        assertTrue(!(dropped instanceof MetricSeries));
+        assertEquals(1, tested.getSeries().size());
+    }
+
+    @Test
+    public void testIdleSeriesAreEvicted() {
+        MetricSeriesRegistry tested = new MetricSeriesRegistry(100, 10, 4);
+
+        MetricSeries used = (MetricSeries) tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("1"));
+        MetricSeries idle = (MetricSeries) tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("2"));
+        used.trackValue(1.0);
+
+        assertNotNull(used.snapshot());
+        assertNull(idle.snapshot());
+        assertNull(tested.evict(idle));
+
+        assertEquals(1, tested.getNumberOfSeries());
+        assertEquals(1, tested.getSeries().size());
+        assertSame(used, tested.getSeries().get(0));
+
+        // The metric goes away with its last series
+        assertNull(tested.evict(used));
+        assertEquals(0, tested.getNumberOfSeries());
+        assertTrue(tested.getSeries().isEmpty());
+    }
+
+    @Test
+    public void testEvictedSeriesDoNotCountAgainstTheCap() {
+        MetricSeriesRegistry tested = new MetricSeriesRegistry(100, 1, 4);
+
+        MetricSeries idle = (MetricSeries) tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("1"));
+        tested.evict(idle);
+        Metric metric = tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("2"));
+
+        assertEquals("2", metric.getDimensions().get("Id"));
+        assertEquals(1, tested.getSeries().size());
+    }
+
+    @Test
+    public void testValuesOfAnEvictedSeriesGoToItsReplacement() {
+        MetricSeriesRegistry tested = new MetricSeriesRegistry(100, 10, 4);
+
+        MetricSeries evicted = (MetricSeries) tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("1"));
+        tested.evict(evicted);
+        evicted.trackValue(3.0);
+
+        List<MetricSeries> series = tested.getSeries();
+        assertEquals(1, series.size());
+        assertNotSame(evicted, series.get(0));
+        assertEquals("1", series.get(0).getDimensions().get("Id"));
+        assertEquals(3.0, series.get(0).snapshot().getValue(), 0.0);
+        assertNull(evicted.snapshot());
+    }
+
+    @Test
+    public void testValuesOfAnEvictedOverflowSeriesGoToTheNewOverflowSeries() {
+        MetricSeriesRegistry tested = new MetricSeriesRegistry(100, 1, 4);
+
+        tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("1"));
+        MetricSeries evicted = (MetricSeries) tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("2"));
+        assertTrue(evicted.isOverflow());
+        tested.evict(evicted);
+        evicted.trackValue(3.0);
+
+        MetricSeries overflow = (MetricSeries) tested.getMetric(null, MOCK_METRIC_NAME, createDimensions("3"));
+        assertTrue(overflow.isOverflow());
+        assertNotSame(evicted, overflow);
+        assertEquals(3.0, overflow.snapshot().getValue(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyDimensions() {
+        MetricSeriesRegistry tested = new MetricSeriesRegistry(100, 10, 4);
+
+        Map<String, String> dimensions = new HashMap<String, String>();
+        for (int i = 0; i <= MetricSeriesRegistry.MAX_DIMENSIONS_PER_SERIES; ++i) {
+            dimensions.put("Dimension" + i, "Value");
+        }
+        tested.getMetric(null, MOCK_METRIC_NAME, dimensions);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyName() {
+        new MetricSeriesRegistry(100, 10, 4).getMetric(null, "", Collections.<String, String>emptyMap());
+    }
+
+    private static Map<String, String> createDimensions(String value) {
+        Map<String, String> dimensions = new HashMap<String, String>();
+        dimensions.put("Id", value);
+        return dimensions;
+    }
+}
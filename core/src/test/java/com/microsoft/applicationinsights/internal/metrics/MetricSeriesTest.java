@@ -0,0 +1,181 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class MetricSeriesTest {
+    private final static String MOCK_METRIC_NAME = "MockMetric";
+    private final static double DELTA = 0.0001;
+
+    @Test
+    public void testSnapshotWithoutValuesIsNull() {
+        MetricSeries tested = createSeries(new HashMap<String, String>(), 4);
+
+        assertNull(tested.snapshot());
+    }
+
+    @Test
+    public void testSnapshotAggregatesValues() {
+        MetricSeries tested = createSeries(new HashMap<String, String>(), 4);
+
+        tested.trackValue(2.0);
+        tested.trackValue(4.0);
+        tested.trackValue(6.0);
+
+        MetricTelemetry telemetry = tested.snapshot();
+        assertEquals(MOCK_METRIC_NAME, telemetry.getName());
+        assertEquals(12.0, telemetry.getValue(), DELTA);
+        assertEquals(Integer.valueOf(3), telemetry.getCount());
+        assertEquals(2.0, telemetry.getMin(), DELTA);
+        assertEquals(6.0, telemetry.getMax(), DELTA);
+        assertEquals(Math.sqrt(8.0 / 3.0), telemetry.getStandardDeviation(), DELTA);
+    }
+
+    @Test
+    public void testSnapshotStartsNewInterval() {
+        MetricSeries tested = createSeries(new HashMap<String, String>(), 4);
+
+        tested.trackValue(10.0);
+        tested.snapshot();
+        assertNull(tested.snapshot());
+
+        tested.trackValue(-1.0);
+        MetricTelemetry telemetry = tested.snapshot();
+        assertEquals(Integer.valueOf(1), telemetry.getCount());
+        assertEquals(-1.0, telemetry.getMin(), DELTA);
+        assertEquals(-1.0, telemetry.getMax(), DELTA);
+    }
+
+    @Test
+    public void testNotFiniteValuesAreIgnored() {
+        MetricSeries tested = createSeries(new HashMap<String, String>(), 4);
+
+        tested.trackValue(Double.NaN);
+        tested.trackValue(Double.POSITIVE_INFINITY);
+
+        assertNull(tested.snapshot());
+    }
+
+    @Test
+    public void testDimensionsAreSentAsProperties() {
+        Map<String, String> dimensions = new HashMap<String, String>();
+        dimensions.put("Region", "West");
+        MetricSeries tested = createSeries(dimensions, 1);
+
+        tested.trackValue(1.0);
+
+        MetricTelemetry telemetry = tested.snapshot();
+        assertEquals("West", telemetry.getProperties().get("Region"));
+    }
+
+    @Test
+    public void testConcurrentValuesAreAllCounted() throws InterruptedException {
+        final int numberOfThreads = 8;
+        final int valuesPerThread = 10000;
+        final MetricSeries tested = createSeries(new HashMap<String, String>(), 4);
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numberOfThreads; ++t) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < valuesPerThread; ++i) {
+                        tested.trackValue(1.0);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        MetricTelemetry telemetry = tested.snapshot();
+        assertEquals(Integer.valueOf(numberOfThreads * valuesPerThread), telemetry.getCount());
+        assertEquals(numberOfThreads * valuesPerThread, telemetry.getValue(), DELTA);
+        assertEquals(0.0, telemetry.getStandardDeviation(), DELTA);
+    }
+
+    @Test
+    public void testSnapshotsTakenWhileTrackingAreConsistent() throws InterruptedException {
+        final int numberOfThreads = 4;
+        final int valuesPerThread = 100000;
+        final MetricSeries tested = createSeries(new HashMap<String, String>(), 4);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numberOfThreads; ++t) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < valuesPerThread; ++i) {
+                        tested.trackValue(1.0);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        long total = 0;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+
+            MetricTelemetry telemetry = tested.snapshot();
+            if (telemetry != null) {
+                assertEquals(telemetry.getCount().doubleValue(), telemetry.getValue(), DELTA);
+                assertEquals(1.0, telemetry.getMin(), DELTA);
+                assertEquals(1.0, telemetry.getMax(), DELTA);
+                total += telemetry.getCount();
+            }
+        }
+
+        assertEquals(numberOfThreads * valuesPerThread, total);
+    }
+
+    private static MetricSeries createSeries(Map<String, String> dimensions, int stripes) {
+        return new MetricSeries(MOCK_METRIC_NAME, dimensions, null, stripes);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class PerformanceCounterCollectorTest {
+    private static class PerformanceCounterStub implements PerformanceCounter {
+        private final String id;
+        private final long sleepInMillis;
+        private final CountDownLatch release;
+        public volatile int counter = 0;
+
+        private PerformanceCounterStub(String id) {
+            this(id, 0, null);
+        }
+
+        private PerformanceCounterStub(String id, long sleepInMillis, CountDownLatch release) {
+            this.id = id;
+            this.sleepInMillis = sleepInMillis;
+            this.release = release;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public void report(TelemetryClient telemetryClient) {
+            ++counter;
+            try {
+                if (sleepInMillis > 0) {
+                    Thread.sleep(sleepInMillis);
+                }
+                if (release != null) {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    public void testCountersAreCollectedByTheirFrequency() {
+        PerformanceCounterStub everyTick = new PerformanceCounterStub("every");
+        PerformanceCounterStub everyThirdTick = new PerformanceCounterStub("third");
+        List<ScheduledPerformanceCounter> counters = schedule(everyTick, 1, everyThirdTick, 3);
+
+        PerformanceCounterCollector tested = new PerformanceCounterCollector(null, 1000);
+        for (long tick = 0; tick < 7; ++tick) {
+            tested.collect(counters, tick, null);
+        }
+
+        assertEquals(7, everyTick.counter);
+        assertEquals(3, everyThirdTick.counter);
+    }
+
+    @Test
+    public void testSeriallyCountersAfterTheTimeoutAreDeferred() {
+        PerformanceCounterStub slow = new PerformanceCounterStub("slow", 150, null);
+        PerformanceCounterStub fast = new PerformanceCounterStub("fast");
+        List<ScheduledPerformanceCounter> counters = schedule(slow, 5, fast, 5);
+
+        PerformanceCounterCollector tested = new PerformanceCounterCollector(null, 100);
+
+        // Tick 0 starts with the slow counter, the fast one passes the deadline and is deferred to tick 1
+        assertEquals(1, tested.collect(counters, 0, null));
+        assertEquals(1, slow.counter);
+        assertEquals(0, fast.counter);
+
+        assertEquals(0, tested.collect(counters, 1, null));
+        assertEquals(1, slow.counter);
+        assertEquals(1, fast.counter);
+
+        MetricTelemetry cost = counters.get(1).getAndResetCollectionCost();
+        assertNotNull(cost);
+        assertEquals("1", cost.getProperties().get(ScheduledPerformanceCounter.COLLECTION_COST_SKIPPED_PROPERTY));
+    }
+
+    @Test
+    public void testInParallelSlowCounterDoesNotDelayTheOthers() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch release = new CountDownLatch(1);
+            PerformanceCounterStub stuck = new PerformanceCounterStub("stuck", 0, release);
+            PerformanceCounterStub fast = new PerformanceCounterStub("fast");
+            List<ScheduledPerformanceCounter> counters = schedule(stuck, 1, fast, 1);
+
+            PerformanceCounterCollector tested = new PerformanceCounterCollector(executor, 100);
+            long start = System.nanoTime();
+            assertEquals(1, tested.collect(counters, 0, null));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+            assertEquals(1, fast.counter);
+
+            // The stuck counter is still running, so it is skipped instead of being collected twice at once
+            tested.collect(counters, 1, null);
+            assertEquals(1, stuck.counter);
+            assertEquals(2, fast.counter);
+
+            release.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+            MetricTelemetry cost = counters.get(0).getAndResetCollectionCost();
+            assertNotNull(cost);
+            assertEquals(Integer.valueOf(1), cost.getCount());
+            assertEquals("1", cost.getProperties().get(ScheduledPerformanceCounter.COLLECTION_COST_SKIPPED_PROPERTY));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailingCounterDoesNotStopTheCollection() {
+        PerformanceCounter failing = Mockito.mock(PerformanceCounter.class);
+        Mockito.doReturn("failing").when(failing).getId();
+        Mockito.doThrow(new RuntimeException("mock")).when(failing).report(Mockito.any(TelemetryClient.class));
+        PerformanceCounterStub other = new PerformanceCounterStub("other");
+        List<ScheduledPerformanceCounter> counters = schedule(failing, 1, other, 1);
+
+        new PerformanceCounterCollector(null, 1000).collect(counters, 0, null);
+
+        assertEquals(1, other.counter);
+        MetricTelemetry cost = counters.get(0).getAndResetCollectionCost();
+        assertEquals("1", cost.getProperties().get(ScheduledPerformanceCounter.COLLECTION_COST_FAILED_PROPERTY));
+    }
+
+    @Test
+    public void testCollectionCostIsReportedOncePerCounter() {
+        PerformanceCounterStub first = new PerformanceCounterStub("first");
+        PerformanceCounterStub second = new PerformanceCounterStub("second");
+        List<ScheduledPerformanceCounter> counters = schedule(first, 1, second, 2);
+
+        PerformanceCounterCollector tested = new PerformanceCounterCollector(null, 1000);
+        tested.collect(counters, 0, null);
+        tested.collect(counters, 1, null);
+
+        TelemetryClient telemetryClient = Mockito.mock(TelemetryClient.class);
+        PerformanceCounterCollector.reportCollectionCost(counters, telemetryClient);
+        Mockito.verify(telemetryClient, Mockito.times(2)).track(Mockito.any(MetricTelemetry.class));
+
+        MetricTelemetry firstCost = counters.get(0).getAndResetCollectionCost();
+        assertNull(firstCost);
+
+        tested.collect(counters, 2, null);
+        MetricTelemetry secondCost = counters.get(1).getAndResetCollectionCost();
+        assertEquals(ScheduledPerformanceCounter.COLLECTION_COST_METRIC_NAME, secondCost.getName());
+        assertEquals(Integer.valueOf(1), secondCost.getCount());
+        assertEquals("second", secondCost.getProperties().get(ScheduledPerformanceCounter.COLLECTION_COST_ID_PROPERTY));
+    }
+
+    private static List<ScheduledPerformanceCounter> schedule(PerformanceCounter first, int firstTicks, PerformanceCounter second, int secondTicks) {
+        List<ScheduledPerformanceCounter> counters = new ArrayList<ScheduledPerformanceCounter>();
+        counters.add(new ScheduledPerformanceCounter(first, firstTicks));
+        counters.add(new ScheduledPerformanceCounter(second, secondTicks));
+        return counters;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class UnixCGroupPerformanceCounterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCGroupV2() throws IOException {
+        File group = folder.newFolder("v2");
+        write(group, "cpu.max", "150000 100000");
+        write(group, "cpu.stat", "usage_usec 1000\nuser_usec 600\nsystem_usec 400\nnr_periods 100\nnr_throttled 10\nthrottled_usec 5000");
+        write(group, "memory.max", "536870912");
+        write(group, "memory.current", "268435456");
+        UnixCGroupPerformanceCounter tested = new UnixCGroupPerformanceCounter(true, group, group);
+
+        Map<String, Double> metrics = report(tested);
+        assertEquals(1.5, metrics.get(UnixCGroupPerformanceCounter.CPU_LIMIT_METRIC_NAME), 0.0);
+        assertEquals(512.0, metrics.get(UnixCGroupPerformanceCounter.MEMORY_LIMIT_METRIC_NAME), 0.0);
+        assertEquals(256.0, metrics.get(UnixCGroupPerformanceCounter.MEMORY_USAGE_METRIC_NAME), 0.0);
+        assertFalse(metrics.containsKey(UnixCGroupPerformanceCounter.CPU_THROTTLED_PERIODS_METRIC_NAME));
+
+        write(group, "cpu.stat", "usage_usec 2000\nnr_periods 200\nnr_throttled 35\nthrottled_usec 25000");
+        metrics = report(tested);
+        assertEquals(25.0, metrics.get(UnixCGroupPerformanceCounter.CPU_THROTTLED_PERIODS_METRIC_NAME), 0.0);
+        assertEquals(20.0, metrics.get(UnixCGroupPerformanceCounter.CPU_THROTTLED_TIME_METRIC_NAME), 0.0);
+    }
+
+    @Test
+    public void testCGroupV2WithoutLimits() throws IOException {
+        File group = folder.newFolder("v2");
+        write(group, "cpu.max", "max 100000");
+        write(group, "memory.max", "max");
+        write(group, "memory.current", "1048576");
+        UnixCGroupPerformanceCounter tested = new UnixCGroupPerformanceCounter(true, group, group);
+
+        Map<String, Double> metrics = report(tested);
+        assertEquals(1, metrics.size());
+        assertEquals(1.0, metrics.get(UnixCGroupPerformanceCounter.MEMORY_USAGE_METRIC_NAME), 0.0);
+    }
+
+    @Test
+    public void testCGroupV1() throws IOException {
+        File cpu = folder.newFolder("cpu");
+        File memory = folder.newFolder("memory");
+        write(cpu, "cpu.cfs_quota_us", "50000");
+        write(cpu, "cpu.cfs_period_us", "100000");
+        write(cpu, "cpu.stat", "nr_periods 10\nnr_throttled 0\nthrottled_time 0");
+        write(memory, "memory.limit_in_bytes", "9223372036854771712");
+        write(memory, "memory.usage_in_bytes", "2097152");
+        UnixCGroupPerformanceCounter tested = new UnixCGroupPerformanceCounter(false, cpu, memory);
+
+        Map<String, Double> metrics = report(tested);
+        assertEquals(0.5, metrics.get(UnixCGroupPerformanceCounter.CPU_LIMIT_METRIC_NAME), 0.0);
+        assertFalse(metrics.containsKey(UnixCGroupPerformanceCounter.MEMORY_LIMIT_METRIC_NAME));
+        assertEquals(2.0, metrics.get(UnixCGroupPerformanceCounter.MEMORY_USAGE_METRIC_NAME), 0.0);
+
+        write(cpu, "cpu.stat", "nr_periods 20\nnr_throttled 5\nthrottled_time 3000000");
+        metrics = report(tested);
+        assertEquals(50.0, metrics.get(UnixCGroupPerformanceCounter.CPU_THROTTLED_PERIODS_METRIC_NAME), 0.0);
+        assertEquals(3.0, metrics.get(UnixCGroupPerformanceCounter.CPU_THROTTLED_TIME_METRIC_NAME), 0.0);
+    }
+
+    @Test
+    public void testReadProcessCGroupPaths() throws IOException {
+        File file = write(folder.getRoot(), "cgroup", "12:memory:/kubepods/pod1\n4:cpu,cpuacct:/kubepods/pod2\n1:name=systemd:/\n0::/unified");
+
+        Map<String, String> paths = UnixCGroupPerformanceCounter.readProcessCGroupPaths(file);
+        assertEquals("/kubepods/pod1", paths.get("memory"));
+        assertEquals("/kubepods/pod2", paths.get("cpu"));
+        assertEquals("/kubepods/pod2", paths.get("cpuacct"));
+        assertEquals("/unified", paths.get(""));
+        assertTrue(UnixCGroupPerformanceCounter.readProcessCGroupPaths(new File(folder.getRoot(), "missing")).isEmpty());
+    }
+
+    private static Map<String, Double> report(UnixCGroupPerformanceCounter tested) {
+        TelemetryClient telemetryClient = Mockito.mock(TelemetryClient.class);
+        tested.report(telemetryClient);
+
+        ArgumentCaptor<Telemetry> captor = ArgumentCaptor.forClass(Telemetry.class);
+        Mockito.verify(telemetryClient, Mockito.atLeast(0)).track(captor.capture());
+
+        Map<String, Double> metrics = new HashMap<String, Double>();
+        for (Telemetry telemetry : captor.getAllValues()) {
+            MetricTelemetry mt = (MetricTelemetry) telemetry;
+            metrics.put(mt.getName(), mt.getValue());
+        }
+        return metrics;
+    }
+
+    private static File write(File folder, String name, String content) throws IOException {
+        File file = new File(folder, name);
+        FileUtils.writeStringToFile(file, content + "\n");
+        return file;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class UnixProcFileReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParsesNumbersOfLines() throws IOException {
+        UnixProcFileReader reader = createReader("cpu  10 0 20 300\nctxt 12345\n\nquota -1\n", 4096);
+        reader.read();
+
+        assertTrue(reader.nextLine());
+        assertTrue(reader.skipPrefix("cpu".getBytes()));
+        assertFalse(reader.nextIsDigit());
+        assertEquals(10, reader.nextLong(-1));
+        assertEquals(0, reader.nextLong(-1));
+        assertEquals(20, reader.nextLong(-1));
+        assertEquals(300, reader.nextLong(-1));
+        assertEquals(-1, reader.nextLong(-1));
+
+        assertTrue(reader.nextLine());
+        assertFalse(reader.skipPrefix("cpu".getBytes()));
+        assertTrue(reader.skipPrefix("ctxt".getBytes()));
+        assertEquals(12345, reader.nextLong(-1));
+
+        assertTrue(reader.nextLine());
+        assertEquals(-7, reader.nextLong(-7));
+
+        assertTrue(reader.nextLine());
+        assertEquals(-1, reader.nextLong(0));
+
+        assertFalse(reader.nextLine());
+    }
+
+    @Test
+    public void testReadsTheFileAgain() throws IOException {
+        File file = folder.newFile("value");
+        UnixProcFileReader reader = new UnixProcFileReader(file, 64);
+
+        FileUtils.writeStringToFile(file, "1000\n");
+        reader.read();
+        assertTrue(reader.nextLine());
+        assertEquals(1000, reader.nextLong(-1));
+
+        FileUtils.writeStringToFile(file, "2\n");
+        reader.read();
+        assertTrue(reader.nextLine());
+        assertEquals(2, reader.nextLong(-1));
+        assertFalse(reader.nextLine());
+    }
+
+    @Test
+    public void testBufferGrowsForLargeFiles() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            content.append("line ").append(i).append('\n');
+        }
+        UnixProcFileReader reader = createReader(content.toString(), 16);
+        reader.read();
+
+        int lines = 0;
+        while (reader.nextLine()) {
+            assertEquals(lines, reader.nextLong(-1));
+            ++lines;
+        }
+        assertEquals(100, lines);
+    }
+
+    @Test
+    public void testTooLargeNumberIsMaxValue() throws IOException {
+        UnixProcFileReader reader = createReader("9223372036854771712\n99999999999999999999999\n", 4096);
+        reader.read();
+
+        assertTrue(reader.nextLine());
+        assertEquals(9223372036854771712L, reader.nextLong(-1));
+        assertTrue(reader.nextLine());
+        assertEquals(Long.MAX_VALUE, reader.nextLong(-1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingFile() throws IOException {
+        new UnixProcFileReader(new File(folder.getRoot(), "missing"), 64).read();
+    }
+
+    private UnixProcFileReader createReader(String content, int initialCapacity) throws IOException {
+        File file = folder.newFile();
+        FileUtils.writeStringToFile(file, content);
+        return new UnixProcFileReader(file, initialCapacity);
+    }
+}
@@ -21,40 +21,82 @@
 
 package com.microsoft.applicationinsights.internal.perfcounter;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static org.junit.Assert.*;
 
 public final class UnixProcessIOtParserTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private UnixProcFileReader reader;
+
     @Test
-    public void testProcess() {
+    public void testProcess() throws IOException {
+        File file = folder.newFile("io");
+        FileUtils.writeLines(file, Arrays.asList("rchar: 1661777", "wchar: 7431", "syscr: 1240", "syscw: 123",
+                "read_bytes: 7335936", "write_bytes: 12288", "cancelled_write_bytes: 0", "write_bytes: 12288"));
+        reader = new UnixProcFileReader(file, 16);
+        reader.read();
+
         UnixProcessIOtParser parser = new UnixProcessIOtParser();
 
-        parser.process("rchar: 1661777");
+        process(parser);
         assertFalse(parser.done());
 
-        parser.process("wchar: 7431");
+        process(parser);
         assertFalse(parser.done());
 
-        parser.process("syscr: 1240");
+        process(parser);
         assertFalse(parser.done());
 
-        parser.process("syscw: 123");
+        process(parser);
         assertFalse(parser.done());
 
-        parser.process("read_bytes: 7335936");
+        process(parser);
         assertFalse(parser.done());
 
-        parser.process("write_bytes: 12288");
+        process(parser);
         assertTrue(parser.done());
         assertEquals(7335936 + 12288, parser.getValue(), 0.0);
 
-        parser.process("cancelled_write_bytes: 0");
+        process(parser);
         assertTrue(parser.done());
         assertEquals(7335936 + 12288, parser.getValue(), 0.0);
 
-        parser.process("write_bytes: 12288");
+        process(parser);
         assertTrue(parser.done());
         assertEquals(7335936 + 12288, parser.getValue(), 0.0);
     }
+
+    @Test
+    public void testReset() throws IOException {
+        File file = folder.newFile("io");
+        FileUtils.writeLines(file, Arrays.asList("read_bytes: 100", "write_bytes: 20"));
+        reader = new UnixProcFileReader(file, 64);
+        UnixProcessIOtParser parser = new UnixProcessIOtParser();
+
+        for (int i = 0; i < 2; ++i) {
+            parser.reset();
+            reader.read();
+            while (!parser.done() && reader.nextLine()) {
+                parser.process(reader);
+            }
+
+            assertTrue(parser.done());
+            assertEquals(120, parser.getValue(), 0.0);
+        }
+    }
+
+    private void process(UnixProcessIOtParser parser) {
+        assertTrue(reader.nextLine());
+        parser.process(reader);
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.telemetry.PerformanceCounterTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class UnixTotalCpuPerformanceCounterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReportsTotalAndPerCoreUsageAndContextSwitches() throws IOException, InterruptedException {
+        File stat = folder.newFile("stat");
+        FileUtils.writeStringToFile(stat,
+                "cpu  100 0 100 800 0 0 0 0 0 0\n" +
+                "cpu0 50 0 50 400 0 0 0 0 0 0\n" +
+                "cpu1 50 0 50 400 0 0 0 0 0 0\n" +
+                "intr 1 2 3\n" +
+                "ctxt 1000\n");
+        UnixTotalCpuPerformanceCounter tested = new UnixTotalCpuPerformanceCounter(stat.getAbsolutePath());
+
+        TelemetryClient telemetryClient = Mockito.mock(TelemetryClient.class);
+        tested.report(telemetryClient);
+        Mockito.verifyZeroInteractions(telemetryClient);
+
+        // core 0 is fully busy, core 1 idle
+        FileUtils.writeStringToFile(stat,
+                "cpu  200 0 100 900 0 0 0 0 0 0\n" +
+                "cpu0 150 0 50 400 0 0 0 0 0 0\n" +
+                "cpu1 50 0 50 500 0 0 0 0 0 0\n" +
+                "intr 1 2 3\n" +
+                "ctxt 3000\n");
+        Thread.sleep(10);
+        tested.report(telemetryClient);
+
+        ArgumentCaptor<Telemetry> captor = ArgumentCaptor.forClass(Telemetry.class);
+        Mockito.verify(telemetryClient, Mockito.times(4)).track(captor.capture());
+        List<Telemetry> telemetries = captor.getAllValues();
+
+        assertCounter(telemetries.get(0), Constants.CPU_PC_COUNTER_NAME, Constants.INSTANCE_NAME_TOTAL);
+        assertEquals(50.0, ((PerformanceCounterTelemetry) telemetries.get(0)).getValue(), 0.0);
+        assertCounter(telemetries.get(1), Constants.CPU_PC_COUNTER_NAME, "0");
+        assertEquals(100.0, ((PerformanceCounterTelemetry) telemetries.get(1)).getValue(), 0.0);
+        assertCounter(telemetries.get(2), Constants.CPU_PC_COUNTER_NAME, "1");
+        assertEquals(0.0, ((PerformanceCounterTelemetry) telemetries.get(2)).getValue(), 0.0);
+
+        assertCounter(telemetries.get(3), Constants.CONTEXT_SWITCHES_PC_COUNTER_NAME, "");
+        assertTrue(((PerformanceCounterTelemetry) telemetries.get(3)).getValue() > 0.0);
+    }
+
+    private static void assertCounter(Telemetry telemetry, String counterName, String instanceName) {
+        PerformanceCounterTelemetry pc = (PerformanceCounterTelemetry) telemetry;
+        assertEquals(counterName, pc.getCounterName());
+        assertEquals(instanceName, pc.getInstanceName());
+    }
+}
@@ -21,31 +21,69 @@
 
 package com.microsoft.applicationinsights.internal.perfcounter;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static org.junit.Assert.*;
 
 public final class UnixTotalMemInfoReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private UnixProcFileReader fileReader;
+
     @Test
-    public void testProcess() {
+    public void testProcess() throws IOException {
+        File file = folder.newFile("meminfo");
+        FileUtils.writeLines(file, Arrays.asList("MemTotal:        3973736 kB", "MemFree:          431064 kB",
+                "Buffers:           46604 kB", "Cached:           494648 kB", "Cached:           494648 kB"));
+        fileReader = new UnixProcFileReader(file, 4096);
+        fileReader.read();
+
         UnixTotalMemInfoParser reader = new UnixTotalMemInfoParser();
-        reader.process("MemTotal:        3973736 kB");
+        process(reader);
         assertTrue(!reader.done());
 
-        reader.process("MemFree:          431064 kB");
+        process(reader);
         assertTrue(!reader.done());
 
-        reader.process("Buffers:           46604 kB");
+        process(reader);
         assertTrue(!reader.done());
 
-        reader.process("Cached:           494648 kB");
+        process(reader);
         assertTrue(reader.done());
 
         assertEquals(972316, reader.getValue(), 0.0);
 
-        reader.process("Cached:           494648 kB");
+        process(reader);
         assertTrue(reader.done());
 
         assertEquals(972316, reader.getValue(), 0.0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSwapCachedIsNotCached() throws IOException {
+        File file = folder.newFile("meminfo");
+        FileUtils.writeLines(file, Arrays.asList("MemFree: 10 kB", "Buffers: 20 kB", "SwapCached: 1000 kB", "Cached: 30 kB"));
+        fileReader = new UnixProcFileReader(file, 4096);
+        fileReader.read();
+
+        UnixTotalMemInfoParser reader = new UnixTotalMemInfoParser();
+        while (!reader.done() && fileReader.nextLine()) {
+            reader.process(fileReader);
+        }
+
+        assertEquals(60, reader.getValue(), 0.0);
+    }
+
+    private void process(UnixTotalMemInfoParser reader) {
+        assertTrue(fileReader.nextLine());
+        reader.process(fileReader);
+    }
+}
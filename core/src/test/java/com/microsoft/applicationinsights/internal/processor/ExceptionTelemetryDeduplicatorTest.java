@@ -0,0 +1,182 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.processor;
+
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.channel.TelemetryChannel;
+import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.microsoft.applicationinsights.telemetry.TraceTelemetry;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class ExceptionTelemetryDeduplicatorTest {
+    private static final String MESSAGE_PROPERTY_NAME = "MockMessage";
+    private static final long INTERVAL_IN_NANOS = TimeUnit.SECONDS.toNanos(ExceptionTelemetryDeduplicator.DEFAULT_INTERVAL_IN_SECONDS);
+
+    @Test
+    public void testOtherTelemetriesAreNotFiltered() {
+        ExceptionTelemetryDeduplicator tested = new ExceptionTelemetryDeduplicator();
+
+        assertTrue(tested.process(null, 0));
+        assertTrue(tested.process(new TraceTelemetry("mock"), 0));
+        assertTrue(tested.process(new TraceTelemetry("mock"), 0));
+    }
+
+    @Test
+    public void testFirstOccurrenceIsSentWithCount() {
+        ExceptionTelemetryDeduplicator tested = new ExceptionTelemetryDeduplicator();
+        ExceptionTelemetry telemetry = createTelemetry("mock");
+
+        assertTrue(tested.process(telemetry, 0));
+        assertEquals(1.0, telemetry.getMetrics().get(ExceptionTelemetryDeduplicator.OCCURRENCE_COUNT_METRIC_NAME), 0.0);
+    }
+
+    @Test
+    public void testRepeatedOccurrencesAreCountedWhenTheIntervalEnds() {
+        TelemetryChannel channel = mock(TelemetryChannel.class);
+        ExceptionTelemetryDeduplicator tested = new ExceptionTelemetryDeduplicator(channel);
+
+        long[] times = new long[] { 0, 1, 2, 3, 4, 5 };
+        boolean[] sent = new boolean[times.length];
+        ExceptionTelemetry[] telemetries = new ExceptionTelemetry[times.length];
+        for (int i = 0; i < times.length; ++i) {
+            telemetries[i] = createTelemetry("mock" + i);
+            sent[i] = tested.process(telemetries[i], times[i]);
+        }
+
+        assertTrue(sent[0]);
+        for (int i = 1; i <= 5; ++i) {
+            assertFalse(sent[i]);
+        }
+
+        tested.flush(INTERVAL_IN_NANOS - 1);
+        verify(channel, never()).send(any(Telemetry.class));
+
+        tested.flush(INTERVAL_IN_NANOS);
+        ExceptionTelemetry summary = verifySummarySent(channel, "mock1", 5.0);
+        assertNull(summary.getThrowable());
+
+        // Nothing is pending anymore, the kind is forgotten once its interval is over
+        tested.flush(INTERVAL_IN_NANOS + 1);
+        verify(channel, times(1)).send(any(Telemetry.class));
+        assertEquals(0, tested.getTrackedExceptionsCount());
+    }
+
+    @Test
+    public void testEndedIntervalIsSentBeforeTheNextOccurrence() {
+        TelemetryChannel channel = mock(TelemetryChannel.class);
+        ExceptionTelemetryDeduplicator tested = new ExceptionTelemetryDeduplicator(channel);
+        ExceptionTelemetry[] telemetries = createSameTelemetries(3);
+        ExceptionTelemetry suppressed = telemetries[1];
+        ExceptionTelemetry next = telemetries[2];
+
+        assertTrue(tested.process(telemetries[0], 0));
+        assertFalse(tested.process(suppressed, 1));
+
+        assertTrue(tested.process(next, INTERVAL_IN_NANOS));
+        verifySummarySent(channel, "mock1", 1.0);
+        assertNull(suppressed.getMetrics().get(ExceptionTelemetryDeduplicator.OCCURRENCE_COUNT_METRIC_NAME));
+        assertEquals(1.0, next.getMetrics().get(ExceptionTelemetryDeduplicator.OCCURRENCE_COUNT_METRIC_NAME), 0.0);
+    }
+
+    @Test
+    public void testStopSendsPendingCounts() {
+        TelemetryChannel channel = mock(TelemetryChannel.class);
+        ExceptionTelemetryDeduplicator tested = new ExceptionTelemetryDeduplicator(channel);
+        ExceptionTelemetry[] telemetries = createSameTelemetries(2);
+        ExceptionTelemetry suppressed = telemetries[1];
+
+        long now = System.nanoTime();
+        assertTrue(tested.process(telemetries[0], now));
+        assertFalse(tested.process(suppressed, now));
+
+        tested.stop(1L, TimeUnit.SECONDS);
+        verifySummarySent(channel, "mock1", 1.0);
+    }
+
+    @Test
+    public void testDifferentExceptionsAreNotDeduplicated() {
+        ExceptionTelemetryDeduplicator tested = new ExceptionTelemetryDeduplicator();
+
+        assertTrue(tested.process(createTelemetry("mock"), 0));
+        assertTrue(tested.process(new ExceptionTelemetry(new IllegalStateException("mock")), 0));
+        assertTrue(tested.process(new ExceptionTelemetry(new IllegalArgumentException("mock")), 0));
+    }
+
+    @Test
+    public void testSetIntervalInSeconds() throws Throwable {
+        ExceptionTelemetryDeduplicator tested = new ExceptionTelemetryDeduplicator(mock(TelemetryChannel.class));
+        tested.setIntervalInSeconds(" 1 ");
+
+        long[] times = new long[] { 0, TimeUnit.MILLISECONDS.toNanos(999), TimeUnit.SECONDS.toNanos(1) };
+        boolean[] sent = new boolean[times.length];
+        for (int i = 0; i < times.length; ++i) {
+            sent[i] = tested.process(createTelemetry("mock"), times[i]);
+        }
+
+        assertTrue(sent[0]);
+        assertFalse(sent[1]);
+        assertTrue(sent[2]);
+    }
+
+    @Test(expected = Throwable.class)
+    public void testSetIllegalIntervalInSeconds() throws Throwable {
+        new ExceptionTelemetryDeduplicator().setIntervalInSeconds("0");
+    }
+
+    private static ExceptionTelemetry verifySummarySent(TelemetryChannel channel, String expectedMessage, double expectedCount) {
+        ArgumentCaptor<Telemetry> sent = ArgumentCaptor.forClass(Telemetry.class);
+        verify(channel).send(sent.capture());
+
+        ExceptionTelemetry summary = (ExceptionTelemetry)sent.getValue();
+        assertEquals(expectedMessage, summary.getProperties().get(MESSAGE_PROPERTY_NAME));
+        assertEquals(expectedCount, summary.getMetrics().get(ExceptionTelemetryDeduplicator.OCCURRENCE_COUNT_METRIC_NAME), 0.0);
+        return summary;
+    }
+
+    private static ExceptionTelemetry createTelemetry(String message) {
+        ExceptionTelemetry telemetry = new ExceptionTelemetry(new IllegalStateException(message));
+        telemetry.getProperties().put(MESSAGE_PROPERTY_NAME, message);
+        return telemetry;
+    }
+
+    // The exceptions are deduplicated by their stack traces, so they are created from the same line
+    private static ExceptionTelemetry[] createSameTelemetries(int count) {
+        ExceptionTelemetry[] telemetries = new ExceptionTelemetry[count];
+        for (int i = 0; i < count; ++i) {
+            telemetries[i] = createTelemetry("mock" + i);
+        }
+        return telemetries;
+    }
+}
@@ -96,4 +96,12 @@ public class TraceTelemetryFilterTest {
         boolean result = tested.process(new MetricTelemetry());
         assertTrue(result);
     }
+
+    @Test
+    public void testIsApplicableOnlyToTraces() {
+        TraceTelemetryFilter tested = new TraceTelemetryFilter();
+
+        assertTrue(tested.isApplicableTo(TraceTelemetry.class));
+        assertFalse(tested.isApplicableTo(MetricTelemetry.class));
+    }
 }
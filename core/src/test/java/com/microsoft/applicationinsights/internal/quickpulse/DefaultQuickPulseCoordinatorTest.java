@@ -56,6 +56,7 @@ public class DefaultQuickPulseCoordinatorTest {
 
         thread.join();
 
+        Mockito.verify(mockFetcher, Mockito.times(1)).stop();
         Mockito.verify(mockFetcher, Mockito.never()).prepareQuickPulseDataForSend();
 
         Mockito.verify(mockSender, Mockito.never()).startSending();
@@ -92,6 +93,7 @@ public class DefaultQuickPulseCoordinatorTest {
 
         thread.join();
 
+        Mockito.verify(mockFetcher, Mockito.times(1)).stop();
         Mockito.verify(mockFetcher, Mockito.atLeast(1)).prepareQuickPulseDataForSend();
 
         Mockito.verify(mockSender, Mockito.times(1)).startSending();
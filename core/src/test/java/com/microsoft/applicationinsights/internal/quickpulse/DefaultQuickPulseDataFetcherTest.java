@@ -0,0 +1,112 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.quickpulse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.microsoft.applicationinsights.telemetry.Duration;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public final class DefaultQuickPulseDataFetcherTest {
+    private final static String FAKE_INSTRUMENTATION_KEY = "fake-ikey";
+
+    private final ArrayBlockingQueue<QuickPulsePayload> sendQueue = new ArrayBlockingQueue<QuickPulsePayload>(2);
+    private final ArrayBlockingQueue<QuickPulsePayload> freePayloads = new ArrayBlockingQueue<QuickPulsePayload>(2);
+
+    @Before
+    public void setUp() {
+        freePayloads.add(new QuickPulsePayload());
+        freePayloads.add(new QuickPulsePayload());
+        QuickPulseDataCollector.INSTANCE.enable(FAKE_INSTRUMENTATION_KEY);
+    }
+
+    @After
+    public void tearDown() {
+        QuickPulseDataCollector.INSTANCE.disable();
+    }
+
+    @Test
+    public void testPayloadIsValidJsonWithTheMetrics() throws IOException {
+        RequestTelemetry request = new RequestTelemetry("request", null, new Duration(40), "200", true);
+        request.getContext().setInstrumentationKey(FAKE_INSTRUMENTATION_KEY);
+        QuickPulseDataCollector.INSTANCE.add(request);
+        QuickPulseDataCollector.INSTANCE.add(request);
+
+        DefaultQuickPulseDataFetcher fetcher = new DefaultQuickPulseDataFetcher(sendQueue, freePayloads, FAKE_INSTRUMENTATION_KEY, "instance", "stream", false);
+        fetcher.prepareQuickPulseDataForSend();
+
+        QuickPulsePayload payload = sendQueue.poll();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        payload.writeTo(output);
+        JsonObject document = new JsonParser().parse(new String(output.toByteArray(), "UTF-8")).getAsJsonArray().get(0).getAsJsonObject();
+
+        assertEquals("instance", document.get("Instance").getAsString());
+        assertEquals(FAKE_INSTRUMENTATION_KEY, document.get("InstrumentationKey").getAsString());
+        assertEquals("stream", document.get("StreamId").getAsString());
+        assertEquals(2, getMetric(document, "\\ApplicationInsights\\Requests/Sec"), 0.0);
+        assertEquals(80, getMetric(document, "\\ApplicationInsights\\Request Duration"), 0.0);
+        assertEquals(40, getMetric(document, "\\ApplicationInsights\\Request Duration P99"), 0.0);
+        assertEquals(0, getMetric(document, "\\ApplicationInsights\\Dependency Calls/Sec"), 0.0);
+    }
+
+    @Test
+    public void testNothingIsPreparedWithoutFreePayloads() {
+        DefaultQuickPulseDataFetcher fetcher = new DefaultQuickPulseDataFetcher(sendQueue, freePayloads, FAKE_INSTRUMENTATION_KEY, "instance", "stream", true);
+
+        fetcher.prepareQuickPulseDataForSend();
+        fetcher.prepareQuickPulseDataForSend();
+        fetcher.prepareQuickPulseDataForSend();
+
+        assertEquals(2, sendQueue.size());
+        assertEquals(0, freePayloads.size());
+        assertEquals("gzip", sendQueue.peek().getContentEncoding().getValue());
+
+        QuickPulsePayload sent = sendQueue.poll();
+        freePayloads.offer(sent);
+        fetcher.prepareQuickPulseDataForSend();
+        assertNull(freePayloads.peek());
+        assertSame(sent, sendQueue.toArray()[1]);
+    }
+
+    private static double getMetric(JsonObject document, String name) {
+        JsonArray metrics = document.getAsJsonArray("Metrics");
+        for (JsonElement metric : metrics) {
+            if (name.equals(metric.getAsJsonObject().get("Name").getAsString())) {
+                return metric.getAsJsonObject().get("Value").getAsDouble();
+            }
+        }
+        throw new AssertionError("Metric " + name + " is missing");
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.quickpulse;
+
+import com.microsoft.applicationinsights.telemetry.Duration;
+import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class QuickPulseDataCollectorTest {
+    private final static String FAKE_INSTRUMENTATION_KEY = "fake-ikey";
+
+    @Before
+    public void setUp() {
+        QuickPulseDataCollector.INSTANCE.enable(FAKE_INSTRUMENTATION_KEY);
+    }
+
+    @After
+    public void tearDown() {
+        QuickPulseDataCollector.INSTANCE.disable();
+    }
+
+    @Test
+    public void testDisabledCollectorHasNoCounters() {
+        QuickPulseDataCollector.INSTANCE.disable();
+
+        QuickPulseDataCollector.INSTANCE.add(createRequest(10, true));
+
+        assertNull(QuickPulseDataCollector.INSTANCE.getAndRestart());
+    }
+
+    @Test
+    public void testRequestsAreCounted() {
+        QuickPulseDataCollector.INSTANCE.add(createRequest(2500, true));
+        QuickPulseDataCollector.INSTANCE.add(createRequest(500, false));
+
+        QuickPulseDataCollector.FinalCounters counters = QuickPulseDataCollector.INSTANCE.getAndRestart();
+
+        assertEquals(2, counters.requests);
+        assertEquals(3000.0, counters.requestsDuration, 0.0);
+        assertEquals(1, counters.unsuccessfulRequests);
+        assertEquals(2, counters.requestsDurations.getTotalCount());
+
+        counters = QuickPulseDataCollector.INSTANCE.getAndRestart();
+        assertEquals(0, counters.requests);
+        assertEquals(0.0, counters.requestsDuration, 0.0);
+    }
+
+    @Test
+    public void testDependenciesAreCounted() {
+        QuickPulseDataCollector.INSTANCE.add(createDependency(20, true));
+        QuickPulseDataCollector.INSTANCE.add(createDependency(1200, false));
+
+        QuickPulseDataCollector.FinalCounters counters = QuickPulseDataCollector.INSTANCE.getAndRestart();
+
+        assertEquals(2, counters.rdds);
+        assertEquals(1220.0, counters.rddsDuration, 0.0);
+        assertEquals(1, counters.unsuccessfulRdds);
+        assertEquals(20L, counters.rddsDurations.getValueAtPercentile(50.0));
+    }
+
+    @Test
+    public void testAggregatedDependenciesCountAllTheirCalls() {
+        RemoteDependencyTelemetry telemetry = createDependency(100, true);
+        telemetry.getMetrics().put("AggregatedCount", 10.0);
+
+        QuickPulseDataCollector.INSTANCE.add(telemetry);
+
+        QuickPulseDataCollector.FinalCounters counters = QuickPulseDataCollector.INSTANCE.getAndRestart();
+        assertEquals(10, counters.rdds);
+        assertEquals(100.0, counters.rddsDuration, 0.0);
+        assertEquals(10, counters.rddsDurations.getTotalCount());
+        assertEquals(10L, counters.rddsDurations.getValueAtPercentile(99.0));
+    }
+
+    @Test
+    public void testCountsAreNotCappedPerInterval() {
+        RequestTelemetry request = createRequest(1, true);
+        for (int i = 0; i < 600000; ++i) {
+            QuickPulseDataCollector.INSTANCE.add(request);
+        }
+
+        assertEquals(600000, QuickPulseDataCollector.INSTANCE.getAndRestart().requests);
+    }
+
+    @Test
+    public void testExceptionsAndOtherInstrumentationKeys() {
+        ExceptionTelemetry exception = new ExceptionTelemetry(new Exception());
+        exception.getContext().setInstrumentationKey(FAKE_INSTRUMENTATION_KEY);
+        RequestTelemetry otherRequest = createRequest(10, true);
+        otherRequest.getContext().setInstrumentationKey("other-ikey");
+
+        QuickPulseDataCollector.INSTANCE.add(exception);
+        QuickPulseDataCollector.INSTANCE.add(otherRequest);
+
+        QuickPulseDataCollector.FinalCounters counters = QuickPulseDataCollector.INSTANCE.getAndRestart();
+        assertEquals(1.0, counters.exceptions, 0.0);
+        assertEquals(0, counters.requests);
+    }
+
+    private static RequestTelemetry createRequest(long durationInMS, boolean success) {
+        RequestTelemetry telemetry = new RequestTelemetry("request", null, new Duration(durationInMS), success ? "200" : "500", success);
+        return withKey(telemetry);
+    }
+
+    private static RemoteDependencyTelemetry createDependency(long durationInMS, boolean success) {
+        return withKey(new RemoteDependencyTelemetry("dependency", "command", new Duration(durationInMS), success));
+    }
+
+    private static <T extends Telemetry> T withKey(T telemetry) {
+        telemetry.getContext().setInstrumentationKey(FAKE_INSTRUMENTATION_KEY);
+        return telemetry;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.quickpulse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public final class QuickPulsePayloadTest {
+    @Test
+    public void testNumbers() throws IOException {
+        assertEquals("0,-1,1234567890,-9223372036854775808,9223372036854775807", write(0L, -1L, 1234567890L, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals("0,12.5,-0.25,3.142,2,0,0", write(0.0, 12.5, -0.25, 3.14159, 1.9999, Double.NaN, Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void testContentIsReplacedOnReset() throws IOException {
+        QuickPulsePayload payload = new QuickPulsePayload();
+        payload.reset(1L);
+        payload.write("first content");
+        payload.reset(2L);
+        payload.write("second");
+
+        assertEquals("second", content(payload));
+        assertEquals(6, payload.getContentLength());
+        assertEquals(2L, payload.getTransmissionTimeInMillis());
+    }
+
+    @Test
+    public void testCompressedContentIsGzip() throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        CRC32 crc = new CRC32();
+        QuickPulsePayload payload = new QuickPulsePayload();
+
+        for (int i = 0; i < 2; ++i) {
+            payload.reset(0L);
+            StringBuilder expected = new StringBuilder();
+            for (int j = 0; j < 1000; ++j) {
+                payload.write("{\"Name\": \"metricé\",\"Value\": ");
+                payload.write((long) j);
+                payload.write('}');
+                expected.append("{\"Name\": \"metricé\",\"Value\": ").append(j).append('}');
+            }
+            payload.compress(deflater, crc);
+
+            assertEquals("gzip", payload.getContentEncoding().getValue());
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            payload.writeTo(output);
+            assertEquals(output.size(), payload.getContentLength());
+            byte[] uncompressed = IOUtils.toByteArray(new GZIPInputStream(payload.getContent()));
+            assertEquals(expected.toString(), new String(uncompressed, "UTF-8"));
+        }
+
+        payload.reset(0L);
+        assertNull(payload.getContentEncoding());
+        deflater.end();
+    }
+
+    private static String write(Object... values) throws IOException {
+        QuickPulsePayload payload = new QuickPulsePayload();
+        payload.reset(0L);
+        for (int i = 0; i < values.length; ++i) {
+            if (i != 0) {
+                payload.write(',');
+            }
+            if (values[i] instanceof Long) {
+                payload.write(((Long) values[i]).longValue());
+            } else {
+                payload.write(((Double) values[i]).doubleValue());
+            }
+        }
+        return content(payload);
+    }
+
+    private static String content(QuickPulsePayload payload) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        payload.writeTo(output);
+        return new String(output.toByteArray(), "UTF-8");
+    }
+}
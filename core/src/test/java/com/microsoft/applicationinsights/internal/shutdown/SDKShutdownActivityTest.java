@@ -0,0 +1,160 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.shutdown;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.channel.TelemetryChannel;
+import com.microsoft.applicationinsights.channel.TelemetrySampler;
+import com.microsoft.applicationinsights.internal.util.ChannelFetcher;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+
+public final class SDKShutdownActivityTest {
+    private static final class RecordingStoppable implements Stoppable {
+        private final String name;
+        private final List<String> stopped;
+
+        private RecordingStoppable(String name, List<String> stopped) {
+            this.name = name;
+            this.stopped = stopped;
+        }
+
+        @Override
+        public void stop(long timeout, TimeUnit timeUnit) {
+            stopped.add(name);
+        }
+    }
+
+    private static final class FixedChannelFetcher implements ChannelFetcher {
+        private final TelemetryChannel channel;
+
+        private FixedChannelFetcher(TelemetryChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public TelemetryChannel fetch() {
+            return channel;
+        }
+    }
+
+    @Test
+    public void testPhasesAreStoppedInOrder() {
+        final List<String> stopped = Collections.synchronizedList(new ArrayList<String>());
+        TelemetryChannel channel = new MockChannel() {
+            @Override
+            public void stop(long timeout, TimeUnit timeUnit) {
+                stopped.add("channel");
+            }
+        };
+
+        SDKShutdownActivity.SDKShutdownThread tested = new SDKShutdownActivity.SDKShutdownThread(SDKShutdownActivity.DEFAULT_TIMEOUT_IN_MILLIS);
+        tested.register(new RecordingStoppable("transmission", stopped), ShutdownPhase.TRANSMISSION);
+        tested.register(new FixedChannelFetcher(channel));
+        tested.register(new RecordingStoppable("producer", stopped), ShutdownPhase.PRODUCERS);
+        tested.stopComponents();
+
+        assertEquals(3, stopped.size());
+        assertEquals("producer", stopped.get(0));
+        assertEquals("channel", stopped.get(1));
+        assertEquals("transmission", stopped.get(2));
+    }
+
+    @Test
+    public void testChannelIsStoppedOnceForSeveralFetchers() {
+        TelemetryChannel channel = Mockito.mock(TelemetryChannel.class);
+
+        SDKShutdownActivity.SDKShutdownThread tested = new SDKShutdownActivity.SDKShutdownThread(SDKShutdownActivity.DEFAULT_TIMEOUT_IN_MILLIS);
+        for (int i = 0; i < 10; ++i) {
+            tested.register(new FixedChannelFetcher(channel));
+        }
+        tested.stopComponents();
+
+        Mockito.verify(channel, Mockito.times(1)).stop(anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void testShutdownIsBoundedByTheTimeout() {
+        final CountDownLatch never = new CountDownLatch(1);
+        Stoppable hanging = new Stoppable() {
+            @Override
+            public void stop(long timeout, TimeUnit timeUnit) {
+                try {
+                    never.await();
+                } catch (InterruptedException e) {
+                }
+            }
+        };
+        Stoppable other = Mockito.mock(Stoppable.class);
+
+        SDKShutdownActivity.SDKShutdownThread tested = new SDKShutdownActivity.SDKShutdownThread(500L);
+        tested.register(hanging, ShutdownPhase.PRODUCERS);
+        tested.register(hanging, ShutdownPhase.CHANNELS);
+        tested.register(other, ShutdownPhase.TRANSMISSION);
+
+        long start = System.nanoTime();
+        tested.stopComponents();
+        long durationInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Shutdown took " + durationInMillis + " ms", durationInMillis < 1500);
+        Mockito.verify(other, Mockito.times(1)).stop(anyLong(), any(TimeUnit.class));
+        never.countDown();
+    }
+
+    private static class MockChannel implements TelemetryChannel {
+        @Override
+        public boolean isDeveloperMode() {
+            return false;
+        }
+
+        @Override
+        public void setDeveloperMode(boolean value) {
+        }
+
+        @Override
+        public void send(Telemetry item) {
+        }
+
+        @Override
+        public void stop(long timeout, TimeUnit timeUnit) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void setSampler(TelemetrySampler telemetrySampler) {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class CopyOnWriteConcurrentMapTest {
+    @Test
+    public void testSnapshotIsNotAffectedByChanges() {
+        CopyOnWriteConcurrentMap<String, String> tested = new CopyOnWriteConcurrentMap<String, String>();
+        tested.put("a", "1");
+
+        Map<String, String> snapshot = tested.snapshot();
+        tested.put("a", "2");
+        tested.put("b", "3");
+        tested.remove("a");
+
+        assertEquals(1, snapshot.size());
+        assertEquals("1", snapshot.get("a"));
+        assertNull(tested.get("a"));
+        assertEquals("3", tested.get("b"));
+    }
+
+    @Test
+    public void testSnapshotIsSharedUntilChanged() {
+        CopyOnWriteConcurrentMap<String, String> tested = new CopyOnWriteConcurrentMap<String, String>();
+        tested.put("a", "1");
+
+        Map<String, String> snapshot = tested.snapshot();
+        tested.get("a");
+        tested.remove("missing");
+
+        assertSame(snapshot, tested.snapshot());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotIsImmutable() {
+        CopyOnWriteConcurrentMap<String, String> tested = new CopyOnWriteConcurrentMap<String, String>();
+        tested.snapshot().put("a", "1");
+    }
+
+    @Test
+    public void testConditionalOperations() {
+        CopyOnWriteConcurrentMap<String, String> tested = new CopyOnWriteConcurrentMap<String, String>();
+
+        assertNull(tested.putIfAbsent("a", "1"));
+        assertEquals("1", tested.putIfAbsent("a", "2"));
+        assertFalse(tested.replace("a", "2", "3"));
+        assertTrue(tested.replace("a", "1", "3"));
+        assertFalse(tested.remove("a", "1"));
+        assertTrue(tested.remove("a", "3"));
+        assertTrue(tested.isEmpty());
+    }
+
+    @Test
+    public void testEntrySetChangesTheMap() {
+        CopyOnWriteConcurrentMap<String, String> tested = new CopyOnWriteConcurrentMap<String, String>();
+        tested.put("a", "1");
+        tested.put("b", "2");
+
+        Iterator<Map.Entry<String, String>> iterator = tested.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (entry.getKey().equals("a")) {
+                iterator.remove();
+            } else {
+                entry.setValue("3");
+            }
+        }
+
+        assertEquals(1, tested.size());
+        assertEquals("3", tested.get("b"));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValue() {
+        new CopyOnWriteConcurrentMap<String, String>().put("a", null);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class LayeredConcurrentMapTest {
+    @Test
+    public void testOwnValuesHideInheritedValues() {
+        LayeredConcurrentMap<String, String> tested = createWithInherited();
+        tested.put("a", "own");
+
+        assertEquals("own", tested.get("a"));
+        assertEquals("inherited", tested.get("b"));
+        assertEquals(2, tested.size());
+        assertEquals(expected("a", "own", "b", "inherited"), new HashMap<String, String>(tested));
+    }
+
+    @Test
+    public void testPutReturnsInheritedValue() {
+        LayeredConcurrentMap<String, String> tested = createWithInherited();
+
+        assertEquals("inherited", tested.put("a", "own"));
+        assertEquals("own", tested.put("a", "other"));
+        assertEquals("inherited", tested.putIfAbsent("b", "own"));
+        assertEquals("inherited", tested.get("b"));
+    }
+
+    @Test
+    public void testRemoveHidesInheritedValue() {
+        LayeredConcurrentMap<String, String> tested = createWithInherited();
+        tested.put("a", "own");
+
+        assertEquals("own", tested.remove("a"));
+        assertEquals("inherited", tested.remove("b"));
+
+        assertNull(tested.get("a"));
+        assertFalse(tested.containsKey("b"));
+        assertTrue(tested.isEmpty());
+        assertEquals(0, tested.size());
+
+        tested.put("b", "own");
+        assertEquals("own", tested.get("b"));
+        assertEquals(1, tested.size());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        LayeredConcurrentMap<String, String> tested = createWithInherited();
+        tested.put("c", "own");
+
+        Iterator<Map.Entry<String, String>> iterator = tested.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().getKey().equals("c")) {
+                iterator.remove();
+            }
+        }
+
+        assertEquals(expected("c", "own"), new HashMap<String, String>(tested));
+    }
+
+    @Test
+    public void testEntrySetValueWritesToOwnLayer() {
+        Map<String, String> inherited = expected("a", "inherited");
+        LayeredConcurrentMap<String, String> tested = new LayeredConcurrentMap<String, String>();
+        tested.inherit(inherited);
+
+        tested.entrySet().iterator().next().setValue("own");
+
+        assertEquals("own", tested.get("a"));
+        assertEquals("inherited", inherited.get("a"));
+    }
+
+    @Test
+    public void testInheritOnlyOnce() {
+        LayeredConcurrentMap<String, String> tested = createWithInherited();
+
+        assertFalse(tested.inherit(expected("c", "inherited")));
+        assertNull(tested.get("c"));
+    }
+
+    @Test
+    public void testClearRemovesBothLayers() {
+        LayeredConcurrentMap<String, String> tested = createWithInherited();
+        tested.put("c", "own");
+
+        tested.clear();
+
+        assertTrue(tested.isEmpty());
+        assertNull(tested.get("a"));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullValue() {
+        new LayeredConcurrentMap<String, String>().put("a", null);
+    }
+
+    private static LayeredConcurrentMap<String, String> createWithInherited() {
+        LayeredConcurrentMap<String, String> tested = new LayeredConcurrentMap<String, String>();
+        assertTrue(tested.inherit(expected("a", "inherited", "b", "inherited")));
+
+        return tested;
+    }
+
+    private static Map<String, String> expected(String... keysAndValues) {
+        Map<String, String> map = new HashMap<String, String>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+
+        return map;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public final class StripedCounterTest {
+    @Test
+    public void testAddAndGet() {
+        StripedCounter counter = new StripedCounter(4);
+        counter.increment();
+        counter.add(10L);
+
+        assertEquals(11L, counter.get());
+        assertEquals(11L, counter.get());
+    }
+
+    @Test
+    public void testGetAndReset() {
+        StripedCounter counter = new StripedCounter();
+        counter.add(5L);
+
+        assertEquals(5L, counter.getAndReset());
+        assertEquals(0L, counter.get());
+
+        counter.increment();
+        assertEquals(1L, counter.getAndReset());
+    }
+
+    @Test
+    public void testConcurrentIncrementsAreNotLost() throws InterruptedException {
+        final int numberOfThreads = 8;
+        final int incrementsPerThread = 100000;
+        final StripedCounter counter = new StripedCounter(numberOfThreads);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numberOfThreads; ++t) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < incrementsPerThread; ++i) {
+                        counter.increment();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        long collected = 0L;
+        for (Thread thread : threads) {
+            thread.join();
+            collected += counter.getAndReset();
+        }
+        collected += counter.getAndReset();
+
+        assertEquals((long) numberOfThreads * incrementsPerThread, collected);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class StripedHistogramTest {
+    @Test
+    public void testBucketsAreContinuous() {
+        for (long value = 0; value < 100000; ++value) {
+            int index = StripedHistogram.bucketIndex(value);
+            assertTrue(StripedHistogram.bucketLowerBound(index) <= value);
+            assertTrue(index == StripedHistogram.NUMBER_OF_BUCKETS - 1 || StripedHistogram.bucketLowerBound(index + 1) > value);
+        }
+    }
+
+    @Test
+    public void testValuesOutOfRange() {
+        assertEquals(0, StripedHistogram.bucketIndex(-5));
+        assertEquals(StripedHistogram.NUMBER_OF_BUCKETS - 1, StripedHistogram.bucketIndex(StripedHistogram.MAX_VALUE));
+        assertEquals(StripedHistogram.NUMBER_OF_BUCKETS - 1, StripedHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentilesAreWithinTheRelativeError() {
+        StripedHistogram histogram = new StripedHistogram(4);
+        for (long value = 1; value <= 10000; ++value) {
+            histogram.record(value);
+        }
+
+        StripedHistogram.Snapshot snapshot = histogram.getAndReset();
+
+        assertEquals(10000L, snapshot.getTotalCount());
+        assertWithin(5000, snapshot.getValueAtPercentile(50.0));
+        assertWithin(9500, snapshot.getValueAtPercentile(95.0));
+        assertWithin(9900, snapshot.getValueAtPercentile(99.0));
+        assertEquals(1L, snapshot.getValueAtPercentile(0.0));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        StripedHistogram histogram = new StripedHistogram();
+        histogram.record(3, 90);
+        histogram.record(20, 10);
+
+        StripedHistogram.Snapshot snapshot = histogram.getAndReset();
+
+        assertEquals(3L, snapshot.getValueAtPercentile(50.0));
+        assertEquals(3L, snapshot.getValueAtPercentile(90.0));
+        assertEquals(20L, snapshot.getValueAtPercentile(95.0));
+    }
+
+    @Test
+    public void testValuesAreReportedByTheMiddleOfTheirBucket() {
+        StripedHistogram histogram = new StripedHistogram();
+        histogram.record(32, 10);
+        histogram.record(33, 10);
+        histogram.record(67, 10);
+
+        StripedHistogram.Snapshot snapshot = histogram.getAndReset();
+
+        assertEquals(32L, snapshot.getValueAtPercentile(30.0));
+        assertEquals(32L, snapshot.getValueAtPercentile(60.0));
+        assertEquals(65L, snapshot.getValueAtPercentile(90.0));
+    }
+
+    @Test
+    public void testGetAndResetAndMerge() {
+        StripedHistogram histogram = new StripedHistogram();
+        histogram.record(10);
+        StripedHistogram.Snapshot first = histogram.getAndReset();
+        assertEquals(0L, histogram.getAndReset().getTotalCount());
+
+        histogram.record(1000, 3);
+        StripedHistogram.Snapshot merged = new StripedHistogram.Snapshot();
+        merged.merge(first);
+        merged.merge(histogram.getAndReset());
+
+        assertEquals(4L, merged.getTotalCount());
+        assertEquals(10L, merged.getValueAtPercentile(25.0));
+        assertWithin(1000, merged.getValueAtPercentile(50.0));
+        assertEquals(0L, new StripedHistogram.Snapshot().getValueAtPercentile(99.0));
+    }
+
+    @Test
+    public void testConcurrentRecordsAreNotLost() throws InterruptedException {
+        final int numberOfThreads = 8;
+        final int recordsPerThread = 100000;
+        final StripedHistogram histogram = new StripedHistogram(numberOfThreads);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < numberOfThreads; ++t) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < recordsPerThread; ++i) {
+                        histogram.record(i % 500);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals((long) numberOfThreads * recordsPerThread, histogram.getAndReset().getTotalCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * 0.07);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public final class Utf8ByteArrayWriterTest {
+    @Test
+    public void testEncodingIsTheSameAsStringGetBytes() throws IOException {
+        String text = "ascii, \u00e9\u00e8 two bytes, \u20ac three bytes, \ud83d\ude00 surrogate pair";
+
+        Utf8ByteArrayWriter writer = new Utf8ByteArrayWriter();
+        writer.write(text);
+
+        assertArrayEquals(text.getBytes("UTF-8"), writer.toByteArray());
+    }
+
+    @Test
+    public void testSurrogatePairSplitBetweenWrites() throws IOException {
+        Utf8ByteArrayWriter writer = new Utf8ByteArrayWriter();
+        writer.write('\ud83d');
+        writer.write("\ude00");
+
+        assertArrayEquals("\ud83d\ude00".getBytes("UTF-8"), writer.toByteArray());
+    }
+
+    @Test
+    public void testMalformedSurrogatesAreReplaced() throws IOException {
+        Utf8ByteArrayWriter writer = new Utf8ByteArrayWriter();
+        writer.write("a\ude00b\ud83d");
+
+        assertArrayEquals("a?b?".getBytes("UTF-8"), writer.toByteArray());
+    }
+
+    @Test
+    public void testResetReusesTheWriter() throws IOException {
+        Utf8ByteArrayWriter writer = new Utf8ByteArrayWriter(16, 32);
+        writer.write("first content that is longer than the retained capacity");
+        writer.reset();
+        assertEquals(0, writer.size());
+
+        writer.write("second");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.writeTo(output);
+
+        assertArrayEquals("second".getBytes("UTF-8"), output.toByteArray());
+    }
+}
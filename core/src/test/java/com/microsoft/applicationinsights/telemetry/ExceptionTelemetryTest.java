@@ -22,12 +22,16 @@
 package com.microsoft.applicationinsights.telemetry;
 
 import java.io.IOException;
+import java.util.List;
+
+import com.microsoft.applicationinsights.internal.schemav2.StackFrame;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 
 public final class ExceptionTelemetryTest {
@@ -96,6 +100,64 @@ public final class ExceptionTelemetryTest {
         assertSame(error, telemetry.getThrowable());
     }
 
+    @Test
+    public void testExceptionsThrownFromTheSamePlaceAreConvertedOnce() {
+        StackFramesCache.INSTANCE.clear();
+        ExceptionTelemetry[] telemetries = new ExceptionTelemetry[2];
+        for (int i = 0; i < telemetries.length; ++i) {
+            telemetries[i] = new ExceptionTelemetry(createException("mock" + i));
+        }
+
+        assertEquals(1, StackFramesCache.INSTANCE.size());
+        assertEquals("mock1", telemetries[1].getExceptions().get(0).getMessage());
+
+        List<StackFrame> frames = telemetries[0].getExceptions().get(0).getParsedStack();
+        List<StackFrame> otherFrames = telemetries[1].getExceptions().get(0).getParsedStack();
+        assertEquals(frames.size(), otherFrames.size());
+
+        StackFrame top = frames.get(0);
+        assertEquals(0, top.getLevel());
+        assertEquals(ExceptionTelemetryTest.class.getName() + ".createException", top.getMethod());
+        assertEquals("ExceptionTelemetryTest.java", top.getFileName());
+        assertEquals(top.getMethod(), otherFrames.get(0).getMethod());
+        assertEquals(top.getLine(), otherFrames.get(0).getLine());
+    }
+
+    @Test
+    public void testParsedStackIsNotSharedWithOtherTelemetries() {
+        ExceptionTelemetry telemetry1 = new ExceptionTelemetry(createException("mock"));
+        ExceptionTelemetry telemetry2 = new ExceptionTelemetry(createException("mock"));
+
+        List<StackFrame> frames = telemetry1.getExceptions().get(0).getParsedStack();
+        List<StackFrame> otherFrames = telemetry2.getExceptions().get(0).getParsedStack();
+        assertNotSame(frames, otherFrames);
+        assertNotSame(frames.get(0), otherFrames.get(0));
+
+        int size = otherFrames.size();
+        frames.get(0).setMethod("modified");
+        frames.remove(frames.size() - 1);
+
+        assertEquals(ExceptionTelemetryTest.class.getName() + ".createException", otherFrames.get(0).getMethod());
+        assertEquals(size, otherFrames.size());
+    }
+
+    @Test
+    public void testFramesCacheIsBounded() {
+        StackFramesCache.INSTANCE.clear();
+        StackTraceElement[] trace = createException("mock").getStackTrace();
+        for (int i = 0; i <= StackFramesCache.MAX_ENTRIES; ++i) {
+            StackTraceElement[] shape = trace.clone();
+            shape[0] = new StackTraceElement("MockClass", "mockMethod", "MockClass.java", i);
+            StackFramesCache.INSTANCE.getFrames(shape);
+        }
+
+        assertTrue(StackFramesCache.INSTANCE.size() <= StackFramesCache.MAX_ENTRIES);
+    }
+
+    private static IllegalStateException createException(String message) {
+        return new IllegalStateException(message);
+    }
+
     private static void testSeverityLevel(SeverityLevel severityLevel) {
         ExceptionTelemetry telemetry = new ExceptionTelemetry(new IllegalArgumentException("mockb"));
 
@@ -402,4 +402,41 @@ public class JsonTelemetryDataSerializerTest {
         assertEquals(bac.d1, 0, 0.001);
         assertEquals(bac.d2, 0, 0.001);
     }
+
+    @Test
+    public void testNestedObjectsAreWrittenInPlaceAndEmptyOnesAreSkipped() throws IOException {
+        final JsonSerializable empty = new JsonSerializable() {
+            @Override
+            public void serialize(JsonTelemetryDataSerializer serializer) throws IOException {
+                serializer.write("s", "", 10);
+            }
+        };
+        final JsonSerializable leaf = new JsonSerializable() {
+            @Override
+            public void serialize(JsonTelemetryDataSerializer serializer) throws IOException {
+                serializer.write("empty", empty);
+                serializer.write("i", 1);
+            }
+        };
+        final List<JsonSerializable> items = new ArrayList<JsonSerializable>();
+        items.add(leaf);
+        items.add(leaf);
+        JsonSerializable root = new JsonSerializable() {
+            @Override
+            public void serialize(JsonTelemetryDataSerializer serializer) throws IOException {
+                serializer.write("first", empty);
+                serializer.write("leaf", leaf);
+                serializer.write("empty", empty);
+                serializer.write("items", items);
+                serializer.write("last", 2L);
+            }
+        };
+
+        StringWriter stringWriter = new StringWriter();
+        JsonTelemetryDataSerializer tested = new JsonTelemetryDataSerializer(stringWriter);
+        root.serialize(tested);
+        tested.close();
+
+        assertEquals("{\"leaf\":{\"i\":1},\"items\":[{\"i\":1},{\"i\":1}],\"last\":2}", stringWriter.toString());
+    }
 }
@@ -21,6 +21,10 @@
 
 package com.microsoft.applicationinsights.telemetry;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Date;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -72,4 +76,47 @@ public final class TelemetryContextTest {
 
         Assert.assertEquals(TEST_IKEY, contextToInitialize.getInstrumentationKey());
     }
+
+    @Test
+    public void testTelemetryInheritsContextValuesAtInitialization() {
+        TelemetryContext context = new TelemetryContext();
+        context.getProperties().put("Inherited", "Context");
+        context.getProperties().put("Overridden", "Context");
+        context.getOperation().setId("ContextOperation");
+
+        EventTelemetry telemetry = new EventTelemetry("Event");
+        telemetry.getContext().getProperties().put("Overridden", "Telemetry");
+        telemetry.getContext().initialize(context);
+
+        context.getProperties().put("AddedLater", "Context");
+        telemetry.getContext().getProperties().put("Inherited", "Telemetry");
+
+        assertEquals("Telemetry", telemetry.getProperties().get("Inherited"));
+        assertEquals("Telemetry", telemetry.getProperties().get("Overridden"));
+        assertNull(telemetry.getProperties().get("AddedLater"));
+        assertEquals("ContextOperation", telemetry.getContext().getOperation().getId());
+        assertEquals("Context", context.getProperties().get("Inherited"));
+    }
+
+    @Test
+    public void testInheritedValuesAreSerialized() throws IOException {
+        TelemetryContext context = new TelemetryContext();
+        context.getProperties().put("InheritedProperty", "Context");
+        context.getOperation().setId("ContextOperation");
+
+        EventTelemetry telemetry = new EventTelemetry("Event");
+        telemetry.getContext().getProperties().put("OwnProperty", "Telemetry");
+        telemetry.getContext().initialize(context);
+        telemetry.setTimestamp(new Date());
+
+        StringWriter writer = new StringWriter();
+        JsonTelemetryDataSerializer serializer = new JsonTelemetryDataSerializer(writer);
+        telemetry.serialize(serializer);
+        serializer.close();
+        String json = writer.toString();
+
+        assertTrue(json.contains("\"InheritedProperty\":\"Context\""));
+        assertTrue(json.contains("\"OwnProperty\":\"Telemetry\""));
+        assertTrue(json.contains("\"ai.operation.id\":\"ContextOperation\""));
+    }
 }
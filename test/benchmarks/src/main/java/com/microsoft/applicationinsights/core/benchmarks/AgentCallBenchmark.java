@@ -0,0 +1,82 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.core.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.agent.internal.coresync.impl.ImplementationsCoordinator;
+import com.microsoft.applicationinsights.internal.agent.AgentConnector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The overhead the core adds to an instrumented call, the start and finish notifications the agent makes
+ * for a method, measured for calls that end below their threshold so no telemetry is sent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AgentCallBenchmark {
+    private final static String METHOD_NAME = "com.example.OrderRepository.findById";
+    private final static String SQL_STATEMENT = "SELECT * FROM ORDERS WHERE ID = ?";
+    private final static long THRESHOLD_IN_MS = 10000L;
+
+    private final ImplementationsCoordinator coordinator = ImplementationsCoordinator.INSTANCE;
+
+    @Setup
+    public void setUp() {
+        AgentConnector.INSTANCE.registerSelf();
+    }
+
+    @Benchmark
+    public void instrumentedMethod() {
+        coordinator.methodStarted(METHOD_NAME);
+        coordinator.methodFinished(METHOD_NAME, THRESHOLD_IN_MS);
+    }
+
+    @Benchmark
+    public void sqlStatement() {
+        coordinator.sqlStatementMethodStarted(METHOD_NAME, null, SQL_STATEMENT);
+        coordinator.methodFinished(METHOD_NAME, THRESHOLD_IN_MS);
+    }
+
+    @Benchmark
+    public void nestedMethods() {
+        coordinator.methodStarted(METHOD_NAME);
+        coordinator.jedisMethodStarted(METHOD_NAME);
+        coordinator.sqlStatementMethodStarted(METHOD_NAME, null, SQL_STATEMENT);
+        coordinator.methodFinished(METHOD_NAME, THRESHOLD_IN_MS);
+        coordinator.methodFinished(METHOD_NAME, THRESHOLD_IN_MS);
+        coordinator.methodFinished(METHOD_NAME, THRESHOLD_IN_MS);
+    }
+}
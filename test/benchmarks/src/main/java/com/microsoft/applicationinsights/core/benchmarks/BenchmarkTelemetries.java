@@ -0,0 +1,99 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.core.benchmarks;
+
+import java.util.Date;
+
+import com.microsoft.applicationinsights.telemetry.Duration;
+import com.microsoft.applicationinsights.telemetry.EventTelemetry;
+import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import com.microsoft.applicationinsights.telemetry.PageViewTelemetry;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import com.microsoft.applicationinsights.telemetry.SeverityLevel;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.microsoft.applicationinsights.telemetry.TraceTelemetry;
+
+/**
+ * Creates the telemetries that are used by the benchmarks, with a typical amount of properties.
+ */
+final class BenchmarkTelemetries {
+    final static String INSTRUMENTATION_KEY = "00000000-0000-0000-0000-000000000000";
+
+    enum Type {
+        Event,
+        Request,
+        Dependency,
+        Exception,
+        Trace,
+        Metric,
+        PageView
+    }
+
+    private BenchmarkTelemetries() {
+    }
+
+    static Telemetry create(Type type, int index) {
+        Telemetry telemetry;
+        switch (type) {
+            case Event:
+                telemetry = new EventTelemetry("BenchmarkEvent");
+                break;
+
+            case Request:
+                telemetry = new RequestTelemetry("GET /benchmark/" + index, new Date(), 125L, "200", true);
+                break;
+
+            case Dependency:
+                telemetry = new RemoteDependencyTelemetry("BenchmarkDatabase", "SELECT * FROM Benchmarks WHERE Id = ?", new Duration(12L), true);
+                break;
+
+            case Exception:
+                telemetry = new ExceptionTelemetry(new IllegalStateException("Benchmark exception " + index));
+                break;
+
+            case Trace:
+                telemetry = new TraceTelemetry("Benchmark trace message " + index, SeverityLevel.Information);
+                break;
+
+            case Metric:
+                telemetry = new MetricTelemetry("BenchmarkMetric", index);
+                break;
+
+            case PageView:
+                telemetry = new PageViewTelemetry("BenchmarkPage");
+                break;
+
+            default:
+                throw new IllegalArgumentException("Unknown telemetry type " + type);
+        }
+
+        telemetry.getContext().setInstrumentationKey(INSTRUMENTATION_KEY);
+        telemetry.getContext().getOperation().setId("operation-" + index);
+        telemetry.getContext().getProperties().put("Environment", "Benchmark");
+        telemetry.getContext().getProperties().put("Index", String.valueOf(index));
+        telemetry.setTimestamp(new Date());
+
+        return telemetry;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.core.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.internal.channel.samplingV2.FixedRateSamplingTelemetryProcessor;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Makes the sampling decision for request telemetries of different operations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FixedRateSamplingTelemetryProcessorBenchmark {
+    private final static int NUMBER_OF_OPERATIONS = 1024;
+
+    @Param({"10", "50", "100"})
+    public String samplingPercentage;
+
+    private FixedRateSamplingTelemetryProcessor processor;
+    private RequestTelemetry[] telemetries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        processor = new FixedRateSamplingTelemetryProcessor();
+        processor.setSamplingPercentage(samplingPercentage);
+
+        telemetries = new RequestTelemetry[NUMBER_OF_OPERATIONS];
+        for (int i = 0; i < NUMBER_OF_OPERATIONS; ++i) {
+            telemetries[i] = (RequestTelemetry) BenchmarkTelemetries.create(BenchmarkTelemetries.Type.Request, i);
+        }
+    }
+
+    @Benchmark
+    public boolean process() {
+        RequestTelemetry telemetry = telemetries[next];
+        next = (next + 1) % NUMBER_OF_OPERATIONS;
+
+        // The processor only samples items that were not sampled before
+        telemetry.setSamplingPercentage(null);
+        return processor.process(telemetry);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.core.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.internal.channel.TelemetriesBuffer;
+import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter;
+import com.microsoft.applicationinsights.internal.channel.common.StripedTelemetryBuffer;
+import com.microsoft.applicationinsights.internal.channel.common.TelemetryBuffer;
+import com.microsoft.applicationinsights.internal.channel.common.Transmission;
+import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adds serialized telemetries to a shared buffer from several threads, the full batches
+ * are handed to a transmitter that drops them so only the buffer itself is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TelemetryBufferBenchmark {
+    private final static int MAX_TELEMETRIES_IN_BATCH = 500;
+    private final static int TRANSMIT_BUFFER_TIMEOUT_IN_SECONDS = 10;
+
+    private static final class DroppingTransmitter implements TelemetriesTransmitter {
+        @Override
+        public boolean scheduleSend(TelemetriesFetcher telemetriesFetcher, long value, TimeUnit timeUnit) {
+            return true;
+        }
+
+        @Override
+        public boolean sendNow(Collection<byte[]> telemetries) {
+            return true;
+        }
+
+        @Override
+        public boolean sendNow(Transmission transmission) {
+            return true;
+        }
+
+        @Override
+        public void stop(long timeout, TimeUnit timeUnit) {
+        }
+    }
+
+    @Param({"Synchronized", "Striped"})
+    public String bufferType;
+
+    private TelemetriesBuffer buffer;
+    private byte[] telemetry;
+
+    @Setup
+    public void setUp() {
+        LimitsEnforcer maxTelemetriesInBatch = LimitsEnforcer.createWithClosestLimitOnError("MaxTelemetryBufferCapacity", 1, 1000, MAX_TELEMETRIES_IN_BATCH, MAX_TELEMETRIES_IN_BATCH);
+        LimitsEnforcer transmitBufferTimeout = LimitsEnforcer.createWithClosestLimitOnError("FlushIntervalInSeconds", 1, 300, TRANSMIT_BUFFER_TIMEOUT_IN_SECONDS, TRANSMIT_BUFFER_TIMEOUT_IN_SECONDS);
+
+        if ("Striped".equals(bufferType)) {
+            buffer = new StripedTelemetryBuffer(new DroppingTransmitter(), maxTelemetriesInBatch, transmitBufferTimeout);
+        } else {
+            buffer = new TelemetryBuffer(new DroppingTransmitter(), maxTelemetriesInBatch, transmitBufferTimeout);
+        }
+
+        telemetry = new byte[512];
+    }
+
+    @TearDown
+    public void tearDown() {
+        buffer.flush();
+    }
+
+    @Benchmark
+    public void add() {
+        buffer.add(telemetry);
+    }
+}
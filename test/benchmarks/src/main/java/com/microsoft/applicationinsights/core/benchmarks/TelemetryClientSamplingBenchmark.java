@@ -0,0 +1,153 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.core.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.TelemetryConfiguration;
+import com.microsoft.applicationinsights.channel.TelemetryChannel;
+import com.microsoft.applicationinsights.channel.TelemetrySampler;
+import com.microsoft.applicationinsights.extensibility.initializer.SequencePropertyInitializer;
+import com.microsoft.applicationinsights.extensibility.initializer.TimestampPropertyInitializer;
+import com.microsoft.applicationinsights.internal.channel.samplingV2.FixedRateSamplingTelemetryProcessor;
+import com.microsoft.applicationinsights.telemetry.EventTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.microsoft.applicationinsights.telemetry.TelemetryContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Tracks events of many operations through a client whose context has global properties and tags,
+ * with telemetry initializers and a sampling processor.
+ *
+ * The 'createOnly' benchmark measures the creation of the event alone, the difference between it and 'track'
+ * is the cost of the client, which for the sampled out events should be close to nothing.
+ * The allocation rates reported by the GC profiler show the same for the memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TelemetryClientSamplingBenchmark {
+    private final static int NUMBER_OF_OPERATIONS = 1024;
+    private final static int NUMBER_OF_GLOBAL_PROPERTIES = 10;
+
+    private static final class BlackholeChannel implements TelemetryChannel {
+        private Blackhole blackhole;
+
+        @Override
+        public boolean isDeveloperMode() {
+            return false;
+        }
+
+        @Override
+        public void setDeveloperMode(boolean value) {
+        }
+
+        @Override
+        public void send(Telemetry item) {
+            blackhole.consume(item);
+        }
+
+        @Override
+        public void stop(long timeout, TimeUnit timeUnit) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void setSampler(TelemetrySampler telemetrySampler) {
+        }
+    }
+
+    @Param({"10", "50", "100"})
+    public String samplingPercentage;
+
+    private TelemetryClient client;
+    private String[] operationIds;
+    private int next;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        BlackholeChannel channel = new BlackholeChannel();
+        channel.blackhole = blackhole;
+
+        TelemetryConfiguration configuration = new TelemetryConfiguration();
+        configuration.setInstrumentationKey(BenchmarkTelemetries.INSTRUMENTATION_KEY);
+        configuration.setChannel(channel);
+        configuration.getTelemetryInitializers().add(new SequencePropertyInitializer());
+        configuration.getTelemetryInitializers().add(new TimestampPropertyInitializer());
+
+        FixedRateSamplingTelemetryProcessor sampling = new FixedRateSamplingTelemetryProcessor();
+        sampling.setSamplingPercentage(samplingPercentage);
+        configuration.getTelemetryProcessors().add(sampling);
+
+        client = new TelemetryClient(configuration);
+        TelemetryContext context = client.getContext();
+        context.getDevice().setRoleName("BenchmarkRole");
+        context.getDevice().setOperatingSystem("BenchmarkOS");
+        for (int i = 0; i < NUMBER_OF_GLOBAL_PROPERTIES; ++i) {
+            context.getProperties().put("GlobalProperty" + i, "Value" + i);
+        }
+
+        // Random ids, like the ids of real operations, so the share of sampled out events is close to the percentage
+        Random random = new Random(NUMBER_OF_OPERATIONS);
+        operationIds = new String[NUMBER_OF_OPERATIONS];
+        for (int i = 0; i < NUMBER_OF_OPERATIONS; ++i) {
+            operationIds[i] = Long.toHexString(random.nextLong());
+        }
+    }
+
+    @Benchmark
+    public Telemetry createOnly() {
+        return createEvent();
+    }
+
+    @Benchmark
+    public void track() {
+        client.track(createEvent());
+    }
+
+    private Telemetry createEvent() {
+        EventTelemetry telemetry = new EventTelemetry("BenchmarkEvent");
+        telemetry.getContext().getOperation().setId(operationIds[next]);
+        next = (next + 1) % NUMBER_OF_OPERATIONS;
+
+        return telemetry;
+    }
+}
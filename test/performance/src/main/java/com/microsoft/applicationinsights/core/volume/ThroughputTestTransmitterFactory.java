@@ -33,7 +33,7 @@ import com.microsoft.applicationinsights.internal.channel.common.*;
  */
 final class ThroughputTestTransmitterFactory implements TransmitterFactory {
     @Override
-    public TelemetriesTransmitter create(String endpoint, String maxTransmissionStorageCapacity, boolean throttlingIsEnabled) {
+    public TelemetriesTransmitter create(String endpoint, String maxTransmissionStorageCapacity, boolean throttlingIsEnabled, String transmissionStorageType, String senderType) {
         // An active object with the network sender
         TransmissionOutput actualNetworkSender = TestThreadLocalData.getTransmissionOutput();
         final TransmissionPolicyManager transmissionPolicyManager = new TransmissionPolicyManager(throttlingIsEnabled);
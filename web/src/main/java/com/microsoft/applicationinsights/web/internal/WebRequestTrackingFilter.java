@@ -44,6 +44,7 @@ import com.microsoft.applicationinsights.agent.internal.coresync.impl.AgentTLS;
 import com.microsoft.applicationinsights.internal.agent.AgentConnector;
 import com.microsoft.applicationinsights.internal.logger.InternalLogger;
 import com.microsoft.applicationinsights.internal.util.ThreadLocalCleaner;
+import com.microsoft.applicationinsights.internal.util.ThreadLocalInitializer;
 
 /**
  * Created by yonisha on 2/2/2015.
@@ -58,6 +59,7 @@ public final class WebRequestTrackingFilter implements Filter {
     private String key;
     private boolean agentIsUp = false;
     private final LinkedList<ThreadLocalCleaner> cleaners = new LinkedList<ThreadLocalCleaner>();
+    private final LinkedList<ThreadLocalInitializer> initializers = new LinkedList<ThreadLocalInitializer>();
     private String appName;
 
     // endregion Members
@@ -77,6 +79,7 @@ public final class WebRequestTrackingFilter implements Filter {
         setKeyOnTLS(key);
 
         boolean isRequestProcessedSuccessfully = invokeSafeOnBeginRequest(req, response);
+        initializeThreadLocals();
 
         try {
             chain.doFilter(req, response);
@@ -99,14 +102,28 @@ public final class WebRequestTrackingFilter implements Filter {
         this.appName = appName;
     }
 
+    private void initializeThreadLocals() {
+        for (ThreadLocalInitializer initializer : initializers) {
+            try {
+                initializer.initialize();
+            } catch (Throwable t) {
+            }
+        }
+    }
+
     private void cleanup() {
         try {
+            // The cleaners may still track telemetries of the request, so they run while its context is set
+            for (ThreadLocalCleaner cleaner : cleaners) {
+                try {
+                    cleaner.clean();
+                } catch (Throwable t) {
+                }
+            }
+
             ThreadContext.remove();
 
             setKeyOnTLS(null);
-            for (ThreadLocalCleaner cleaner : cleaners) {
-                cleaner.clean();
-            }
         } catch (Throwable t) {
         }
     }
@@ -253,6 +270,9 @@ public final class WebRequestTrackingFilter implements Filter {
                 if (result.getCleaner() != null) {
                     cleaners.add(result.getCleaner());
                 }
+                if (result.getInitializer() != null) {
+                    initializers.add(result.getInitializer());
+                }
                 InternalLogger.INSTANCE.logAlways(InternalLogger.LoggingLevel.INFO, "Registered WebApp '%s' key='%s'", name, key);
             }
         } else {